@@ -0,0 +1,84 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs {@link ClassifierPoolBenchmark} with the model of the app on a device and reports the
+ * images per second of every worker count, e.g.
+ * ./gradlew :app:connectedDebugAndroidTest
+ *     -Pandroid.testInstrumentationRunnerArguments.class=com.yuryborodin.lookanddo.ClassifierPoolBenchmarkTest
+ * The corpus is the directory of the instrumentation argument "corpus", by default the
+ * goldens saved from the debug menu (see MainActivity#GOLDEN_DIR). Skipped without the model
+ * (it is not on GitHub) or without a corpus
+ * @since 1.1
+ */
+@RunWith(AndroidJUnit4.class)
+public class ClassifierPoolBenchmarkTest {
+    private static final String TAG = "ClassifierPoolBenchTest";
+
+    /**
+     * Sessions of the pool, the benchmark doubles the workers up to it
+     */
+    private static final int POOL_SIZE = 4;
+
+    /**
+     * Classifications of the whole corpus per worker count
+     */
+    private static final int PASSES = 3;
+
+    @Test
+    public void throughputByWorkers() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = instrumentation.getTargetContext();
+        String model = MainActivity.MODEL_FILE.split("file:///android_asset/")[1];
+        String[] assets = context.getAssets().list("");
+        assumeTrue("No model in the assets",
+                assets != null && Arrays.asList(assets).contains(model));
+        String corpusArgument = InstrumentationRegistry.getArguments().getString("corpus");
+        File corpus = corpusArgument != null ? new File(corpusArgument)
+                : context.getExternalFilesDir(MainActivity.GOLDEN_DIR);
+        assumeTrue("No corpus of drawings", corpus != null && corpus.isDirectory());
+
+        ClassifierPool pool = new ClassifierPool(context.getAssets(), MainActivity.MODEL_FILE,
+                MainActivity.LABEL_FILE, POOL_SIZE, MainActivity.INPUT_SIZE,
+                MainActivity.IMAGE_MEAN, MainActivity.IMAGE_STD, MainActivity.INPUT_NAME,
+                MainActivity.OUTPUT_NAME);
+        try {
+            String report = ClassifierPoolBenchmark.run(pool, corpus, PASSES);
+            Log.i(TAG, report);
+            // shown by the test runner next to the result of the test
+            Bundle status = new Bundle();
+            status.putString(Instrumentation.REPORT_KEY_STREAMRESULT, report);
+            instrumentation.sendStatus(0, status);
+            assertTrue(report, report.contains("workers=" + POOL_SIZE + " "));
+        } finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Debug-only throughput benchmark of {@link ClassifierPool}.
+ * Classifies a corpus of saved drawings (PNG files) with 1, 2, 4, ... workers up to the
+ * size of the pool and reports images per second for each worker count.
+ * Run on a device by ClassifierPoolBenchmarkTest (androidTest)
+ * @since 1.1
+ */
+public class ClassifierPoolBenchmark {
+    private static final String TAG = "ClassifierPoolBench";
+
+    private ClassifierPoolBenchmark() {}
+
+    /**
+     * This method runs the benchmark, must not be called on the UI thread
+     * @param pool ClassifierPool object
+     * @param corpusDir directory with PNG drawings
+     * @param passes how many times each worker count classifies the whole corpus
+     * @return String report, one line per worker count
+     * @throws IOException if the corpus is empty or can not be decoded
+     * @throws InterruptedException if interrupted while waiting for workers
+     * @since 1.1
+     */
+    public static String run(ClassifierPool pool, File corpusDir, int passes)
+            throws IOException, InterruptedException {
+        final List<Bitmap> corpus = loadCorpus(corpusDir, pool.getInputSize());
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "corpus=%d images, passes=%d%n",
+                corpus.size(), passes));
+
+        // warm up every session of the pool, so session creation is not measured
+        measure(pool, corpus, pool.getMaxSize(), 1);
+
+        for (int workers = 1; workers <= pool.getMaxSize(); workers *= 2) {
+            long nanos = measure(pool, corpus, workers, passes);
+            double perSecond = corpus.size() * (double) passes / (nanos / 1e9);
+            String line = String.format(Locale.US, "workers=%d images/s=%.1f wall=%.1fms",
+                    workers, perSecond, nanos / 1e6);
+            Log.i(TAG, line);
+            report.append(line).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static long measure(final ClassifierPool pool, final List<Bitmap> corpus,
+                                int workers, int passes) throws InterruptedException {
+        final int total = corpus.size() * passes;
+        final AtomicInteger next = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(workers);
+        ExecutorService service = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        for (int w = 0; w < workers; w++) {
+            service.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Classifier classifier = pool.acquire();
+                        try {
+                            int i;
+                            while ((i = next.getAndIncrement()) < total) {
+                                classifier.recognizeImage(corpus.get(i % corpus.size()));
+                            }
+                        } finally {
+                            pool.release(classifier);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        long nanos = System.nanoTime() - start;
+        service.shutdown();
+        return nanos;
+    }
+
+    private static List<Bitmap> loadCorpus(File corpusDir, int inputSize) throws IOException {
+        File[] files = corpusDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.toLowerCase(Locale.US).endsWith(".png");
+            }
+        });
+        if (files == null || files.length == 0) {
+            throw new IOException("No PNG drawings in " + corpusDir);
+        }
+        List<Bitmap> corpus = new ArrayList<>(files.length);
+        for (File file : files) {
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+            if (bitmap == null) {
+                throw new IOException("Can not decode " + file);
+            }
+            // scale once up front, the same way DrawingAnalyser.analyse does
+            corpus.add(Bitmap.createScaledBitmap(bitmap, inputSize, inputSize, false));
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,53 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Debug-only entry point of session replays, MainActivity itself is not exported.
+ * Forwards the replay extras to a new task of {@link MainActivity} and finishes, e.g.
+ * adb shell am start -n com.yuryborodin.lookanddo/.ReplayActivity
+ *     -e replaySession session-1.bin --ef replaySpeed 0
+ * A session name without a directory is looked up in {@link MainActivity#SESSION_DIR}
+ * @since 1.1
+ */
+public class ReplayActivity extends Activity {
+    private static final String TAG = "ReplayActivity";
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        String session = getIntent().getStringExtra(MainActivity.EXTRA_REPLAY_SESSION);
+        if (session == null) {
+            Log.w(TAG, "No " + MainActivity.EXTRA_REPLAY_SESSION + " extra, nothing to replay");
+            finish();
+            return;
+        }
+        File file = new File(session);
+        if (file.getParent() == null) {
+            file = new File(new File(getFilesDir(), MainActivity.SESSION_DIR), session);
+        }
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.putExtra(MainActivity.EXTRA_REPLAY_SESSION, file.getAbsolutePath());
+        intent.putExtra(MainActivity.EXTRA_REPLAY_SPEED,
+                getIntent().getFloatExtra(MainActivity.EXTRA_REPLAY_SPEED, 1f));
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        startActivity(intent);
+        finish();
+    }
+}
@@ -0,0 +1,163 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Free bitmaps kept for reuse, keyed by width, height and config.
+ * Bitmaps that are no longer needed are released to the pool instead of being left to the
+ * garbage collector, and the next request of the same size takes them back, so steady-state
+ * play allocates no bitmaps. The total size of the free bitmaps is capped, the least recently
+ * released ones are recycled first. Thread-safe
+ * @since 1.1
+ */
+public class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    private final long mMaxBytes;
+
+    /**
+     * Free bitmaps, the least recently released first
+     */
+    private final List<Bitmap> mFree = new ArrayList<>();
+    private long mBytes = 0;
+
+    private int mHits = 0;
+    private int mMisses = 0;
+    private int mEvictions = 0;
+
+    /**
+     * Constructor of the class
+     * @param maxBytes maximal size of the free bitmaps together
+     * @since 1.1
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * This method takes a free bitmap of a size or creates one
+     * @param width width of the bitmap
+     * @param height height of the bitmap
+     * @param config config of the bitmap
+     * @return mutable bitmap, its pixels are undefined
+     * @since 1.1
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        for (int i = mFree.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = mFree.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                    && bitmap.getConfig() == config) {
+                mFree.remove(i);
+                mBytes -= bitmap.getAllocationByteCount();
+                mHits++;
+                return bitmap;
+            }
+        }
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * This method returns a bitmap to the pool, it must not be used by the caller anymore
+     * @param bitmap bitmap from {@link BitmapPool#acquire(int, int, Bitmap.Config)} or any
+     *               other mutable bitmap; null and immutable bitmaps are ignored
+     * @since 1.1
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        synchronized (this) {
+            mFree.add(bitmap);
+            mBytes += size;
+            while (mBytes > mMaxBytes) {
+                Bitmap evicted = mFree.remove(0);
+                mBytes -= evicted.getAllocationByteCount();
+                evicted.recycle();
+                mEvictions++;
+            }
+        }
+    }
+
+    /**
+     * This method decodes a resource into a free bitmap of its size if there is one
+     * @param resources Resources object
+     * @param id id of the drawable
+     * @param sampleSize subsampling of the decoder, 1 for the full size
+     * @return mutable bitmap, null if the resource can not be decoded
+     * @since 1.1
+     */
+    public Bitmap decodeResource(Resources resources, int id, int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inSampleSize = sampleSize;
+        BitmapFactory.decodeResource(resources, id, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inBitmap = take(options.outWidth, options.outHeight, Bitmap.Config.ARGB_8888);
+        try {
+            return BitmapFactory.decodeResource(resources, id, options);
+        } catch (IllegalArgumentException e) {
+            // the decoder could not reuse the bitmap, e.g. because of the format of the image
+            Log.w(TAG, "Bitmap not reused for " + id, e);
+            release(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeResource(resources, id, options);
+        }
+    }
+
+    /**
+     * This method recycles every free bitmap, e.g. when the system is low on memory
+     * @since 1.1
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : mFree) {
+            bitmap.recycle();
+        }
+        mFree.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * @return hits, misses, evictions and the size of the free bitmaps
+     * @since 1.1
+     */
+    public synchronized String getStatString() {
+        return "hits=" + mHits + " misses=" + mMisses + " evictions=" + mEvictions
+                + " free=" + mFree.size() + " (" + mBytes / 1024 + " KB)";
+    }
+}
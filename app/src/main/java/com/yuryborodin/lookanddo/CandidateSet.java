@@ -0,0 +1,151 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+/**
+ * Classes a recognition is restricted to, e.g. the classes of the game and a few distractors.
+ * The softmax and the top results are computed over the candidates only, so the work after
+ * the run of the model grows with the number of candidates rather than with the vocabulary.
+ * The scores are the probabilities of the classes given that the drawing shows one of the
+ * candidates; with every class of the model as a candidate they equal the full softmax.
+ * Not thread-safe, the scratch buffers are shared by all calls
+ * @since 1.1
+ */
+public final class CandidateSet {
+
+    private final int[] mIds;
+    private final boolean[] mMember;
+    private int mSize = 0;
+    private float[] mScores = new float[0];
+
+    /**
+     * Constructor of the class
+     * @param classes number of classes of the model, candidates are within [0, classes)
+     * @param capacity maximal number of candidates
+     * @since 1.1
+     */
+    public CandidateSet(int classes, int capacity) {
+        mIds = new int[capacity];
+        mMember = new boolean[classes];
+    }
+
+    /**
+     * This method removes all candidates
+     * @since 1.1
+     */
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mMember[mIds[i]] = false;
+        }
+        mSize = 0;
+    }
+
+    /**
+     * This method adds a class
+     * @param id index of the class in the output of the model
+     * @return false if the class is out of range, already a candidate or the set is full
+     * @since 1.1
+     */
+    public boolean add(int id) {
+        if (id < 0 || id >= mMember.length || mMember[id] || mSize == mIds.length) {
+            return false;
+        }
+        mMember[id] = true;
+        mIds[mSize++] = id;
+        return true;
+    }
+
+    /**
+     * @param id index of a class
+     * @return true if the class is a candidate
+     * @since 1.1
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < mMember.length && mMember[id];
+    }
+
+    /**
+     * @return number of candidates
+     * @since 1.1
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return number of classes of the model the set was made for
+     * @since 1.1
+     */
+    public int getNumClasses() {
+        return mMember.length;
+    }
+
+    /**
+     * @param index index within [0, size())
+     * @return class of the candidate, in the order of adding
+     * @since 1.1
+     */
+    public int get(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * This method selects the best candidates
+     * @param values output of the model for all classes
+     * @param logits true if values are logits, false if they are probabilities of a softmax,
+     *               which are renormalized over the candidates
+     * @param k maximal number of results, not larger than outIds.length
+     * @param threshold only scores strictly greater than this are selected
+     * @param outIds destination for the classes, ordered from the highest score
+     * @param outScores destination for the scores of the classes
+     * @return number of selected classes
+     * @since 1.1
+     */
+    public int select(float[] values, boolean logits, int k, float threshold, int[] outIds,
+                      float[] outScores) {
+        if (mScores.length != mSize) {
+            mScores = new float[mSize];
+        }
+        float sum = 0f;
+        if (logits) {
+            // shifted by the largest logit, so exp does not overflow
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < mSize; ++i) {
+                max = Math.max(max, values[mIds[i]]);
+            }
+            for (int i = 0; i < mSize; ++i) {
+                final float score = (float) Math.exp(values[mIds[i]] - max);
+                mScores[i] = score;
+                sum += score;
+            }
+        } else {
+            for (int i = 0; i < mSize; ++i) {
+                final float score = values[mIds[i]];
+                mScores[i] = score;
+                sum += score;
+            }
+        }
+        if (sum > 0f) {
+            final float scale = 1f / sum;
+            for (int i = 0; i < mSize; ++i) {
+                mScores[i] *= scale;
+            }
+        }
+        final int count = TopK.select(mScores, k, threshold, outIds);
+        for (int j = 0; j < count; ++j) {
+            final int candidate = outIds[j];
+            outScores[j] = mScores[candidate];
+            outIds[j] = mIds[candidate];
+        }
+        return count;
+    }
+}
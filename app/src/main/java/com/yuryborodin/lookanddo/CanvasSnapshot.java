@@ -0,0 +1,156 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of a version of the drawing, safe to classify on a background thread while
+ * the user keeps drawing. Holds the finished strokes and a copy of the pixels of the ink bounds
+ * only; the rest of the canvas is the background color. Created by {@link DrawView#snapshot()},
+ * its bitmaps come from a {@link BitmapPool} and go back there on {@link CanvasSnapshot#release()}
+ * @since 1.1
+ */
+public final class CanvasSnapshot {
+
+    /**
+     * Version of the drawing, see {@link DrawView#getVersion()}
+     * @since 1.1
+     */
+    public final int version;
+
+    /**
+     * Finished strokes of the drawing, unmodifiable
+     * @since 1.1
+     */
+    public final List<Stroke> strokes;
+
+    /**
+     * Whether the user painted something, see {@link DrawView#checkIfPainted()}
+     * @since 1.1
+     */
+    public final boolean painted;
+
+    private final Bitmap mInk;
+    private final int mLeft;
+    private final int mTop;
+    private final int mCanvasWidth;
+    private final int mCanvasHeight;
+    private final int mBackgroundColor;
+    private final BitmapPool mPool;
+    private boolean mReleased = false;
+
+    // nearest neighbour, like Bitmap.createScaledBitmap(..., false)
+    private final Paint mPaint = new Paint();
+
+    /**
+     * Constructor of the class
+     * @param version version of the drawing
+     * @param strokes finished strokes, not changed afterwards
+     * @param painted whether the user painted something
+     * @param ink copy of the pixels of the ink bounds, null if there is no ink
+     * @param left x of the copy on the canvas
+     * @param top y of the copy on the canvas
+     * @param canvasWidth width of the canvas
+     * @param canvasHeight height of the canvas
+     * @param backgroundColor color of the canvas outside of the copy
+     * @param pool BitmapPool object, the copy is released to it
+     * @since 1.1
+     */
+    CanvasSnapshot(int version, List<Stroke> strokes, boolean painted, Bitmap ink, int left,
+                   int top, int canvasWidth, int canvasHeight, int backgroundColor,
+                   BitmapPool pool) {
+        this.version = version;
+        this.strokes = Collections.unmodifiableList(strokes);
+        this.painted = painted;
+        this.mInk = ink;
+        this.mLeft = left;
+        this.mTop = top;
+        this.mCanvasWidth = canvasWidth;
+        this.mCanvasHeight = canvasHeight;
+        this.mBackgroundColor = backgroundColor;
+        this.mPool = pool;
+    }
+
+    public int getCanvasWidth() {
+        return mCanvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return mCanvasHeight;
+    }
+
+    /**
+     * This method scales the whole canvas to width x height, the same image as
+     * Bitmap.createScaledBitmap(canvas, width, height, false) at the cost of the ink bounds
+     * @param width width of the result
+     * @param height height of the result
+     * @return bitmap from the pool, the caller releases it to the pool when done
+     * @since 1.1
+     */
+    public Bitmap render(int width, int height) {
+        return crop(0, 0, mCanvasWidth, mCanvasHeight, width, height);
+    }
+
+    /**
+     * This method scales a part of the canvas, parts outside of the canvas are background
+     * @param x x of the part on the canvas
+     * @param y y of the part on the canvas
+     * @param partWidth width of the part
+     * @param partHeight height of the part
+     * @param width width of the result
+     * @param height height of the result
+     * @return bitmap from the pool, the caller releases it to the pool when done
+     * @since 1.1
+     */
+    public Bitmap crop(int x, int y, int partWidth, int partHeight, int width, int height) {
+        if (mReleased) {
+            throw new IllegalStateException("Snapshot " + version + " was released");
+        }
+        Bitmap bitmap = mPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(mBackgroundColor);
+        if (mInk != null) {
+            float scaleX = (float) width / partWidth;
+            float scaleY = (float) height / partHeight;
+            RectF destination = new RectF((mLeft - x) * scaleX, (mTop - y) * scaleY,
+                    (mLeft - x + mInk.getWidth()) * scaleX, (mTop - y + mInk.getHeight()) * scaleY);
+            canvas.drawBitmap(mInk, null, destination, mPaint);
+        }
+        return bitmap;
+    }
+
+    /**
+     * This method returns the copied pixels to the pool, the strokes stay available
+     * @since 1.1
+     */
+    public void release() {
+        if (!mReleased) {
+            mReleased = true;
+            mPool.release(mInk);
+        }
+    }
+
+    /**
+     * @return size of the copied pixels in bytes
+     * @since 1.1
+     */
+    public int getByteCount() {
+        return mInk == null ? 0 : mInk.getByteCount();
+    }
+}
@@ -99,6 +99,35 @@ public interface Classifier {
 
     List<Recognition> recognizeImage(Bitmap bitmap);
 
+    /**
+     * Like {@link #recognizeImage(Bitmap)}, also copies the penultimate layer activations of the
+     * same run into embedding. If the model has no embedding of embedding.length values,
+     * embedding[0] is set to NaN instead.
+     */
+    List<Recognition> recognizeImage(Bitmap bitmap, float[] embedding);
+
+    /**
+     * Classifies several images in one run of the model, e.g. the objects of one drawing.
+     * Returns the results of each image, in the order of bitmaps.
+     */
+    List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps);
+
+    /**
+     * Like {@link #recognizeImage(Bitmap, float[])}, restricted to the classes of candidates: the
+     * softmax and the selection of the results only visit the candidates, the confidences sum
+     * up to 1 over them. The embedding may be null.
+     */
+    List<Recognition> recognizeCandidates(Bitmap bitmap, CandidateSet candidates,
+                                          float[] embedding);
+
+    /** Returns the number of classes of the model, the length of its output. */
+    int getNumClasses();
+
+    /** Returns the number of values of the embedding, 0 if the model has none. */
+    int getEmbeddingSize();
+
+    int getInputSize();
+
     void enableStatLogging(final boolean debug);
 
     String getStatString();
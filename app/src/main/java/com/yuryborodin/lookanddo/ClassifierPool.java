@@ -0,0 +1,268 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of classifier sessions for evaluating on several threads at once.
+ * {@link TensorFlowImageClassifier} keeps its buffers in fields, so an instance acquired from
+ * this pool must only be used by the acquiring thread until it is released.
+ * The model and labels are read once and every session is created from the same bytes.
+ * Sessions do not share one Graph object because TensorFlowInferenceInterface closes its
+ * graph in close(), which would block until all other sessions of that graph are closed
+ * @since 1.1
+ */
+public class ClassifierPool {
+    private static final String TAG = "ClassifierPool";
+
+    private final byte[] mGraphDef;
+    private final List<String> mLabels;
+    private final int mInputSize;
+    private final int mImageMean;
+    private final float mImageStd;
+    private final String mInputName;
+    private final String mOutputName;
+    private final int mMaxSize;
+
+    /**
+     * Limits the number of sessions, one permit per session that may be handed out
+     * @since 1.1
+     */
+    private final Semaphore mPermits;
+
+    /**
+     * Sessions that are created and not acquired at the moment
+     * @since 1.1
+     */
+    private final LinkedBlockingQueue<Classifier> mIdle = new LinkedBlockingQueue<>();
+
+    /**
+     * Guards {@link ClassifierPool#mClosed} together with {@link ClassifierPool#mIdle}, so a
+     * session is never offered to the idle queue after close() drained it
+     * @since 1.1
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * Number of sessions created by this pool
+     * @since 1.1
+     */
+    private final AtomicInteger mCreated = new AtomicInteger(0);
+
+    private volatile boolean mClosed = false;
+
+    /**
+     * Constructor of the class, reads the model and labels from assets
+     * Sessions themselves are created lazily on acquire
+     * @param assetManager AssetManager object
+     * @param modelFilename path of the model, see {@link MainActivity#MODEL_FILE}
+     * @param labelFilename path of the labels, see {@link MainActivity#LABEL_FILE}
+     * @param maxSize maximal number of sessions
+     * @param inputSize input size of the model
+     * @param imageMean mean used for normalization
+     * @param imageStd std used for normalization
+     * @param inputName name of the input node
+     * @param outputName name of the output node
+     * @throws IOException if the model or the labels can not be read
+     * @since 1.1
+     */
+    public ClassifierPool(AssetManager assetManager, String modelFilename, String labelFilename,
+                          int maxSize, int inputSize, int imageMean, float imageStd,
+                          String inputName, String outputName) throws IOException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        mGraphDef = readAll(assetManager.open(assetName(modelFilename)));
+        mLabels = readLines(assetManager.open(assetName(labelFilename)));
+        mMaxSize = maxSize;
+        mPermits = new Semaphore(maxSize, true);
+        mInputSize = inputSize;
+        mImageMean = imageMean;
+        mImageStd = imageStd;
+        mInputName = inputName;
+        mOutputName = outputName;
+    }
+
+    /**
+     * This method blocks until a session is available
+     * @return Classifier object, confined to the calling thread until released
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the pool is closed, also while waiting
+     * @since 1.1
+     */
+    public Classifier acquire() throws InterruptedException {
+        checkOpen();
+        mPermits.acquire();
+        return take();
+    }
+
+    /**
+     * This method waits at most the given time for a session
+     * @param timeout maximal time to wait
+     * @param unit unit of timeout
+     * @return Classifier object, or null if no session became available in time
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the pool is closed, also while waiting
+     * @since 1.1
+     */
+    public Classifier acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        if (!mPermits.tryAcquire(timeout, unit)) {
+            return null;
+        }
+        return take();
+    }
+
+    /**
+     * This method returns a session to the pool
+     * @param classifier Classifier object obtained from this pool
+     * @since 1.1
+     */
+    public void release(Classifier classifier) {
+        boolean closed;
+        synchronized (mLock) {
+            closed = mClosed;
+            if (!closed) {
+                mIdle.offer(classifier);
+            }
+        }
+        if (closed) {
+            classifier.close();
+        }
+        mPermits.release();
+    }
+
+    /**
+     * @return maximal number of sessions
+     * @since 1.1
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return input size of the model
+     * @since 1.1
+     */
+    public int getInputSize() {
+        return mInputSize;
+    }
+
+    /**
+     * This method closes idle sessions; sessions in use are closed on release
+     * @since 1.1
+     */
+    public void close() {
+        List<Classifier> idle = new ArrayList<>();
+        synchronized (mLock) {
+            mClosed = true;
+            mIdle.drainTo(idle);
+        }
+        for (Classifier classifier : idle) {
+            classifier.close();
+        }
+    }
+
+    /**
+     * This method hands out an idle session or creates a new one
+     * Called with a permit, which is given back if the pool was closed meanwhile
+     * @return Classifier object
+     */
+    private Classifier take() {
+        synchronized (mLock) {
+            checkOpenWithPermit();
+            Classifier classifier = mIdle.poll();
+            if (classifier != null) {
+                return classifier;
+            }
+        }
+        Classifier classifier;
+        try {
+            classifier = TensorFlowImageClassifier.create(mGraphDef, mLabels, mInputSize,
+                    mImageMean, mImageStd, mInputName, mOutputName);
+        } catch (RuntimeException e) {
+            mPermits.release();
+            throw e;
+        }
+        synchronized (mLock) {
+            if (mClosed) {
+                // closed while the session was created, nobody would close it
+                classifier.close();
+            }
+            checkOpenWithPermit();
+        }
+        Log.i(TAG, "Created session " + mCreated.incrementAndGet() + " of " + mMaxSize);
+        return classifier;
+    }
+
+    /**
+     * Called with {@link ClassifierPool#mLock} held by a caller that has a permit
+     */
+    private void checkOpenWithPermit() {
+        if (mClosed) {
+            mPermits.release();
+            throw new IllegalStateException("Pool is closed");
+        }
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+    }
+
+    private static String assetName(String filename) {
+        return filename.split("file:///android_asset/")[1];
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 8192));
+            byte[] buffer = new byte[16384];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<String> readLines(InputStream in) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(in));
+        try {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            br.close();
+        }
+    }
+}
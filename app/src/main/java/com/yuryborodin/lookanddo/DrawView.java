@@ -18,13 +18,34 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 import android.graphics.Path;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.List;
 
 public class DrawView extends View {
+    private static final String TAG = "DrawView";
+
+    /**
+     * Keys of the saved instance state
+     * @since 1.1
+     */
+    private static final String STATE_SUPER = "superState";
+    private static final String STATE_STROKES = "strokes";
+
     /**
      * Constant, defines brush size for drawing
      * @since 1.0
@@ -49,6 +70,53 @@ public class DrawView extends View {
      */
     private static final float TOUCH_TOLERANCE = 4;
 
+    /**
+     * A copy of the canvas is kept after every CHECKPOINT_INTERVAL strokes
+     * @see RasterCheckpoints
+     * @since 1.1
+     */
+    private static final int CHECKPOINT_INTERVAL = 8;
+
+    /**
+     * Maximal size of the copies of the canvas
+     * @since 1.1
+     */
+    private static final long CHECKPOINT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Default horizon of the ink prediction in milliseconds, about one frame
+     * @see StrokePredictor
+     * @since 1.1
+     */
+    public static final int PREDICTION_HORIZON_MS = 16;
+
+    /**
+     * Maximal length of the predicted tail in pixels
+     * @since 1.1
+     */
+    private static final float PREDICTION_MAX_DISTANCE = 48;
+
+    /**
+     * The pixels copied by {@link DrawView#snapshot()} are rounded out to multiples of this,
+     * so copies of similar drawings have the same size and are reused by the bitmap pool
+     * @since 1.1
+     */
+    private static final int SNAPSHOT_GRANULARITY = 64;
+
+    /**
+     * Listener of finished strokes
+     * @see DrawView#setOnStrokeListener(OnStrokeListener)
+     * @since 1.1
+     */
+    public interface OnStrokeListener {
+        /**
+         * Called on the main thread when the finger was lifted
+         * @param view DrawView object, its strokes include the finished one
+         * @since 1.1
+         */
+        void onStrokeFinished(DrawView view);
+    }
+
     /**
      * Start x coordinate
      * @since 1.0
@@ -81,6 +149,114 @@ public class DrawView extends View {
      */
     private ArrayList<FingerHandler> paths = new ArrayList<>();
 
+    /**
+     * Path of the stroke being drawn, null when the finger is lifted
+     * @since 1.1
+     */
+    private FingerHandler mActive = null;
+
+    /**
+     * Undone strokes, the last one is redone first
+     * @since 1.1
+     */
+    private final ArrayList<FingerHandler> mUndone = new ArrayList<>();
+
+    /**
+     * Copies of the canvas used by undo
+     * @since 1.1
+     */
+    private final RasterCheckpoints mCheckpoints =
+            new RasterCheckpoints(CHECKPOINT_INTERVAL, CHECKPOINT_MAX_BYTES);
+
+    /**
+     * Number of finished strokes drawn on {@link DrawView#mBitmap}, -1 if it has to be
+     * drawn from scratch
+     * @since 1.1
+     */
+    private int mRendered = -1;
+
+    /**
+     * Incremented on every change of the drawing
+     * @since 1.1
+     */
+    private int mVersion = 0;
+
+    /**
+     * Bounds of the ink and the version they were computed for
+     * @since 1.1
+     */
+    private final RectF mInkBounds = new RectF();
+    private int mInkBoundsVersion = -1;
+    private final RectF mSnapshotBounds = new RectF();
+    private final Rect mSnapshotSource = new Rect();
+    private final Rect mSnapshotDestination = new Rect();
+    private final Canvas mSnapshotCanvas = new Canvas();
+
+    /**
+     * BitmapPool object, source of the canvas, checkpoint and snapshot bitmaps
+     * @since 1.1
+     */
+    private BitmapPool mBitmapPool;
+
+    /**
+     * Predictor of the finger position, its tail is drawn on the view only and never becomes
+     * part of the drawing
+     * @since 1.1
+     */
+    private StrokePredictor mPredictor =
+            new StrokePredictor(PREDICTION_HORIZON_MS, PREDICTION_MAX_DISTANCE);
+    private final float[] mPredicted = new float[2];
+    private final Path mTail = new Path();
+
+    /**
+     * Last position of the finger, including positions closer than TOUCH_TOLERANCE
+     * @since 1.1
+     */
+    private float mFingerX;
+    private float mFingerY;
+
+    /**
+     * Listener of finished strokes, may be null
+     * @since 1.1
+     */
+    private OnStrokeListener mStrokeListener;
+
+    /**
+     * Instrumentation of the frames, null while disabled; every other frame-stats field is
+     * only touched when it is set
+     * @since 1.1
+     */
+    private FrameStats mFrameStats;
+
+    /**
+     * Recorder of the touch events, null unless a session is recorded
+     * @since 1.1
+     */
+    private TouchRecorder mTouchRecorder;
+
+    /**
+     * Time of the oldest touch that no frame has drawn yet and of the oldest touch drawn by
+     * the last frame, in System.nanoTime() time base; 0 if there is none
+     * @since 1.1
+     */
+    private long mPendingTouchNanos = 0;
+    private long mDrawnTouchNanos = 0;
+
+    /**
+     * Runs at the start of the frame after the one that drew new input: the drawn frame is
+     * on screen from then on
+     * @since 1.1
+     */
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mFrameStats != null && mDrawnTouchNanos != 0) {
+                mFrameStats.addLatency(frameTimeNanos - mDrawnTouchNanos);
+            }
+            mDrawnTouchNanos = 0;
+        }
+    };
+
     /**
      * Current color of a brush
      * @since 1.0
@@ -155,8 +331,8 @@ public class DrawView extends View {
         mPaint.setAlpha(0xff);
         mPath = new Path();
         mBitmapPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mBitmap = Bitmap.createBitmap(getSuggestedMinimumWidth(), getSuggestedMinimumHeight(), Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mBitmap);
+        // the canvas bitmap is taken from the pool in init
+        mCanvas = new Canvas();
 
     }
 
@@ -180,8 +356,8 @@ public class DrawView extends View {
         mPaint.setXfermode(null);
         mPaint.setAlpha(0xff);
         mPath = new Path();
-        mBitmap = Bitmap.createBitmap(700, 500, Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mBitmap);
+        // the canvas bitmap is taken from the pool in init
+        mCanvas = new Canvas();
         mBitmapPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     }
     /**
@@ -200,17 +376,38 @@ public class DrawView extends View {
     /**
      * This method is used to initialize PainView object within an activity
      * @param metrics DisplayMetrics
+     * @param pool BitmapPool object, the bitmaps of the view are taken from it and released
+     *             to it by {@link DrawView#release()}
      * @since 1.0
      */
-    public void init(DisplayMetrics metrics) {
+    public void init(DisplayMetrics metrics, BitmapPool pool) {
         setMeasuredDimension(metrics.widthPixels, metrics.heightPixels);
-        mBitmap = Bitmap.createBitmap(metrics.widthPixels, metrics.heightPixels,
+        release();
+        mBitmapPool = pool;
+        mCheckpoints.setBitmapPool(pool);
+        mBitmap = pool.acquire(metrics.widthPixels, metrics.heightPixels,
                 Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mBitmap);
+        mCanvas.setBitmap(mBitmap);
+        mRendered = -1;
         mCurrentColor = DEFAULT_COLOR;
         mCurrentStrokeWidth = BRUSH_SIZE;
     }
 
+    /**
+     * This method returns the bitmaps of the view to the pool, e.g. when the activity is
+     * destroyed; the view is not drawn until the next {@link DrawView#init}
+     * @since 1.1
+     */
+    public void release() {
+        mCheckpoints.clear();
+        if (mBitmap != null) {
+            mCanvas.setBitmap(null);
+            mBitmapPool.release(mBitmap);
+            mBitmap = null;
+        }
+        mRendered = -1;
+    }
+
     /**
      * This method is used to clear the canvas
      * @since 1.0
@@ -218,6 +415,11 @@ public class DrawView extends View {
     public void clear() {
         mCurrentBackgroundColor = DEFAULT_BACKGROUND_COLOR;
         paths.clear();
+        mActive = null;
+        mUndone.clear();
+        mCheckpoints.clear();
+        mRendered = -1;
+        mVersion++;
         mX = 0;
         mY = 0;
         invalidate();
@@ -225,14 +427,59 @@ public class DrawView extends View {
 
     /**
      * This method is used for extracting bitmap from DrawView object
+     * The bitmap is the live canvas, it must not be read off the main thread,
+     * see {@link DrawView#snapshot()}
      * @return bm Bitmap object
      * @since 1.0
      */
     public Bitmap proceed() {
+        render();
         Bitmap bm = mBitmap;
         return bm;
     }
 
+    /**
+     * This method copies the current version of the drawing for a background thread
+     * Only the pixels of the ink bounds are copied; a stroke being drawn is not included
+     * @return CanvasSnapshot object
+     * @since 1.1
+     */
+    public CanvasSnapshot snapshot() {
+        render();
+        List<Stroke> strokes = getStrokes();
+        if (mActive != null) {
+            strokes.remove(strokes.size() - 1);
+        }
+        int width = mBitmap.getWidth();
+        int height = mBitmap.getHeight();
+        getInkBounds(mSnapshotBounds);
+        int left = floorTo(Math.max((int) Math.floor(mSnapshotBounds.left), 0));
+        int top = floorTo(Math.max((int) Math.floor(mSnapshotBounds.top), 0));
+        int right = Math.min(ceilTo(Math.max((int) Math.ceil(mSnapshotBounds.right), 0)), width);
+        int bottom = Math.min(ceilTo(Math.max((int) Math.ceil(mSnapshotBounds.bottom), 0)),
+                height);
+        Bitmap ink = null;
+        if (!strokes.isEmpty() && left < right && top < bottom) {
+            ink = mBitmapPool.acquire(right - left, bottom - top, Bitmap.Config.ARGB_8888);
+            mSnapshotSource.set(left, top, right, bottom);
+            mSnapshotDestination.set(0, 0, right - left, bottom - top);
+            mSnapshotCanvas.setBitmap(ink);
+            mSnapshotCanvas.drawBitmap(mBitmap, mSnapshotSource, mSnapshotDestination, null);
+            mSnapshotCanvas.setBitmap(null);
+        }
+        return new CanvasSnapshot(mVersion, strokes, checkIfPainted(), ink, left, top, width,
+                height, mCurrentBackgroundColor, mBitmapPool);
+    }
+
+    private static int floorTo(int value) {
+        // value is not negative
+        return value / SNAPSHOT_GRANULARITY * SNAPSHOT_GRANULARITY;
+    }
+
+    private static int ceilTo(int value) {
+        return floorTo(value + SNAPSHOT_GRANULARITY - 1);
+    }
+
     /**
      * This is an overridden method used for drawing images
      * See documentations on View class
@@ -240,17 +487,238 @@ public class DrawView extends View {
      */
     @Override
     public void onDraw(Canvas canvas){
+        long start = mFrameStats != null ? System.nanoTime() : 0;
         canvas.save();
-        mCanvas.drawColor(mCurrentBackgroundColor);
         super.onDraw(canvas);
-        for(FingerHandler fp : paths){
-            mPaint.setColor(fp.color);
-            mPaint.setStrokeWidth(fp.strokeWidth);
-            mPaint.setMaskFilter(null);
-            mCanvas.drawPath(fp.path, mPaint);
+        if (mBitmap == null) {
+            canvas.restore();
+            return;
         }
+        int points = render();
         canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
+        // the stroke being drawn is committed to the bitmap when the finger is lifted
+        if (mActive != null) {
+            drawPath(canvas, mActive);
+            drawPredictedTail(canvas);
+            points += mActive.stroke.size();
+        }
         canvas.restore();
+        if (mFrameStats != null) {
+            onFrameDrawn(System.nanoTime() - start, points);
+        }
+    }
+
+    /**
+     * This method records a frame in {@link DrawView#mFrameStats} and, if it draws new input,
+     * waits for the next frame to measure the touch-to-frame latency
+     * @param drawNanos duration of onDraw
+     * @param points number of points drawn
+     * @since 1.1
+     */
+    private void onFrameDrawn(long drawNanos, int points) {
+        mFrameStats.addFrame(drawNanos, paths.size(), points);
+        if (mPendingTouchNanos != 0 && mDrawnTouchNanos == 0) {
+            mDrawnTouchNanos = mPendingTouchNanos;
+            mPendingTouchNanos = 0;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * This method enables the instrumentation of onDraw and of the touch-to-frame latency
+     * Disabled, it costs a null check per frame and per touch event
+     * @param stats FrameStats object the frames are recorded in, null to disable it
+     * @since 1.1
+     */
+    public void setFrameStats(FrameStats stats) {
+        if (stats == null && mFrameStats != null) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+        mFrameStats = stats;
+        mPendingTouchNanos = 0;
+        mDrawnTouchNanos = 0;
+    }
+
+    /**
+     * @return FrameStats object the frames are recorded in, null if it is disabled
+     * @since 1.1
+     */
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    /**
+     * This method records every touch event delivered to the view, also while drawing is
+     * disabled, so a replay sees the same events
+     * @param recorder TouchRecorder object, null to stop recording
+     * @since 1.1
+     */
+    public void setTouchRecorder(TouchRecorder recorder) {
+        mTouchRecorder = recorder;
+    }
+
+    /**
+     * This method draws the finished strokes that are not on {@link DrawView#mBitmap} yet
+     * After undo the bitmap starts from the nearest checkpoint, so at most
+     * CHECKPOINT_INTERVAL strokes are replayed while the checkpoints fit their budget
+     * @return number of points of the replayed strokes
+     * @since 1.1
+     */
+    private int render() {
+        int points = 0;
+        int target = mActive == null ? paths.size() : paths.size() - 1;
+        if (mRendered < 0 || mRendered > target) {
+            mRendered = mCheckpoints.restore(target, mCanvas);
+            if (mRendered == 0) {
+                mCanvas.drawColor(mCurrentBackgroundColor);
+            }
+        }
+        while (mRendered < target) {
+            FingerHandler fp = paths.get(mRendered);
+            drawPath(mCanvas, fp);
+            points += fp.stroke.size();
+            mRendered++;
+            mCheckpoints.onStrokeDrawn(mRendered, mBitmap);
+        }
+        return points;
+    }
+
+    /**
+     * This method draws the predicted tail of the active stroke: from the end of its path
+     * through the last position of the finger to the predicted position
+     * @param canvas canvas of the view
+     * @since 1.1
+     */
+    private void drawPredictedTail(Canvas canvas) {
+        if (!mPredictor.predict(SystemClock.uptimeMillis(), mPredicted)) {
+            return;
+        }
+        Stroke stroke = mActive.stroke;
+        int last = stroke.size() - 1;
+        float endX = stroke.getX(last);
+        float endY = stroke.getY(last);
+        if (last > 0) {
+            // the path ends in the middle of the last segment, see FingerHandler#addPoint
+            endX = (endX + stroke.getX(last - 1)) / 2;
+            endY = (endY + stroke.getY(last - 1)) / 2;
+        }
+        mTail.rewind();
+        mTail.moveTo(endX, endY);
+        mTail.lineTo(mFingerX, mFingerY);
+        mTail.lineTo(mPredicted[0], mPredicted[1]);
+        mPaint.setColor(mActive.color);
+        mPaint.setStrokeWidth(mActive.strokeWidth);
+        canvas.drawPath(mTail, mPaint);
+    }
+
+    /**
+     * This method sets how far ahead the ink is predicted
+     * @param horizonMs horizon in milliseconds, 0 disables the prediction
+     * @since 1.1
+     */
+    public void setPredictionHorizon(int horizonMs) {
+        mPredictor = new StrokePredictor(horizonMs, PREDICTION_MAX_DISTANCE);
+    }
+
+    private void drawPath(Canvas canvas, FingerHandler fp) {
+        mPaint.setColor(fp.color);
+        mPaint.setStrokeWidth(fp.strokeWidth);
+        mPaint.setMaskFilter(null);
+        canvas.drawPath(fp.path, mPaint);
+    }
+
+    /**
+     * This method removes the last stroke, it may be redone until a new stroke is drawn
+     * @return false if there is nothing to undo or a stroke is being drawn
+     * @since 1.1
+     */
+    public boolean undo() {
+        if (mActive != null || paths.isEmpty()) {
+            return false;
+        }
+        mUndone.add(paths.remove(paths.size() - 1));
+        if (mRendered > paths.size()) {
+            // the undone stroke is on the bitmap, a stroke drawn before the next frame would
+            // otherwise be counted in its place
+            mRendered = -1;
+        }
+        onStrokesChanged();
+        return true;
+    }
+
+    /**
+     * This method restores the last undone stroke
+     * @return false if there is nothing to redo or a stroke is being drawn
+     * @since 1.1
+     */
+    public boolean redo() {
+        if (mActive != null || mUndone.isEmpty()) {
+            return false;
+        }
+        paths.add(mUndone.remove(mUndone.size() - 1));
+        onStrokesChanged();
+        return true;
+    }
+
+    public boolean canUndo() {
+        return mActive == null && !paths.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return mActive == null && !mUndone.isEmpty();
+    }
+
+    private void onStrokesChanged() {
+        mVersion++;
+        if (paths.isEmpty()) {
+            mX = 0;
+            mY = 0;
+        } else {
+            Stroke last = paths.get(paths.size() - 1).stroke;
+            mX = last.getX(last.size() - 1);
+            mY = last.getY(last.size() - 1);
+        }
+        invalidate();
+    }
+
+    /**
+     * @return number incremented on every change of the drawing, results computed from the
+     * drawing are stale when it differs
+     * @since 1.1
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * This method computes the bounds of the ink including the width of the strokes
+     * @param out RectF object, empty if nothing is drawn
+     * @since 1.1
+     */
+    public void getInkBounds(RectF out) {
+        if (mInkBoundsVersion != mVersion) {
+            mInkBounds.setEmpty();
+            boolean first = true;
+            for (FingerHandler fp : paths) {
+                Stroke stroke = fp.stroke;
+                if (stroke.size() == 0) {
+                    continue;
+                }
+                float half = stroke.width / 2f;
+                float left = stroke.getLeft() - half;
+                float top = stroke.getTop() - half;
+                float right = stroke.getRight() + half;
+                float bottom = stroke.getBottom() + half;
+                if (first) {
+                    mInkBounds.set(left, top, right, bottom);
+                    first = false;
+                } else {
+                    mInkBounds.union(left, top, right, bottom);
+                }
+            }
+            mInkBoundsVersion = mVersion;
+        }
+        out.set(mInkBounds);
     }
 
     /**
@@ -259,11 +727,16 @@ public class DrawView extends View {
      * @param y y coordinate parameter
      */
     private void touchStart(float x, float y){
+        // undone strokes can not be redone after a new one
+        if (!mUndone.isEmpty()) {
+            mUndone.clear();
+            mCheckpoints.truncate(paths.size());
+        }
+        mVersion++;
         mPath = new Path();
-        FingerHandler fp = new FingerHandler(mCurrentColor, mCurrentStrokeWidth, mPath);
-        paths.add(fp);
-        mPath.reset();
-        mPath.moveTo(x,y);
+        mActive = new FingerHandler(mCurrentColor, mCurrentStrokeWidth, mPath);
+        paths.add(mActive);
+        mActive.addPoint(x, y, 0);
         mX = x;
         mY = y;
     }
@@ -282,14 +755,16 @@ public class DrawView extends View {
      * This method is used for handling touch events
      * @param x coordinate x
      * @param y coordinate y
+     * @param time milliseconds since the finger went down
      * @since 1.0
      */
-    private void touchMove(float x, float y){
+    private void touchMove(float x, float y, int time){
         float dx = Math.abs(x - mX);
         float dy = Math.abs(y - mY);
 
-        if (dx >= TOUCH_TOLERANCE || dy >= TOUCH_TOLERANCE){
-            mPath.quadTo(mX, mY, (x + mX)/2, (y+mY)/2);
+        if (mActive != null && (dx >= TOUCH_TOLERANCE || dy >= TOUCH_TOLERANCE)){
+            mActive.addPoint(x, y, time);
+            mVersion++;
             mX = x;
             mY = y;
         }
@@ -300,7 +775,22 @@ public class DrawView extends View {
      * @since 1.0
      */
     private void touchUp(){
-        mPath.lineTo(mX, mY);
+        if (mActive != null) {
+            mActive.finish();
+            mActive = null;
+            mVersion++;
+            if (mStrokeListener != null) {
+                mStrokeListener.onStrokeFinished(this);
+            }
+        }
+    }
+
+    /**
+     * @param listener listener of finished strokes, null to remove it
+     * @since 1.1
+     */
+    public void setOnStrokeListener(OnStrokeListener listener) {
+        mStrokeListener = listener;
     }
 
     /**
@@ -310,18 +800,41 @@ public class DrawView extends View {
      */
     @Override
     public boolean onTouchEvent(MotionEvent event){
+        if (mTouchRecorder != null) {
+            mTouchRecorder.record(event);
+        }
         if(!mEnabled) return  false;
         else {
         float x = event.getX();
         float y = event.getY();
+        int time = (int) (event.getEventTime() - event.getDownTime());
+        if (mFrameStats != null && mPendingTouchNanos == 0) {
+            // the oldest sample of the batch waited longest; uptimeMillis and nanoTime share
+            // the monotonic clock
+            long touchMillis = event.getHistorySize() > 0
+                    ? event.getHistoricalEventTime(0) : event.getEventTime();
+            mPendingTouchNanos = touchMillis * 1000000L;
+        }
 
         switch (event.getAction()){
             case MotionEvent.ACTION_DOWN:
+                mPredictor.reset();
+                mPredictor.add(x, y, event.getEventTime());
+                mFingerX = x;
+                mFingerY = y;
                 touchStart(x,y);
                 invalidate();
                 break;
             case MotionEvent.ACTION_MOVE:
-                touchMove(x,y);
+                // batched samples between frames make the velocity more accurate
+                for (int h = 0; h < event.getHistorySize(); h++) {
+                    mPredictor.add(event.getHistoricalX(h), event.getHistoricalY(h),
+                            event.getHistoricalEventTime(h));
+                }
+                mPredictor.add(x, y, event.getEventTime());
+                mFingerX = x;
+                mFingerY = y;
+                touchMove(x,y,time);
                 invalidate();
                 break;
             case MotionEvent.ACTION_UP:
@@ -332,4 +845,102 @@ public class DrawView extends View {
         return true;
         }
     }
+
+    /**
+     * @return strokes of the drawing, in drawing order
+     * @since 1.1
+     */
+    public List<Stroke> getStrokes() {
+        List<Stroke> strokes = new ArrayList<>(paths.size());
+        for (FingerHandler fp : paths) {
+            strokes.add(fp.stroke);
+        }
+        return strokes;
+    }
+
+    /**
+     * This method replaces the drawing with strokes, the canvas is redrawn from them
+     * @param strokes strokes in drawing order
+     * @since 1.1
+     */
+    public void setStrokes(List<Stroke> strokes) {
+        clear();
+        for (Stroke stroke : strokes) {
+            if (stroke.size() == 0) {
+                continue;
+            }
+            paths.add(new FingerHandler(stroke));
+            mX = stroke.getX(stroke.size() - 1);
+            mY = stroke.getY(stroke.size() - 1);
+        }
+        mVersion++;
+        invalidate();
+    }
+
+    /**
+     * This method writes the strokes of the drawing to a stream
+     * @param out OutputStream object, should be buffered
+     * @throws IOException if the stream fails
+     * @see StrokeCodec
+     * @since 1.1
+     */
+    public void writeStrokes(OutputStream out) throws IOException {
+        StrokeCodec.Writer writer = new StrokeCodec.Writer(out);
+        for (FingerHandler fp : paths) {
+            writer.write(fp.stroke);
+        }
+        writer.finish();
+    }
+
+    /**
+     * This method replaces the drawing with strokes read from a stream
+     * @param in InputStream object, should be buffered
+     * @throws IOException if the stream fails or is corrupted, the drawing is kept then
+     * @see StrokeCodec
+     * @since 1.1
+     */
+    public void readStrokes(InputStream in) throws IOException {
+        StrokeCodec.Reader reader = new StrokeCodec.Reader(in);
+        List<Stroke> strokes = new ArrayList<>();
+        for (Stroke stroke = reader.next(); stroke != null; stroke = reader.next()) {
+            strokes.add(stroke);
+        }
+        setStrokes(strokes);
+    }
+
+    /**
+     * Overridden method, keeps the strokes instead of the bitmap
+     * @return Bundle object with the state of View and the encoded strokes
+     * @since 1.1
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        Bundle state = new Bundle();
+        state.putParcelable(STATE_SUPER, super.onSaveInstanceState());
+        state.putByteArray(STATE_STROKES, StrokeCodec.encode(getStrokes()));
+        return state;
+    }
+
+    /**
+     * Overridden method, redraws the strokes saved by {@link DrawView#onSaveInstanceState()}
+     * @param state Parcelable object
+     * @since 1.1
+     */
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof Bundle)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        Bundle bundle = (Bundle) state;
+        super.onRestoreInstanceState(bundle.getParcelable(STATE_SUPER));
+        byte[] strokes = bundle.getByteArray(STATE_STROKES);
+        if (strokes != null) {
+            try {
+                setStrokes(StrokeCodec.decode(strokes));
+            } catch (IOException e) {
+                Log.w(TAG, "Saved strokes not restored", e);
+            }
+        }
+    }
 }
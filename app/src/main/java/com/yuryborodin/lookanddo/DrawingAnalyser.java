@@ -0,0 +1,926 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Classification pipeline of the game, kept out of {@link MainActivity} so the activity only
+ * shows the state of the {@link GameEngine}.
+ * Loads the model, its cheaper variants and the stroke model. A drawing of several objects is
+ * split by an {@link InkSegmenter} and its objects are classified in one batch. A drawing of one
+ * object is recognized by the stroke model while it is drawn, otherwise it is classified with
+ * the model variant picked by the {@link LatencyGuard}; the results are reranked by the nearest
+ * confirmed drawings of the user in a {@link KnnIndex}.
+ * Every model and buffer is owned by the executor thread of the activity: the methods that
+ * classify are called there, the others queue their work there and may be called on the main
+ * thread
+ * @since 1.1
+ */
+public class DrawingAnalyser {
+    private static final String TAG = "DrawingAnalyser";
+
+    /**
+     * This constant defines the latency budget of one classification in milliseconds
+     * @see LatencyGuard
+     * @since 1.1
+     */
+    public static final long LATENCY_BUDGET_MS = 200;
+
+    /**
+     * Names of model bundles with cheaper (lower resolution) variants of the model
+     * Ordered from the most to the least expensive, missing bundles are skipped
+     * @see ModelBundle
+     * @since 1.1
+     */
+    public static final String[] LATENCY_TIER_BUNDLES = {"tier1", "tier2"};
+
+    /**
+     * Input size of the cheapest variant of the model, the bundled graph run on a drawing of
+     * a quarter of the pixels. Always the last level of the latency guard, so every install
+     * has a cheaper variant
+     * @since 1.1
+     */
+    public static final int FALLBACK_INPUT_SIZE = MainActivity.INPUT_SIZE / 2;
+
+    /**
+     * Prefix of the files with the kNN index of each model (in getFilesDir())
+     * @see KnnIndex
+     * @since 1.1
+     */
+    private static final String KNN_FILE_PREFIX = "knn_";
+
+    /**
+     * Maximal number of confirmed drawings in the kNN index
+     * @since 1.1
+     */
+    private static final int KNN_CAPACITY = 512;
+
+    /**
+     * Number of neighbours that vote for the class of a drawing
+     * @since 1.1
+     */
+    private static final int KNN_NEIGHBOURS = 5;
+
+    /**
+     * Neighbours less similar than this do not vote
+     * @since 1.1
+     */
+    private static final float KNN_MIN_SIMILARITY = 0.75f;
+
+    /**
+     * Weight of the votes of the neighbours against the scores of the model
+     * @since 1.1
+     */
+    private static final float KNN_WEIGHT = 0.3f;
+
+    /**
+     * Number of classes of the model besides the classes of the game that a drawing is
+     * recognized among, see {@link DrawingAnalyser#getCandidates(int)}
+     * @since 1.1
+     */
+    private static final int CANDIDATE_DISTRACTORS = 40;
+
+    /**
+     * Seed of the choice of the distractors, the same classes are picked on every start
+     * @since 1.1
+     */
+    private static final long CANDIDATE_SEED = 30000;
+
+    /**
+     * This constant defines the asset with the embeddings of the reference images, packed at
+     * build time by the packReferenceEmbeddings task, see {@link ReferenceScorer}
+     * @since 1.1
+     */
+    public static final String REFERENCE_EMBEDDINGS_FILE = "reference_embeddings.bin";
+
+    /**
+     * This constant defines the path to the optional .pb file of the stroke model
+     * The stroke model recognizes the drawing while it is drawn, see {@link StrokeClassifier}
+     * Uses the labels of {@link MainActivity#LABEL_FILE}
+     * @since 1.1
+     */
+    public static final String STROKE_MODEL_FILE = "file:///android_asset/stroke_graph.pb";
+
+    /**
+     * Length of the point sequence of the stroke model
+     * @since 1.1
+     */
+    public static final int STROKE_MAX_POINTS = 128;
+
+    /**
+     * Names of the inputs and of the output of the stroke model
+     * @since 1.1
+     */
+    public static final String STROKE_INPUT_NAME = "ink";
+    public static final String STROKE_LENGTH_NAME = "length";
+    public static final String STROKE_OUTPUT_NAME = "final_result";
+
+    /**
+     * Smallest confidence of the best result of the stroke model that is scored without the
+     * image model. Below it the drawing is classified from its pixels as usual
+     * @since 1.1
+     */
+    private static final float STROKE_MIN_CONFIDENCE = 0.9f;
+
+    /**
+     * Size in pixels of a cell of the mask that splits a drawing into objects
+     * @see InkSegmenter
+     * @since 1.1
+     */
+    private static final int SEGMENT_CELL_SIZE = 16;
+
+    /**
+     * Ink this many cells apart belongs to the same object
+     * @since 1.1
+     */
+    private static final int SEGMENT_GAP_CELLS = 3;
+
+    /**
+     * Maximal number of objects classified in one batch, smaller objects are ignored
+     * @since 1.1
+     */
+    private static final int MAX_OBJECTS = 4;
+
+    private final Context mContext;
+    private final Executor mExecutor;
+    private final BitmapPool mPool;
+
+    /**
+     * Drawables of the reference images of the game, indexed by the image of
+     * {@link DrawingAnalyser#analyse(CanvasSnapshot, int, int, SampleCapture)}
+     */
+    private final int[] mImages;
+
+    /**
+     * Wraps the model in {@link SwappableClassifier}, so it can be replaced at runtime
+     * Null until {@link DrawingAnalyser#load()} ran on the executor thread
+     * @see DrawingAnalyser#swapModel(String)
+     */
+    private Classifier mClassifier;
+
+    /**
+     * Cheaper variants of the model, index i is used on level i + 1 of {@link DrawingAnalyser#mLatencyGuard}
+     */
+    private final List<Classifier> mCheaperClassifiers = new CopyOnWriteArrayList<>();
+
+    /**
+     * LatencyGuard object, picks the model variant used by
+     * {@link DrawingAnalyser#analyse(CanvasSnapshot, int, int, SampleCapture)}
+     */
+    private final LatencyGuard mLatencyGuard = new LatencyGuard(LATENCY_BUDGET_MS);
+
+    /**
+     * Index of the user's confirmed drawings of the current model, null until it is loaded
+     * Replaced on the executor thread when the model changes
+     */
+    private volatile KnnIndex mKnnIndex;
+
+    /**
+     * Name of the model of {@link DrawingAnalyser#mKnnIndex}
+     */
+    private volatile String mKnnModel;
+
+    /**
+     * Whether a drawing was added to the kNN index since it was saved, used on the main thread
+     */
+    private boolean mKnnDirty = false;
+
+    /**
+     * Buffers of {@link DrawingAnalyser#personalize(List)}, used on the executor thread
+     */
+    private float[] mEmbedding = new float[0];
+    private boolean mEmbeddingValid = false;
+    private final int[] mKnnLabels = new int[KNN_NEIGHBOURS];
+    private final float[] mKnnSimilarities = new float[KNN_NEIGHBOURS];
+    private final float[] mKnnScores = new float[MainActivity.NUMBER_OF_CLASSES];
+
+    /**
+     * Classes a single drawing is recognized among, used on the executor thread
+     */
+    private CandidateSet mCandidates;
+
+    /**
+     * Embeddings of the reference images of the bundled model and the index of the embedding of
+     * every image of {@link DrawingAnalyser#mImages}, -1 if there is none
+     * Null if the model has no embedding, no embeddings were packed or another model is used
+     * Replaced on the executor thread when the model changes
+     */
+    private ReferenceScorer mReferenceScorer;
+    private int[] mReferenceIndices;
+
+    /**
+     * Similarity of the last analysed drawing to its reference image, NaN if unknown
+     * Used on the executor thread
+     */
+    private float mReferenceSimilarity = Float.NaN;
+
+    /**
+     * Recognition of a version of the drawing by the stroke model
+     */
+    private static final class StrokeRecognition {
+        final int version;
+        final List<Stroke> strokes;
+        final List<Classifier.Recognition> results;
+
+        StrokeRecognition(int version, List<Stroke> strokes,
+                          List<Classifier.Recognition> results) {
+            this.version = version;
+            this.strokes = strokes;
+            this.results = results;
+        }
+    }
+
+    /**
+     * StrokeClassifier object, null if the app has no stroke model
+     */
+    private volatile StrokeClassifier mStrokeClassifier;
+
+    /**
+     * Whether the user enabled scoring with the stroke model. Its accuracy is not measured
+     * against the image model yet, so it is off unless chosen in the menu
+     */
+    private volatile boolean mStrokeModelEnabled = false;
+
+    /**
+     * Latest drawing to recognize with {@link DrawingAnalyser#mStrokeClassifier}, and whether a
+     * task that recognizes it is already queued. Older drawings are skipped
+     */
+    private volatile StrokeRecognition mStrokeRequest;
+    private final AtomicBoolean mStrokeTaskQueued = new AtomicBoolean(false);
+
+    /**
+     * Results of the stroke model for the latest recognized drawing
+     */
+    private volatile StrokeRecognition mStrokeResult;
+
+    /**
+     * InkSegmenter object, splits the drawing into objects before classification
+     * Used on the executor thread
+     */
+    private final InkSegmenter mSegmenter;
+
+    /**
+     * Number of objects found by the last
+     * {@link DrawingAnalyser#analyse(CanvasSnapshot, int, int, SampleCapture)}
+     */
+    private int mObjectCount = 0;
+
+    /**
+     * Constructor of the class, nothing is loaded until {@link DrawingAnalyser#load()}
+     * @param context Context object, its application context is kept
+     * @param executor single thread executor that owns the models and the buffers
+     * @param pool pool the rendered drawings are taken from and released to
+     * @param images drawables of the reference images, filled in before the models are loaded
+     * @param canvasWidth width of the drawing in pixels
+     * @param canvasHeight height of the drawing in pixels
+     * @since 1.1
+     */
+    public DrawingAnalyser(Context context, Executor executor, BitmapPool pool, int[] images,
+                           int canvasWidth, int canvasHeight) {
+        mContext = context.getApplicationContext();
+        mExecutor = executor;
+        mPool = pool;
+        mImages = images;
+        mSegmenter = new InkSegmenter(canvasWidth, canvasHeight, SEGMENT_CELL_SIZE,
+                SEGMENT_GAP_CELLS);
+    }
+
+    /**
+     * This method initializes TensorFlow with the bundled model and loads everything that
+     * depends on it on the executor thread. A model bundle selected earlier replaces the
+     * bundled model once it is validated
+     * @since 1.1
+     */
+    public void load() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mClassifier = new SwappableClassifier(TensorFlowImageClassifier.create(
+                            mContext.getAssets(),
+                            MainActivity.MODEL_FILE,
+                            MainActivity.LABEL_FILE,
+                            MainActivity.INPUT_SIZE,
+                            MainActivity.IMAGE_MEAN,
+                            MainActivity.IMAGE_STD,
+                            MainActivity.INPUT_NAME,
+                            MainActivity.OUTPUT_NAME));
+                } catch (final Exception e) {
+                    throw new RuntimeException("Error initializing TensorFlow!", e);
+                }
+                loadLatencyTiers();
+                loadKnnIndex("default");
+                loadReferenceScorer("default");
+                loadStrokeClassifier();
+            }
+        });
+        SharedPreferences appPreferences = mContext.getSharedPreferences("PREFS", 0);
+        String bundleName = appPreferences.getString("modelBundle", null);
+        if (bundleName != null) {
+            swapModel(bundleName);
+        }
+    }
+
+    /**
+     * This method closes the models on the executor thread, after the tasks still queued there
+     * Closing the swappable model also closes a model a swap left to drain
+     * @since 1.1
+     */
+    public void close() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mClassifier != null) {
+                    mClassifier.close();
+                }
+                if (mStrokeClassifier != null) {
+                    mStrokeClassifier.close();
+                    mStrokeClassifier = null;
+                }
+                for (Classifier cheaper : mCheaperClassifiers) {
+                    cheaper.close();
+                }
+                mCheaperClassifiers.clear();
+            }
+        });
+    }
+
+    /**
+     * @return statistics of the latency guard, see {@link LatencyGuard#getStatString()}
+     * @since 1.1
+     */
+    public String getLatencyStatString() {
+        return mLatencyGuard.getStatString();
+    }
+
+    /**
+     * This method loads the cheaper model variants used when classification is over budget:
+     * the tier bundles, then the bundled model at {@link DrawingAnalyser#FALLBACK_INPUT_SIZE}
+     * Called on the executor thread
+     * @see DrawingAnalyser#LATENCY_TIER_BUNDLES
+     */
+    private void loadLatencyTiers() {
+        File bundlesDir = new File(mContext.getFilesDir(), ModelBundle.BUNDLES_DIR);
+        for (String bundleName : LATENCY_TIER_BUNDLES) {
+            File directory = new File(bundlesDir, bundleName);
+            if (!directory.isDirectory()) {
+                continue;
+            }
+            try {
+                mCheaperClassifiers.add(ModelBundle.open(directory).createValidatedClassifier());
+            } catch (IOException e) {
+                Log.w(TAG, "Latency tier " + bundleName + " rejected", e);
+            }
+        }
+        try {
+            Classifier fallback = TensorFlowImageClassifier.create(
+                    mContext.getAssets(),
+                    MainActivity.MODEL_FILE,
+                    MainActivity.LABEL_FILE,
+                    FALLBACK_INPUT_SIZE,
+                    MainActivity.IMAGE_MEAN,
+                    MainActivity.IMAGE_STD,
+                    MainActivity.INPUT_NAME,
+                    MainActivity.OUTPUT_NAME);
+            // a graph with a fixed input shape fails the smoke inference
+            ModelBundle.validate(fallback, FALLBACK_INPUT_SIZE, "fallback");
+            mCheaperClassifiers.add(fallback);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Fallback of input size " + FALLBACK_INPUT_SIZE + " rejected", e);
+        }
+        mLatencyGuard.setMaxLevel(mCheaperClassifiers.size());
+    }
+
+    /**
+     * This method loads the stroke model if the app has one, called on the executor thread
+     * @see DrawingAnalyser#STROKE_MODEL_FILE
+     */
+    private void loadStrokeClassifier() {
+        String fileName = STROKE_MODEL_FILE.split("file:///android_asset/")[1];
+        try {
+            String[] assets = mContext.getAssets().list("");
+            if (assets == null || !Arrays.asList(assets).contains(fileName)) {
+                return;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Assets not listed", e);
+            return;
+        }
+        try {
+            mStrokeClassifier = TensorFlowStrokeClassifier.create(mContext.getAssets(),
+                    STROKE_MODEL_FILE, MainActivity.LABEL_FILE, STROKE_MAX_POINTS,
+                    STROKE_INPUT_NAME, STROKE_LENGTH_NAME, STROKE_OUTPUT_NAME);
+        } catch (RuntimeException e) {
+            // the image model still works
+            Log.w(TAG, "Stroke model not loaded", e);
+        }
+    }
+
+    /**
+     * @param enabled whether a confident result of the stroke model replaces the image model
+     * @since 1.1
+     */
+    public void setStrokeModelEnabled(boolean enabled) {
+        mStrokeModelEnabled = enabled;
+    }
+
+    /**
+     * @return whether a confident result of the stroke model replaces the image model
+     * @since 1.1
+     */
+    public boolean isStrokeModelEnabled() {
+        return mStrokeModelEnabled;
+    }
+
+    /**
+     * This method recognizes a drawing with the stroke model on the executor thread
+     * Called after every finished stroke, so the result is usually ready when the user
+     * proceeds. Requests are coalesced, only the latest drawing is recognized
+     * @param version version of the drawing, see {@link DrawView#getVersion()}
+     * @param strokes strokes of the drawing, see {@link DrawView#getStrokes()}
+     * @since 1.1
+     */
+    public void recognizeStrokes(int version, List<Stroke> strokes) {
+        if (mStrokeClassifier == null || !mStrokeModelEnabled) {
+            return;
+        }
+        mStrokeRequest = new StrokeRecognition(version, strokes, null);
+        if (!mStrokeTaskQueued.compareAndSet(false, true)) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mStrokeTaskQueued.set(false);
+                StrokeClassifier classifier = mStrokeClassifier;
+                if (classifier == null) {
+                    // closed meanwhile
+                    return;
+                }
+                StrokeRecognition request = mStrokeRequest;
+                long start = System.nanoTime();
+                List<Classifier.Recognition> results = classifier.recognizeStrokes(request.strokes);
+                mStrokeResult = new StrokeRecognition(request.version, null, results);
+                Log.d(TAG, "Strokes recognized in " + (System.nanoTime() - start) / 1000
+                        + " us");
+            }
+        });
+    }
+
+    /**
+     * @param version version of the drawing, see {@link DrawView#getVersion()}
+     * @return results of the stroke model for this version, null if there are none, the stroke
+     * model is disabled or it is not confident enough, see
+     * {@link DrawingAnalyser#STROKE_MIN_CONFIDENCE}
+     */
+    private List<Classifier.Recognition> getStrokeResults(int version) {
+        StrokeRecognition recognition = mStrokeResult;
+        if (!mStrokeModelEnabled || recognition == null || recognition.version != version
+                || recognition.results.isEmpty()
+                || recognition.results.get(0).getConfidence() < STROKE_MIN_CONFIDENCE) {
+            return null;
+        }
+        // the caller clears the list
+        return new ArrayList<>(recognition.results);
+    }
+
+    /**
+     * This method loads a model bundle from app-private storage on the executor thread,
+     * validates it with a smoke inference and swaps it in without restarting the activity.
+     * Classifications that are already running finish on the previous model, the drawings
+     * added to the kNN index of the previous model are saved first
+     * @param bundleName name of the bundle directory (see {@link ModelBundle#list(File)})
+     * @since 1.1
+     */
+    public void swapModel(final String bundleName) {
+        saveKnnIndex();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File directory = new File(new File(mContext.getFilesDir(),
+                        ModelBundle.BUNDLES_DIR), bundleName);
+                try {
+                    ModelBundle bundle = ModelBundle.open(directory);
+                    ((SwappableClassifier) mClassifier).swap(bundle.createValidatedClassifier());
+                    loadKnnIndex(bundle.getName());
+                    loadReferenceScorer(bundle.getName());
+                    SharedPreferences.Editor editor =
+                            mContext.getSharedPreferences("PREFS", 0).edit();
+                    editor.putString("modelBundle", bundleName);
+                    editor.apply();
+                } catch (IOException e) {
+                    // keep the current model
+                    Log.w(TAG, "Model bundle " + bundleName + " rejected", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method loads the kNN index of a model, or creates an empty one
+     * Called on the executor thread after the model was loaded
+     * @param modelName name of the model, "default" for the bundled one
+     */
+    private void loadKnnIndex(String modelName) {
+        int dimension = mClassifier.getEmbeddingSize();
+        mKnnIndex = null;
+        if (dimension == 0) {
+            return;
+        }
+        File file = new File(mContext.getFilesDir(), KNN_FILE_PREFIX + modelName + ".bin");
+        KnnIndex index = null;
+        if (file.exists()) {
+            try {
+                InputStream in = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    index = KnnIndex.readFrom(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "kNN index of " + modelName + " not loaded", e);
+            }
+        }
+        if (index == null || index.getDimension() != dimension) {
+            index = new KnnIndex(dimension, KNN_CAPACITY);
+        }
+        Log.i(TAG, "kNN index of " + modelName + ": " + index.size() + " drawings, "
+                + index.memoryBytes() / 1024 + " KB");
+        mKnnModel = modelName;
+        mKnnIndex = index;
+    }
+
+    /**
+     * This method loads the embeddings of the reference images
+     * They are computed with the bundled model, other models have no reference embeddings
+     * Called on the executor thread after the model was loaded
+     * @param modelName name of the model, "default" for the bundled one
+     */
+    private void loadReferenceScorer(String modelName) {
+        mReferenceScorer = null;
+        mReferenceIndices = null;
+        int dimension = mClassifier.getEmbeddingSize();
+        if (!"default".equals(modelName) || dimension == 0) {
+            return;
+        }
+        ReferenceScorer scorer;
+        try {
+            InputStream in = new BufferedInputStream(
+                    mContext.getAssets().open(REFERENCE_EMBEDDINGS_FILE));
+            try {
+                scorer = ReferenceScorer.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // the embeddings are optional, the score is the confidence of the model then
+            Log.i(TAG, "No reference embeddings: " + e.getMessage());
+            return;
+        }
+        if (scorer.getDimension() != dimension) {
+            Log.w(TAG, "Reference embeddings of " + scorer.getDimension()
+                    + " values do not match the model, " + dimension);
+            return;
+        }
+        int[] indices = new int[mImages.length];
+        int found = 0;
+        for (int i = 0; i < mImages.length; i++) {
+            // an image without a drawable (id 0) has no reference
+            indices[i] = mImages[i] == 0 ? -1
+                    : scorer.indexOf(mContext.getResources().getResourceEntryName(mImages[i]));
+            if (indices[i] >= 0) {
+                found++;
+            }
+        }
+        Log.i(TAG, "Reference embeddings of " + found + " of " + mImages.length + " images");
+        mReferenceScorer = scorer;
+        mReferenceIndices = indices;
+    }
+
+    /**
+     * This method writes the kNN index if a drawing was added
+     * The index is used on the executor thread only, it is written there as well
+     * Called on the main thread
+     * @since 1.1
+     */
+    public void saveKnnIndex() {
+        if (!mKnnDirty) {
+            return;
+        }
+        mKnnDirty = false;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                KnnIndex index = mKnnIndex;
+                if (index == null) {
+                    return;
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try {
+                    index.writeTo(bytes);
+                } catch (IOException e) {
+                    // ByteArrayOutputStream does not throw
+                    throw new AssertionError(e);
+                }
+                String modelName = mKnnModel;
+                File file = new File(mContext.getFilesDir(), KNN_FILE_PREFIX + modelName + ".bin");
+                File tmp = new File(mContext.getFilesDir(), file.getName() + ".tmp");
+                try {
+                    OutputStream out = new FileOutputStream(tmp);
+                    try {
+                        bytes.writeTo(out);
+                    } finally {
+                        out.close();
+                    }
+                    if (!tmp.renameTo(file)) {
+                        throw new IOException("Can not rename " + tmp);
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "kNN index not saved", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method adds the embedding of the last classification to the kNN index
+     * Called on the main thread, runs on the executor thread, which owns
+     * {@link DrawingAnalyser#mEmbedding}; the caller makes sure no classification runs in
+     * between (the proceed button is disabled after every painted attempt)
+     * @param id class the user meant to draw, the target of the attempt whatever the model
+     *           recognized
+     * @since 1.1
+     */
+    public void confirm(final int id) {
+        mKnnDirty = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                KnnIndex index = mKnnIndex;
+                if (mEmbeddingValid && index != null
+                        && index.getDimension() == mEmbedding.length) {
+                    index.add(mEmbedding, id);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method reranks the results of the model with the votes of the nearest confirmed
+     * drawings of the user: score = (1 - KNN_WEIGHT) * confidence + KNN_WEIGHT * votes
+     * Every class of the results is kept, distractors of the candidate set included. A class
+     * of the game may be added by the neighbours even if the model did not return it
+     * @param results results of the model for the embedding in {@link DrawingAnalyser#mEmbedding}
+     * @return results ordered by the blended score
+     */
+    private List<Classifier.Recognition> personalize(List<Classifier.Recognition> results) {
+        float best = mKnnIndex.vote(mEmbedding, KNN_NEIGHBOURS, KNN_MIN_SIMILARITY, mKnnLabels,
+                mKnnSimilarities, mKnnScores);
+        if (best == 0) {
+            return results;
+        }
+        // the results may hold any class of the candidate set, the neighbours only vote for
+        // classes of the game; both are blended in the slots of the results
+        int size = results.size() + MainActivity.NUMBER_OF_CLASSES;
+        int[] ids = new int[size];
+        float[] blended = new float[size];
+        String[] titles = new String[size];
+        boolean[] listed = new boolean[MainActivity.NUMBER_OF_CLASSES];
+        int slots = 0;
+        for (Classifier.Recognition recognition : results) {
+            int id = Integer.parseInt(recognition.getId());
+            ids[slots] = id;
+            blended[slots] = (1 - KNN_WEIGHT) * recognition.getConfidence();
+            if (id < MainActivity.NUMBER_OF_CLASSES) {
+                blended[slots] += KNN_WEIGHT * mKnnScores[id];
+                listed[id] = true;
+            }
+            titles[slots] = recognition.getTitle();
+            slots++;
+        }
+        for (int c = 0; c < MainActivity.NUMBER_OF_CLASSES; c++) {
+            if (!listed[c] && mKnnScores[c] > 0) {
+                ids[slots] = c;
+                blended[slots] = KNN_WEIGHT * mKnnScores[c];
+                slots++;
+            }
+        }
+        // the unused slots score 0 and are never selected
+        int[] order = new int[Math.max(results.size(), 1)];
+        int count = TopK.select(blended, order.length, 0f, order);
+        List<Classifier.Recognition> personalized = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int slot = order[i];
+            personalized.add(new Classifier.Recognition(String.valueOf(ids[slot]), titles[slot],
+                    blended[slot], null));
+        }
+        return personalized.isEmpty() ? results : personalized;
+    }
+
+    /**
+     * Called on the executor thread, the snapshot does not change while the user draws
+     * Buffers of the classification (embedding, segmenter) are used on this thread only
+     * @param snapshot snapshot of the drawing, see {@link DrawView#snapshot()}
+     * @param target class the user was asked to draw, for captured samples
+     * @param image index of the shown reference image, its similarity to the drawing is
+     *              returned by {@link DrawingAnalyser#getReferenceSimilarity()}
+     * @param capture SampleCapture object the model input is offered to, null if disabled
+     * @return results list of classification results
+     * @since 1.1
+     */
+    public List<Classifier.Recognition> analyse(CanvasSnapshot snapshot, int target, int image,
+                                                SampleCapture capture) {
+        mReferenceSimilarity = Float.NaN;
+        // a single classification of several objects would be meaningless
+        mObjectCount = mSegmenter.segment(snapshot.strokes);
+        if (mObjectCount > 1) {
+            return recognizeObjects(snapshot, Math.min(mObjectCount, MAX_OBJECTS));
+        }
+        // the stroke model may have recognized this drawing while it was drawn, only a
+        // confident result replaces the image model
+        List<Classifier.Recognition> strokeResults = getStrokeResults(snapshot.version);
+        if (strokeResults != null) {
+            mEmbeddingValid = false;
+            if (capture != null && snapshot.painted) {
+                Classifier.Recognition best = strokeResults.get(0);
+                Bitmap bitmap = snapshot.render(MainActivity.INPUT_SIZE, MainActivity.INPUT_SIZE);
+                capture.offer(bitmap, target, Integer.parseInt(best.getId()),
+                        best.getConfidence());
+                mPool.release(bitmap);
+            }
+            return strokeResults;
+        }
+        // the model variant is picked by the latency guard, level 0 is the full model
+        int level = Math.min(mLatencyGuard.getLevel(), mCheaperClassifiers.size());
+        Classifier active = level == 0 ? mClassifier : mCheaperClassifiers.get(level - 1);
+        long start = System.nanoTime();
+        int inputSize = active.getInputSize();
+        Bitmap bitmap = snapshot.render(inputSize, inputSize);
+        List<Classifier.Recognition> results;
+        KnnIndex index = mKnnIndex;
+        if (level == 0 && index != null) {
+            if (mEmbedding.length != index.getDimension()) {
+                mEmbedding = new float[index.getDimension()];
+            }
+            results = active.recognizeCandidates(bitmap,
+                    getCandidates(active.getNumClasses()), mEmbedding);
+            mEmbeddingValid = !Float.isNaN(mEmbedding[0]);
+            // the embedding of the run is compared with the one packed for the shown image
+            ReferenceScorer scorer = mReferenceScorer;
+            if (mEmbeddingValid && scorer != null && mReferenceIndices[image] >= 0
+                    && mEmbedding.length == scorer.getDimension()) {
+                mReferenceSimilarity = scorer.similarity(mReferenceIndices[image], mEmbedding);
+            }
+            if (mEmbeddingValid && index.size() > 0) {
+                results = personalize(results);
+            }
+        } else {
+            results = active.recognizeCandidates(bitmap,
+                    getCandidates(active.getNumClasses()), null);
+            mEmbeddingValid = false;
+        }
+        mLatencyGuard.record(level, System.nanoTime() - start);
+        // the model input is kept as a training sample, blank canvases are useless
+        if (capture != null && !results.isEmpty() && snapshot.painted) {
+            Classifier.Recognition best = results.get(0);
+            capture.offer(bitmap, target, Integer.parseInt(best.getId()), best.getConfidence());
+        }
+        // the classifier and the capture copy the pixels, the bitmap is free again
+        mPool.release(bitmap);
+        return results;
+    }
+
+    /**
+     * This method returns the classes a drawing is recognized among: the classes of the game,
+     * which are the first classes of the model, and {@link DrawingAnalyser#CANDIDATE_DISTRACTORS}
+     * other classes, so a drawing of something else is not forced into a class of the game.
+     * With a small model every class is a candidate. Called on the executor thread
+     * @param classes number of classes of the model, a swapped model may have another number
+     * @return candidates for the model
+     */
+    private CandidateSet getCandidates(int classes) {
+        if (mCandidates != null && mCandidates.getNumClasses() == classes) {
+            return mCandidates;
+        }
+        CandidateSet candidates = new CandidateSet(classes,
+                MainActivity.NUMBER_OF_CLASSES + CANDIDATE_DISTRACTORS);
+        for (int c = 0; c < MainActivity.NUMBER_OF_CLASSES; c++) {
+            candidates.add(c);
+        }
+        int others = classes - MainActivity.NUMBER_OF_CLASSES;
+        if (others <= CANDIDATE_DISTRACTORS) {
+            for (int c = MainActivity.NUMBER_OF_CLASSES; c < classes; c++) {
+                candidates.add(c);
+            }
+        } else {
+            Random random = new Random(CANDIDATE_SEED);
+            while (candidates.size() < MainActivity.NUMBER_OF_CLASSES + CANDIDATE_DISTRACTORS) {
+                candidates.add(MainActivity.NUMBER_OF_CLASSES + random.nextInt(others));
+            }
+        }
+        Log.i(TAG, candidates.size() + " of " + classes + " classes are candidates");
+        mCandidates = candidates;
+        return candidates;
+    }
+
+    /**
+     * @return number of objects found by the last
+     * {@link DrawingAnalyser#analyse(CanvasSnapshot, int, int, SampleCapture)}, called on the
+     * executor thread
+     * @since 1.1
+     */
+    public int getObjectCount() {
+        return mObjectCount;
+    }
+
+    /**
+     * @return whether the last classification left an embedding that
+     * {@link DrawingAnalyser#confirm(int)} can add to the kNN index, called on the executor
+     * thread
+     * @since 1.1
+     */
+    public boolean isEmbeddingValid() {
+        return mEmbeddingValid;
+    }
+
+    /**
+     * @return similarity of the last analysed drawing to its reference image, NaN if unknown,
+     * called on the executor thread
+     * @since 1.1
+     */
+    public float getReferenceSimilarity() {
+        return mReferenceSimilarity;
+    }
+
+    /**
+     * This method classifies the objects found by {@link DrawingAnalyser#mSegmenter} in one batch
+     * Each object is cropped as a square around its bounds, like a drawing that fills the canvas
+     * @param snapshot snapshot of the whole drawing
+     * @param count number of objects to classify, the largest ones
+     * @return the best result of each object with its location in view coordinates
+     */
+    private List<Classifier.Recognition> recognizeObjects(CanvasSnapshot snapshot, int count) {
+        long start = System.nanoTime();
+        int inputSize = mClassifier.getInputSize();
+        int width = snapshot.getCanvasWidth();
+        int height = snapshot.getCanvasHeight();
+        List<Bitmap> crops = new ArrayList<>(count);
+        List<RectF> locations = new ArrayList<>(count);
+        for (int region = 0; region < count; region++) {
+            RectF location = new RectF(mSegmenter.getLeft(region), mSegmenter.getTop(region),
+                    mSegmenter.getRight(region), mSegmenter.getBottom(region));
+            float side = Math.max(location.width(), location.height());
+            int size = Math.max(1, Math.min((int) side, Math.min(width, height)));
+            int x = Math.min(Math.max((int) (location.centerX() - size / 2f), 0), width - size);
+            int y = Math.min(Math.max((int) (location.centerY() - size / 2f), 0), height - size);
+            crops.add(snapshot.crop(x, y, size, size, inputSize, inputSize));
+            locations.add(location);
+        }
+        List<List<Classifier.Recognition>> all = mClassifier.recognizeImages(crops);
+        for (Bitmap crop : crops) {
+            mPool.release(crop);
+        }
+        List<Classifier.Recognition> results = new ArrayList<>(count);
+        for (int region = 0; region < count; region++) {
+            if (!all.get(region).isEmpty()) {
+                Classifier.Recognition best = all.get(region).get(0);
+                best.setLocation(locations.get(region));
+                results.add(best);
+            }
+        }
+        mEmbeddingValid = false;
+        Log.d(TAG, count + " objects recognized in "
+                + (System.nanoTime() - start) / 1000 + " us");
+        return results;
+    }
+}
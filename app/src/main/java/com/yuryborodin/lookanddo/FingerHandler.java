@@ -18,6 +18,12 @@ public class FingerHandler {
     public Path path;
     public int strokeWidth;
 
+    /**
+     * Points of the path
+     * @since 1.1
+     */
+    public final Stroke stroke;
+
     /**
      * Constructor of the class
      * @param color color, int
@@ -28,5 +34,60 @@ public class FingerHandler {
         this.color = color;
         this.strokeWidth = strokeWidth;
         this.path = path;
+        this.stroke = new Stroke(color, strokeWidth);
+    }
+
+    /**
+     * Constructor of the class, rebuilds the path of a stroke
+     * @param stroke Stroke object, points added later are appended to the path as well
+     * @since 1.1
+     */
+    public FingerHandler(Stroke stroke) {
+        this.color = stroke.color;
+        this.strokeWidth = stroke.width;
+        this.path = new Path();
+        this.stroke = stroke;
+        for (int i = 0; i < stroke.size(); i++) {
+            appendToPath(i);
+        }
+        if (stroke.isFinished() && stroke.size() > 0) {
+            path.lineTo(stroke.getX(stroke.size() - 1), stroke.getY(stroke.size() - 1));
+        }
+    }
+
+    /**
+     * This method adds a point to the stroke and the path
+     * The path is smoothed with quadratic curves through the midpoints of the points
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param time milliseconds since the first point
+     * @since 1.1
+     */
+    public void addPoint(float x, float y, int time) {
+        stroke.add(x, y, time);
+        appendToPath(stroke.size() - 1);
+    }
+
+    /**
+     * This method ends the path at the last point, the finger was lifted
+     * @since 1.1
+     */
+    public void finish() {
+        int last = stroke.size() - 1;
+        path.lineTo(stroke.getX(last), stroke.getY(last));
+        stroke.finish();
+    }
+
+    private void appendToPath(int index) {
+        float x = stroke.getX(index);
+        float y = stroke.getY(index);
+        if (index == 0) {
+            path.reset();
+            path.moveTo(x, y);
+        } else {
+            float previousX = stroke.getX(index - 1);
+            float previousY = stroke.getY(index - 1);
+            path.quadTo(previousX, previousY, (x + previousX) / 2, (y + previousY) / 2);
+        }
     }
 }
@@ -0,0 +1,237 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Frame-time and input-latency samples of {@link DrawView}.
+ * Every frame records the duration of onDraw with the number of strokes of the drawing and
+ * the number of points drawn, every frame that shows new touch input records the time from
+ * the touch to that frame. The samples are kept in fixed-size primitive ring buffers, so
+ * recording allocates nothing and the latest samples win. Not thread-safe, used on the main
+ * thread
+ * @since 1.1
+ */
+public class FrameStats {
+
+    /**
+     * Duration of one frame at 60 Hz
+     * @since 1.1
+     */
+    public static final long DEFAULT_FRAME_BUDGET_NANOS = 16666667L;
+
+    /**
+     * Touch-to-frame latencies longer than this number of frames count as janky: the input
+     * missed the frame it arrived for
+     * @since 1.1
+     */
+    private static final int JANK_FRAMES = 2;
+
+    private final long mFrameBudgetNanos;
+
+    /**
+     * Ring buffers of the frames, indexed by the number of recorded frames modulo the capacity
+     */
+    private final long[] mDrawNanos;
+    private final int[] mStrokes;
+    private final int[] mPoints;
+    private long mFrames = 0;
+
+    /**
+     * Ring buffer of the touch-to-frame latencies
+     */
+    private final long[] mLatencyNanos;
+    private long mLatencies = 0;
+
+    /**
+     * Scratch array for percentiles
+     */
+    private final long[] mSorted;
+
+    /**
+     * Constructor of the class
+     * @param capacity number of the latest frames and latencies kept
+     * @param frameBudgetNanos duration of one frame of the display
+     * @since 1.1
+     */
+    public FrameStats(int capacity, long frameBudgetNanos) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mFrameBudgetNanos = frameBudgetNanos;
+        mDrawNanos = new long[capacity];
+        mStrokes = new int[capacity];
+        mPoints = new int[capacity];
+        mLatencyNanos = new long[capacity];
+        mSorted = new long[capacity];
+    }
+
+    /**
+     * This method records one onDraw
+     * @param drawNanos duration of onDraw
+     * @param strokes number of strokes of the drawing
+     * @param points number of points drawn in this frame
+     * @since 1.1
+     */
+    public void addFrame(long drawNanos, int strokes, int points) {
+        int index = (int) (mFrames % mDrawNanos.length);
+        mDrawNanos[index] = drawNanos;
+        mStrokes[index] = strokes;
+        mPoints[index] = points;
+        mFrames++;
+    }
+
+    /**
+     * This method records the latency of touch input
+     * @param nanos time from the touch to the frame that shows it
+     * @since 1.1
+     */
+    public void addLatency(long nanos) {
+        mLatencyNanos[(int) (mLatencies % mLatencyNanos.length)] = nanos;
+        mLatencies++;
+    }
+
+    /**
+     * @return number of frames recorded since creation, may exceed the capacity
+     * @since 1.1
+     */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * @return number of latencies recorded since creation, may exceed the capacity
+     * @since 1.1
+     */
+    public long getLatencyCount() {
+        return mLatencies;
+    }
+
+    /**
+     * @param percentile within (0, 1]
+     * @return percentile of the kept onDraw durations in nanoseconds, 0 if there are none
+     * @since 1.1
+     */
+    public long getDrawPercentile(float percentile) {
+        return percentile(mDrawNanos, size(mFrames), percentile);
+    }
+
+    /**
+     * @param percentile within (0, 1]
+     * @return percentile of the kept touch-to-frame latencies in nanoseconds, 0 if there are
+     *         none
+     * @since 1.1
+     */
+    public long getLatencyPercentile(float percentile) {
+        return percentile(mLatencyNanos, size(mLatencies), percentile);
+    }
+
+    /**
+     * @return share of the kept latencies longer than JANK_FRAMES frames, within [0, 1]
+     * @since 1.1
+     */
+    public float getJankShare() {
+        return share(mLatencyNanos, size(mLatencies), JANK_FRAMES * mFrameBudgetNanos);
+    }
+
+    /**
+     * @return share of the kept onDraw durations longer than a whole frame, within [0, 1]
+     * @since 1.1
+     */
+    public float getSlowDrawShare() {
+        return share(mDrawNanos, size(mFrames), mFrameBudgetNanos);
+    }
+
+    /**
+     * @return Pearson correlation of the number of strokes and the onDraw duration of the kept
+     *         frames, within [-1, 1]; 0 if either does not vary
+     * @since 1.1
+     */
+    public double getStrokeCorrelation() {
+        int size = size(mFrames);
+        double sumX = 0, sumY = 0, sumXX = 0, sumYY = 0, sumXY = 0;
+        for (int i = 0; i < size; i++) {
+            double x = mStrokes[i];
+            double y = mDrawNanos[i];
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumYY += y * y;
+            sumXY += x * y;
+        }
+        double covariance = size * sumXY - sumX * sumY;
+        double variance = (size * sumXX - sumX * sumX) * (size * sumYY - sumY * sumY);
+        return variance > 0 ? covariance / Math.sqrt(variance) : 0;
+    }
+
+    /**
+     * This method drops every sample
+     * @since 1.1
+     */
+    public void reset() {
+        mFrames = 0;
+        mLatencies = 0;
+    }
+
+    /**
+     * @return String with the percentiles of onDraw and of the touch-to-frame latency, the
+     *         shares of slow draws and janky frames and the largest drawing
+     * @since 1.1
+     */
+    public String getStatString() {
+        int frames = size(mFrames);
+        int maxStrokes = 0;
+        long points = 0;
+        for (int i = 0; i < frames; i++) {
+            maxStrokes = Math.max(maxStrokes, mStrokes[i]);
+            points += mPoints[i];
+        }
+        return String.format(Locale.US,
+                "frames=%d draw p50=%.2fms p90=%.2fms p99=%.2fms slow=%.1f%%"
+                        + " | inputs=%d latency p50=%.1fms p90=%.1fms p99=%.1fms jank=%.1f%%"
+                        + " | strokes<=%d points/frame=%.1f strokes~draw r=%.2f",
+                mFrames, getDrawPercentile(0.5f) / 1e6, getDrawPercentile(0.9f) / 1e6,
+                getDrawPercentile(0.99f) / 1e6, getSlowDrawShare() * 100,
+                mLatencies, getLatencyPercentile(0.5f) / 1e6, getLatencyPercentile(0.9f) / 1e6,
+                getLatencyPercentile(0.99f) / 1e6, getJankShare() * 100,
+                maxStrokes, frames == 0 ? 0f : (float) points / frames, getStrokeCorrelation());
+    }
+
+    private int size(long count) {
+        return (int) Math.min(count, mSorted.length);
+    }
+
+    private long percentile(long[] samples, int size, float percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        System.arraycopy(samples, 0, mSorted, 0, size);
+        Arrays.sort(mSorted, 0, size);
+        int index = (int) Math.ceil(percentile * size) - 1;
+        return mSorted[Math.max(index, 0)];
+    }
+
+    private static float share(long[] samples, int size, long limit) {
+        if (size == 0) {
+            return 0;
+        }
+        int over = 0;
+        for (int i = 0; i < size; i++) {
+            if (samples[i] > limit) {
+                over++;
+            }
+        }
+        return (float) over / size;
+    }
+}
@@ -0,0 +1,303 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.Arrays;
+
+/**
+ * Game loop of LookAndDo without any Android dependency.
+ * The user draws the class of the shown image, a correct answer is scored with the
+ * confidence of the model and unlocks the next image. Every round shows one image of each
+ * class, the game ends after the last round.
+ * <pre>
+ * DRAWING --answer(correct)--&gt; ANSWERED --next()--&gt; DRAWING (next image, round or game)
+ * ANSWERED --answer(correct)--&gt; ANSWERED (the score of the image is replaced)
+ * any phase --newGame()--&gt; DRAWING (first image of the first round)
+ * </pre>
+ * The totals of the round and the game are kept up to date with the difference of the
+ * replaced score, so an answer costs the same for any number of classes and rounds.
+ * Not thread-safe, used on the main thread
+ * @since 1.1
+ */
+public class GameEngine {
+
+    /**
+     * Phase of the current image
+     * @since 1.1
+     */
+    public enum Phase {
+        /** The image is not answered yet, the next one is locked */
+        DRAWING,
+        /** The image is answered correctly, the next one may be requested */
+        ANSWERED
+    }
+
+    /**
+     * Result of {@link GameEngine#next()} and {@link GameEngine#newGame()}
+     * @since 1.1
+     */
+    public enum Transition {
+        /** Next image of the same round */
+        NEXT_IMAGE,
+        /** The round is over, {@link GameEngine#getCompletedScore()} is its score */
+        ROUND_OVER,
+        /** The game is over, {@link GameEngine#getCompletedScore()} is its score */
+        GAME_OVER
+    }
+
+    private final int mClasses;
+    private final int mRounds;
+
+    /**
+     * Score of each class in the current round
+     */
+    private final double[] mScores;
+
+    /**
+     * Score of each round, indexed by {@link GameEngine#mIteration}
+     */
+    private final double[] mFinalScores;
+
+    private Phase mPhase = Phase.DRAWING;
+    private int mTag = 0;
+    private int mRound = 0;
+    private int mIteration = 0;
+
+    /**
+     * Running totals, not rounded
+     */
+    private double mRoundScore = 0;
+    private double mGameScore = 0;
+
+    private double mLastScore = 0;
+    private double mCompletedScore = 0;
+
+    /**
+     * Constructor of the class
+     * @param classes number of classes, one image of each class per round
+     * @param rounds number of rounds
+     * @since 1.1
+     */
+    public GameEngine(int classes, int rounds) {
+        if (classes < 1 || rounds < 1) {
+            throw new IllegalArgumentException("classes and rounds must be positive");
+        }
+        mClasses = classes;
+        mRounds = rounds;
+        mScores = new double[classes];
+        mFinalScores = new double[classes * rounds];
+    }
+
+    /**
+     * This method scores an answer for the current image
+     * A correct answer replaces the previous score of the image, a wrong one changes nothing
+     * @param predictedTag class recognized in the drawing
+     * @param confidence confidence of the recognition, within [0, 1]
+     * @return true if the drawing shows the class of the current image
+     * @since 1.1
+     */
+    public boolean answer(int predictedTag, float confidence) {
+        if (predictedTag != mTag) {
+            return false;
+        }
+        double score = Math.floor(confidence * 100) / 100;
+        double delta = score - mScores[mTag];
+        mScores[mTag] = score;
+        mFinalScores[mIteration] += delta;
+        mRoundScore += delta;
+        mGameScore += delta;
+        mLastScore = score;
+        mPhase = Phase.ANSWERED;
+        return true;
+    }
+
+    /**
+     * This method moves on to the next image, starting a new round or game after the last one
+     * @return what was completed
+     * @throws IllegalStateException if the current image is not answered
+     * @since 1.1
+     */
+    public Transition next() {
+        if (mPhase != Phase.ANSWERED) {
+            throw new IllegalStateException("The current image is not answered");
+        }
+        mPhase = Phase.DRAWING;
+        if (mTag < mClasses - 1) {
+            mTag++;
+            return Transition.NEXT_IMAGE;
+        }
+        if (mRound < mRounds - 1) {
+            mCompletedScore = round(mRoundScore);
+            mRound++;
+            mIteration++;
+            mTag = 0;
+            mRoundScore = 0;
+            Arrays.fill(mScores, 0.0);
+            return Transition.ROUND_OVER;
+        }
+        return newGame();
+    }
+
+    /**
+     * This method ends the current game and starts a new one
+     * @return {@link Transition#GAME_OVER}
+     * @since 1.1
+     */
+    public Transition newGame() {
+        mCompletedScore = round(mGameScore);
+        mPhase = Phase.DRAWING;
+        mTag = 0;
+        mRound = 0;
+        mIteration = 0;
+        mRoundScore = 0;
+        mGameScore = 0;
+        Arrays.fill(mScores, 0.0);
+        Arrays.fill(mFinalScores, 0.0);
+        return Transition.GAME_OVER;
+    }
+
+    public Phase getPhase() {
+        return mPhase;
+    }
+
+    /**
+     * @return class the user has to draw, within [0, classes - 1]
+     * @since 1.1
+     */
+    public int getCurrentTag() {
+        return mTag;
+    }
+
+    /**
+     * @return current round, within [0, rounds - 1]
+     * @since 1.1
+     */
+    public int getRound() {
+        return mRound;
+    }
+
+    /**
+     * @return index of the current image, images are grouped by class
+     * @since 1.1
+     */
+    public int getCurrentImage() {
+        return mTag * mRounds + mRound;
+    }
+
+    /**
+     * @return index of the image {@link GameEngine#next()} moves on to, the first image of a
+     *         new game after the last one
+     * @since 1.1
+     */
+    public int getNextImage() {
+        if (mTag < mClasses - 1) {
+            return (mTag + 1) * mRounds + mRound;
+        }
+        return mRound < mRounds - 1 ? mRound + 1 : 0;
+    }
+
+    /**
+     * @return score of the current round rounded to two decimals
+     * @since 1.1
+     */
+    public double getRoundScore() {
+        return round(mRoundScore);
+    }
+
+    /**
+     * @return score of the game rounded to two decimals
+     * @since 1.1
+     */
+    public double getGameScore() {
+        return round(mGameScore);
+    }
+
+    /**
+     * @return score of the last correct answer
+     * @since 1.1
+     */
+    public double getLastScore() {
+        return mLastScore;
+    }
+
+    /**
+     * @return score of the round or game completed by the last transition, rounded to two
+     * decimals
+     * @since 1.1
+     */
+    public double getCompletedScore() {
+        return mCompletedScore;
+    }
+
+    /**
+     * This method copies the state of the engine into a GameState object
+     * @param out GameState object with the dimensions of this engine
+     * @since 1.1
+     */
+    public void snapshot(GameState out) {
+        out.currentTag = mTag;
+        out.currentSubStep = mRound;
+        out.currentStep = mTag * mRounds;
+        out.currentImage = getCurrentImage();
+        out.currentIteration = mIteration;
+        out.roundScore = mRoundScore;
+        out.gameScore = mGameScore;
+        out.updateEnabled = mPhase == Phase.ANSWERED;
+        System.arraycopy(mScores, 0, out.scores, 0, mScores.length);
+        System.arraycopy(mFinalScores, 0, out.finalScores, 0, mFinalScores.length);
+    }
+
+    /**
+     * This method restores a state saved by {@link GameEngine#snapshot(GameState)} or migrated
+     * from an older version. The totals are summed from the score arrays once, values out of
+     * range start a new game
+     * @param state GameState object with the dimensions of this engine
+     * @since 1.1
+     */
+    public void restore(GameState state) {
+        if (state.scores.length != mScores.length
+                || state.finalScores.length != mFinalScores.length) {
+            throw new IllegalArgumentException("GameState of other dimensions");
+        }
+        if (state.currentTag < 0 || state.currentTag >= mClasses
+                || state.currentSubStep < 0 || state.currentSubStep >= mRounds
+                || state.currentIteration < 0
+                || state.currentIteration >= mFinalScores.length) {
+            newGame();
+            return;
+        }
+        mTag = state.currentTag;
+        mRound = state.currentSubStep;
+        mIteration = state.currentIteration;
+        mPhase = state.updateEnabled ? Phase.ANSWERED : Phase.DRAWING;
+        System.arraycopy(state.scores, 0, mScores, 0, mScores.length);
+        System.arraycopy(state.finalScores, 0, mFinalScores, 0, mFinalScores.length);
+        mRoundScore = sum(mScores);
+        mGameScore = sum(mFinalScores);
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * This method rounds half up to two decimals, as the scores are shown
+     * (DecimalFormat("#.##") parsed back was used before)
+     */
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,109 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+/**
+ * Persistent state of a game: progress, scores and the state of the buttons
+ * @see GameStateStore
+ * @since 1.1
+ */
+public class GameState {
+
+    /**
+     * Index of the shown image, see {@link GameEngine#getCurrentImage()}
+     * @since 1.1
+     */
+    public int currentImage;
+
+    /**
+     * Class the user has to draw, see {@link GameEngine#getCurrentTag()}
+     * @since 1.1
+     */
+    public int currentTag;
+
+    /**
+     * Index of the first image of the current class, currentTag * rounds
+     * @since 1.1
+     */
+    public int currentStep;
+
+    /**
+     * Current round, see {@link GameEngine#getRound()}
+     * @since 1.1
+     */
+    public int currentSubStep;
+
+    /**
+     * Index of the current round in {@link GameState#finalScores}
+     * @since 1.1
+     */
+    public int currentIteration;
+
+    /**
+     * Score of the current round
+     * @since 1.1
+     */
+    public double roundScore;
+
+    /**
+     * Score of the whole game
+     * @since 1.1
+     */
+    public double gameScore;
+
+    /**
+     * Whether the button leading to the next image is enabled
+     * @since 1.1
+     */
+    public boolean updateEnabled;
+
+    /**
+     * Score of each class in the current round
+     * @since 1.1
+     */
+    public final double[] scores;
+
+    /**
+     * Score of each round
+     * @since 1.1
+     */
+    public final double[] finalScores;
+
+    /**
+     * Constructor of the class
+     * @param classes number of classes
+     * @param rounds number of rounds
+     * @since 1.1
+     */
+    public GameState(int classes, int rounds) {
+        scores = new double[classes];
+        finalScores = new double[classes * rounds];
+    }
+
+    /**
+     * This method copies every value of another state of the same dimensions into this one
+     * @param other GameState object
+     * @since 1.1
+     */
+    public void set(GameState other) {
+        currentImage = other.currentImage;
+        currentTag = other.currentTag;
+        currentStep = other.currentStep;
+        currentSubStep = other.currentSubStep;
+        currentIteration = other.currentIteration;
+        roundScore = other.roundScore;
+        gameScore = other.gameScore;
+        updateEnabled = other.updateEnabled;
+        System.arraycopy(other.scores, 0, scores, 0, scores.length);
+        System.arraycopy(other.finalScores, 0, finalScores, 0, finalScores.length);
+    }
+}
@@ -0,0 +1,274 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Stores {@link GameState} as one fixed-layout binary record.
+ * {@link GameStateStore#save(GameState)} only encodes the record (a few hundred bytes) on the
+ * calling thread; writing happens on a background thread, and saves that arrive while a
+ * write is pending are coalesced into one write of the latest record.
+ * A write goes to a temporary file which is synced and renamed over the record, so a crash
+ * leaves either the previous or the new record, and a torn record is rejected by its CRC
+ * <pre>
+ * int    magic 'LDGS'     int    version
+ * int    classes          int    rounds
+ * int    currentImage     int    currentTag
+ * int    currentStep      int    currentSubStep
+ * int    currentIteration byte   updateEnabled
+ * double roundScore       double gameScore
+ * double scores[classes]  double finalScores[classes * rounds]
+ * long   CRC32 of all preceding bytes
+ * </pre>
+ * @since 1.1
+ */
+public class GameStateStore {
+    private static final String TAG = "GameStateStore";
+    private static final int MAGIC = 0x4C444753; // "LDGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * 4;
+    private static final int FIELDS_BYTES = 5 * 4 + 1 + 2 * 8;
+    private static final int CRC_BYTES = 8;
+
+    private final File mFile;
+    private final File mTempFile;
+    private final int mClasses;
+    private final int mRounds;
+    private final ExecutorService mWriter;
+
+    /**
+     * Latest encoded record that is not written yet, null if nothing is pending
+     * @since 1.1
+     */
+    private final AtomicReference<byte[]> mPending = new AtomicReference<>();
+
+    /**
+     * Number of records written to disk and number of saves since creation
+     * @since 1.1
+     */
+    private volatile int mWrites = 0;
+    private volatile int mSaves = 0;
+
+    /**
+     * Constructor of the class
+     * @param file file of the record
+     * @param classes number of classes
+     * @param rounds number of rounds
+     * @since 1.1
+     */
+    public GameStateStore(File file, int classes, int rounds) {
+        mFile = file;
+        mTempFile = new File(file.getPath() + ".tmp");
+        mClasses = classes;
+        mRounds = rounds;
+        mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "GameStateStore");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return size of one record in bytes
+     * @since 1.1
+     */
+    public int recordSize() {
+        return HEADER_BYTES + FIELDS_BYTES + 8 * (mClasses + mClasses * mRounds) + CRC_BYTES;
+    }
+
+    /**
+     * @return whether a record exists on disk
+     * @since 1.1
+     */
+    public boolean exists() {
+        return mFile.isFile();
+    }
+
+    /**
+     * This method reads the record into a state
+     * @param state GameState object with the dimensions of this store
+     * @return true if a valid record was read, false if there is none or it is corrupt
+     * @since 1.1
+     */
+    public boolean load(GameState state) {
+        byte[] record = new byte[recordSize()];
+        try {
+            InputStream in = new FileInputStream(mFile);
+            try {
+                int offset = 0;
+                while (offset < record.length) {
+                    int read = in.read(record, offset, record.length - offset);
+                    if (read < 0) {
+                        return false;
+                    }
+                    offset += read;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return decode(record, state);
+    }
+
+    /**
+     * This method encodes the state and schedules a write-behind
+     * Cheap enough to be called on the UI thread on every change
+     * @param state GameState object
+     * @since 1.1
+     */
+    public void save(GameState state) {
+        mSaves++;
+        if (mPending.getAndSet(encode(state)) == null) {
+            mWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] record = mPending.getAndSet(null);
+                    if (record != null) {
+                        write(record);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * This method waits until pending writes are on disk
+     * @param timeoutMillis maximal time to wait
+     * @return true if everything was written in time
+     * @since 1.1
+     */
+    public boolean flush(long timeoutMillis) {
+        final Object done = new Object();
+        final boolean[] finished = {false};
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (done) {
+                    finished[0] = true;
+                    done.notifyAll();
+                }
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (done) {
+            while (!finished[0]) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(done, left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return String with the number of saves and of records actually written
+     * @since 1.1
+     */
+    public String getStatString() {
+        return "saves=" + mSaves + " writes=" + mWrites + " record=" + recordSize() + "B";
+    }
+
+    private byte[] encode(GameState state) {
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize());
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(mClasses).putInt(mRounds);
+        buffer.putInt(state.currentImage)
+                .putInt(state.currentTag)
+                .putInt(state.currentStep)
+                .putInt(state.currentSubStep)
+                .putInt(state.currentIteration)
+                .put((byte) (state.updateEnabled ? 1 : 0))
+                .putDouble(state.roundScore)
+                .putDouble(state.gameScore);
+        for (double score : state.scores) {
+            buffer.putDouble(score);
+        }
+        for (double score : state.finalScores) {
+            buffer.putDouble(score);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        return buffer.array();
+    }
+
+    private boolean decode(byte[] record, GameState state) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length - CRC_BYTES);
+        if (buffer.getLong(record.length - CRC_BYTES) != crc.getValue()
+                || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                || buffer.getInt() != mClasses || buffer.getInt() != mRounds) {
+            return false;
+        }
+        state.currentImage = buffer.getInt();
+        state.currentTag = buffer.getInt();
+        state.currentStep = buffer.getInt();
+        state.currentSubStep = buffer.getInt();
+        state.currentIteration = buffer.getInt();
+        state.updateEnabled = buffer.get() != 0;
+        state.roundScore = buffer.getDouble();
+        state.gameScore = buffer.getDouble();
+        for (int i = 0; i < state.scores.length; i++) {
+            state.scores[i] = buffer.getDouble();
+        }
+        for (int i = 0; i < state.finalScores.length; i++) {
+            state.finalScores[i] = buffer.getDouble();
+        }
+        return true;
+    }
+
+    private void write(byte[] record) {
+        try {
+            FileOutputStream out = new FileOutputStream(mTempFile);
+            try {
+                out.write(record);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!mTempFile.renameTo(mFile)) {
+                throw new IOException("Failed to rename " + mTempFile + " to " + mFile);
+            }
+            mWrites++;
+        } catch (IOException e) {
+            // the previous record stays intact; the next save retries
+            Log.w(TAG, "Failed to write game state", e);
+        }
+    }
+}
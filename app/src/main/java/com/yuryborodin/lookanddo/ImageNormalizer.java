@@ -0,0 +1,42 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+/**
+ * Conversion of packed ARGB pixels into the normalized float input of the model.
+ * Plain Java, so the JVM harness and benchmarks run exactly the code the app runs
+ * @since 1.1
+ */
+public final class ImageNormalizer {
+
+    private ImageNormalizer() {}
+
+    /**
+     * This method unpacks RGB channels and normalizes them as (value - mean) / std
+     * @param pixels packed ARGB pixels
+     * @param count number of pixels to convert
+     * @param imageMean assumed mean of the image values
+     * @param imageStd assumed std of the image values
+     * @param out destination, 3 floats (R, G, B) per pixel
+     * @param offset index in out of the first float
+     * @since 1.1
+     */
+    public static void normalize(int[] pixels, int count, int imageMean, float imageStd,
+                                 float[] out, int offset) {
+        for (int i = 0; i < count; ++i) {
+            final int val = pixels[i];
+            out[offset + i * 3 + 0] = (((val >> 16) & 0xFF) - imageMean) / imageStd;
+            out[offset + i * 3 + 1] = (((val >> 8) & 0xFF) - imageMean) / imageStd;
+            out[offset + i * 3 + 2] = ((val & 0xFF) - imageMean) / imageStd;
+        }
+    }
+}
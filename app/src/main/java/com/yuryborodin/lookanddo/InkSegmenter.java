@@ -0,0 +1,328 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a drawing into separate objects.
+ * The strokes are marked on a low resolution mask of cellSize x cellSize pixel cells, cells of
+ * ink closer than gapCells are connected and each connected component is an object. Objects
+ * whose bounds overlap (the eyes inside of a face) are merged afterwards. Objects with less than
+ * {@link InkSegmenter#MIN_INK_SHARE} of the ink cells of the drawing, like a stray tap, are
+ * ignored. Labelling the mask is a breadth-first search that visits every cell once, linear in
+ * the size of the mask.
+ * Not thread-safe, pure Java
+ * @since 1.1
+ */
+public class InkSegmenter {
+
+    private static final int EMPTY = 0;
+    private static final int INK = -1;
+
+    /**
+     * Objects with less than this share of the ink cells of the drawing are not counted
+     * @since 1.1
+     */
+    public static final float MIN_INK_SHARE = 0.05f;
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int gapCells;
+
+    /**
+     * Mask of the drawing, EMPTY, INK or the component of an ink cell (from 1)
+     */
+    private final int[] mCells;
+    private final int[] mQueue;
+
+    private int[] mComponentRegions = new int[16];
+    private int[] mComponentCells = new int[16];
+    private int[] mObjectCells = new int[16];
+    private int mInkCells = 0;
+    private int[] mStrokeComponents = new int[16];
+    private float[] mBounds = new float[16 * 4];
+    private float[] mSorted = new float[16 * 4];
+    private int mRegionCount = 0;
+
+    /**
+     * Constructor of the class
+     * @param width width of the canvas in pixels
+     * @param height height of the canvas in pixels
+     * @param cellSize size of a cell of the mask in pixels
+     * @param gapCells ink this many cells apart still belongs to the same object
+     * @since 1.1
+     */
+    public InkSegmenter(int width, int height, int cellSize, int gapCells) {
+        this.cellSize = cellSize;
+        this.columns = (width + cellSize - 1) / cellSize;
+        this.rows = (height + cellSize - 1) / cellSize;
+        this.gapCells = gapCells;
+        this.mCells = new int[columns * rows];
+        this.mQueue = new int[columns * rows];
+    }
+
+    /**
+     * This method finds the objects of a drawing
+     * @param strokes strokes in canvas coordinates
+     * @return number of objects, ordered from the largest, see
+     *         {@link InkSegmenter#getLeft(int)} and the like for their bounds
+     * @since 1.1
+     */
+    public int segment(List<Stroke> strokes) {
+        Arrays.fill(mCells, EMPTY);
+        for (int s = 0; s < strokes.size(); s++) {
+            mark(strokes.get(s));
+        }
+        int components = label();
+
+        // the bounds of an object are those of its strokes, the mask is too coarse
+        if (mComponentRegions.length <= components) {
+            mComponentRegions = new int[components + 1];
+        }
+        if (mBounds.length < 4 * (components + 1)) {
+            mBounds = new float[4 * (components + 1)];
+        }
+        if (mStrokeComponents.length < strokes.size()) {
+            mStrokeComponents = new int[strokes.size()];
+        }
+        for (int c = 1; c <= components; c++) {
+            mComponentRegions[c] = c;
+            setEmpty(c);
+        }
+        for (int s = 0; s < strokes.size(); s++) {
+            Stroke stroke = strokes.get(s);
+            if (stroke.size() == 0) {
+                mStrokeComponents[s] = 0;
+                continue;
+            }
+            int component = mCells[cellOf(stroke.getX(0), stroke.getY(0))];
+            mStrokeComponents[s] = component;
+            float half = stroke.width / 2f;
+            include(component, stroke.getLeft() - half, stroke.getTop() - half,
+                    stroke.getRight() + half, stroke.getBottom() + half);
+        }
+        mRegionCount = mergeOverlapping(components);
+        return mRegionCount;
+    }
+
+    /**
+     * @param stroke index of a stroke passed to the last {@link InkSegmenter#segment(List)}
+     * @return object of the stroke, -1 if the stroke has no points or belongs to ignored ink
+     * @since 1.1
+     */
+    public int getRegion(int stroke) {
+        int component = mStrokeComponents[stroke];
+        return component == 0 ? -1 : mComponentRegions[component];
+    }
+
+    public int getRegionCount() {
+        return mRegionCount;
+    }
+
+    /**
+     * Bounds of an object in canvas coordinates, including the width of its strokes
+     * @param region index of the object
+     * @since 1.1
+     */
+    public float getLeft(int region) {
+        return mBounds[4 * region];
+    }
+
+    public float getTop(int region) {
+        return mBounds[4 * region + 1];
+    }
+
+    public float getRight(int region) {
+        return mBounds[4 * region + 2];
+    }
+
+    public float getBottom(int region) {
+        return mBounds[4 * region + 3];
+    }
+
+    /**
+     * This method marks the cells under a stroke, sampled at half a cell
+     */
+    private void mark(Stroke stroke) {
+        int size = stroke.size();
+        if (size == 0) {
+            return;
+        }
+        float step = cellSize / 2f;
+        float previousX = stroke.getX(0);
+        float previousY = stroke.getY(0);
+        mCells[cellOf(previousX, previousY)] = INK;
+        for (int i = 1; i < size; i++) {
+            float x = stroke.getX(i);
+            float y = stroke.getY(i);
+            float length = Math.max(Math.abs(x - previousX), Math.abs(y - previousY));
+            int steps = (int) (length / step) + 1;
+            for (int k = 1; k <= steps; k++) {
+                float t = (float) k / steps;
+                mCells[cellOf(previousX + (x - previousX) * t,
+                        previousY + (y - previousY) * t)] = INK;
+            }
+            previousX = x;
+            previousY = y;
+        }
+    }
+
+    private int cellOf(float x, float y) {
+        int column = Math.min(Math.max((int) (x / cellSize), 0), columns - 1);
+        int row = Math.min(Math.max((int) (y / cellSize), 0), rows - 1);
+        return row * columns + column;
+    }
+
+    /**
+     * This method labels the connected components of the ink cells
+     * @return number of components, labelled from 1
+     */
+    private int label() {
+        int components = 0;
+        mInkCells = 0;
+        for (int start = 0; start < mCells.length; start++) {
+            if (mCells[start] != INK) {
+                continue;
+            }
+            components++;
+            mCells[start] = components;
+            int head = 0;
+            int tail = 0;
+            mQueue[tail++] = start;
+            while (head < tail) {
+                int cell = mQueue[head++];
+                int row = cell / columns;
+                int column = cell - row * columns;
+                int fromRow = Math.max(row - gapCells, 0);
+                int toRow = Math.min(row + gapCells, rows - 1);
+                int fromColumn = Math.max(column - gapCells, 0);
+                int toColumn = Math.min(column + gapCells, columns - 1);
+                for (int r = fromRow; r <= toRow; r++) {
+                    for (int c = fromColumn; c <= toColumn; c++) {
+                        int neighbour = r * columns + c;
+                        if (mCells[neighbour] == INK) {
+                            mCells[neighbour] = components;
+                            mQueue[tail++] = neighbour;
+                        }
+                    }
+                }
+            }
+            if (mComponentCells.length <= components) {
+                mComponentCells = Arrays.copyOf(mComponentCells, 2 * components);
+            }
+            mComponentCells[components] = tail;
+            mInkCells += tail;
+        }
+        return components;
+    }
+
+    private void setEmpty(int slot) {
+        mBounds[4 * slot] = Float.POSITIVE_INFINITY;
+        mBounds[4 * slot + 1] = Float.POSITIVE_INFINITY;
+        mBounds[4 * slot + 2] = Float.NEGATIVE_INFINITY;
+        mBounds[4 * slot + 3] = Float.NEGATIVE_INFINITY;
+    }
+
+    private void include(int slot, float left, float top, float right, float bottom) {
+        mBounds[4 * slot] = Math.min(mBounds[4 * slot], left);
+        mBounds[4 * slot + 1] = Math.min(mBounds[4 * slot + 1], top);
+        mBounds[4 * slot + 2] = Math.max(mBounds[4 * slot + 2], right);
+        mBounds[4 * slot + 3] = Math.max(mBounds[4 * slot + 3], bottom);
+    }
+
+    private boolean overlap(int a, int b) {
+        return mBounds[4 * a] < mBounds[4 * b + 2] && mBounds[4 * b] < mBounds[4 * a + 2]
+                && mBounds[4 * a + 1] < mBounds[4 * b + 3]
+                && mBounds[4 * b + 1] < mBounds[4 * a + 3];
+    }
+
+    /**
+     * This method merges the components with overlapping bounds and moves the objects to the
+     * slots 0 .. count - 1, ordered by area. Quadratic in the number of components, which is
+     * small; the mask is not visited again
+     * @param components number of components, bounds in the slots 1 .. components
+     * @return number of objects
+     */
+    private int mergeOverlapping(int components) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int a = 1; a <= components; a++) {
+                if (mComponentRegions[a] != a) {
+                    continue;
+                }
+                for (int b = a + 1; b <= components; b++) {
+                    if (mComponentRegions[b] != b || !overlap(a, b)) {
+                        continue;
+                    }
+                    include(a, mBounds[4 * b], mBounds[4 * b + 1], mBounds[4 * b + 2],
+                            mBounds[4 * b + 3]);
+                    for (int c = 1; c <= components; c++) {
+                        if (mComponentRegions[c] == b) {
+                            mComponentRegions[c] = a;
+                        }
+                    }
+                    merged = true;
+                }
+            }
+        }
+        // the ink of an object is that of its components, small objects are ignored
+        if (mObjectCells.length <= components) {
+            mObjectCells = new int[components + 1];
+        }
+        Arrays.fill(mObjectCells, 0, components + 1, 0);
+        for (int c = 1; c <= components; c++) {
+            mObjectCells[mComponentRegions[c]] += mComponentCells[c];
+        }
+        int minCells = (int) Math.ceil(mInkCells * MIN_INK_SHARE);
+        // components that own their slot are objects, largest first (insertion sort, few)
+        int count = 0;
+        for (int c = 1; c <= components; c++) {
+            if (mComponentRegions[c] == c && mBounds[4 * c] <= mBounds[4 * c + 2]
+                    && mObjectCells[c] >= minCells) {
+                int position = count++;
+                while (position > 0 && area(mQueue[position - 1]) < area(c)) {
+                    mQueue[position] = mQueue[position - 1];
+                    position--;
+                }
+                mQueue[position] = c;
+            }
+        }
+        // mQueue holds the components of the objects in order, the slots are moved down
+        if (mSorted.length < mBounds.length) {
+            mSorted = new float[mBounds.length];
+        }
+        for (int region = 0; region < count; region++) {
+            System.arraycopy(mBounds, 4 * mQueue[region], mSorted, 4 * region, 4);
+        }
+        for (int c = 1; c <= components; c++) {
+            int owner = mComponentRegions[c];
+            mComponentRegions[c] = -1;
+            for (int region = 0; region < count; region++) {
+                if (mQueue[region] == owner) {
+                    mComponentRegions[c] = region;
+                    break;
+                }
+            }
+        }
+        System.arraycopy(mSorted, 0, mBounds, 0, 4 * count);
+        return count;
+    }
+
+    private float area(int slot) {
+        return (mBounds[4 * slot + 2] - mBounds[4 * slot])
+                * (mBounds[4 * slot + 3] - mBounds[4 * slot + 1]);
+    }
+}
@@ -0,0 +1,242 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Nearest-neighbour index over embeddings of the user's confirmed drawings.
+ * Embeddings are normalized to unit length and quantized to one signed byte per value with a
+ * scale per vector, so similarity is a cosine computed with integer dot products and the
+ * index takes dimension + 8 bytes per entry. The capacity is fixed, the oldest entry is
+ * replaced when it is full. Not thread-safe
+ * @since 1.1
+ */
+public class KnnIndex {
+
+    private static final int MAGIC = 0x4C444B4E; // "LDKN"
+    private static final int VERSION = 1;
+
+    private final int mDimension;
+    private final int mCapacity;
+    private final byte[] mCodes;
+    private final float[] mScales;
+    private final int[] mLabels;
+    private int mSize = 0;
+    private int mNext = 0;
+
+    // scratch buffers of search
+    private final byte[] mQuery;
+    private final float[] mSimilarities;
+    private final int[] mNeighbours;
+
+    /**
+     * Constructor of the class
+     * @param dimension number of values of an embedding
+     * @param capacity maximal number of entries
+     * @since 1.1
+     */
+    public KnnIndex(int dimension, int capacity) {
+        mDimension = dimension;
+        mCapacity = capacity;
+        mCodes = new byte[dimension * capacity];
+        mScales = new float[capacity];
+        mLabels = new int[capacity];
+        mQuery = new byte[dimension];
+        mSimilarities = new float[capacity];
+        // unused entries are never selected, see search
+        Arrays.fill(mSimilarities, Float.NEGATIVE_INFINITY);
+        mNeighbours = new int[capacity];
+    }
+
+    public int getDimension() {
+        return mDimension;
+    }
+
+    /**
+     * @return number of entries
+     * @since 1.1
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return bytes taken by the entries
+     * @since 1.1
+     */
+    public long memoryBytes() {
+        return (long) mCapacity * (mDimension + 8);
+    }
+
+    /**
+     * This method adds an embedding, replacing the oldest entry when the index is full
+     * @param embedding values of the embedding, dimension values
+     * @param label class of the drawing
+     * @since 1.1
+     */
+    public void add(float[] embedding, int label) {
+        mScales[mNext] = quantize(embedding, mDimension, mCodes, mNext * mDimension);
+        mLabels[mNext] = label;
+        mNext = (mNext + 1) % mCapacity;
+        mSize = Math.min(mSize + 1, mCapacity);
+    }
+
+    /**
+     * This method finds the entries most similar to an embedding
+     * @param embedding values of the embedding, dimension values
+     * @param k maximal number of neighbours, not larger than the arrays
+     * @param labels destination for the classes of the neighbours
+     * @param similarities destination for the cosine similarities, descending
+     * @return number of neighbours found
+     * @since 1.1
+     */
+    public int search(float[] embedding, int k, int[] labels, float[] similarities) {
+        float queryScale = quantize(embedding, mDimension, mQuery, 0);
+        for (int entry = 0; entry < mSize; entry++) {
+            final int offset = entry * mDimension;
+            int dot = 0;
+            for (int i = 0; i < mDimension; i++) {
+                dot += mQuery[i] * mCodes[offset + i];
+            }
+            mSimilarities[entry] = dot * queryScale * mScales[entry];
+        }
+        // cosines are at least -1, unused entries are negative infinity
+        final int count = TopK.select(mSimilarities, Math.min(k, mCapacity), -2f, mNeighbours);
+        for (int i = 0; i < count; i++) {
+            labels[i] = mLabels[mNeighbours[i]];
+            similarities[i] = mSimilarities[mNeighbours[i]];
+        }
+        return count;
+    }
+
+    /**
+     * This method computes a distribution over classes from the nearest neighbours,
+     * weighted by their similarity
+     * @param embedding values of the embedding, dimension values
+     * @param k number of neighbours
+     * @param minSimilarity neighbours less similar than this are ignored
+     * @param labels scratch buffer of k ints
+     * @param similarities scratch buffer of k floats
+     * @param classScores destination, sums to 1 unless no neighbour was close enough
+     * @return highest similarity of a counted neighbour, 0 if there was none
+     * @since 1.1
+     */
+    public float vote(float[] embedding, int k, float minSimilarity, int[] labels,
+                      float[] similarities, float[] classScores) {
+        Arrays.fill(classScores, 0f);
+        final int count = search(embedding, k, labels, similarities);
+        float total = 0;
+        float best = 0;
+        for (int i = 0; i < count; i++) {
+            if (similarities[i] < minSimilarity || labels[i] >= classScores.length) {
+                continue;
+            }
+            classScores[labels[i]] += similarities[i];
+            total += similarities[i];
+            best = Math.max(best, similarities[i]);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        for (int c = 0; c < classScores.length; c++) {
+            classScores[c] /= total;
+        }
+        return best;
+    }
+
+    /**
+     * This method normalizes values to unit length and quantizes them to signed bytes
+     * Shared with {@link ReferenceScorer}, which stores its embeddings the same way
+     * @param values values, at least dimension of them
+     * @param dimension number of values to quantize
+     * @param out destination of dimension codes
+     * @param offset position of the first code in out
+     * @return scale of one quantization step, 0 for a zero vector
+     * @since 1.1
+     */
+    static float quantize(float[] values, int dimension, byte[] out, int offset) {
+        double squares = 0;
+        float max = 0;
+        for (int i = 0; i < dimension; i++) {
+            squares += values[i] * values[i];
+            max = Math.max(max, Math.abs(values[i]));
+        }
+        if (max == 0) {
+            Arrays.fill(out, offset, offset + dimension, (byte) 0);
+            return 0;
+        }
+        final float toCode = 127f / max;
+        for (int i = 0; i < dimension; i++) {
+            out[offset + i] = (byte) Math.round(values[i] * toCode);
+        }
+        return (float) (max / 127f / Math.sqrt(squares));
+    }
+
+    /**
+     * This method writes the index to a stream
+     * @param out OutputStream object
+     * @throws IOException if the stream fails
+     * @since 1.1
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(mDimension);
+        data.writeInt(mCapacity);
+        data.writeInt(mSize);
+        data.writeInt(mNext);
+        for (int i = 0; i < mSize; i++) {
+            data.writeInt(mLabels[i]);
+            data.writeFloat(mScales[i]);
+        }
+        data.write(mCodes, 0, mSize * mDimension);
+        data.flush();
+    }
+
+    /**
+     * This method reads an index written by {@link KnnIndex#writeTo(OutputStream)}
+     * @param in InputStream object
+     * @return KnnIndex object
+     * @throws IOException if the stream fails or is not an index
+     * @since 1.1
+     */
+    public static KnnIndex readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a kNN index");
+        }
+        int dimension = data.readInt();
+        int capacity = data.readInt();
+        int size = data.readInt();
+        int next = data.readInt();
+        if (dimension <= 0 || capacity <= 0 || size < 0 || size > capacity
+                || next < 0 || next >= capacity) {
+            throw new IOException("Corrupted kNN index");
+        }
+        KnnIndex index = new KnnIndex(dimension, capacity);
+        for (int i = 0; i < size; i++) {
+            index.mLabels[i] = data.readInt();
+            index.mScales[i] = data.readFloat();
+        }
+        data.readFully(index.mCodes, 0, size * dimension);
+        index.mSize = size;
+        index.mNext = next;
+        return index;
+    }
+}
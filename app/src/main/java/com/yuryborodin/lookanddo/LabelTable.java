@@ -0,0 +1,87 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Labels of a model keyed by the index of their output.
+ * The ids of Classifier.Recognition are built once, so selecting a result is two
+ * array reads instead of a synchronized Vector lookup and a string concatenation
+ * @since 1.1
+ */
+public final class LabelTable {
+
+    /**
+     * Label of an index without a line in the label file
+     * @since 1.1
+     */
+    public static final String UNKNOWN = "unknown";
+
+    private final String[] mLabels;
+    private final String[] mIds;
+    private final Map<String, Integer> mIndices;
+
+    /**
+     * Constructor of the class
+     * @param labels lines of the label file, in the order of the outputs
+     * @since 1.1
+     */
+    public LabelTable(List<String> labels) {
+        int size = labels.size();
+        mLabels = labels.toArray(new String[size]);
+        mIds = new String[size];
+        mIndices = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            mIds[i] = String.valueOf(i);
+            mIndices.put(mLabels[i].trim(), i);
+        }
+    }
+
+    /**
+     * @return number of labels
+     * @since 1.1
+     */
+    public int size() {
+        return mLabels.length;
+    }
+
+    /**
+     * @param index index of an output
+     * @return label of the output, {@link LabelTable#UNKNOWN} if there is none
+     * @since 1.1
+     */
+    public String get(int index) {
+        return index >= 0 && index < mLabels.length ? mLabels[index] : UNKNOWN;
+    }
+
+    /**
+     * @param index index of an output
+     * @return id of the output for Classifier.Recognition
+     * @since 1.1
+     */
+    public String getId(int index) {
+        return index >= 0 && index < mIds.length ? mIds[index] : String.valueOf(index);
+    }
+
+    /**
+     * @param label label, surrounding whitespace is ignored
+     * @return index of the label, -1 if the model has no such label
+     * @since 1.1
+     */
+    public int indexOf(String label) {
+        Integer index = mIndices.get(label.trim());
+        return index != null ? index : -1;
+    }
+}
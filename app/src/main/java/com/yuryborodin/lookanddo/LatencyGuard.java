@@ -0,0 +1,238 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Keeps the end-to-end classification time within a latency budget.
+ * Tracks a moving percentile of the last {@link LatencyGuard#WINDOW} classifications and
+ * picks a quality level: 0 is the full model, every next level is a cheaper model variant.
+ * The level is stepped down when the percentile exceeds the budget. Every level keeps its own
+ * estimate, and the cost of a level relative to the level below it is measured when the level
+ * changes; the level is stepped back up only when the estimate of the upper level, scaled to
+ * the current conditions by that cost, fits the budget with headroom
+ * @since 1.1
+ */
+public class LatencyGuard {
+    private static final String TAG = "LatencyGuard";
+
+    /**
+     * Number of the latest samples used for the percentile
+     * @since 1.1
+     */
+    public static final int WINDOW = 20;
+
+    /**
+     * Tracked percentile, within (0, 1]
+     * @since 1.1
+     */
+    public static final float PERCENTILE = 0.9f;
+
+    /**
+     * Minimal number of samples on a level before it may be stepped down
+     * @since 1.1
+     */
+    private static final int MIN_SAMPLES = 5;
+
+    /**
+     * Fraction of the budget the estimate of the upper level has to stay under before stepping up
+     * @since 1.1
+     */
+    private static final float HEADROOM = 0.8f;
+
+    /**
+     * Weight of a new sample in the moving average of its level
+     * @since 1.1
+     */
+    private static final float ALPHA = 0.2f;
+
+    private final long mBudgetNanos;
+    private final long[] mSamples = new long[WINDOW];
+    private final long[] mSorted = new long[WINDOW];
+
+    /**
+     * Number of samples recorded on the current level, may exceed {@link LatencyGuard#WINDOW}
+     * @since 1.1
+     */
+    private int mCount = 0;
+
+    /**
+     * Moving average of the duration on every level in nanoseconds, 0 until the level ran
+     * The average of a level is started again whenever the level is entered
+     */
+    private long[] mEstimates = new long[1];
+
+    /**
+     * Cost of level i - 1 relative to level i at index i, 0 while unknown
+     */
+    private float[] mCostRatios = new float[1];
+
+    /**
+     * Level before the last change, its cost is compared with the current level once there
+     * are {@link LatencyGuard#MIN_SAMPLES} samples on it; -1 if there is none
+     */
+    private int mPreviousLevel = -1;
+
+    private int mLevel = 0;
+    private int mMaxLevel = 0;
+    private int mDowngrades = 0;
+    private int mUpgrades = 0;
+    private long mBudgetMisses = 0;
+
+    /**
+     * Constructor of the class
+     * @param budgetMillis latency budget of one classification in milliseconds
+     * @since 1.1
+     */
+    public LatencyGuard(long budgetMillis) {
+        mBudgetNanos = budgetMillis * 1000000L;
+    }
+
+    /**
+     * This method sets how many cheaper levels are available
+     * @param maxLevel highest level that may be chosen, 0 disables adaptation
+     * @since 1.1
+     */
+    public synchronized void setMaxLevel(int maxLevel) {
+        mMaxLevel = maxLevel;
+        mEstimates = Arrays.copyOf(mEstimates, maxLevel + 1);
+        mCostRatios = Arrays.copyOf(mCostRatios, maxLevel + 1);
+        if (mLevel > maxLevel) {
+            changeLevel(maxLevel);
+            // the previous level is gone
+            mPreviousLevel = -1;
+        }
+    }
+
+    /**
+     * @return current quality level, 0 for the full model
+     * @since 1.1
+     */
+    public synchronized int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * This method records the duration of one classification and adapts the level
+     * @param level level the classification ran on
+     * @param nanos duration in nanoseconds
+     * @return level for the next classification
+     * @since 1.1
+     */
+    public synchronized int record(int level, long nanos) {
+        if (nanos > mBudgetNanos) {
+            mBudgetMisses++;
+        }
+        if (level != mLevel) {
+            // the level was changed while this classification was running
+            return mLevel;
+        }
+        mSamples[mCount % WINDOW] = nanos;
+        mCount++;
+        long estimate = mEstimates[level];
+        mEstimates[level] = estimate == 0 ? nanos : (long) (ALPHA * nanos + (1 - ALPHA) * estimate);
+        if (mCount == MIN_SAMPLES && mPreviousLevel >= 0) {
+            measureCostRatio();
+        }
+
+        long percentile = percentileNanos();
+        if (percentile > mBudgetNanos && mCount >= MIN_SAMPLES && mLevel < mMaxLevel) {
+            mDowngrades++;
+            Log.i(TAG, String.format(Locale.US, "downgrade to level %d, p%d %.1f ms over budget %d ms",
+                    mLevel + 1, (int) (PERCENTILE * 100), percentile / 1e6, mBudgetNanos / 1000000));
+            changeLevel(mLevel + 1);
+        } else if (mCount >= WINDOW && mLevel > 0) {
+            long upper = upperEstimateNanos();
+            if (upper > 0 && upper < mBudgetNanos * HEADROOM) {
+                mUpgrades++;
+                Log.i(TAG, String.format(Locale.US,
+                        "upgrade to level %d, estimated p%d %.1f ms under budget %d ms",
+                        mLevel - 1, (int) (PERCENTILE * 100), upper / 1e6,
+                        mBudgetNanos / 1000000));
+                changeLevel(mLevel - 1);
+            }
+        }
+        return mLevel;
+    }
+
+    /**
+     * @return tracked percentile of the samples of the current level, 0 if there are none
+     * @since 1.1
+     */
+    public synchronized long percentileNanos() {
+        int size = Math.min(mCount, WINDOW);
+        if (size == 0) {
+            return 0;
+        }
+        System.arraycopy(mSamples, 0, mSorted, 0, size);
+        Arrays.sort(mSorted, 0, size);
+        int index = (int) Math.ceil(PERCENTILE * size) - 1;
+        return mSorted[Math.max(index, 0)];
+    }
+
+    /**
+     * This method estimates the tracked percentile of the level above the current one: its
+     * cost relative to the current level times the percentile of the current level. The
+     * average of the upper level alone is used while its cost is unknown
+     * @return estimate in nanoseconds, 0 if the upper level never ran
+     */
+    private long upperEstimateNanos() {
+        float ratio = mCostRatios[mLevel];
+        if (ratio > 0) {
+            return (long) (ratio * percentileNanos());
+        }
+        return mEstimates[mLevel - 1];
+    }
+
+    /**
+     * This method compares the averages of the previous and the current level, which ran
+     * one after the other under about the same conditions
+     */
+    private void measureCostRatio() {
+        int lower = Math.max(mPreviousLevel, mLevel);
+        long upperEstimate = mEstimates[lower - 1];
+        long lowerEstimate = mEstimates[lower];
+        if (Math.abs(mPreviousLevel - mLevel) == 1 && upperEstimate > 0 && lowerEstimate > 0) {
+            mCostRatios[lower] = (float) upperEstimate / lowerEstimate;
+        }
+        mPreviousLevel = -1;
+    }
+
+    /**
+     * @return String with the current level, percentile, estimates and adaptation counters
+     * @since 1.1
+     */
+    public synchronized String getStatString() {
+        StringBuilder estimates = new StringBuilder();
+        for (int i = 0; i < mEstimates.length; i++) {
+            estimates.append(i == 0 ? "" : ",")
+                    .append(String.format(Locale.US, "%.1f", mEstimates[i] / 1e6));
+        }
+        return String.format(Locale.US,
+                "level=%d/%d p%d=%.1fms estimates=[%s]ms budget=%dms misses=%d downgrades=%d "
+                        + "upgrades=%d",
+                mLevel, mMaxLevel, (int) (PERCENTILE * 100), percentileNanos() / 1e6,
+                estimates, mBudgetNanos / 1000000, mBudgetMisses, mDowngrades, mUpgrades);
+    }
+
+    private void changeLevel(int level) {
+        mPreviousLevel = mLevel;
+        mLevel = level;
+        // samples of the previous level say nothing about the new one
+        mCount = 0;
+        mEstimates[level] = 0;
+    }
+}
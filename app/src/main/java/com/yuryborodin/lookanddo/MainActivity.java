@@ -20,6 +20,7 @@ import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.os.Handler;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -33,14 +34,22 @@ import android.widget.TextView;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.text.DecimalFormat;
-import java.util.Arrays;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity
 {
+    private static final String TAG = "MainActivity";
 
     /**
      * This constant sets height and width of images that are used by a particular TF model
@@ -117,19 +126,129 @@ public class MainActivity extends AppCompatActivity
     public static final String LABEL_FILE = "file:///android_asset/labels_v8_by30k.txt";
 
     /**
-     * This is an object of Classifier class
-     * {@link Classifier}
-     * @since 1.0
+     * This constant defines the name of the file with the game state (in getFilesDir())
+     * @see GameStateStore
+     * @since 1.1
+     */
+    public static final String GAME_STATE_FILE = "game_state.bin";
+
+    /**
+     * This constant defines how long onStop waits for the game state to be written
+     * @since 1.1
+     */
+    private static final long GAME_STATE_FLUSH_TIMEOUT_MS = 500;
+
+    /**
+     * This constant defines the name of the file with the strokes of the drawing
+     * (in getFilesDir()), see {@link StrokeCodec}
+     * @since 1.1
+     */
+    public static final String DRAWING_FILE = "drawing.bin";
+
+    /**
+     * This constant defines the directory of recorded touch sessions (in getFilesDir()),
+     * see {@link TouchSession}
+     * @since 1.1
+     */
+    public static final String SESSION_DIR = "sessions";
+
+    /**
+     * Intent extras that replay a recorded session once the activity is started:
+     * the path of the session file and the speed, 0 for no pauses between events.
+     * MainActivity is not exported, debug builds start it through ReplayActivity, e.g.
+     * adb shell am start -n com.yuryborodin.lookanddo/.ReplayActivity
+     *     -e replaySession session-1.bin --ef replaySpeed 0
+     * A replay plays a new game that is kept apart from the user's: the game state is kept in
+     * {@link MainActivity#REPLAY_DIR}, the score history in memory, and the drawing, the kNN
+     * index, captured samples and recorded touches are not written
+     * @see TouchReplayer
+     * @since 1.1
+     */
+    public static final String EXTRA_REPLAY_SESSION = "replaySession";
+    public static final String EXTRA_REPLAY_SPEED = "replaySpeed";
+
+    /**
+     * This constant defines the directory of the game state of a replay (in getCacheDir())
+     * @since 1.1
+     */
+    public static final String REPLAY_DIR = "replay";
+
+    /**
+     * This constant defines the directory of saved rasterizer goldens (in
+     * getExternalFilesDir(), so adb can pull them), see
+     * {@link MainActivity#saveGolden()}
+     * @since 1.1
+     */
+    public static final String GOLDEN_DIR = "goldens";
+
+    /**
+     * This constant defines how many captured samples may wait for the writer
+     * @see SampleCapture
+     * @since 1.1
+     */
+    private static final int CAPTURE_CAPACITY = 4;
+
+    /**
+     * This constant defines how many samples are written to one file
+     * @since 1.1
+     */
+    private static final int CAPTURE_BATCH_SIZE = 32;
+
+    /**
+     * This constant defines the disk quota of captured samples
+     * @since 1.1
      */
-    public Classifier classifier;
+    private static final long CAPTURE_QUOTA_BYTES = 20L * 1024 * 1024;
+
+    /**
+     * This constant defines how many of the latest frames the frame statistics keep,
+     * about ten seconds of drawing at 60 Hz
+     * @see FrameStats
+     * @since 1.1
+     */
+    private static final int FRAME_STATS_CAPACITY = 600;
+
+    /**
+     * Weight of the similarity to the shown reference image against the confidence of the
+     * model: score = (1 - REFERENCE_WEIGHT) * confidence + REFERENCE_WEIGHT * similarity
+     * @since 1.1
+     */
+    private static final float REFERENCE_WEIGHT = 0.3f;
+
+    /**
+     * The bitmap pool may keep free bitmaps up to 1 / BITMAP_POOL_FRACTION of the heap
+     * @see BitmapPool
+     * @since 1.1
+     */
+    private static final int BITMAP_POOL_FRACTION = 8;
+
+    /**
+     * The reference images may be cached up to 1 / REFERENCE_CACHE_FRACTION of the heap
+     * @see ReferenceImageLoader
+     * @since 1.1
+     */
+    private static final int REFERENCE_CACHE_FRACTION = 32;
+
+    /**
+     * BitmapPool object, shared by every instance of the activity, so a recreated activity
+     * takes the bitmaps of the destroyed one
+     * @since 1.1
+     */
+    private static BitmapPool sBitmapPool;
 
     /**
      * Executor object
-     * Will be used in {@link MainActivity#initTensorFlowAndLoadModel()}
+     * Runs the classifications of {@link MainActivity#mAnalyser} and the slow writes
      * @since 1.0
      */
     public Executor executor = Executors.newSingleThreadExecutor();
 
+    /**
+     * DrawingAnalyser object, the classification pipeline
+     * @since 1.1
+     */
+    private DrawingAnalyser mAnalyser;
+
 
     /**
      * Array of images
@@ -138,85 +257,99 @@ public class MainActivity extends AppCompatActivity
     private int [] mImageArray = new int[ARRAY_OF_IMAGES_SIZE];
 
     /**
-     * Array of scores for each image (will be wiped out after each round)
-     * @since 1.0
+     * GameEngine object, progress and score of the game
+     * @since 1.1
      */
-    private double [] mScoreArray = new double[NUMBER_OF_CLASSES];
+    private final GameEngine mEngine = new GameEngine(NUMBER_OF_CLASSES, NUMBER_OF_ROUNDS);
 
     /**
-     * This array stores current gameScore for each image
-     * @since 1.0
+     * GameStateStore object, persists progress and score of the game
+     * @since 1.1
      */
-    private double[] mFinalScoreArray = new double[NUMBER_OF_ROUNDS*NUMBER_OF_CLASSES];
+    private GameStateStore mGameStateStore;
 
     /**
-     * Variable used for determining when we need to show {@link MainActivity#helpMessage()}
-     * @since 1.0
+     * ScoreHistory object, every attempt of every game with aggregated statistics
+     * @since 1.1
      */
-    private int mHelpCounter = 0;
-
+    private ScoreHistory mScoreHistory;
 
+    /**
+     * SampleCapture object, null unless the user enabled the capture of drawings
+     * @since 1.1
+     */
+    private SampleCapture mSampleCapture;
 
     /**
-     * Variable used for determining current step within [0,45] boundaries
-     * Each step is responsible for each class
-     * Changes when user goes to next picture (with a step of 5)
-     * @since 1.0
+     * Whether the user enabled the frame statistics of {@link MainActivity#mDrawView}
+     * @since 1.1
      */
-    private int mCurrentStep = 0;
+    private boolean mFrameStatsEnabled = false;
 
     /**
-     * Variable used for determining current image withing current class
-     * Changes when user starts new round
-     * @since 1.0
+     * Set in {@link MainActivity#onDestroy()}, results that arrive later are dropped without
+     * touching the views, the history or the dialog. Used on the main thread
+     * @since 1.1
      */
-    private int mCurrentSubStep = 0;
+    private boolean mDestroyed = false;
 
     /**
-     * Variable used for finding right image (represents index of {@link MainActivity#mImageArray})
-     * Within the program calculated as mCurrentSubStep + mCurrentStep
-     * @since 1.0
+     * TouchRecorder object and its file, null unless the user records a touch session
+     * @since 1.1
      */
-    private int mCurrentImage = 0;
+    private TouchRecorder mTouchRecorder;
+    private File mSessionFile;
 
     /**
-     * Variable used for comparing current class with the results of classification
-     * Lies within [0, NUMBER_OF_CLASSES - 1]
-     * @since 1.0
+     * TouchReplayer object, null unless a session is being replayed
+     * @since 1.1
      */
-    private int mCurrentTag = 0;
+    private TouchReplayer mReplayer;
 
     /**
-     * Variable used for storing score throughout the game
-     * Lies within [0, NUMBER_OF_CLASSES * NUMBER_OF_ROUNDS]
-     * @since 1.0
+     * Whether the activity was started to replay a session, see
+     * {@link MainActivity#EXTRA_REPLAY_SESSION}. Stays set after the replay finished and
+     * when the activity is recreated, so the user's data is never touched by it
+     * @since 1.1
      */
-    private double mGameScore = 0.0;
+    private boolean mReplaying = false;
 
     /**
-     * Variable used for storing mGameScore in String type
-     * @since 1.0
+     * GameState object, reused for every save of the game state
+     * @since 1.1
      */
-    private String mStringGameScore = "0";
+    private final GameState mGameState = new GameState(NUMBER_OF_CLASSES, NUMBER_OF_ROUNDS);
 
     /**
-     * Variable used for storing score of a current round
-     * Lies within [0, NUMBER_OF_CLASSES]
-     * @since 1.0
+     * ReferenceImageLoader object, decodes the images for {@link MainActivity#mImageView}
+     * in the background and prefetches the next one
+     * @since 1.1
      */
-    private double mRoundScore = 0;
+    private ReferenceImageLoader mImageLoader;
 
     /**
-     * This variable stores index of current iteration, lies within [0, 49]
-     * @since 1.0
+     * Shows the reference images delivered by {@link MainActivity#mImageLoader}
+     * @since 1.1
      */
-    private int mCurrentIteration = 0;
+    private final ReferenceImageLoader.Callback mReferenceImageCallback =
+            new ReferenceImageLoader.Callback() {
+        @Override
+        public void onImageLoaded(int resId, Bitmap bitmap) {
+            if (bitmap != null) {
+                mImageView.setImageBitmap(bitmap);
+            } else {
+                mImageView.setImageDrawable(null);
+            }
+        }
+    };
 
     /**
-     * Variable used for storing mRoundScore in String type
+     * Variable used for determining when we need to show {@link MainActivity#helpMessage()}
      * @since 1.0
      */
-    private String mStringRoundScore = "0";
+    private int mHelpCounter = 0;
+
+
 
     /**
      * DrawView object,
@@ -242,7 +375,7 @@ public class MainActivity extends AppCompatActivity
 
     /**
      * TextView object
-     * Used for showing mGameScore and current round
+     * Used for showing score of the game and current round
      * @since 1.0
      */
     private TextView mRoundView;
@@ -276,14 +409,6 @@ public class MainActivity extends AppCompatActivity
     private Button mProceedButton;
 
 
-    /**
-     * Object of DecimalFormat
-     * Used for formatting double values
-     * @since 1.0
-     */
-    DecimalFormat decimalFormat = new DecimalFormat("#.##");
-
-
     /**
      * Overridden onCreate method (see Google documentation for further information)
      * @param savedInstanceState object of Bundle (used for saving state)
@@ -295,38 +420,66 @@ public class MainActivity extends AppCompatActivity
         Intent intent = getIntent();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        mReplaying = intent != null && intent.getStringExtra(EXTRA_REPLAY_SESSION) != null;
 
-        // shared preferences of score
-        SharedPreferences scorePreferences = getSharedPreferences("SCORE",
-                Context.MODE_PRIVATE);
-        mStringRoundScore = scorePreferences.getString("totalScore", "0");
-        mStringGameScore = scorePreferences.getString("gameScore","0");
-        this.mGameScore = Double.parseDouble(mStringGameScore);
-        mCurrentIteration = scorePreferences.getInt("n",1);
         // shared preferences of initial message (do not show again)
         SharedPreferences appPreferences = getSharedPreferences("PREFS",0);
         boolean ifShowDialog = appPreferences.getBoolean("showDialog", true);
-        if(ifShowDialog){showInitialMessage();}
-
-        // shared preferences of what image is now
-        SharedPreferences imagePreferences = getSharedPreferences("IMAGE",0);
-        mCurrentImage = imagePreferences.getInt("iterator",0);
-        mCurrentTag = imagePreferences.getInt("currentTag", 0);
-        mCurrentSubStep = imagePreferences.getInt("currentSubStep",0);
-        mCurrentStep = imagePreferences.getInt("currentStep",0);
-
-        SharedPreferences button = getSharedPreferences("BUTTONS",0);
-        boolean updateButtonOn = button.getBoolean("update",false);
-        SharedPreferences finalScorePreference = getSharedPreferences("GAME_SCORE",
-                Context.MODE_PRIVATE);
+        if(ifShowDialog && !mReplaying){showInitialMessage();}
+
+        // restoring progress and score of the game
+        long restoreStart = System.nanoTime();
+        if (mReplaying) {
+            // a replay starts a new game of its own, recreation continues it
+            File replayDir = new File(getCacheDir(), REPLAY_DIR);
+            File replayState = new File(replayDir, GAME_STATE_FILE);
+            replayDir.mkdirs();
+            if (savedInstanceState == null) {
+                replayState.delete();
+            }
+            mScoreHistory = new ScoreHistory(this, null);
+            mGameStateStore = new GameStateStore(replayState, NUMBER_OF_CLASSES,
+                    NUMBER_OF_ROUNDS);
+        } else {
+            mScoreHistory = new ScoreHistory(this);
+            mGameStateStore = new GameStateStore(new File(getFilesDir(), GAME_STATE_FILE),
+                    NUMBER_OF_CLASSES, NUMBER_OF_ROUNDS);
+        }
+        enableSampleCapture(appPreferences.getBoolean("captureSamples", false));
+        if (!mGameStateStore.load(mGameState)) {
+            if (!mReplaying) {
+                readLegacyPreferences(mGameState);
+            }
+            mGameStateStore.save(mGameState);
+        }
+        mEngine.restore(mGameState);
+        Log.d(TAG, "Game state restored in " + (System.nanoTime() - restoreStart) / 1000 + " us");
 
         mUpdateButton = (Button) findViewById(R.id.updateButton);
         mProceedButton = (Button) findViewById(R.id.proceedButton);
         mDrawView = (DrawView) findViewById(R.id.drawView);
         DisplayMetrics metrics = new DisplayMetrics();
         getWindowManager().getDefaultDisplay().getMetrics(metrics);
-        mDrawView.init(metrics);
-        mUpdateButton.setEnabled(updateButtonOn);
+        if (sBitmapPool == null) {
+            sBitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / BITMAP_POOL_FRACTION);
+        }
+        mDrawView.init(metrics, sBitmapPool);
+        enableFrameStats(appPreferences.getBoolean("frameStats", false));
+        enableTouchRecording(appPreferences.getBoolean("recordTouches", false));
+        mAnalyser = new DrawingAnalyser(this, executor, sBitmapPool, mImageArray,
+                metrics.widthPixels, metrics.heightPixels);
+        mAnalyser.setStrokeModelEnabled(appPreferences.getBoolean("strokeModel", false));
+        mDrawView.setOnStrokeListener(new DrawView.OnStrokeListener() {
+            @Override
+            public void onStrokeFinished(DrawView view) {
+                recognizeStrokes();
+            }
+        });
+        if (savedInstanceState == null && !mReplaying) {
+            // the view restores its strokes from savedInstanceState by itself
+            restoreDrawing();
+        }
+        mUpdateButton.setEnabled(mEngine.getPhase() == GameEngine.Phase.ANSWERED);
         mProceedButton.setEnabled(true);
         mDrawView.enablePaint(true);
 
@@ -392,64 +545,454 @@ public class MainActivity extends AppCompatActivity
         mImageArray[48] = R.drawable.i93;
         mImageArray[49] = R.drawable.i94;
         */
-        // retrieving score from saved preferences
-        for(int i = 0; i<= mCurrentTag; i++){
-            mScoreArray[i] = Double.parseDouble(imagePreferences.getString(
-                    String.valueOf(i),"0"));
-        }
-        for (int i = 0; i<= mCurrentIteration; i++){
-            mFinalScoreArray[i] = Double.parseDouble(finalScorePreference.getString(
-                    String.valueOf(i),"0"
-            ));
-        }
         mMainTextView = (TextView) findViewById(R.id.mainTextView);
         mImageView = (ImageView) findViewById(R.id.imageView);
+        mImageLoader = new ReferenceImageLoader(getResources(), sBitmapPool,
+                (int) (Runtime.getRuntime().maxMemory() / REFERENCE_CACHE_FRACTION));
+        // the view is not laid out yet, the screen is an upper bound of its size
+        mImageLoader.setTargetSize(metrics.widthPixels, metrics.heightPixels);
+        mImageView.post(new Runnable() {
+            @Override
+            public void run() {
+                mImageLoader.setTargetSize(mImageView.getWidth(), mImageView.getHeight());
+            }
+        });
         mScoreView = (TextView) findViewById(R.id.scoreView);
-        mScoreView.setText(mStringGameScore);
-        initTensorFlowAndLoadModel();
+        mAnalyser.load();
         mRoundView = (TextView) findViewById(R.id.roundView);
-        mRoundView.setText(String.valueOf((mCurrentSubStep+1)));
-        mImageView.setImageResource(mImageArray[mCurrentImage]);
-        mImageView.setTag(mCurrentTag);
+        showProgress();
+        if (mReplaying && savedInstanceState == null) {
+            // a recreated activity does not start the replay again
+            replaySession(new File(intent.getStringExtra(EXTRA_REPLAY_SESSION)),
+                    intent.getFloatExtra(EXTRA_REPLAY_SPEED, 1f));
+        }
 
 
     }
 
     /**
-     * This method initializes TensorFLow by passing parameters defined in MainActivity class
-     * @since 1.0
+     * Overridden onStop method, makes sure the game state is on disk before the process
+     * may be killed (SharedPreferences.apply() was waited for at this point as well)
+     * @since 1.1
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (!mGameStateStore.flush(GAME_STATE_FLUSH_TIMEOUT_MS)) {
+            Log.w(TAG, "Game state was not written in " + GAME_STATE_FLUSH_TIMEOUT_MS + " ms");
+        }
+        if (!mReplaying) {
+            saveDrawing();
+            mAnalyser.saveKnnIndex();
+        }
+        FrameStats stats = mDrawView.getFrameStats();
+        if (stats != null) {
+            Log.i(TAG, "Frame stats: " + stats.getStatString());
+        }
+        Log.i(TAG, "Latency guard: " + mAnalyser.getLatencyStatString());
+        if (mTouchRecorder != null) {
+            saveTouchSession();
+        }
+        mScoreHistory.logStats(NUMBER_OF_CLASSES);
+    }
+
+    /**
+     * This method writes the strokes of the drawing to {@link MainActivity#DRAWING_FILE}
+     * A few kilobytes, written to a temporary file that replaces the previous one
+     * @since 1.1
+     */
+    private void saveDrawing() {
+        long start = System.nanoTime();
+        File file = new File(getFilesDir(), DRAWING_FILE);
+        File tmp = new File(getFilesDir(), DRAWING_FILE + ".tmp");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+            try {
+                mDrawView.writeStrokes(out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Can not rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Drawing not saved", e);
+            return;
+        }
+        Log.d(TAG, "Drawing saved in " + (System.nanoTime() - start) / 1000 + " us, "
+                + file.length() + " bytes");
+    }
+
+    /**
+     * This method redraws the strokes saved by {@link MainActivity#saveDrawing()}
+     * @since 1.1
+     */
+    private void restoreDrawing() {
+        File file = new File(getFilesDir(), DRAWING_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                mDrawView.readStrokes(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Drawing not restored", e);
+        }
+    }
+
+    /**
+     * Overridden onDestroy method, closes {@link MainActivity#mScoreHistory} after its
+     * queued writes and the models after the queued classifications
+     * @since 1.1
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDestroyed = true;
+        if (loadingDialog != null) {
+            loadingDialog.dismissDialog();
+            loadingDialog = null;
+        }
+        mScoreHistory.close();
+        mAnalyser.close();
+        enableSampleCapture(false);
+        if (mReplayer != null) {
+            mReplayer.cancel();
+        }
+        // the next instance takes the bitmaps back from the pool
+        mDrawView.release();
+        mImageView.setImageDrawable(null);
+        Log.d(TAG, "Reference images: " + mImageLoader.getStatString());
+        mImageLoader.close();
+        Log.d(TAG, "Bitmap pool: " + sBitmapPool.getStatString());
+    }
+
+    /**
+     * Overridden onLowMemory method, drops the cached reference images and the free bitmaps
+     * of the pool
+     * @since 1.1
+     */
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mImageLoader.trimMemory();
+        sBitmapPool.clear();
+    }
+
+    /**
+     * This method starts or stops the capture of drawings as training samples
+     * @param enable whether the drawings should be captured
+     * @see SampleCapture
+     * @since 1.1
+     */
+    private void enableSampleCapture(boolean enable) {
+        // drawings of a replay are not the user's
+        enable &= !mReplaying;
+        if (enable && mSampleCapture == null) {
+            mSampleCapture = new SampleCapture(new File(getFilesDir(), SampleCapture.CAPTURE_DIR),
+                    CAPTURE_CAPACITY, CAPTURE_BATCH_SIZE, CAPTURE_QUOTA_BYTES);
+        } else if (!enable && mSampleCapture != null) {
+            Log.d(TAG, "Sample capture stopped, " + mSampleCapture.getStatString());
+            mSampleCapture.close();
+            mSampleCapture = null;
+        }
+    }
+
+    /**
+     * This method starts or stops recording the frame times and touch latency of the drawing
+     * The statistics are logged when they are stopped and whenever the activity stops
+     * @param enable whether the frames should be recorded
+     * @see FrameStats
+     * @since 1.1
+     */
+    private void enableFrameStats(boolean enable) {
+        mFrameStatsEnabled = enable;
+        FrameStats stats = mDrawView.getFrameStats();
+        if (enable && stats == null) {
+            float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+            long budgetNanos = refreshRate > 0 ? (long) (1e9 / refreshRate)
+                    : FrameStats.DEFAULT_FRAME_BUDGET_NANOS;
+            mDrawView.setFrameStats(new FrameStats(FRAME_STATS_CAPACITY, budgetNanos));
+        } else if (!enable && stats != null) {
+            Log.i(TAG, "Frame stats: " + stats.getStatString());
+            mDrawView.setFrameStats(null);
+        }
+    }
+
+    /**
+     * This method starts or stops recording the touch events and button presses into a new
+     * file of {@link MainActivity#SESSION_DIR}, to be replayed by {@link TouchReplayer} or the
+     * harness. The session is saved when recording stops and whenever the activity stops
+     * @param enable whether the session should be recorded
+     * @since 1.1
      */
-    private void initTensorFlowAndLoadModel() {
+    private void enableTouchRecording(boolean enable) {
+        // a replay is not recorded again
+        enable &= !mReplaying;
+        if (enable && mTouchRecorder == null) {
+            DisplayMetrics metrics = new DisplayMetrics();
+            getWindowManager().getDefaultDisplay().getMetrics(metrics);
+            mTouchRecorder = new TouchRecorder(metrics.widthPixels, metrics.heightPixels);
+            mSessionFile = new File(new File(getFilesDir(), SESSION_DIR),
+                    "session-" + System.currentTimeMillis() + ".bin");
+            mDrawView.setTouchRecorder(mTouchRecorder);
+        } else if (!enable && mTouchRecorder != null) {
+            mDrawView.setTouchRecorder(null);
+            saveTouchSession();
+            mTouchRecorder = null;
+        }
+    }
+
+    /**
+     * This method records a button press if a touch session is recorded
+     * @param button one of the TouchSession.BUTTON_ constants
+     * @since 1.1
+     */
+    private void recordButton(int button) {
+        if (mTouchRecorder != null) {
+            mTouchRecorder.recordButton(button);
+        }
+    }
+
+    /**
+     * This method writes the recorded touch session on the executor thread
+     * The session is encoded on the main thread, recording may go on meanwhile
+     * @since 1.1
+     */
+    private void saveTouchSession() {
+        final byte[] data = mTouchRecorder.getSession().encode();
+        final File file = mSessionFile;
         executor.execute(new Runnable() {
             @Override
             public void run() {
+                File tmp = new File(file.getPath() + ".tmp");
                 try {
-                    classifier = TensorFlowImageClassifier.create(
-                            getAssets(),
-                            MODEL_FILE,
-                            LABEL_FILE,
-                            INPUT_SIZE,
-                            IMAGE_MEAN,
-                            IMAGE_STD,
-                            INPUT_NAME,
-                            OUTPUT_NAME);
-                } catch (final Exception e) {
-                    throw new RuntimeException("Error initializing TensorFlow!", e);
+                    File dir = file.getParentFile();
+                    if (!dir.isDirectory() && !dir.mkdirs()) {
+                        throw new IOException("Can not create " + dir);
+                    }
+                    OutputStream out = new FileOutputStream(tmp);
+                    try {
+                        out.write(data);
+                    } finally {
+                        out.close();
+                    }
+                    if (!tmp.renameTo(file)) {
+                        throw new IOException("Can not rename " + tmp);
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Touch session not saved", e);
+                    return;
                 }
+                Log.d(TAG, "Touch session saved to " + file + ", " + data.length + " bytes");
             }
         });
     }
 
     /**
-     * @param bitmap bitmap object, retrieved from DrawView object and passed into TF classifier
-     * @return results list of classification results
-     * @since 1.0
+     * This method lets the user pick one of the model bundles copied to app-private storage
+     * (see {@link ModelBundle}). The chosen bundle replaces the model without a restart and is
+     * loaded again on the next start, a rejected bundle keeps the current model
+     * @since 1.1
      */
-    public List<Classifier.Recognition> analyse(Bitmap bitmap)
-    {
-        bitmap = Bitmap.createScaledBitmap(bitmap, INPUT_SIZE, INPUT_SIZE, false);
-        final List<Classifier.Recognition> results = classifier.recognizeImage(bitmap);
-        return results;
+    private void chooseModelBundle() {
+        final String[] bundles = ModelBundle.list(getFilesDir());
+        AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+        builder.setTitle(R.string.modelBundleTitleString);
+        if (bundles.length == 0) {
+            builder.setMessage(R.string.noModelBundlesString)
+                    .setPositiveButton("ОК", new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            dialog.dismiss();
+                        }
+                    });
+        } else {
+            builder.setItems(bundles, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    mAnalyser.swapModel(bundles[which]);
+                }
+            });
+        }
+        AlertDialog alertDialog = builder.create();
+        alertDialog.show();
+    }
+
+    /**
+     * This method saves the drawing as a golden of the rasterizer check of the harness
+     * (RasterizerGolden): NAME.bin written by {@link DrawView#writeStrokes(OutputStream)} and
+     * NAME.png, the bitmap of {@link DrawView#proceed()}. The bitmap is copied on the main
+     * thread, encoded and written on the executor thread. Offered in debug builds only
+     * @since 1.1
+     */
+    private void saveGolden() {
+        final File dir = getExternalFilesDir(GOLDEN_DIR);
+        if (dir == null) {
+            Log.w(TAG, "Golden not saved, no external storage");
+            return;
+        }
+        final ByteArrayOutputStream strokes = new ByteArrayOutputStream();
+        try {
+            mDrawView.writeStrokes(strokes);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        final Bitmap canvas = mDrawView.proceed().copy(Bitmap.Config.ARGB_8888, false);
+        final String name = "golden-" + System.currentTimeMillis();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = new FileOutputStream(new File(dir, name + ".bin"));
+                    try {
+                        strokes.writeTo(out);
+                    } finally {
+                        out.close();
+                    }
+                    out = new BufferedOutputStream(
+                            new FileOutputStream(new File(dir, name + ".png")));
+                    try {
+                        canvas.compress(Bitmap.CompressFormat.PNG, 100, out);
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Golden not saved", e);
+                    return;
+                } finally {
+                    canvas.recycle();
+                }
+                Log.i(TAG, "Golden saved to " + new File(dir, name) + ".bin/.png");
+            }
+        });
+    }
+
+    /**
+     * This method replays a recorded touch session once the views are laid out
+     * The result of every classification is waited for before the next event
+     * @param file session file
+     * @param speed 1 for the recorded pauses, 0 for no pauses
+     * @see TouchReplayer
+     * @since 1.1
+     */
+    private void replaySession(File file, float speed) {
+        final TouchSession session;
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                session = TouchSession.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Touch session not replayed", e);
+            return;
+        }
+        mReplayer = new TouchReplayer(session, mDrawView, new TouchReplayer.Target() {
+            @Override
+            public boolean onButton(int button) {
+                switch (button) {
+                    case TouchSession.BUTTON_PROCEED:
+                        if (!mProceedButton.isEnabled()) {
+                            return false;
+                        }
+                        onProceedButtonClicked(mProceedButton);
+                        return true;
+                    case TouchSession.BUTTON_CLEAR:
+                        onClearButtonClicked(null);
+                        return false;
+                    case TouchSession.BUTTON_UPDATE:
+                        onUpdateButtonClicked(mUpdateButton);
+                        return false;
+                    case TouchSession.BUTTON_UNDO:
+                        if (mDrawView.undo()) {
+                            onDrawingEdited();
+                        }
+                        return false;
+                    case TouchSession.BUTTON_REDO:
+                        if (mDrawView.redo()) {
+                            onDrawingEdited();
+                        }
+                        return false;
+                    case TouchSession.BUTTON_NEW_GAME:
+                        newGame(true);
+                        return false;
+                    default:
+                        return false;
+                }
+            }
+        }, speed);
+        Log.i(TAG, "Replaying " + file + ", " + session.size() + " events");
+        mDrawView.post(new Runnable() {
+            @Override
+            public void run() {
+                mReplayer.start(new Runnable() {
+                    @Override
+                    public void run() {
+                        mReplayer = null;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * This method reads the game state stored by versions that kept it in SharedPreferences
+     * Used once, when there is no {@link MainActivity#GAME_STATE_FILE} yet
+     * @param state GameState object to fill
+     * @since 1.1
+     */
+    private void readLegacyPreferences(GameState state) {
+        SharedPreferences scorePreferences = getSharedPreferences("SCORE",
+                Context.MODE_PRIVATE);
+        SharedPreferences imagePreferences = getSharedPreferences("IMAGE", 0);
+        SharedPreferences button = getSharedPreferences("BUTTONS", 0);
+        SharedPreferences finalScorePreference = getSharedPreferences("GAME_SCORE",
+                Context.MODE_PRIVATE);
+        state.roundScore = Double.parseDouble(scorePreferences.getString("totalScore", "0"));
+        state.gameScore = Double.parseDouble(scorePreferences.getString("gameScore", "0"));
+        state.currentIteration = scorePreferences.getInt("n", 1);
+        state.currentImage = imagePreferences.getInt("iterator", 0);
+        state.currentTag = imagePreferences.getInt("currentTag", 0);
+        state.currentSubStep = imagePreferences.getInt("currentSubStep", 0);
+        state.currentStep = imagePreferences.getInt("currentStep", 0);
+        state.updateEnabled = button.getBoolean("update", false);
+        for (int i = 0; i <= state.currentTag; i++) {
+            state.scores[i] = Double.parseDouble(imagePreferences.getString(
+                    String.valueOf(i), "0"));
+        }
+        for (int i = 0; i <= state.currentIteration; i++) {
+            state.finalScores[i] = Double.parseDouble(finalScorePreference.getString(
+                    String.valueOf(i), "0"));
+        }
+    }
+
+    /**
+     * This method saves progress and score of the game
+     * Only encodes the state on the calling thread, see {@link GameStateStore#save(GameState)}
+     * @since 1.1
+     */
+    private void saveGameState() {
+        long start = System.nanoTime();
+        mEngine.snapshot(mGameState);
+        mGameStateStore.save(mGameState);
+        Log.d(TAG, "Game state saved in " + (System.nanoTime() - start) / 1000 + " us, "
+                + mGameStateStore.getStatString());
+    }
+
+    /**
+     * This method recognizes the current drawing with the stroke model, see
+     * {@link DrawingAnalyser#recognizeStrokes(int, List)}
+     * @since 1.1
+     */
+    private void recognizeStrokes() {
+        mAnalyser.recognizeStrokes(mDrawView.getVersion(), mDrawView.getStrokes());
     }
 
     /**
@@ -461,104 +1004,154 @@ public class MainActivity extends AppCompatActivity
     public void showMessageAfterLoading(String text){
         mMainTextView.setText("");
         final String finalMessage = text;
-        loadingDialog = new LoadingDialog(MainActivity.this);
-        loadingDialog.startLoadingDialog();
+        final LoadingDialog dialog = new LoadingDialog(MainActivity.this);
+        loadingDialog = dialog;
+        dialog.startLoadingDialog();
         final Handler handler = new Handler();
         handler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                loadingDialog.dismissDialog();
+                if (mDestroyed) {
+                    // the dialog was dismissed with the window
+                    return;
+                }
+                dialog.dismissDialog();
+                if (loadingDialog == dialog) {
+                    loadingDialog = null;
+                }
                 mMainTextView.setText(finalMessage);
-                mScoreView.setText(mStringGameScore);
+                mScoreView.setText(String.valueOf(mEngine.getGameScore()));
             }
         }, 500);
     }
 
     /**
-     * This method updates the scores of current round and game
-     * @param score double value of a score that user got from completing the task
-     * @since 1.0
+     * This method shows the current image, round and score of {@link MainActivity#mEngine}
+     * The image is loaded in the background, the next one is prefetched while the user draws
+     * @since 1.1
      */
-    public void updateScore(double score){
-        double intermScore = 0;
-        mGameScore = 0;
-        SharedPreferences scorePreference = getSharedPreferences("SCORE",
-                Context.MODE_PRIVATE);
-        SharedPreferences finalScorePreference = getSharedPreferences("GAME_SCORE",
-                Context.MODE_PRIVATE);
-        SharedPreferences.Editor scoreEdit = finalScorePreference.edit();
-        SharedPreferences.Editor editor = scorePreference.edit();
-        SharedPreferences imagePreference = getSharedPreferences("IMAGE",
-                Context.MODE_PRIVATE);
-        SharedPreferences.Editor imageEditor = imagePreference.edit();
-        // redo the score with new value
-        mScoreArray[mCurrentTag] = score;
-        for(int i = 0; i<= mCurrentTag; i++){
-            intermScore = intermScore + mScoreArray[i];
-            imageEditor.putString(String.valueOf(i), String.valueOf(mScoreArray[i]));
-        }
-        mFinalScoreArray[mCurrentIteration] = intermScore;
-
-        for(int i = 0; i<= mCurrentIteration; i++){
-            mGameScore += mFinalScoreArray[i];
-            scoreEdit.putString(String.valueOf(i), String.valueOf(mFinalScoreArray[i]));
-        }
-        scoreEdit.apply();
-        editor.putInt("n", mCurrentIteration);
-        mRoundScore = intermScore;
-        mRoundScore = Double.parseDouble(decimalFormat.format(mRoundScore));
-        mGameScore = Double.parseDouble(decimalFormat.format(mGameScore));
-        mStringRoundScore = String.valueOf(mRoundScore);
-        mStringGameScore = String.valueOf(mGameScore);
-        // saving score
-        editor.putString("totalScore", mStringRoundScore);
-        editor.putString("gameScore", mStringGameScore);
-        editor.apply();
-        imageEditor.putInt("iterator", mCurrentImage);
-        imageEditor.putInt("currentTag", mCurrentTag);
-        imageEditor.putInt("currentStep", mCurrentStep);
-        imageEditor.putInt("currentSubStep", mCurrentSubStep);
-        imageEditor.apply();
+    private void showProgress() {
+        mRoundView.setText(String.valueOf(mEngine.getRound() + 1));
+        mImageLoader.load(mImageArray[mEngine.getCurrentImage()], mReferenceImageCallback);
+        mImageLoader.prefetch(mImageArray[mEngine.getNextImage()]);
+        mImageView.setTag(mEngine.getCurrentTag());
+        mScoreView.setText(String.valueOf(mEngine.getGameScore()));
     }
+
     /**
      * This method is connected to proceedButton
-     * Takes bitmap image from DrawView object, invokes {@link MainActivity#analyse(Bitmap bitmap)}
-     * method and interprets the results taken from {@link MainActivity#analyse(Bitmap bitmap)}
+     * Takes a snapshot of the drawing and classifies it with
+     * {@link DrawingAnalyser#analyse(CanvasSnapshot, int, int, SampleCapture)} on the executor
+     * thread, the user may keep drawing meanwhile. The results are interpreted by
+     * {@link MainActivity#onAnalysed(CanvasSnapshot, List, int, long, boolean, float)}
      * @param v View object
      * @since 1.0
      */
     public void onProceedButtonClicked(View v)
     {
+        // method takes the drawing created by user and initiates classification
+        recordButton(TouchSession.BUTTON_PROCEED);
+        final CanvasSnapshot snapshot = mDrawView.snapshot();
+        final int target = mEngine.getCurrentTag();
+        final int image = mEngine.getCurrentImage();
+        final SampleCapture capture = mSampleCapture;
+        mProceedButton.setEnabled(false);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long analyseStart = System.nanoTime();
+                final List<Classifier.Recognition> results =
+                        mAnalyser.analyse(snapshot, target, image, capture);
+                final long latencyMs = (System.nanoTime() - analyseStart) / 1000000;
+                final int objectCount = mAnalyser.getObjectCount();
+                final boolean embeddingValid = mAnalyser.isEmbeddingValid();
+                final float similarity = mAnalyser.getReferenceSimilarity();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onAnalysed(snapshot, results, objectCount, latencyMs, embeddingValid,
+                                similarity);
+                    }
+                });
+            }
+        });
+    }
 
-        // method takes bitmap created by user and initiates classification
-        Bitmap final_image = mDrawView.proceed();
-        List<Classifier.Recognition> results = analyse(final_image);
+    /**
+     * This method interprets the results of
+     * {@link DrawingAnalyser#analyse(CanvasSnapshot, int, int, SampleCapture)}
+     * Called on the main thread
+     * @param snapshot classified snapshot
+     * @param results results list of classification results
+     * @param objectCount number of objects in the drawing
+     * @param latencyMs duration of the classification
+     * @param embeddingValid whether the embedding of the drawing was kept, see
+     *                       {@link DrawingAnalyser#confirm(int)}
+     * @param similarity similarity of the drawing to the shown reference image, NaN if unknown
+     * @since 1.1
+     */
+    private void onAnalysed(CanvasSnapshot snapshot, List<Classifier.Recognition> results,
+                            int objectCount, long latencyMs, boolean embeddingValid,
+                            float similarity) {
+        if (mDestroyed || isFinishing()) {
+            // the activity is gone, the attempt is not recorded
+            snapshot.release();
+            return;
+        }
+        if (mReplayer != null) {
+            // the next event is dispatched after this result is shown
+            mReplayer.onWorkDone();
+        }
+        mProceedButton.setEnabled(true);
+        snapshot.release();
+        if (snapshot.version != mDrawView.getVersion()) {
+            // the user changed the drawing meanwhile, the results are out of date
+            return;
+        }
 
+        if (objectCount > 1) {
+            // the user is asked to draw one object, the attempt does not count
+            StringBuilder titles = new StringBuilder();
+            for (Classifier.Recognition recognition : results) {
+                if (titles.length() > 0) {
+                    titles.append(", ");
+                }
+                titles.append(recognition.getTitle().trim());
+            }
+            showMessageAfterLoading(getString(R.string.multipleObjectsString, titles));
+            results.clear();
+            return;
+        }
 
-        int id = Integer.parseInt(results.get(0).getId());
+        // nothing above the threshold of the model is a wrong answer
+        int id = results.isEmpty() ? -1 : Integer.parseInt(results.get(0).getId());
+        float confidence = results.isEmpty() ? 0f : results.get(0).getConfidence();
+        if (!Float.isNaN(similarity)) {
+            // a drawing close to the shown picture scores higher than one of the class only
+            confidence = (1 - REFERENCE_WEIGHT) * confidence
+                    + REFERENCE_WEIGHT * Math.max(0f, similarity);
+        }
+        boolean painted = snapshot.painted;
         final String textOk = getString(R.string.goodJobString);
         final String textNotOk = getString(R.string.tryAgainString);
         final String textNotPainted = getString(R.string.notPaintedString);
 
-        SharedPreferences btnPreferences = getSharedPreferences("BUTTONS",
-                Context.MODE_PRIVATE);
-        SharedPreferences.Editor btnEditor = btnPreferences.edit();
-        mRoundScore = mGameScore;
-        mStringRoundScore = String.valueOf(mRoundScore);
-        if (mDrawView.checkIfPainted() && mCurrentTag == id){
+        if (painted && embeddingValid) {
+            // the user drew the shown image, right or wrong: similar drawings of the user are
+            // recognized as its class, above all the ones the model gets wrong
+            mAnalyser.confirm(mEngine.getCurrentTag());
+        }
+        if (painted && mEngine.answer(id, confidence)){
             // managing buttons
             mProceedButton.setEnabled(false);
             mDrawView.enablePaint(false);
-            double Score = Math.floor(results.get(0).getConfidence()*100)/100;
-            String validationScore = (String.valueOf(Score));
+            String validationScore = (String.valueOf(mEngine.getLastScore()));
             String dispText = textOk + " " + "Вы получили: " + validationScore + " из 1.";
-            updateScore(Score);
             showMessageAfterLoading(dispText);
             results.clear();
             mUpdateButton.setEnabled(true);
-            btnEditor.putBoolean("update", true);
-            btnEditor.apply();
-        } else if (!mDrawView.checkIfPainted()){
+            saveGameState();
+        } else if (!painted){
             showMessageAfterLoading(textNotPainted);
             results.clear();
         } else {
@@ -569,12 +1162,36 @@ public class MainActivity extends AppCompatActivity
             SharedPreferences scorePreferences = getSharedPreferences("PREFS",
                     Context.MODE_PRIVATE);
             boolean show = scorePreferences.getBoolean("helpDialog", true);
-            if(mHelpCounter > HELP_LIMIT && show){
+            if(mHelpCounter > HELP_LIMIT && show && !mReplaying){
                 helpMessage(); // used more than twice got it wrong, time to help
                 mHelpCounter = 0;
             }
             results.clear();
         }
+        if (painted) {
+            recordAttempt(id, confidence, latencyMs);
+        }
+    }
+
+    /**
+     * This method adds an attempt at the current image to {@link MainActivity#mScoreHistory}
+     * Called after {@link GameEngine#answer(int, float)}
+     * @param predicted class recognized by the model
+     * @param confidence confidence of the recognized class
+     * @param latencyMs duration of the classification
+     * @since 1.1
+     */
+    private void recordAttempt(int predicted, float confidence, long latencyMs) {
+        ScoreHistory.Attempt attempt = new ScoreHistory.Attempt();
+        attempt.round = mEngine.getRound();
+        attempt.classId = mEngine.getCurrentTag();
+        attempt.predicted = predicted;
+        attempt.confidence = confidence;
+        attempt.score = predicted == attempt.classId ? mEngine.getLastScore() : 0;
+        attempt.gameScore = mEngine.getGameScore();
+        attempt.latencyMs = latencyMs;
+        attempt.timestamp = System.currentTimeMillis();
+        mScoreHistory.record(attempt);
 
 
     }
@@ -661,6 +1278,11 @@ public class MainActivity extends AppCompatActivity
     public boolean onCreateOptionsMenu(Menu menu){
         MenuInflater menuInflater = getMenuInflater();
         menuInflater.inflate(R.menu.main, menu);
+        menu.findItem(R.id.captureSamples).setChecked(mSampleCapture != null);
+        menu.findItem(R.id.frameStats).setChecked(mFrameStatsEnabled);
+        menu.findItem(R.id.recordTouches).setChecked(mTouchRecorder != null);
+        menu.findItem(R.id.strokeModel).setChecked(mAnalyser.isStrokeModelEnabled());
+        menu.findItem(R.id.saveGolden).setVisible(BuildConfig.DEBUG);
         return super.onCreateOptionsMenu(menu);
     }
 
@@ -681,26 +1303,84 @@ public class MainActivity extends AppCompatActivity
             case(R.id.newGame):
                 newGame(true);
                 return true;
+            case(R.id.undo):
+                recordButton(TouchSession.BUTTON_UNDO);
+                if (mDrawView.undo()) {
+                    onDrawingEdited();
+                }
+                return true;
+            case(R.id.redo):
+                recordButton(TouchSession.BUTTON_REDO);
+                if (mDrawView.redo()) {
+                    onDrawingEdited();
+                }
+                return true;
+            case(R.id.captureSamples):
+                boolean capture = !item.isChecked();
+                item.setChecked(capture);
+                enableSampleCapture(capture);
+                SharedPreferences.Editor editor = getSharedPreferences("PREFS", 0).edit();
+                editor.putBoolean("captureSamples", capture);
+                editor.apply();
+                return true;
+            case(R.id.frameStats):
+                boolean record = !item.isChecked();
+                item.setChecked(record);
+                enableFrameStats(record);
+                getSharedPreferences("PREFS", 0).edit()
+                        .putBoolean("frameStats", record)
+                        .apply();
+                return true;
+            case(R.id.recordTouches):
+                boolean recordTouches = !item.isChecked();
+                item.setChecked(recordTouches);
+                enableTouchRecording(recordTouches);
+                getSharedPreferences("PREFS", 0).edit()
+                        .putBoolean("recordTouches", recordTouches)
+                        .apply();
+                return true;
+            case(R.id.saveGolden):
+                saveGolden();
+                return true;
+            case(R.id.modelBundle):
+                chooseModelBundle();
+                return true;
+            case(R.id.strokeModel):
+                boolean strokeModel = !item.isChecked();
+                item.setChecked(strokeModel);
+                mAnalyser.setStrokeModelEnabled(strokeModel);
+                getSharedPreferences("PREFS", 0).edit()
+                        .putBoolean("strokeModel", strokeModel)
+                        .apply();
+                recognizeStrokes();
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * This method drops the result of the previous classification after the drawing was
+     * changed by undo or redo, like {@link MainActivity#onClearButtonClicked(View)}
+     * @since 1.1
+     */
+    private void onDrawingEdited() {
+        recognizeStrokes();
+        mMainTextView.setText(" ");
+        mDrawView.enablePaint(true);
+        mProceedButton.setEnabled(true);
+    }
+
     /**
      * OnClick method for clearButton (clears mDrawView and sets empty mTextView1)
      * @param v View object
      * @since 1.0
      */
     public void onClearButtonClicked(View v){
+        recordButton(TouchSession.BUTTON_CLEAR);
         mDrawView.clear();
         mMainTextView.setText(" ");
         mDrawView.enablePaint(true);
         mProceedButton.setEnabled(true);
-        SharedPreferences btnPreferences = getSharedPreferences("BUTTONS",
-                Context.MODE_PRIVATE);
-        SharedPreferences.Editor btnEditor = btnPreferences.edit();
-        btnEditor.putBoolean("proceed", true);
-        btnEditor.putBoolean("paint", true);
-        btnEditor.apply();
     }
 
     /**
@@ -710,44 +1390,12 @@ public class MainActivity extends AppCompatActivity
      */
     public void onUpdateButtonClicked(View v){
         // this method is called when user wants to proceed to the next picture
-        SharedPreferences scorePreference = getSharedPreferences("IMAGE",
-                Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = scorePreference.edit();
+        recordButton(TouchSession.BUTTON_UPDATE);
         mUpdateButton.setEnabled(false);
-
-        if(mCurrentTag < 9 && mCurrentStep < 45){
-            mCurrentTag++;
-            mCurrentStep = mCurrentStep + 5;
-            mCurrentImage = mCurrentStep + mCurrentSubStep;
-            mDrawView.enablePaint(true);
-            mDrawView.clear();
-            mImageView.setImageResource(mImageArray[mCurrentImage]);
-            mImageView.setTag(mCurrentTag);
-            mMainTextView.setText(" ");
-            editor.putInt("iterator", mCurrentImage);
-            editor.putInt("currentTag", mCurrentTag);
-            editor.putInt("currentStep", mCurrentStep);
-            editor.putInt("currentSubStep", mCurrentSubStep);
-            editor.apply();
-            mProceedButton.setEnabled(true);
-            SharedPreferences btnPreferences = getSharedPreferences("BUTTONS",
-                    Context.MODE_PRIVATE);
-            SharedPreferences.Editor btnEditor = btnPreferences.edit();
-
-            btnEditor.putBoolean("update",false);
-
-            btnEditor.apply();
-        } else {
-            mCurrentTag = 0;
-            mCurrentStep = 0;
-            mCurrentImage = mCurrentStep + mCurrentSubStep;
-            editor.putInt("iterator", mCurrentImage);
-            editor.putInt("currentTag", mCurrentTag);
-            editor.putInt("currentStep", mCurrentStep);
-            editor.putInt("currentSubStep", mCurrentSubStep);
-            editor.apply();
-            newGame(false);
+        if (mEngine.getPhase() != GameEngine.Phase.ANSWERED) {
+            return;
         }
+        showTransition(mEngine.next());
     }
 
     /**
@@ -779,7 +1427,8 @@ public class MainActivity extends AppCompatActivity
         builder.setCancelable(false);
         builder.setTitle(R.string.endRoundString)
                 .setMessage(getString(R.string.finalMessageString) +
-                        getString(R.string.finalScoreString) + " " + mStringRoundScore)
+                        getString(R.string.finalScoreString) + " "
+                        + mEngine.getCompletedScore())
                 .setPositiveButton("Продолжить!", new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
@@ -800,7 +1449,8 @@ public class MainActivity extends AppCompatActivity
         builder.setCancelable(false);
         builder.setTitle(R.string.endGameString)
                 .setMessage(getString(R.string.finalGameMessageString) +
-                        getString(R.string.finalScoreString) + " " + mStringGameScore)
+                        getString(R.string.finalScoreString) + " "
+                        + mEngine.getCompletedScore())
                 .setPositiveButton("Начать заново!", new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
@@ -813,83 +1463,38 @@ public class MainActivity extends AppCompatActivity
 
 
     /**
-     * This method is called whenever the new game needs to be started
-     * May be called automatically (see {@link MainActivity#onUpdateButtonClicked(View)})
-     * Or may be called from menu bar (see {@link MainActivity#onOptionsItemSelected(MenuItem)})
-     * @param byUser boolean variable, true if method was called from menu bar, false if not;
+     * This method is called when user starts a new game from menu bar
+     * (see {@link MainActivity#onOptionsItemSelected(MenuItem)})
+     * @param byUser kept for compatibility, rounds and games completed by answering are
+     *               handled by {@link MainActivity#onUpdateButtonClicked(View)}
      * @since 1.0
      */
     public void newGame(boolean byUser){
-        SharedPreferences scorePreference = getSharedPreferences("SCORE",
-                Context.MODE_PRIVATE);
-        SharedPreferences imagePreference = getSharedPreferences("IMAGE",
-                Context.MODE_PRIVATE);
-        SharedPreferences btnPreferences = getSharedPreferences("BUTTONS",
-                Context.MODE_PRIVATE);
-        SharedPreferences finalScorePreference = getSharedPreferences("GAME_SCORE",
-                Context.MODE_PRIVATE);
-        SharedPreferences.Editor scoreEdit = finalScorePreference.edit();
-        SharedPreferences.Editor btnEditor = btnPreferences.edit();
-        SharedPreferences.Editor imageEditor = imagePreference.edit();
-        SharedPreferences.Editor editor = scorePreference.edit();
-        if(mCurrentSubStep < (NUMBER_OF_ROUNDS-1) && !byUser){
-            mCurrentIteration++;
-            scoreEdit.putInt("n", mCurrentIteration);
-            scoreEdit.apply();
-            // we have 5 different images for each class
-            mCurrentSubStep = mCurrentSubStep + 1;
-            mRoundScore = 0;
+        recordButton(TouchSession.BUTTON_NEW_GAME);
+        showTransition(mEngine.newGame());
+    }
+
+    /**
+     * This method shows the result of a transition of {@link MainActivity#mEngine}
+     * and saves the game state
+     * @param transition what was completed
+     * @since 1.1
+     */
+    private void showTransition(GameEngine.Transition transition) {
+        if (transition == GameEngine.Transition.ROUND_OVER) {
             finalMessageRound();
-        } else {
-            mCurrentSubStep = 0;
+        } else if (transition == GameEngine.Transition.GAME_OVER) {
             finalMessageGame();
-            mCurrentStep = 0;
-            mGameScore = 0;
-            Arrays.fill(mFinalScoreArray,0.0);
-            mCurrentIteration = 0;
-            for(int i = 0; i<= mCurrentTag; i++){
-                mScoreArray[i] = 0;
-                imageEditor.putString(String.valueOf(i), String.valueOf(mScoreArray[i]));
-            }
-            for(int i = 0; i<= mCurrentIteration; i++){
-                mFinalScoreArray[i] = 0;
-                scoreEdit.putString(String.valueOf(i), String.valueOf(mFinalScoreArray[i]));
-            }
-            mStringGameScore = "0";
-
+            mScoreHistory.finishGame(mEngine.getCompletedScore(), System.currentTimeMillis());
         }
-        mStringGameScore = String.valueOf(mGameScore);
-        mStringRoundScore = String.valueOf(mRoundScore);
+        saveGameState();
         // managing buttons
         mProceedButton.setEnabled(true);
         mUpdateButton.setEnabled(false);
-        // managing values
-        Arrays.fill(mScoreArray,0.0);
-        // loading values into SharedPreference objects
-        btnEditor.putBoolean("update", false);
-        btnEditor.apply();
-        this.mStringRoundScore = String.valueOf(this.mRoundScore);
-        this.mStringGameScore = String.valueOf(this.mGameScore);
-        mCurrentTag = 0;
-        mCurrentImage = mCurrentSubStep + mCurrentStep;
-        mStringRoundScore = String.valueOf(mRoundScore);
-        editor.putString("totalScore", this.mStringRoundScore);
-        editor.putString("gameScore", this.mStringGameScore);
-        editor.apply();
-        scoreEdit.apply();
-        imageEditor.putInt("iterator", mCurrentImage);
-        imageEditor.putInt("currentTag", mCurrentTag);
-        imageEditor.putInt("currentSubStep", mCurrentSubStep);
-        imageEditor.putInt("currentStep", mCurrentStep);
-        imageEditor.apply();
-        // setting objects to new values
-        mRoundView.setText(String.valueOf((mCurrentSubStep+1)));
         mDrawView.enablePaint(true);
         mDrawView.clear();
-        mImageView.setImageResource(mImageArray[mCurrentImage]);
-        mImageView.setTag(mCurrentTag);
-        mScoreView.setText(String.valueOf(mGameScore));
         mMainTextView.setText(" ");
+        showProgress();
     }
 
 
@@ -0,0 +1,220 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A replacement model stored in app-private storage.
+ * A bundle is a directory that holds {@link ModelBundle#GRAPH_FILE}, {@link ModelBundle#LABEL_FILE}
+ * and, optionally, {@link ModelBundle#CONFIG_FILE} with the values that differ from the defaults
+ * of the model shipped in the APK (see {@link MainActivity})
+ * @since 1.1
+ */
+public class ModelBundle {
+    private static final String TAG = "ModelBundle";
+
+    /**
+     * Name of the directory inside of getFilesDir() which holds all model bundles
+     * @since 1.1
+     */
+    public static final String BUNDLES_DIR = "models";
+
+    /**
+     * Name of the GraphDef file within a bundle
+     * @since 1.1
+     */
+    public static final String GRAPH_FILE = "graph.pb";
+
+    /**
+     * Name of the label file within a bundle
+     * @since 1.1
+     */
+    public static final String LABEL_FILE = "labels.txt";
+
+    /**
+     * Name of the optional config file within a bundle
+     * @since 1.1
+     */
+    public static final String CONFIG_FILE = "model.properties";
+
+    /**
+     * Largest difference from 1 of the sum of the scores of the smoke inference, the float
+     * softmax of a large model does not sum up to exactly 1
+     */
+    private static final double SCORE_SUM_TOLERANCE = 1e-3;
+
+    private final File directory;
+    private final int inputSize;
+    private final int imageMean;
+    private final float imageStd;
+    private final String inputName;
+    private final String outputName;
+
+    private ModelBundle(File directory, Properties config) {
+        this.directory = directory;
+        this.inputSize = Integer.parseInt(config.getProperty("inputSize",
+                String.valueOf(MainActivity.INPUT_SIZE)));
+        this.imageMean = Integer.parseInt(config.getProperty("imageMean",
+                String.valueOf(MainActivity.IMAGE_MEAN)));
+        this.imageStd = Float.parseFloat(config.getProperty("imageStd",
+                String.valueOf(MainActivity.IMAGE_STD)));
+        this.inputName = config.getProperty("inputName", MainActivity.INPUT_NAME);
+        this.outputName = config.getProperty("outputName", MainActivity.OUTPUT_NAME);
+    }
+
+    /**
+     * This method lists the bundles in {@link ModelBundle#BUNDLES_DIR}, complete or not
+     * @param filesDir app-private files directory
+     * @return names of the bundle directories in alphabetical order, empty if there are none
+     * @since 1.1
+     */
+    public static String[] list(File filesDir) {
+        File[] files = new File(filesDir, BUNDLES_DIR).listFiles();
+        List<String> names = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    names.add(file.getName());
+                }
+            }
+        }
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * This method reads the description of a bundle, the model itself is not loaded yet
+     * @param directory directory of the bundle
+     * @return ModelBundle object
+     * @throws IOException if the bundle is incomplete or its config can not be read
+     * @since 1.1
+     */
+    public static ModelBundle open(File directory) throws IOException {
+        if (!new File(directory, GRAPH_FILE).isFile() || !new File(directory, LABEL_FILE).isFile()) {
+            throw new IOException("Incomplete model bundle: " + directory);
+        }
+        Properties config = new Properties();
+        File configFile = new File(directory, CONFIG_FILE);
+        if (configFile.isFile()) {
+            InputStream in = new FileInputStream(configFile);
+            try {
+                config.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        try {
+            return new ModelBundle(directory, config);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed " + CONFIG_FILE + " in " + directory, e);
+        }
+    }
+
+    /**
+     * @return name of the bundle (name of its directory)
+     * @since 1.1
+     */
+    public String getName() {
+        return directory.getName();
+    }
+
+    /**
+     * @return input size of the model of this bundle
+     * @since 1.1
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * This method loads the model and runs one smoke inference on a blank canvas.
+     * The scores of every class must be finite, within [0, 1] and sum up to 1.
+     * Must not be called on the UI thread
+     * @return Classifier object that passed the smoke inference
+     * @throws IOException if the model can not be loaded or produces unusable results
+     * @since 1.1
+     */
+    public Classifier createValidatedClassifier() throws IOException {
+        final Classifier candidate;
+        try {
+            candidate = TensorFlowImageClassifier.create(
+                    new File(directory, GRAPH_FILE),
+                    new File(directory, LABEL_FILE),
+                    inputSize,
+                    imageMean,
+                    imageStd,
+                    inputName,
+                    outputName);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to load model bundle " + getName(), e);
+        }
+        validate(candidate, inputSize, getName());
+        return candidate;
+    }
+
+    /**
+     * This method runs one smoke inference on a blank canvas, see
+     * {@link ModelBundle#createValidatedClassifier()}. A rejected model is closed
+     * Must not be called on the UI thread
+     * @param candidate model to check
+     * @param inputSize input size of the model
+     * @param name name of the model for the log and the errors
+     * @throws IOException if the model produces unusable results
+     * @since 1.1
+     */
+    static void validate(Classifier candidate, int inputSize, String name) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Bitmap blank = Bitmap.createBitmap(inputSize, inputSize, Bitmap.Config.ARGB_8888);
+            blank.eraseColor(Color.WHITE);
+            // the raw scores are checked, a blank image need not score any class over the
+            // threshold of the results
+            float[] scores = new float[candidate.getNumClasses()];
+            if (scores.length == 0) {
+                throw new IOException("Model of " + name + " has no classes");
+            }
+            ((TensorFlowImageClassifier) candidate).scoreImage(blank, scores);
+            double sum = 0;
+            for (int i = 0; i < scores.length; i++) {
+                float score = scores[i];
+                if (Float.isNaN(score) || score < 0f || score > 1f) {
+                    throw new IOException("Smoke inference of " + name
+                            + " returned invalid score " + score + " of class " + i);
+                }
+                sum += score;
+            }
+            if (Math.abs(sum - 1.0) > SCORE_SUM_TOLERANCE) {
+                throw new IOException("Smoke inference of " + name
+                        + " returned scores summing up to " + sum);
+            }
+        } catch (IOException | RuntimeException e) {
+            candidate.close();
+            throw e instanceof IOException
+                    ? (IOException) e
+                    : new IOException("Smoke inference of " + name + " failed", e);
+        }
+        Log.i(TAG, "Model " + name + " passed smoke inference in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,201 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies of the canvas of {@link DrawView} after every n-th stroke.
+ * Undo draws the nearest copy and replays only the strokes after it, so its cost does not
+ * grow with the number of strokes. The copies are ARGB_8888 like the canvas: RGB_565 would
+ * quantize the anti-aliased edges of the strokes, so a restored canvas would differ from
+ * one drawn from scratch. Their total size is capped: the copy farthest from the current stroke is dropped first
+ * @since 1.1
+ */
+class RasterCheckpoints {
+
+    /**
+     * One copy of the canvas with the number of strokes drawn on it
+     */
+    private static final class Checkpoint {
+        final int strokes;
+        final Bitmap bitmap;
+
+        Checkpoint(int strokes, Bitmap bitmap) {
+            this.strokes = strokes;
+            this.bitmap = bitmap;
+        }
+    }
+
+    /**
+     * Size of a pixel of a copy
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int mInterval;
+    private final long mMaxBytes;
+
+    /**
+     * Checkpoints ordered by the number of strokes
+     */
+    private final List<Checkpoint> mCheckpoints = new ArrayList<>();
+    private final Canvas mCanvas = new Canvas();
+    private long mBytes = 0;
+
+    /**
+     * Source of the copies and destination of dropped copies, null to create and recycle them
+     */
+    private BitmapPool mBitmapPool;
+
+    /**
+     * Constructor of the class
+     * @param interval a checkpoint is kept after every interval strokes
+     * @param maxBytes maximal size of all checkpoints together
+     * @since 1.1
+     */
+    RasterCheckpoints(int interval, long maxBytes) {
+        mInterval = interval;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @param pool BitmapPool object, null to create and recycle the copies
+     * @since 1.1
+     */
+    void setBitmapPool(BitmapPool pool) {
+        mBitmapPool = pool;
+    }
+
+    /**
+     * This method keeps a copy of the canvas if strokes is a multiple of the interval
+     * @param strokes number of strokes drawn on the canvas
+     * @param canvasBitmap bitmap of the canvas
+     * @since 1.1
+     */
+    void onStrokeDrawn(int strokes, Bitmap canvasBitmap) {
+        if (strokes % mInterval != 0 || indexOf(strokes) >= 0) {
+            return;
+        }
+        long size = sizeOf(canvasBitmap);
+        if (size > mMaxBytes) {
+            return;
+        }
+        Bitmap bitmap = null;
+        while (mBytes + size > mMaxBytes) {
+            Checkpoint evicted = mCheckpoints.remove(farthestFrom(strokes));
+            mBytes -= sizeOf(evicted.bitmap);
+            if (bitmap == null && evicted.bitmap.getWidth() == canvasBitmap.getWidth()
+                    && evicted.bitmap.getHeight() == canvasBitmap.getHeight()) {
+                bitmap = evicted.bitmap;
+            } else {
+                drop(evicted.bitmap);
+            }
+        }
+        if (bitmap == null) {
+            bitmap = mBitmapPool != null
+                    ? mBitmapPool.acquire(canvasBitmap.getWidth(), canvasBitmap.getHeight(),
+                            Bitmap.Config.ARGB_8888)
+                    : Bitmap.createBitmap(canvasBitmap.getWidth(), canvasBitmap.getHeight(),
+                            Bitmap.Config.ARGB_8888);
+        }
+        mCanvas.setBitmap(bitmap);
+        mCanvas.drawBitmap(canvasBitmap, 0, 0, null);
+        mCanvas.setBitmap(null);
+        int position = 0;
+        while (position < mCheckpoints.size() && mCheckpoints.get(position).strokes < strokes) {
+            position++;
+        }
+        mCheckpoints.add(position, new Checkpoint(strokes, bitmap));
+        mBytes += size;
+    }
+
+    /**
+     * This method draws the nearest checkpoint at or below a number of strokes
+     * @param strokes number of strokes that should be on the canvas
+     * @param canvas canvas of the view
+     * @return number of strokes on the canvas after the call, 0 if there was no checkpoint and
+     * nothing was drawn
+     * @since 1.1
+     */
+    int restore(int strokes, Canvas canvas) {
+        for (int i = mCheckpoints.size() - 1; i >= 0; i--) {
+            Checkpoint checkpoint = mCheckpoints.get(i);
+            if (checkpoint.strokes <= strokes) {
+                canvas.drawBitmap(checkpoint.bitmap, 0, 0, null);
+                return checkpoint.strokes;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * This method drops the checkpoints of more than a number of strokes
+     * Called when a stroke is drawn after undo, the undone strokes can not be redone anymore
+     * @param strokes number of strokes
+     * @since 1.1
+     */
+    void truncate(int strokes) {
+        for (int i = mCheckpoints.size() - 1; i >= 0; i--) {
+            Checkpoint checkpoint = mCheckpoints.get(i);
+            if (checkpoint.strokes <= strokes) {
+                break;
+            }
+            mCheckpoints.remove(i);
+            mBytes -= sizeOf(checkpoint.bitmap);
+            drop(checkpoint.bitmap);
+        }
+    }
+
+    private void drop(Bitmap bitmap) {
+        if (mBitmapPool != null) {
+            mBitmapPool.release(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * This method drops every checkpoint
+     * @since 1.1
+     */
+    void clear() {
+        truncate(-1);
+    }
+
+    private int indexOf(int strokes) {
+        for (int i = 0; i < mCheckpoints.size(); i++) {
+            if (mCheckpoints.get(i).strokes == strokes) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int farthestFrom(int strokes) {
+        int farthest = 0;
+        for (int i = 1; i < mCheckpoints.size(); i++) {
+            if (Math.abs(mCheckpoints.get(i).strokes - strokes)
+                    > Math.abs(mCheckpoints.get(farthest).strokes - strokes)) {
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        return (long) bitmap.getWidth() * bitmap.getHeight() * BYTES_PER_PIXEL;
+    }
+}
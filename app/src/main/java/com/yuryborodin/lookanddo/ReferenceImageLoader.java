@@ -0,0 +1,296 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads the reference images of the game off the main thread.
+ * Images are decoded subsampled to the size of the view that shows them, into free bitmaps of
+ * the {@link BitmapPool}, on a background thread. Decoded images are kept in a small LRU cache,
+ * so the next image can be prefetched while the user is drawing and shown without waiting.
+ * Images evicted from the cache go back to the pool unless they are shown.
+ * Must be used on the main thread, only decoding runs on the background thread
+ * @since 1.1
+ */
+public class ReferenceImageLoader {
+    private static final String TAG = "ReferenceImageLoader";
+
+    /**
+     * Receives the image requested with {@link ReferenceImageLoader#load(int, Callback)}
+     * @since 1.1
+     */
+    public interface Callback {
+        /**
+         * This method is called on the main thread when the requested image is decoded,
+         * immediately if it is cached
+         * @param resId id of the drawable
+         * @param bitmap decoded image, null if it can not be decoded; owned by the loader and
+         *               valid until the next image is delivered
+         * @since 1.1
+         */
+        void onImageLoaded(int resId, Bitmap bitmap);
+    }
+
+    private final Resources mResources;
+    private final BitmapPool mPool;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mDecoder;
+
+    /**
+     * Decoded images by id of the drawable
+     */
+    private final LruCache<Integer, Bitmap> mCache;
+
+    /**
+     * Ids of the drawables that are being decoded
+     */
+    private final Set<Integer> mPending = new HashSet<>();
+
+    private int mTargetWidth = 0;
+    private int mTargetHeight = 0;
+
+    /**
+     * Requested image and its receiver
+     */
+    private int mRequested = 0;
+    private Callback mCallback;
+
+    /**
+     * Image delivered last, whether it was evicted from the cache while shown
+     */
+    private Bitmap mShown;
+    private boolean mShownEvicted = false;
+
+    private boolean mClosed = false;
+
+    private int mHits = 0;
+    private int mMisses = 0;
+    private int mPrefetches = 0;
+
+    /**
+     * Constructor of the class
+     * @param resources Resources object
+     * @param pool pool the images are decoded into and released to
+     * @param maxCacheBytes maximal size of the cached images together
+     * @since 1.1
+     */
+    public ReferenceImageLoader(Resources resources, BitmapPool pool, int maxCacheBytes) {
+        mResources = resources;
+        mPool = pool;
+        mCache = new LruCache<Integer, Bitmap>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, Bitmap oldValue,
+                                        Bitmap newValue) {
+                if (oldValue == mShown) {
+                    mShownEvicted = true;
+                } else {
+                    mPool.release(oldValue);
+                }
+            }
+        };
+        mDecoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                // below the main thread, which draws the strokes meanwhile
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * This method sets the size images are decoded for, cached images are kept
+     * @param width width of the view, images are not subsampled if it is not positive
+     * @param height height of the view
+     * @since 1.1
+     */
+    public void setTargetSize(int width, int height) {
+        mTargetWidth = width;
+        mTargetHeight = height;
+    }
+
+    /**
+     * This method requests an image, replacing the previous request
+     * @param resId id of the drawable, 0 delivers null
+     * @param callback receiver of the image
+     * @since 1.1
+     */
+    public void load(int resId, Callback callback) {
+        mRequested = resId;
+        mCallback = callback;
+        if (resId == 0) {
+            deliver(0, null, false);
+            return;
+        }
+        Bitmap cached = mCache.get(resId);
+        if (cached != null) {
+            mHits++;
+            deliver(resId, cached, true);
+            return;
+        }
+        mMisses++;
+        decode(resId);
+    }
+
+    /**
+     * This method decodes an image into the cache if it is not cached yet
+     * @param resId id of the drawable, 0 is ignored
+     * @since 1.1
+     */
+    public void prefetch(int resId) {
+        if (resId == 0 || mCache.get(resId) != null) {
+            return;
+        }
+        if (decode(resId)) {
+            mPrefetches++;
+        }
+    }
+
+    /**
+     * This method drops the cached images that are not shown, e.g. when the system is low on
+     * memory
+     * @since 1.1
+     */
+    public void trimMemory() {
+        mCache.evictAll();
+    }
+
+    /**
+     * This method stops decoding and releases every image to the pool;
+     * the view must not show the delivered image anymore
+     * @since 1.1
+     */
+    public void close() {
+        mClosed = true;
+        mDecoder.shutdownNow();
+        // keeps the shown image, it is released once
+        mCache.evictAll();
+        mPool.release(mShown);
+        mShown = null;
+    }
+
+    /**
+     * @return hits, misses and prefetches of the cache
+     * @since 1.1
+     */
+    public String getStatString() {
+        return "hits=" + mHits + " misses=" + mMisses + " prefetches=" + mPrefetches
+                + " cached=" + mCache.size() / 1024 + " KB";
+    }
+
+    /**
+     * @return false if the image is being decoded already
+     */
+    private boolean decode(final int resId) {
+        if (mClosed || !mPending.add(resId)) {
+            return false;
+        }
+        final int targetWidth = mTargetWidth;
+        final int targetHeight = mTargetHeight;
+        mDecoder.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                int sampleSize = getSampleSize(resId, targetWidth, targetHeight);
+                final Bitmap bitmap = mPool.decodeResource(mResources, resId, sampleSize);
+                Log.d(TAG, "Decoded " + resId + " with sample size " + sampleSize + " in "
+                        + (System.nanoTime() - start) / 1000 + " us");
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDecoded(resId, bitmap);
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    private void onDecoded(int resId, Bitmap bitmap) {
+        mPending.remove(resId);
+        if (mClosed) {
+            mPool.release(bitmap);
+            return;
+        }
+        // an image larger than the whole cache would be evicted by put right away
+        boolean cached = bitmap != null && bitmap.getAllocationByteCount() <= mCache.maxSize();
+        if (cached) {
+            mCache.put(resId, bitmap);
+        }
+        if (resId == mRequested) {
+            deliver(resId, bitmap, cached);
+        } else if (!cached) {
+            mPool.release(bitmap);
+        }
+    }
+
+    private void deliver(int resId, Bitmap bitmap, boolean cached) {
+        Bitmap previous = mShown;
+        boolean previousEvicted = mShownEvicted;
+        mShown = bitmap;
+        mShownEvicted = !cached;
+        mCallback.onImageLoaded(resId, bitmap);
+        // not shown anymore and not cached, the next image may be decoded into it
+        if (previousEvicted && previous != bitmap) {
+            mPool.release(previous);
+        }
+    }
+
+    private int getSampleSize(int resId, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, options);
+        return computeSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+    }
+
+    /**
+     * This method computes the subsampling of an image that is shown in a view
+     * @param width width of the image
+     * @param height height of the image
+     * @param targetWidth width of the view
+     * @param targetHeight height of the view
+     * @return largest power of two that keeps the image at least as large as the view
+     *         in one dimension, so the view never scales it up
+     * @since 1.1
+     */
+    static int computeSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth
+                || height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
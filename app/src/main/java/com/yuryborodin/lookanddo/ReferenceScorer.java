@@ -0,0 +1,191 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Embeddings of the reference images, computed at build time, and the similarity of a drawing
+ * to them.
+ * Every embedding is normalized to unit length and quantized to bytes with its own scale, so
+ * an image of a 2048 value embedding takes 2 KB. The similarity is the cosine of the
+ * embedding of a drawing and a reference, one pass over both vectors.
+ * <pre>
+ * magic 'LDRE', int version, int count, int dimension   (big-endian)
+ * per image: UTF name (resource entry name of the image), float scale
+ * per image: dimension signed bytes, value = byte * scale
+ * </pre>
+ * @since 1.1
+ */
+public final class ReferenceScorer {
+
+    private static final int MAGIC = 0x4C445245; // "LDRE"
+    private static final int VERSION = 1;
+
+    private final String[] mNames;
+    private final float[] mScales;
+    private final byte[] mCodes;
+    private final int mDimension;
+
+    private ReferenceScorer(String[] names, float[] scales, byte[] codes, int dimension) {
+        mNames = names;
+        mScales = scales;
+        mCodes = codes;
+        mDimension = dimension;
+    }
+
+    /**
+     * This method writes embeddings in the format of this class
+     * @param out OutputStream object, callers provide buffering
+     * @param names names of the images
+     * @param embeddings embeddings of the images, of equal length, in the order of names
+     * @throws IOException if the embeddings can not be written
+     * @since 1.1
+     */
+    public static void write(OutputStream out, List<String> names, List<float[]> embeddings)
+            throws IOException {
+        int dimension = embeddings.isEmpty() ? 0 : embeddings.get(0).length;
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(names.size());
+        data.writeInt(dimension);
+        byte[][] codes = new byte[embeddings.size()][];
+        for (int i = 0; i < names.size(); i++) {
+            float[] embedding = embeddings.get(i);
+            if (embedding.length != dimension) {
+                throw new IllegalArgumentException("Embeddings of different lengths");
+            }
+            codes[i] = new byte[dimension];
+            data.writeUTF(names.get(i));
+            data.writeFloat(KnnIndex.quantize(embedding, dimension, codes[i], 0));
+        }
+        for (byte[] code : codes) {
+            data.write(code);
+        }
+        data.flush();
+    }
+
+    /**
+     * @param in InputStream object, callers provide buffering
+     * @return embeddings of the stream
+     * @throws IOException if the stream is not in this format or of a newer version
+     * @since 1.1
+     */
+    public static ReferenceScorer read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a reference embedding stream");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported reference embedding version " + version);
+        }
+        int count = data.readInt();
+        int dimension = data.readInt();
+        if (count < 0 || dimension < 0 || (long) count * dimension > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted reference embeddings");
+        }
+        String[] names = new String[count];
+        float[] scales = new float[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = data.readUTF();
+            scales[i] = data.readFloat();
+        }
+        byte[] codes = new byte[count * dimension];
+        data.readFully(codes);
+        return new ReferenceScorer(names, scales, codes, dimension);
+    }
+
+    /**
+     * @return number of reference images
+     * @since 1.1
+     */
+    public int size() {
+        return mNames.length;
+    }
+
+    /**
+     * @return length of the embeddings
+     * @since 1.1
+     */
+    public int getDimension() {
+        return mDimension;
+    }
+
+    /**
+     * @param name resource entry name of an image
+     * @return index of the image, -1 if there is no embedding of it
+     * @since 1.1
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < mNames.length; i++) {
+            if (mNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method compares the embedding of a drawing with a reference image
+     * The loop is unrolled by four with independent sums, so the multiplications of one step
+     * do not wait for each other
+     * @param reference index of the image
+     * @param embedding embedding of the drawing, {@link ReferenceScorer#getDimension()} values
+     * @return cosine similarity within [-1, 1], 0 if either embedding is zero
+     * @since 1.1
+     */
+    public float similarity(int reference, float[] embedding) {
+        if (embedding.length != mDimension) {
+            throw new IllegalArgumentException("Embedding of " + embedding.length
+                    + " values, expected " + mDimension);
+        }
+        final byte[] codes = mCodes;
+        final int offset = reference * mDimension;
+        final int end = mDimension & ~3;
+        float dot0 = 0f, dot1 = 0f, dot2 = 0f, dot3 = 0f;
+        float norm0 = 0f, norm1 = 0f, norm2 = 0f, norm3 = 0f;
+        int i = 0;
+        for (; i < end; i += 4) {
+            final float e0 = embedding[i];
+            final float e1 = embedding[i + 1];
+            final float e2 = embedding[i + 2];
+            final float e3 = embedding[i + 3];
+            dot0 += e0 * codes[offset + i];
+            dot1 += e1 * codes[offset + i + 1];
+            dot2 += e2 * codes[offset + i + 2];
+            dot3 += e3 * codes[offset + i + 3];
+            norm0 += e0 * e0;
+            norm1 += e1 * e1;
+            norm2 += e2 * e2;
+            norm3 += e3 * e3;
+        }
+        for (; i < mDimension; i++) {
+            final float e = embedding[i];
+            dot0 += e * codes[offset + i];
+            norm0 += e * e;
+        }
+        final float norm = norm0 + norm1 + norm2 + norm3;
+        if (norm == 0f) {
+            return 0f;
+        }
+        final float similarity = (dot0 + dot1 + dot2 + dot3) * mScales[reference]
+                / (float) Math.sqrt(norm);
+        return Math.max(-1f, Math.min(1f, similarity));
+    }
+}
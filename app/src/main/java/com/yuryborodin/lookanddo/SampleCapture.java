@@ -0,0 +1,347 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Captures classified drawings with their predictions as training samples.
+ * {@link SampleCapture#offer} only copies the pixels of the model input into a recycled
+ * buffer, conversion to gray bytes, compression and disk I/O are done by a background
+ * thread. When every buffer is taken the sample is dropped, the caller never waits.
+ * <p>
+ * Samples are written in batches to GZIP files named samples-&lt;time&gt;.bin.gz, a batch is
+ * closed when it is full or when no sample came for {@link SampleCapture#IDLE_SECONDS}.
+ * The oldest files are deleted when the directory grows over its quota. Batches left open
+ * by a killed process (samples-&lt;time&gt;.bin.gz.tmp) are deleted when a writer starts.
+ * A file is a sequence of records, all big-endian:
+ * <pre>
+ * int magic 'LDSC', int version
+ * per sample: int target, int predicted, float confidence, long timestamp,
+ *             short size, size * size gray bytes (row major, 0 is black)
+ * </pre>
+ * @since 1.1
+ */
+public class SampleCapture {
+    private static final String TAG = "SampleCapture";
+
+    /**
+     * Name of the capture directory (in getFilesDir())
+     * @since 1.1
+     */
+    public static final String CAPTURE_DIR = "samples";
+
+    private static final int MAGIC = 0x4C445343; // "LDSC"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "samples-";
+    private static final String SUFFIX = ".bin.gz";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Names of the batches open in this process, a writer closing after the activity was
+     * recreated must keep its file while the next writer starts
+     */
+    private static final Set<String> sOpenBatches = new HashSet<>();
+
+    /**
+     * An open batch is closed after this many seconds without samples
+     * @since 1.1
+     */
+    public static final int IDLE_SECONDS = 30;
+
+    /**
+     * One captured drawing, recycled through {@link SampleCapture#mFree}
+     */
+    private static final class Sample {
+        int[] pixels = new int[0];
+        int size;
+        int target;
+        int predicted;
+        float confidence;
+        long timestamp;
+    }
+
+    private final File mDirectory;
+    private final int mBatchSize;
+    private final long mQuotaBytes;
+    private final BlockingQueue<Sample> mFree;
+    private final BlockingQueue<Sample> mQueue;
+    private final Thread mWriter;
+
+    private final AtomicInteger mCaptured = new AtomicInteger();
+    private final AtomicInteger mDropped = new AtomicInteger();
+
+    // used on the writer thread only
+    private DataOutputStream mOut;
+    private File mOutFile;
+    private int mInBatch = 0;
+    private byte[] mGray = new byte[0];
+
+    /**
+     * Constructor of the class, starts the writer thread
+     * @param directory directory of the batch files, created if missing
+     * @param capacity number of samples that may wait for the writer
+     * @param batchSize samples per file
+     * @param quotaBytes maximal size of all batch files together
+     * @since 1.1
+     */
+    public SampleCapture(File directory, int capacity, int batchSize, long quotaBytes) {
+        mDirectory = directory;
+        mBatchSize = batchSize;
+        mQuotaBytes = quotaBytes;
+        mFree = new ArrayBlockingQueue<>(capacity);
+        mQueue = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mFree.add(new Sample());
+        }
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                deleteStaleBatches();
+                writeLoop();
+            }
+        }, TAG);
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    /**
+     * This method queues a copy of the model input, the bitmap is not kept
+     * @param input bitmap of input size x input size, as passed to the classifier
+     * @param target class the user had to draw
+     * @param predicted class recognized by the model
+     * @param confidence confidence of the recognized class
+     * @return false if the sample was dropped because the writer is behind
+     * @since 1.1
+     */
+    public boolean offer(Bitmap input, int target, int predicted, float confidence) {
+        Sample sample = mFree.poll();
+        if (sample == null) {
+            mDropped.incrementAndGet();
+            return false;
+        }
+        int size = input.getWidth();
+        if (sample.pixels.length < size * size) {
+            sample.pixels = new int[size * size];
+        }
+        input.getPixels(sample.pixels, 0, size, 0, 0, size, size);
+        sample.size = size;
+        sample.target = target;
+        sample.predicted = predicted;
+        sample.confidence = confidence;
+        sample.timestamp = System.currentTimeMillis();
+        // never fails, there are not more samples than the capacity of the queue
+        mQueue.offer(sample);
+        mCaptured.incrementAndGet();
+        return true;
+    }
+
+    private void writeLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Sample sample;
+            try {
+                sample = mQueue.poll(IDLE_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                if (sample == null) {
+                    closeBatch();
+                    continue;
+                }
+                write(sample);
+                if (mInBatch == mBatchSize) {
+                    closeBatch();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Samples not written", e);
+                abortBatch();
+            } finally {
+                if (sample != null) {
+                    mFree.offer(sample);
+                }
+            }
+        }
+        // samples still queued are lost, the open batch is kept
+        try {
+            closeBatch();
+        } catch (IOException e) {
+            Log.e(TAG, "Samples not written", e);
+            abortBatch();
+        }
+    }
+
+    private void write(Sample sample) throws IOException {
+        if (mOut == null) {
+            mDirectory.mkdirs();
+            mOutFile = new File(mDirectory, PREFIX + System.currentTimeMillis() + SUFFIX
+                    + TMP_SUFFIX);
+            synchronized (sOpenBatches) {
+                sOpenBatches.add(mOutFile.getName());
+            }
+            mOut = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(mOutFile), 8192)));
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(VERSION);
+        }
+        int count = sample.size * sample.size;
+        if (mGray.length < count) {
+            mGray = new byte[count];
+        }
+        for (int i = 0; i < count; i++) {
+            final int val = sample.pixels[i];
+            mGray[i] = (byte) ((((val >> 16) & 0xFF) * 77 + ((val >> 8) & 0xFF) * 150
+                    + (val & 0xFF) * 29) >> 8);
+        }
+        mOut.writeInt(sample.target);
+        mOut.writeInt(sample.predicted);
+        mOut.writeFloat(sample.confidence);
+        mOut.writeLong(sample.timestamp);
+        mOut.writeShort(sample.size);
+        mOut.write(mGray, 0, count);
+        mInBatch++;
+    }
+
+    private void closeBatch() throws IOException {
+        if (mOut == null) {
+            return;
+        }
+        DataOutputStream out = mOut;
+        File tmp = mOutFile;
+        mOut = null;
+        mOutFile = null;
+        mInBatch = 0;
+        String name = tmp.getName();
+        try {
+            out.close();
+            File file = new File(mDirectory,
+                    name.substring(0, name.length() - TMP_SUFFIX.length()));
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Can not rename " + tmp);
+            }
+        } finally {
+            synchronized (sOpenBatches) {
+                sOpenBatches.remove(name);
+            }
+        }
+        enforceQuota();
+    }
+
+    private void abortBatch() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException ignored) {
+                // the file is deleted anyway
+            }
+            mOutFile.delete();
+            synchronized (sOpenBatches) {
+                sOpenBatches.remove(mOutFile.getName());
+            }
+        }
+        mOut = null;
+        mOutFile = null;
+        mInBatch = 0;
+    }
+
+    /**
+     * This method deletes the batches left open by a process that was killed while writing,
+     * they can not be read and would count toward the quota forever
+     */
+    private void deleteStaleBatches() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        int deleted = 0;
+        synchronized (sOpenBatches) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(PREFIX) && name.endsWith(TMP_SUFFIX)
+                        && !sOpenBatches.contains(name) && file.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        if (deleted > 0) {
+            Log.i(TAG, "Deleted " + deleted + " unfinished batches");
+        }
+    }
+
+    /**
+     * This method deletes the oldest batch files while the directory is over the quota
+     */
+    private void enforceQuota() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= mQuotaBytes) {
+            return;
+        }
+        // names carry the creation time
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        for (File file : files) {
+            if (total <= mQuotaBytes) {
+                break;
+            }
+            if (file.getName().endsWith(SUFFIX)) {
+                total -= file.length();
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return statistics of captured and dropped samples
+     * @since 1.1
+     */
+    public String getStatString() {
+        return "captured=" + mCaptured.get() + " dropped=" + mDropped.get();
+    }
+
+    /**
+     * This method stops the writer, the open batch is closed
+     * @since 1.1
+     */
+    public void close() {
+        mWriter.interrupt();
+    }
+}
@@ -0,0 +1,452 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * History of every attempt of every game, stored in SQLite.
+ * Besides the append-only attempts table the statistics of each class, each game and all
+ * games together are updated in the same transaction as the attempt is inserted, so the
+ * statistics are read one row by its primary key however long the history is, see
+ * {@link ScoreHistory#logStats(int)}.
+ * Writes are queued to a background thread, reads block and must not be called on the main
+ * thread. After {@link ScoreHistory#close()} writes are ignored
+ * @since 1.1
+ */
+public class ScoreHistory extends SQLiteOpenHelper {
+    private static final String TAG = "ScoreHistory";
+
+    /**
+     * Name of the database file
+     * @since 1.1
+     */
+    public static final String DATABASE_NAME = "score_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    /**
+     * Weight of the newest attempt in the moving average of confidence of a class
+     * @since 1.1
+     */
+    public static final double TREND_WEIGHT = 0.2;
+
+    private static final String CREATE_ATTEMPTS = "CREATE TABLE attempts ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "game_id INTEGER NOT NULL, "
+            + "round INTEGER NOT NULL, "
+            + "class_id INTEGER NOT NULL, "
+            + "predicted INTEGER NOT NULL, "
+            + "confidence REAL NOT NULL, "
+            + "score REAL NOT NULL, "
+            + "latency_ms INTEGER NOT NULL, "
+            + "timestamp INTEGER NOT NULL)";
+    private static final String CREATE_CLASS_STATS = "CREATE TABLE class_stats ("
+            + "class_id INTEGER PRIMARY KEY, "
+            + "attempts INTEGER NOT NULL DEFAULT 0, "
+            + "correct INTEGER NOT NULL DEFAULT 0, "
+            + "score_sum REAL NOT NULL DEFAULT 0, "
+            + "best_score REAL NOT NULL DEFAULT 0, "
+            + "confidence_trend REAL NOT NULL DEFAULT 0, "
+            + "latency_sum INTEGER NOT NULL DEFAULT 0, "
+            + "last_timestamp INTEGER NOT NULL DEFAULT 0)";
+    private static final String CREATE_GAME_STATS = "CREATE TABLE game_stats ("
+            + "game_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "started INTEGER NOT NULL, "
+            + "finished INTEGER NOT NULL DEFAULT 0, "
+            + "attempts INTEGER NOT NULL DEFAULT 0, "
+            + "correct INTEGER NOT NULL DEFAULT 0, "
+            + "score REAL NOT NULL DEFAULT 0)";
+    // a single row, _id = 0
+    private static final String CREATE_TOTALS = "CREATE TABLE totals ("
+            + "_id INTEGER PRIMARY KEY, "
+            + "games INTEGER NOT NULL DEFAULT 0, "
+            + "attempts INTEGER NOT NULL DEFAULT 0, "
+            + "correct INTEGER NOT NULL DEFAULT 0, "
+            + "best_game_score REAL NOT NULL DEFAULT 0)";
+
+    // SQLite of API 19 has no upsert, rows are created by INSERT OR IGNORE and then updated
+    private static final String INSERT_ATTEMPT = "INSERT INTO attempts (game_id, round, "
+            + "class_id, predicted, confidence, score, latency_ms, timestamp) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String ENSURE_CLASS = "INSERT OR IGNORE INTO class_stats (class_id) "
+            + "VALUES (?)";
+    private static final String UPDATE_CLASS = "UPDATE class_stats SET "
+            + "attempts = attempts + 1, "
+            + "correct = correct + ?1, "
+            + "score_sum = score_sum + ?2, "
+            + "best_score = MAX(best_score, ?2), "
+            + "confidence_trend = CASE WHEN attempts = 0 THEN ?3 "
+            + "ELSE confidence_trend + " + TREND_WEIGHT + " * (?3 - confidence_trend) END, "
+            + "latency_sum = latency_sum + ?4, "
+            + "last_timestamp = ?5 "
+            + "WHERE class_id = ?6";
+    private static final String INSERT_GAME = "INSERT INTO game_stats (started) VALUES (?)";
+    private static final String UPDATE_GAME = "UPDATE game_stats SET "
+            + "attempts = attempts + 1, correct = correct + ?1, score = ?2 WHERE game_id = ?3";
+    private static final String FINISH_GAME = "UPDATE game_stats SET finished = ?1, score = ?2 "
+            + "WHERE game_id = ?3";
+    private static final String UPDATE_TOTALS = "UPDATE totals SET "
+            + "attempts = attempts + 1, correct = correct + ?1, "
+            + "best_game_score = MAX(best_game_score, ?2) WHERE _id = 0";
+    private static final String COUNT_GAME = "UPDATE totals SET games = games + 1 WHERE _id = 0";
+
+    /**
+     * One classified drawing
+     * @since 1.1
+     */
+    public static class Attempt {
+        /** Round of the game, within [0, rounds - 1] */
+        public int round;
+        /** Class the user had to draw */
+        public int classId;
+        /** Class recognized by the model */
+        public int predicted;
+        /** Confidence of the recognized class */
+        public float confidence;
+        /** Score of the drawing, 0 if it was not recognized */
+        public double score;
+        /** Score of the game after this attempt */
+        public double gameScore;
+        /** Duration of the classification */
+        public long latencyMs;
+        /** Wall clock time of the attempt, System.currentTimeMillis() */
+        public long timestamp;
+    }
+
+    /**
+     * Aggregated attempts of one class
+     * @since 1.1
+     */
+    public static class ClassStats {
+        public int attempts;
+        public int correct;
+        public double bestScore;
+        public double averageScore;
+        /** Exponential moving average of confidence, see {@link ScoreHistory#TREND_WEIGHT} */
+        public double confidenceTrend;
+        public double averageLatencyMs;
+        public long lastTimestamp;
+    }
+
+    /**
+     * Aggregated attempts of all games
+     * @since 1.1
+     */
+    public static class Totals {
+        public int games;
+        public int attempts;
+        public int correct;
+        public double bestGameScore;
+    }
+
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+    /**
+     * Set by {@link ScoreHistory#close()}, the writer accepts no more work afterwards
+     * @since 1.1
+     */
+    private volatile boolean mClosed = false;
+
+    // used on the writer thread only
+    private SQLiteStatement mInsertAttempt;
+    private SQLiteStatement mEnsureClass;
+    private SQLiteStatement mUpdateClass;
+    private SQLiteStatement mInsertGame;
+    private SQLiteStatement mUpdateGame;
+    private SQLiteStatement mFinishGame;
+    private SQLiteStatement mUpdateTotals;
+    private SQLiteStatement mCountGame;
+    private long mGameId = -1;
+
+    /**
+     * Constructor of the class, the database is opened lazily on the writer thread
+     * @param context Context object
+     * @since 1.1
+     */
+    public ScoreHistory(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructor of the class, the database is opened lazily on the writer thread
+     * @param context Context object
+     * @param name name of the database file, null for a database in memory that is dropped
+     *             on close, e.g. while a touch session is replayed
+     * @since 1.1
+     */
+    public ScoreHistory(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(CREATE_ATTEMPTS);
+        db.execSQL(CREATE_CLASS_STATS);
+        db.execSQL(CREATE_GAME_STATS);
+        db.execSQL(CREATE_TOTALS);
+        db.execSQL("INSERT INTO totals (_id) VALUES (0)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // there is only version 1 so far
+    }
+
+    /**
+     * This method queues an attempt, starting a game if none is open
+     * @param attempt Attempt object, must not be changed afterwards
+     * @since 1.1
+     */
+    public void record(final Attempt attempt) {
+        if (mClosed) {
+            Log.w(TAG, "Attempt after close ignored");
+            return;
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeAttempt(attempt);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Attempt not recorded", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method queues the end of the open game, the next attempt starts a new one
+     * @param score final score of the game
+     * @param timestamp wall clock time, System.currentTimeMillis()
+     * @since 1.1
+     */
+    public void finishGame(final double score, final long timestamp) {
+        if (mClosed) {
+            Log.w(TAG, "End of game after close ignored");
+            return;
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeFinishGame(score, timestamp);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Game not finished", e);
+                }
+            }
+        });
+    }
+
+    private void prepare() {
+        if (mInsertAttempt != null) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        mInsertAttempt = db.compileStatement(INSERT_ATTEMPT);
+        mEnsureClass = db.compileStatement(ENSURE_CLASS);
+        mUpdateClass = db.compileStatement(UPDATE_CLASS);
+        mInsertGame = db.compileStatement(INSERT_GAME);
+        mUpdateGame = db.compileStatement(UPDATE_GAME);
+        mFinishGame = db.compileStatement(FINISH_GAME);
+        mUpdateTotals = db.compileStatement(UPDATE_TOTALS);
+        mCountGame = db.compileStatement(COUNT_GAME);
+        // the game left open by the previous session is continued
+        Cursor cursor = db.rawQuery("SELECT game_id FROM game_stats WHERE finished = 0 "
+                + "ORDER BY game_id DESC LIMIT 1", null);
+        try {
+            mGameId = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void writeAttempt(Attempt attempt) {
+        prepare();
+        SQLiteDatabase db = getWritableDatabase();
+        int correct = attempt.classId == attempt.predicted ? 1 : 0;
+        db.beginTransaction();
+        try {
+            if (mGameId < 0) {
+                mInsertGame.bindLong(1, attempt.timestamp);
+                mGameId = mInsertGame.executeInsert();
+                mCountGame.executeUpdateDelete();
+            }
+            mInsertAttempt.bindLong(1, mGameId);
+            mInsertAttempt.bindLong(2, attempt.round);
+            mInsertAttempt.bindLong(3, attempt.classId);
+            mInsertAttempt.bindLong(4, attempt.predicted);
+            mInsertAttempt.bindDouble(5, attempt.confidence);
+            mInsertAttempt.bindDouble(6, attempt.score);
+            mInsertAttempt.bindLong(7, attempt.latencyMs);
+            mInsertAttempt.bindLong(8, attempt.timestamp);
+            mInsertAttempt.executeInsert();
+
+            mEnsureClass.bindLong(1, attempt.classId);
+            mEnsureClass.executeInsert();
+            mUpdateClass.bindLong(1, correct);
+            mUpdateClass.bindDouble(2, attempt.score);
+            mUpdateClass.bindDouble(3, attempt.confidence);
+            mUpdateClass.bindLong(4, attempt.latencyMs);
+            mUpdateClass.bindLong(5, attempt.timestamp);
+            mUpdateClass.bindLong(6, attempt.classId);
+            mUpdateClass.executeUpdateDelete();
+
+            mUpdateGame.bindLong(1, correct);
+            mUpdateGame.bindDouble(2, attempt.gameScore);
+            mUpdateGame.bindLong(3, mGameId);
+            mUpdateGame.executeUpdateDelete();
+
+            mUpdateTotals.bindLong(1, correct);
+            mUpdateTotals.bindDouble(2, attempt.gameScore);
+            mUpdateTotals.executeUpdateDelete();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void writeFinishGame(double score, long timestamp) {
+        prepare();
+        if (mGameId < 0) {
+            return;
+        }
+        mFinishGame.bindLong(1, timestamp);
+        mFinishGame.bindDouble(2, score);
+        mFinishGame.bindLong(3, mGameId);
+        mFinishGame.executeUpdateDelete();
+        mGameId = -1;
+    }
+
+    /**
+     * This method reads the statistics of one class, do not call on the main thread
+     * @param classId index of the class
+     * @return ClassStats object, all zero if the class was never attempted
+     * @since 1.1
+     */
+    public ClassStats getClassStats(int classId) {
+        ClassStats stats = new ClassStats();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT attempts, correct, score_sum, "
+                + "best_score, confidence_trend, latency_sum, last_timestamp "
+                + "FROM class_stats WHERE class_id = ?", new String[]{String.valueOf(classId)});
+        try {
+            if (cursor.moveToFirst() && cursor.getInt(0) > 0) {
+                stats.attempts = cursor.getInt(0);
+                stats.correct = cursor.getInt(1);
+                stats.averageScore = cursor.getDouble(2) / stats.attempts;
+                stats.bestScore = cursor.getDouble(3);
+                stats.confidenceTrend = cursor.getDouble(4);
+                stats.averageLatencyMs = (double) cursor.getLong(5) / stats.attempts;
+                stats.lastTimestamp = cursor.getLong(6);
+            }
+        } finally {
+            cursor.close();
+        }
+        return stats;
+    }
+
+    /**
+     * This method reads the statistics of all games, do not call on the main thread
+     * @return Totals object
+     * @since 1.1
+     */
+    public Totals getTotals() {
+        Totals totals = new Totals();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT games, attempts, correct, "
+                + "best_game_score FROM totals WHERE _id = 0", null);
+        try {
+            if (cursor.moveToFirst()) {
+                totals.games = cursor.getInt(0);
+                totals.attempts = cursor.getInt(1);
+                totals.correct = cursor.getInt(2);
+                totals.bestGameScore = cursor.getDouble(3);
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
+
+    /**
+     * This method queues a log line with the totals and the statistics of every class
+     * The statistics are read on the writer thread after the queued writes
+     * @param classes number of classes of the game
+     * @since 1.1
+     */
+    public void logStats(final int classes) {
+        if (mClosed) {
+            return;
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Log.i(TAG, getStatString(classes));
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Statistics not read", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method reads the statistics, do not call on the main thread
+     * @param classes number of classes of the game
+     * @return totals and per class attempts, correct answers, average score and confidence
+     * @since 1.1
+     */
+    public String getStatString(int classes) {
+        Totals totals = getTotals();
+        StringBuilder builder = new StringBuilder(64 + 48 * classes);
+        builder.append("games=").append(totals.games)
+                .append(" attempts=").append(totals.attempts)
+                .append(" correct=").append(totals.correct)
+                .append(" best=").append(String.format(Locale.US, "%.2f", totals.bestGameScore));
+        for (int c = 0; c < classes; c++) {
+            ClassStats stats = getClassStats(c);
+            if (stats.attempts > 0) {
+                builder.append(String.format(Locale.US, "; class %d: %d/%d avg=%.2f trend=%.2f",
+                        c, stats.correct, stats.attempts, stats.averageScore,
+                        stats.confidenceTrend));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * This method stops the writer after the queued writes and closes the database
+     * Calling it again does nothing
+     * @since 1.1
+     */
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                ScoreHistory.super.close();
+            }
+        });
+        mWriter.shutdown();
+    }
+}
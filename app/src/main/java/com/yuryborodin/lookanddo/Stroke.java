@@ -0,0 +1,136 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.Arrays;
+
+/**
+ * One stroke of a drawing as the points the finger passed, without any Android dependency.
+ * Only the points that were actually drawn are kept (see DrawView#TOUCH_TOLERANCE), so the
+ * path of a stroke can be rebuilt exactly from them, see {@link FingerHandler}
+ * @since 1.1
+ */
+public class Stroke {
+
+    /**
+     * Color of the stroke, ARGB
+     * @since 1.1
+     */
+    public final int color;
+
+    /**
+     * Width of the stroke in pixels
+     * @since 1.1
+     */
+    public final int width;
+
+    private float[] mPoints = new float[32];
+    private int[] mTimes = new int[16];
+    private int mSize = 0;
+    private boolean mFinished = false;
+
+    private float mLeft = Float.POSITIVE_INFINITY;
+    private float mTop = Float.POSITIVE_INFINITY;
+    private float mRight = Float.NEGATIVE_INFINITY;
+    private float mBottom = Float.NEGATIVE_INFINITY;
+
+    /**
+     * Constructor of the class
+     * @param color color, ARGB
+     * @param width width of the stroke in pixels
+     * @since 1.1
+     */
+    public Stroke(int color, int width) {
+        this.color = color;
+        this.width = width;
+    }
+
+    /**
+     * This method appends a point
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param time milliseconds since the first point of the stroke
+     * @since 1.1
+     */
+    public void add(float x, float y, int time) {
+        if (mSize == mTimes.length) {
+            mTimes = Arrays.copyOf(mTimes, mSize * 2);
+            mPoints = Arrays.copyOf(mPoints, mSize * 4);
+        }
+        mPoints[2 * mSize] = x;
+        mPoints[2 * mSize + 1] = y;
+        mTimes[mSize] = time;
+        mSize++;
+        mLeft = Math.min(mLeft, x);
+        mTop = Math.min(mTop, y);
+        mRight = Math.max(mRight, x);
+        mBottom = Math.max(mBottom, y);
+    }
+
+    /**
+     * This method marks the stroke as complete, the finger was lifted
+     * @since 1.1
+     */
+    public void finish() {
+        mFinished = true;
+    }
+
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    /**
+     * @return number of points
+     * @since 1.1
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public float getX(int index) {
+        return mPoints[2 * index];
+    }
+
+    public float getY(int index) {
+        return mPoints[2 * index + 1];
+    }
+
+    /**
+     * @param index index of the point
+     * @return milliseconds since the first point of the stroke
+     * @since 1.1
+     */
+    public int getTime(int index) {
+        return mTimes[index];
+    }
+
+    /**
+     * Bounds of the points, the ink extends width / 2 further.
+     * Infinite (left &gt; right) while the stroke has no points
+     * @since 1.1
+     */
+    public float getLeft() {
+        return mLeft;
+    }
+
+    public float getTop() {
+        return mTop;
+    }
+
+    public float getRight() {
+        return mRight;
+    }
+
+    public float getBottom() {
+        return mBottom;
+    }
+}
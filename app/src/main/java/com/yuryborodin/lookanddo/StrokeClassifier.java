@@ -0,0 +1,43 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.List;
+
+/**
+ * Stroke input variant of {@link Classifier}.
+ * Recognizes a drawing from the points of its strokes instead of a rendered bitmap, so it is
+ * cheap enough to run after every stroke while the user draws
+ * @see StrokeSequence
+ * @since 1.1
+ */
+public interface StrokeClassifier {
+
+    /**
+     * @param strokes strokes in drawing order, finished strokes must not change afterwards
+     * @return results ordered from the most confident, empty if there is no ink
+     * @since 1.1
+     */
+    List<Classifier.Recognition> recognizeStrokes(List<Stroke> strokes);
+
+    /**
+     * @return maximal number of points of the sequence, longer drawings are truncated
+     * @since 1.1
+     */
+    int getMaxPoints();
+
+    void enableStatLogging(final boolean debug);
+
+    String getStatString();
+
+    void close();
+}
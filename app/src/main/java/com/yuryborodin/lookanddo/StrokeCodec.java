@@ -0,0 +1,257 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary format of strokes.
+ * Coordinates are stored in quarter pixels as differences to the previous point, zigzag
+ * and varint encoded, so a typical point takes two or three bytes including its time.
+ * <pre>
+ * magic 'LDST', varint version
+ * per stroke: byte 1, int color (big-endian), varint width, varint flags (1 = finished),
+ *             varint points, per point: zigzag dx, zigzag dy, varint dt (milliseconds)
+ * byte 0
+ * </pre>
+ * Strokes are written and read one by one, see {@link StrokeCodec.Writer} and
+ * {@link StrokeCodec.Reader}
+ * @since 1.1
+ */
+public final class StrokeCodec {
+
+    private static final int MAGIC = 0x4C445354; // "LDST"
+    private static final int VERSION = 1;
+    private static final int TAG_END = 0;
+    private static final int TAG_STROKE = 1;
+    private static final int FLAG_FINISHED = 1;
+
+    /**
+     * Coordinates are rounded to 1 / SCALE pixels
+     * @since 1.1
+     */
+    public static final float SCALE = 4f;
+
+    private StrokeCodec() {}
+
+    /**
+     * Writes strokes to a stream, callers provide buffering
+     * @since 1.1
+     */
+    public static final class Writer {
+        private final OutputStream mOut;
+
+        /**
+         * Constructor of the class, writes the header
+         * @param out OutputStream object
+         * @throws IOException if the header can not be written
+         * @since 1.1
+         */
+        public Writer(OutputStream out) throws IOException {
+            mOut = out;
+            writeInt(MAGIC);
+            writeVarint(VERSION);
+        }
+
+        /**
+         * @param stroke Stroke object
+         * @throws IOException if the stroke can not be written
+         * @since 1.1
+         */
+        public void write(Stroke stroke) throws IOException {
+            mOut.write(TAG_STROKE);
+            writeInt(stroke.color);
+            writeVarint(stroke.width);
+            writeVarint(stroke.isFinished() ? FLAG_FINISHED : 0);
+            int size = stroke.size();
+            writeVarint(size);
+            int x = 0;
+            int y = 0;
+            int time = 0;
+            for (int i = 0; i < size; i++) {
+                int qx = Math.round(stroke.getX(i) * SCALE);
+                int qy = Math.round(stroke.getY(i) * SCALE);
+                writeVarint(zigzag(qx - x));
+                writeVarint(zigzag(qy - y));
+                writeVarint(Math.max(0, stroke.getTime(i) - time));
+                x = qx;
+                y = qy;
+                time = Math.max(time, stroke.getTime(i));
+            }
+        }
+
+        /**
+         * This method writes the end mark, the stream is not closed
+         * @throws IOException if the mark can not be written
+         * @since 1.1
+         */
+        public void finish() throws IOException {
+            mOut.write(TAG_END);
+            mOut.flush();
+        }
+
+        private void writeInt(int value) throws IOException {
+            mOut.write(value >>> 24);
+            mOut.write(value >>> 16);
+            mOut.write(value >>> 8);
+            mOut.write(value);
+        }
+
+        private void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                mOut.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mOut.write(value);
+        }
+    }
+
+    /**
+     * Reads strokes from a stream, callers provide buffering
+     * @since 1.1
+     */
+    public static final class Reader {
+        private final InputStream mIn;
+        private boolean mEnd = false;
+
+        /**
+         * Constructor of the class, reads the header
+         * @param in InputStream object
+         * @throws IOException if the stream is not in this format or of a newer version
+         * @since 1.1
+         */
+        public Reader(InputStream in) throws IOException {
+            mIn = in;
+            if (readInt() != MAGIC) {
+                throw new IOException("Not a stroke stream");
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IOException("Unsupported stroke stream version " + version);
+            }
+        }
+
+        /**
+         * @return next stroke, null after the last one
+         * @throws IOException if the stream is truncated or corrupted
+         * @since 1.1
+         */
+        public Stroke next() throws IOException {
+            if (mEnd) {
+                return null;
+            }
+            int tag = readByte();
+            if (tag == TAG_END) {
+                mEnd = true;
+                return null;
+            }
+            if (tag != TAG_STROKE) {
+                throw new IOException("Unexpected tag " + tag);
+            }
+            int color = readInt();
+            int width = readVarint();
+            int flags = readVarint();
+            int size = readVarint();
+            if (size < 0) {
+                throw new IOException("Corrupted stroke");
+            }
+            Stroke stroke = new Stroke(color, width);
+            int x = 0;
+            int y = 0;
+            int time = 0;
+            for (int i = 0; i < size; i++) {
+                x += unzigzag(readVarint());
+                y += unzigzag(readVarint());
+                time += readVarint();
+                stroke.add(x / SCALE, y / SCALE, time);
+            }
+            if ((flags & FLAG_FINISHED) != 0) {
+                stroke.finish();
+            }
+            return stroke;
+        }
+
+        private int readByte() throws IOException {
+            int value = mIn.read();
+            if (value < 0) {
+                throw new EOFException("Truncated stroke stream");
+            }
+            return value;
+        }
+
+        private int readInt() throws IOException {
+            return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+
+    /**
+     * @param strokes strokes of a drawing
+     * @return encoded strokes
+     * @since 1.1
+     */
+    public static byte[] encode(List<Stroke> strokes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 16 * strokes.size());
+        try {
+            Writer writer = new Writer(bytes);
+            for (Stroke stroke : strokes) {
+                writer.write(stroke);
+            }
+            writer.finish();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param data strokes encoded by {@link StrokeCodec#encode(List)} or a Writer
+     * @return decoded strokes
+     * @throws IOException if the data is truncated or corrupted
+     * @since 1.1
+     */
+    public static List<Stroke> decode(byte[] data) throws IOException {
+        Reader reader = new Reader(new ByteArrayInputStream(data));
+        List<Stroke> strokes = new ArrayList<>();
+        for (Stroke stroke = reader.next(); stroke != null; stroke = reader.next()) {
+            strokes.add(stroke);
+        }
+        return strokes;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
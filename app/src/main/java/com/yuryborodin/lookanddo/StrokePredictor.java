@@ -0,0 +1,232 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Short-horizon prediction of the finger position by linear extrapolation of its recent
+ * velocity. DrawView draws a provisional tail to the predicted point, which is replaced by
+ * the real ink on the next frame, so the ink trails the finger less.
+ * Without Android dependencies, {@link StrokePredictor#evaluate} measures the prediction
+ * against recorded strokes offline
+ * @since 1.1
+ */
+public class StrokePredictor {
+
+    /**
+     * Velocity is estimated over the samples of the last WINDOW_MS milliseconds
+     * @since 1.1
+     */
+    public static final int WINDOW_MS = 40;
+
+    /**
+     * No prediction if the last sample is older than this, the finger has stopped
+     * @since 1.1
+     */
+    public static final int MAX_GAP_MS = 50;
+
+    private static final int HISTORY = 8;
+
+    private final int mHorizonMs;
+    private final float mMaxDistance;
+
+    // ring buffer of recent samples
+    private final float[] mX = new float[HISTORY];
+    private final float[] mY = new float[HISTORY];
+    private final long[] mTime = new long[HISTORY];
+    private int mCount = 0;
+    private int mNext = 0;
+
+    /**
+     * Constructor of the class
+     * @param horizonMs how far ahead to predict, 0 disables prediction
+     * @param maxDistance maximal length of the predicted tail in pixels
+     * @since 1.1
+     */
+    public StrokePredictor(int horizonMs, float maxDistance) {
+        mHorizonMs = horizonMs;
+        mMaxDistance = maxDistance;
+    }
+
+    public int getHorizonMs() {
+        return mHorizonMs;
+    }
+
+    /**
+     * This method forgets the samples of the previous stroke
+     * @since 1.1
+     */
+    public void reset() {
+        mCount = 0;
+        mNext = 0;
+    }
+
+    /**
+     * This method adds a sample of the finger, including the samples that are not drawn
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param time time of the sample in milliseconds, not decreasing
+     * @since 1.1
+     */
+    public void add(float x, float y, long time) {
+        mX[mNext] = x;
+        mY[mNext] = y;
+        mTime[mNext] = time;
+        mNext = (mNext + 1) % HISTORY;
+        mCount = Math.min(mCount + 1, HISTORY);
+    }
+
+    /**
+     * This method predicts the position of the finger a horizon after the last sample
+     * @param now current time in milliseconds, the time of the last sample offline
+     * @param out destination, x and y
+     * @return false if there is no prediction, the finger stopped or there are too few
+     * samples
+     * @since 1.1
+     */
+    public boolean predict(long now, float[] out) {
+        if (mHorizonMs <= 0 || mCount < 2) {
+            return false;
+        }
+        int last = (mNext + HISTORY - 1) % HISTORY;
+        if (now - mTime[last] > MAX_GAP_MS) {
+            return false;
+        }
+        // the oldest sample within the window, at least the one before the last
+        int first = (last + HISTORY - 1) % HISTORY;
+        for (int i = 2; i < mCount; i++) {
+            int index = (last + HISTORY - i) % HISTORY;
+            if (mTime[last] - mTime[index] > WINDOW_MS) {
+                break;
+            }
+            first = index;
+        }
+        long dt = mTime[last] - mTime[first];
+        if (dt <= 0) {
+            return false;
+        }
+        float ahead = (float) (now - mTime[last] + mHorizonMs) / dt;
+        float dx = (mX[last] - mX[first]) * ahead;
+        float dy = (mY[last] - mY[first]) * ahead;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        if (distance > mMaxDistance) {
+            dx *= mMaxDistance / distance;
+            dy *= mMaxDistance / distance;
+        }
+        out[0] = mX[last] + dx;
+        out[1] = mY[last] + dy;
+        return true;
+    }
+
+    /**
+     * Errors of the prediction over recorded strokes, in pixels
+     * @since 1.1
+     */
+    public static class Evaluation {
+        /** Number of predicted points */
+        public int samples;
+        /** Mean distance between the finger and the end of the ink without prediction */
+        public double meanLag;
+        /** Mean distance between the finger and the predicted point */
+        public double meanError;
+        public double p90Lag;
+        public double p90Error;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "samples=%d lag mean=%.2f p90=%.2f, predicted mean=%.2f p90=%.2f px",
+                    samples, meanLag, p90Lag, meanError, p90Error);
+        }
+    }
+
+    /**
+     * This method replays strokes through a predictor and compares every prediction with the
+     * position the finger really had a horizon later, interpolated between the samples
+     * @param strokes strokes with the times of their points
+     * @param horizonMs horizon of the predictor
+     * @param maxDistance maximal length of the predicted tail
+     * @return Evaluation object
+     * @since 1.1
+     */
+    public static Evaluation evaluate(List<Stroke> strokes, int horizonMs, float maxDistance) {
+        StrokePredictor predictor = new StrokePredictor(horizonMs, maxDistance);
+        float[] predicted = new float[2];
+        float[] truth = new float[2];
+        double[] lags = new double[16];
+        double[] errors = new double[16];
+        int count = 0;
+        for (Stroke stroke : strokes) {
+            predictor.reset();
+            int size = stroke.size();
+            for (int i = 0; i < size; i++) {
+                predictor.add(stroke.getX(i), stroke.getY(i), stroke.getTime(i));
+                long target = stroke.getTime(i) + horizonMs;
+                if (target > stroke.getTime(size - 1) || !positionAt(stroke, target, truth)) {
+                    continue;
+                }
+                float x = stroke.getX(i);
+                float y = stroke.getY(i);
+                if (predictor.predict(stroke.getTime(i), predicted)) {
+                    x = predicted[0];
+                    y = predicted[1];
+                }
+                if (count == lags.length) {
+                    lags = Arrays.copyOf(lags, count * 2);
+                    errors = Arrays.copyOf(errors, count * 2);
+                }
+                lags[count] = Math.hypot(truth[0] - stroke.getX(i), truth[1] - stroke.getY(i));
+                errors[count] = Math.hypot(truth[0] - x, truth[1] - y);
+                count++;
+            }
+        }
+        Evaluation evaluation = new Evaluation();
+        evaluation.samples = count;
+        if (count > 0) {
+            lags = Arrays.copyOf(lags, count);
+            errors = Arrays.copyOf(errors, count);
+            evaluation.meanLag = mean(lags);
+            evaluation.meanError = mean(errors);
+            Arrays.sort(lags);
+            Arrays.sort(errors);
+            int p90 = (int) Math.ceil(0.9 * count) - 1;
+            evaluation.p90Lag = lags[p90];
+            evaluation.p90Error = errors[p90];
+        }
+        return evaluation;
+    }
+
+    private static boolean positionAt(Stroke stroke, long time, float[] out) {
+        for (int i = 1; i < stroke.size(); i++) {
+            if (stroke.getTime(i) >= time) {
+                int t0 = stroke.getTime(i - 1);
+                int t1 = stroke.getTime(i);
+                float f = t1 == t0 ? 1f : (float) (time - t0) / (t1 - t0);
+                out[0] = stroke.getX(i - 1) + (stroke.getX(i) - stroke.getX(i - 1)) * f;
+                out[1] = stroke.getY(i - 1) + (stroke.getY(i) - stroke.getY(i - 1)) * f;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+}
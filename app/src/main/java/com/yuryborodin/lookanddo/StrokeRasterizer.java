@@ -0,0 +1,333 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Anti-aliased rasterizer of strokes in plain Java, drawing like DrawView's paint: stroke
+ * style, round caps and joins, the quadratic curves through the midpoints of
+ * FingerHandler. Curves are flattened to segments and every segment is drawn as a
+ * capsule from its distance field, so caps and joins are round by construction. A stroke
+ * covers a pixel by the maximum of its segments and is then blended over the image, so a
+ * translucent stroke does not darken where it overlaps itself, like a Path on a Canvas.
+ * Renders a region of the view at any resolution without android.graphics, so drawings can
+ * be replayed, generated and benchmarked on a plain JVM. Not thread-safe, one instance per
+ * thread
+ * @since 1.1
+ */
+public class StrokeRasterizer {
+
+    /**
+     * Maximal distance of the flattened segments from the curves, in target pixels
+     * @since 1.1
+     */
+    private static final float FLATNESS = 0.1f;
+
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * Region of the view mapped to the target: view (left, top) is the corner of the target,
+     * one view unit is scaleX x scaleY target pixels
+     */
+    private float mLeft = 0;
+    private float mTop = 0;
+    private float mScaleX = 1;
+    private float mScaleY = 1;
+
+    /**
+     * Coverage of the current stroke, zero between strokes
+     */
+    private final float[] mCoverage;
+
+    /**
+     * Rows touched by the current stroke and the touched span of every row, empty
+     * (min &gt; max) between strokes; a stroke touches a small part of its bounding box
+     */
+    private int mMinY;
+    private int mMaxY;
+    private final int[] mRowMinX;
+    private final int[] mRowMaxX;
+
+    /**
+     * Flattened points of the current stroke in view coordinates
+     */
+    private float[] mPoints = new float[256];
+    private int mPointCount;
+
+    /**
+     * Constructor of the class
+     * @param width width of the target in pixels
+     * @param height height of the target in pixels
+     * @since 1.1
+     */
+    public StrokeRasterizer(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("width and height must be positive");
+        }
+        mWidth = width;
+        mHeight = height;
+        mCoverage = new float[width * height];
+        mRowMinX = new int[height];
+        mRowMaxX = new int[height];
+        Arrays.fill(mRowMinX, width);
+        Arrays.fill(mRowMaxX, -1);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * This method maps a region of the view onto the whole target, like
+     * CanvasSnapshot#crop
+     * @param left left edge of the region in view coordinates
+     * @param top top edge of the region
+     * @param width width of the region
+     * @param height height of the region
+     * @since 1.1
+     */
+    public void setRegion(float left, float top, float width, float height) {
+        mLeft = left;
+        mTop = top;
+        mScaleX = mWidth / width;
+        mScaleY = mHeight / height;
+    }
+
+    /**
+     * This method draws strokes as ink coverage
+     * @param strokes strokes in view coordinates, drawn in order
+     * @param out destination, width * height values; 0 is background, 1 is opaque ink.
+     *            The strokes are blended over its content, it is not cleared
+     * @since 1.1
+     */
+    public void rasterize(List<Stroke> strokes, float[] out) {
+        checkLength(out.length);
+        for (int s = 0; s < strokes.size(); s++) {
+            Stroke stroke = strokes.get(s);
+            if (!cover(stroke)) {
+                continue;
+            }
+            float alpha = (stroke.color >>> 24) / 255f;
+            for (int y = mMinY; y <= mMaxY; y++) {
+                int row = y * mWidth;
+                for (int x = mRowMinX[y]; x <= mRowMaxX[y]; x++) {
+                    float coverage = mCoverage[row + x] * alpha;
+                    out[row + x] = coverage + out[row + x] * (1 - coverage);
+                }
+            }
+            clearCoverage();
+        }
+    }
+
+    /**
+     * This method draws strokes in their colors, like DrawView draws them on its bitmap
+     * @param strokes strokes in view coordinates, drawn in order
+     * @param background color the target is cleared with, e.g. DrawView.DEFAULT_BACKGROUND_COLOR
+     * @param out destination, width * height packed ARGB pixels like Bitmap.getPixels
+     * @since 1.1
+     */
+    public void rasterize(List<Stroke> strokes, int background, int[] out) {
+        checkLength(out.length);
+        Arrays.fill(out, 0, mWidth * mHeight, background);
+        for (int s = 0; s < strokes.size(); s++) {
+            Stroke stroke = strokes.get(s);
+            if (!cover(stroke)) {
+                continue;
+            }
+            int color = stroke.color;
+            float alpha = (color >>> 24) / 255f;
+            int red = (color >> 16) & 0xFF;
+            int green = (color >> 8) & 0xFF;
+            int blue = color & 0xFF;
+            for (int y = mMinY; y <= mMaxY; y++) {
+                int row = y * mWidth;
+                for (int x = mRowMinX[y]; x <= mRowMaxX[y]; x++) {
+                    float coverage = mCoverage[row + x] * alpha;
+                    if (coverage > 0) {
+                        out[row + x] = blend(out[row + x], red, green, blue, coverage);
+                    }
+                }
+            }
+            clearCoverage();
+        }
+    }
+
+    private static int blend(int destination, int red, int green, int blue, float coverage) {
+        float keep = 1 - coverage;
+        int a = Math.round(255 * coverage + (destination >>> 24) * keep);
+        int r = Math.round(red * coverage + ((destination >> 16) & 0xFF) * keep);
+        int g = Math.round(green * coverage + ((destination >> 8) & 0xFF) * keep);
+        int b = Math.round(blue * coverage + (destination & 0xFF) * keep);
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private void checkLength(int length) {
+        if (length < mWidth * mHeight) {
+            throw new IllegalArgumentException("Output of " + length + " values is smaller than "
+                    + mWidth + "x" + mHeight);
+        }
+    }
+
+    /**
+     * This method fills {@link StrokeRasterizer#mCoverage} with one stroke
+     * @return false if the stroke covers no pixel of the target
+     */
+    private boolean cover(Stroke stroke) {
+        flatten(stroke);
+        if (mPointCount == 0) {
+            return false;
+        }
+        mMinY = mHeight;
+        mMaxY = -1;
+        // a stroke of width 0 is a hairline, one pixel wide at any scale
+        float pixelScale = (float) Math.sqrt(mScaleX * mScaleY);
+        float radius = stroke.width > 0 ? stroke.width / 2f : 0.5f / pixelScale;
+        if (mPointCount == 1) {
+            // a point with round caps is a dot
+            coverSegment(mPoints[0], mPoints[1], mPoints[0], mPoints[1], radius, pixelScale);
+        }
+        for (int i = 1; i < mPointCount; i++) {
+            coverSegment(mPoints[2 * i - 2], mPoints[2 * i - 1], mPoints[2 * i], mPoints[2 * i + 1],
+                    radius, pixelScale);
+        }
+        return mMaxY >= mMinY;
+    }
+
+    /**
+     * This method draws one capsule, keeping the larger coverage of every pixel
+     */
+    private void coverSegment(float x0, float y0, float x1, float y1, float radius,
+                              float pixelScale) {
+        // half a pixel of anti-aliasing outside of the radius
+        float reach = radius + 0.5f / pixelScale;
+        int minX = Math.max(0, (int) Math.floor((Math.min(x0, x1) - reach - mLeft) * mScaleX));
+        int maxX = Math.min(mWidth - 1,
+                (int) Math.ceil((Math.max(x0, x1) + reach - mLeft) * mScaleX));
+        int minY = Math.max(0, (int) Math.floor((Math.min(y0, y1) - reach - mTop) * mScaleY));
+        int maxY = Math.min(mHeight - 1,
+                (int) Math.ceil((Math.max(y0, y1) + reach - mTop) * mScaleY));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+        mMinY = Math.min(mMinY, minY);
+        mMaxY = Math.max(mMaxY, maxY);
+
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float lengthSquared = dx * dx + dy * dy;
+        float inverseLength = lengthSquared > 0 ? 1 / lengthSquared : 0;
+        // only the pixels on the anti-aliased edge need the square root of the distance
+        float outside = reach * reach;
+        float solid = Math.max(0, radius - 0.5f / pixelScale);
+        float inside = solid * solid;
+        float stepX = 1 / mScaleX;
+        float stepY = 1 / mScaleY;
+        float startX = mLeft + (minX + 0.5f) * stepX - x0;
+        for (int y = minY; y <= maxY; y++) {
+            float py = mTop + (y + 0.5f) * stepY - y0;
+            int row = y * mWidth;
+            mRowMinX[y] = Math.min(mRowMinX[y], minX);
+            mRowMaxX[y] = Math.max(mRowMaxX[y], maxX);
+            float px = startX - stepX;
+            for (int x = minX; x <= maxX; x++) {
+                px += stepX;
+                if (mCoverage[row + x] >= 1) {
+                    continue;
+                }
+                // distance to the closest point of the segment
+                float t = (px * dx + py * dy) * inverseLength;
+                t = t < 0 ? 0 : t > 1 ? 1 : t;
+                float ex = px - t * dx;
+                float ey = py - t * dy;
+                float distanceSquared = ex * ex + ey * ey;
+                if (distanceSquared >= outside) {
+                    continue;
+                }
+                if (distanceSquared <= inside) {
+                    mCoverage[row + x] = 1;
+                    continue;
+                }
+                float coverage = (radius - (float) Math.sqrt(distanceSquared)) * pixelScale + 0.5f;
+                if (coverage > mCoverage[row + x]) {
+                    mCoverage[row + x] = coverage < 1 ? coverage : 1;
+                }
+            }
+        }
+    }
+
+    private void clearCoverage() {
+        for (int y = mMinY; y <= mMaxY; y++) {
+            if (mRowMinX[y] <= mRowMaxX[y]) {
+                Arrays.fill(mCoverage, y * mWidth + mRowMinX[y], y * mWidth + mRowMaxX[y] + 1, 0f);
+            }
+            mRowMinX[y] = mWidth;
+            mRowMaxX[y] = -1;
+        }
+    }
+
+    /**
+     * This method flattens the path of FingerHandler into
+     * {@link StrokeRasterizer#mPoints}: a quadratic curve from the middle of every segment
+     * to the middle of the next one, controlled by the point between them, and a line to
+     * the last point once the stroke is finished. A single point is only drawn once the
+     * stroke is finished
+     */
+    private void flatten(Stroke stroke) {
+        mPointCount = 0;
+        int size = stroke.size();
+        if (size == 0 || size == 1 && !stroke.isFinished()) {
+            return;
+        }
+        float x = stroke.getX(0);
+        float y = stroke.getY(0);
+        addPoint(x, y);
+        for (int i = 1; i < size; i++) {
+            float controlX = stroke.getX(i - 1);
+            float controlY = stroke.getY(i - 1);
+            float endX = (stroke.getX(i) + controlX) / 2;
+            float endY = (stroke.getY(i) + controlY) / 2;
+            // the distance of the chord from the curve is |p0 - 2 p1 + p2| / 8 for one segment
+            // and shrinks with the square of the number of segments
+            float deviationX = (x - 2 * controlX + endX) * mScaleX;
+            float deviationY = (y - 2 * controlY + endY) * mScaleY;
+            float deviation = (float) Math.sqrt(deviationX * deviationX + deviationY * deviationY);
+            int segments = Math.max(1, (int) Math.ceil(Math.sqrt(deviation / (8 * FLATNESS))));
+            for (int j = 1; j <= segments; j++) {
+                float t = (float) j / segments;
+                float u = 1 - t;
+                addPoint(u * u * x + 2 * u * t * controlX + t * t * endX,
+                        u * u * y + 2 * u * t * controlY + t * t * endY);
+            }
+            x = endX;
+            y = endY;
+        }
+        if (stroke.isFinished()) {
+            addPoint(stroke.getX(size - 1), stroke.getY(size - 1));
+        }
+    }
+
+    private void addPoint(float x, float y) {
+        if (2 * mPointCount + 2 > mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, mPoints.length * 2);
+        }
+        mPoints[2 * mPointCount] = x;
+        mPoints[2 * mPointCount + 1] = y;
+        mPointCount++;
+    }
+}
@@ -0,0 +1,231 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes the strokes of a drawing as the point sequence read by QuickDraw style recognizers.
+ * Every stroke is simplified with Ramer-Douglas-Peucker, the points are scaled into [0, 1] on
+ * each axis and every point becomes (dx, dy, end of stroke) relative to the previous one,
+ * the first point is dropped. Simplified strokes are kept, so encoding again after a new stroke
+ * only simplifies that stroke. Not thread-safe, pure Java
+ * @see StrokeClassifier
+ * @since 1.1
+ */
+public class StrokeSequence {
+
+    /**
+     * Default tolerance of the simplification in pixels, about the 2 units on the 255 grid of
+     * the QuickDraw data for a drawing that spans the screen
+     * @since 1.1
+     */
+    public static final float DEFAULT_EPSILON = 4f;
+
+    private final int maxPoints;
+    private final float epsilon;
+    private final float[] values;
+    private int length = 0;
+    private int truncated = 0;
+
+    private final ArrayList<Stroke> mStrokes = new ArrayList<>();
+    private final ArrayList<float[]> mSimplified = new ArrayList<>();
+    private boolean[] mKeep = new boolean[64];
+    private int[] mStack = new int[64];
+
+    /**
+     * Constructor of the class
+     * @param maxPoints length of the sequence, longer drawings are truncated
+     * @param epsilon tolerance of the simplification in pixels
+     * @since 1.1
+     */
+    public StrokeSequence(int maxPoints, float epsilon) {
+        this.maxPoints = maxPoints;
+        this.epsilon = epsilon;
+        this.values = new float[maxPoints * 3];
+    }
+
+    /**
+     * This method encodes a drawing into {@link StrokeSequence#getValues()}
+     * @param strokes strokes in drawing order, finished strokes must not change afterwards
+     * @return number of encoded points
+     * @since 1.1
+     */
+    public int encode(List<Stroke> strokes) {
+        float left = Float.POSITIVE_INFINITY;
+        float top = Float.POSITIVE_INFINITY;
+        float right = Float.NEGATIVE_INFINITY;
+        float bottom = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < strokes.size(); i++) {
+            Stroke stroke = strokes.get(i);
+            if (i == mStrokes.size()) {
+                mStrokes.add(null);
+                mSimplified.add(null);
+            }
+            // unfinished strokes may still grow
+            if (mStrokes.get(i) != stroke || !stroke.isFinished()) {
+                mStrokes.set(i, stroke);
+                mSimplified.set(i, simplify(stroke));
+            }
+            if (stroke.size() > 0) {
+                left = Math.min(left, stroke.getLeft());
+                top = Math.min(top, stroke.getTop());
+                right = Math.max(right, stroke.getRight());
+                bottom = Math.max(bottom, stroke.getBottom());
+            }
+        }
+        for (int i = mStrokes.size() - 1; i >= strokes.size(); i--) {
+            mStrokes.remove(i);
+            mSimplified.remove(i);
+        }
+
+        int previousLength = length;
+        length = 0;
+        truncated = 0;
+        if (left > right) {
+            Arrays.fill(values, 0, previousLength * 3, 0f);
+            return 0;
+        }
+        // like the QuickDraw data, a line keeps its length along its own axis only
+        float scaleX = right - left > 0 ? 1f / (right - left) : 1f;
+        float scaleY = bottom - top > 0 ? 1f / (bottom - top) : 1f;
+        boolean first = true;
+        float lastX = 0;
+        float lastY = 0;
+        for (int s = 0; s < mSimplified.size(); s++) {
+            float[] points = mSimplified.get(s);
+            for (int p = 0; p < points.length; p += 2) {
+                float x = points[p] * scaleX;
+                float y = points[p + 1] * scaleY;
+                if (first) {
+                    first = false;
+                } else if (length == maxPoints) {
+                    truncated++;
+                } else {
+                    int offset = 3 * length++;
+                    values[offset] = x - lastX;
+                    values[offset + 1] = y - lastY;
+                    values[offset + 2] = 0f;
+                }
+                lastX = x;
+                lastY = y;
+            }
+            if (points.length > 0 && length > 0 && truncated == 0) {
+                values[3 * length - 1] = 1f;
+            }
+        }
+        if (length < previousLength) {
+            Arrays.fill(values, length * 3, previousLength * 3, 0f);
+        }
+        return length;
+    }
+
+    /**
+     * @return sequence of the last {@link StrokeSequence#encode(List)}, maxPoints x 3 values,
+     *         zero after {@link StrokeSequence#getLength()} points
+     * @since 1.1
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getMaxPoints() {
+        return maxPoints;
+    }
+
+    /**
+     * @return number of points of the last encoded drawing that did not fit
+     * @since 1.1
+     */
+    public int getTruncated() {
+        return truncated;
+    }
+
+    /**
+     * This method simplifies a stroke with Ramer-Douglas-Peucker, without recursion
+     * @param stroke Stroke object
+     * @return x, y pairs of the kept points
+     * @since 1.1
+     */
+    private float[] simplify(Stroke stroke) {
+        int size = stroke.size();
+        if (size <= 2) {
+            float[] points = new float[size * 2];
+            for (int i = 0; i < size; i++) {
+                points[2 * i] = stroke.getX(i);
+                points[2 * i + 1] = stroke.getY(i);
+            }
+            return points;
+        }
+        if (mKeep.length < size) {
+            mKeep = new boolean[size];
+            mStack = new int[size * 2];
+        }
+        Arrays.fill(mKeep, 0, size, false);
+        mKeep[0] = true;
+        mKeep[size - 1] = true;
+        int kept = 2;
+        int top = 0;
+        mStack[top++] = 0;
+        mStack[top++] = size - 1;
+        float epsilonSquared = epsilon * epsilon;
+        while (top > 0) {
+            int last = mStack[--top];
+            int first = mStack[--top];
+            float ax = stroke.getX(first);
+            float ay = stroke.getY(first);
+            float dx = stroke.getX(last) - ax;
+            float dy = stroke.getY(last) - ay;
+            float lengthSquared = dx * dx + dy * dy;
+            int farthest = -1;
+            float maxDistance = epsilonSquared;
+            for (int i = first + 1; i < last; i++) {
+                float px = stroke.getX(i) - ax;
+                float py = stroke.getY(i) - ay;
+                float distance;
+                if (lengthSquared == 0) {
+                    distance = px * px + py * py;
+                } else {
+                    float cross = px * dy - py * dx;
+                    distance = cross * cross / lengthSquared;
+                }
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                mKeep[farthest] = true;
+                kept++;
+                mStack[top++] = first;
+                mStack[top++] = farthest;
+                mStack[top++] = farthest;
+                mStack[top++] = last;
+            }
+        }
+        float[] points = new float[kept * 2];
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            if (mKeep[i]) {
+                points[k++] = stroke.getX(i);
+                points[k++] = stroke.getY(i);
+            }
+        }
+        return points;
+    }
+}
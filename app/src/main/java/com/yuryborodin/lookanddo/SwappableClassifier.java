@@ -0,0 +1,227 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Classifier that forwards to a replaceable delegate.
+ * Every call leases the current delegate, so a call that started before
+ * {@link SwappableClassifier#swap(Classifier)} finishes on the old model, which is closed
+ * once the last of these calls has returned
+ * @since 1.1
+ */
+public class SwappableClassifier implements Classifier {
+    private static final String TAG = "SwappableClassifier";
+
+    /**
+     * Delegate that is handed out to new calls
+     * @since 1.1
+     */
+    private final AtomicReference<Lease> mCurrent;
+
+    /**
+     * Last value passed to {@link SwappableClassifier#enableStatLogging(boolean)}
+     * Applied to every new delegate
+     * @since 1.1
+     */
+    private volatile boolean mLogStats = false;
+
+    /**
+     * Variable that defines whether {@link SwappableClassifier#close()} was called
+     * @since 1.1
+     */
+    private final AtomicBoolean mClosed = new AtomicBoolean(false);
+
+    /**
+     * Constructor of the class
+     * @param initial Classifier object that is used until the first swap
+     * @since 1.1
+     */
+    public SwappableClassifier(Classifier initial) {
+        mCurrent = new AtomicReference<>(new Lease(initial));
+    }
+
+    /**
+     * This method atomically replaces the delegate
+     * The previous delegate is closed as soon as the calls running on it are drained
+     * @param replacement Classifier object, must be fully loaded and validated
+     * @since 1.1
+     */
+    public void swap(Classifier replacement) {
+        if (mClosed.get()) {
+            replacement.close();
+            throw new IllegalStateException("Classifier is closed");
+        }
+        replacement.enableStatLogging(mLogStats);
+        Lease previous = mCurrent.getAndSet(new Lease(replacement));
+        // drop the reference held on behalf of mCurrent
+        previous.release();
+        Log.i(TAG, "Model swapped, previous model is closed once drained");
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(Bitmap bitmap) {
+        Lease lease = acquire();
+        try {
+            return lease.classifier.recognizeImage(bitmap);
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(Bitmap bitmap, float[] embedding) {
+        Lease lease = acquire();
+        try {
+            return lease.classifier.recognizeImage(bitmap, embedding);
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps) {
+        Lease lease = acquire();
+        try {
+            return lease.classifier.recognizeImages(bitmaps);
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public List<Recognition> recognizeCandidates(Bitmap bitmap, CandidateSet candidates,
+                                                 float[] embedding) {
+        Lease lease = acquire();
+        try {
+            return lease.classifier.recognizeCandidates(bitmap, candidates, embedding);
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public int getNumClasses() {
+        Lease lease = acquire();
+        try {
+            return lease.classifier.getNumClasses();
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public int getEmbeddingSize() {
+        Lease lease = acquire();
+        try {
+            return lease.classifier.getEmbeddingSize();
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public int getInputSize() {
+        Lease lease = acquire();
+        try {
+            return lease.classifier.getInputSize();
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public void enableStatLogging(boolean debug) {
+        mLogStats = debug;
+        Lease lease = acquire();
+        try {
+            lease.classifier.enableStatLogging(debug);
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public String getStatString() {
+        Lease lease = acquire();
+        try {
+            return lease.classifier.getStatString();
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mClosed.compareAndSet(false, true)) {
+            mCurrent.get().release();
+        }
+    }
+
+    /**
+     * This method takes a reference on the current delegate
+     * Retries if the delegate was swapped out between reading and referencing it
+     * @return Lease object, has to be released by the caller
+     * @since 1.1
+     */
+    private Lease acquire() {
+        while (true) {
+            if (mClosed.get()) {
+                throw new IllegalStateException("Classifier is closed");
+            }
+            Lease lease = mCurrent.get();
+            if (lease.tryAcquire()) {
+                return lease;
+            }
+        }
+    }
+
+    /**
+     * Reference counted holder of a delegate
+     * Starts with one reference that belongs to {@link SwappableClassifier#mCurrent}
+     * @since 1.1
+     */
+    private static final class Lease {
+        final Classifier classifier;
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Lease(Classifier classifier) {
+            this.classifier = classifier;
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int count = refs.get();
+                if (count == 0) {
+                    // already drained and closed
+                    return false;
+                }
+                if (refs.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) {
+                classifier.close();
+            }
+        }
+    }
+}
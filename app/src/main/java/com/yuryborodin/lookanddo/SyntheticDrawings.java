@@ -0,0 +1,302 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded procedural drawings for load and stress measurements.
+ * Plain Java, shared by the benchmarks and the harness; the app does not use it.
+ * A drawing depends only on its arguments, not on the drawings generated before, so every
+ * point of a complexity sweep can be reproduced on its own on any machine. Points are
+ * sampled every {@link #SAMPLE_MILLIS} like touch events, at a spacing along the path that
+ * models the speed of the finger
+ * @since 1.1
+ */
+public final class SyntheticDrawings {
+
+    /**
+     * Milliseconds between two points of a stroke
+     * @since 1.1
+     */
+    public static final int SAMPLE_MILLIS = 8;
+
+    /**
+     * Width of the strokes, the same as DrawView draws
+     * @since 1.1
+     */
+    public static final int STROKE_WIDTH = 5;
+
+    private static final int STROKE_COLOR = 0xFF000000;
+    private static final int TEMPLATE_SEGMENTS = 256;
+    private static final double STAR_INNER_RADIUS = 0.45;
+
+    /**
+     * Kind of a drawing
+     * @since 1.1
+     */
+    public enum Kind {
+        /**
+         * Outlines of simple shapes, circles, polygons, spirals, zigzags and waves, scaled,
+         * rotated and wobbling like drawn by hand; the typical input of the game
+         */
+        SHAPES,
+        /**
+         * Tiny scribbles of a few points, many strokes with little ink
+         */
+        SCRIBBLES,
+        /**
+         * Rows drawn back and forth over the whole canvas, the largest area of ink
+         */
+        FILL,
+        /**
+         * Long random walks across the canvas, the most points per stroke
+         */
+        CLUTTER
+    }
+
+    private SyntheticDrawings() {}
+
+    /**
+     * This method generates a drawing
+     * @param seed seed of the drawing
+     * @param kind kind of the drawing
+     * @param strokes number of strokes
+     * @param spacing distance between two points of a stroke in pixels, 1 for a slow finger,
+     *                around 10 for a fast one
+     * @param width width of the canvas
+     * @param height height of the canvas
+     * @return finished strokes within the canvas
+     * @since 1.1
+     */
+    public static List<Stroke> generate(long seed, Kind kind, int strokes, float spacing,
+                                        int width, int height) {
+        if (strokes < 0 || spacing <= 0 || width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid drawing parameters");
+        }
+        Random random = new Random(mix(seed, kind.ordinal(), strokes,
+                Float.floatToIntBits(spacing), width, height));
+        List<Stroke> drawing = new ArrayList<>(strokes);
+        for (int s = 0; s < strokes; s++) {
+            Stroke stroke = new Stroke(STROKE_COLOR, STROKE_WIDTH);
+            switch (kind) {
+                case SHAPES:
+                    shape(random, stroke, spacing, width, height);
+                    break;
+                case SCRIBBLES:
+                    scribble(random, stroke, spacing, width, height);
+                    break;
+                case FILL:
+                    fillRow(random, stroke, s, strokes, spacing, width, height);
+                    break;
+                default:
+                    walk(random, stroke, spacing, width, height);
+                    break;
+            }
+            stroke.finish();
+            drawing.add(stroke);
+        }
+        return drawing;
+    }
+
+    /**
+     * @param drawing strokes
+     * @return number of points of all strokes
+     * @since 1.1
+     */
+    public static int countPoints(List<Stroke> drawing) {
+        int points = 0;
+        for (Stroke stroke : drawing) {
+            points += stroke.size();
+        }
+        return points;
+    }
+
+    /**
+     * Outline of a random template: the template is a closed or open curve over t in [0, 1]
+     * within the unit circle, sampled at the spacing along its length and bent by a slow wobble
+     * and a small jitter of every point
+     */
+    private static void shape(Random random, Stroke stroke, float spacing, int width,
+                              int height) {
+        int template = random.nextInt(6);
+        int corners = 3 + random.nextInt(4);
+        float radius = Math.min(width, height) * (0.05f + random.nextFloat() * 0.25f);
+        float centerX = radius + random.nextFloat() * Math.max(0, width - 2 * radius);
+        float centerY = radius + random.nextFloat() * Math.max(0, height - 2 * radius);
+        double rotation = random.nextDouble() * 2 * Math.PI;
+        float aspect = 0.6f + random.nextFloat() * 0.8f;
+        double wobblePhase = random.nextDouble() * 2 * Math.PI;
+        float wobble = 0.04f + random.nextFloat() * 0.06f;
+
+        float[] unit = new float[2];
+        double length = templateLength(template, corners, unit) * radius;
+        int points = Math.max(2, (int) (length / spacing));
+        double cos = Math.cos(rotation);
+        double sin = Math.sin(rotation);
+        int time = 0;
+        for (int i = 0; i < points; i++) {
+            double t = (double) i / (points - 1);
+            template(template, corners, t, unit);
+            double r = 1 + wobble * Math.sin(wobblePhase + t * 4 * Math.PI);
+            double ux = unit[0] * r * aspect;
+            double uy = unit[1] * r;
+            float x = centerX + (float) ((ux * cos - uy * sin) * radius);
+            float y = centerY + (float) ((ux * sin + uy * cos) * radius);
+            x += (float) random.nextGaussian() * 0.5f;
+            y += (float) random.nextGaussian() * 0.5f;
+            stroke.add(clamp(x, width), clamp(y, height), time);
+            time += SAMPLE_MILLIS;
+        }
+    }
+
+    /**
+     * Length of a template within the unit circle, summed over a fixed number of segments
+     */
+    private static double templateLength(int template, int corners, float[] unit) {
+        double length = 0;
+        template(template, corners, 0, unit);
+        float x = unit[0];
+        float y = unit[1];
+        for (int i = 1; i <= TEMPLATE_SEGMENTS; i++) {
+            template(template, corners, (double) i / TEMPLATE_SEGMENTS, unit);
+            length += Math.hypot(unit[0] - x, unit[1] - y);
+            x = unit[0];
+            y = unit[1];
+        }
+        return length;
+    }
+
+    private static void template(int template, int corners, double t, float[] out) {
+        double angle = t * 2 * Math.PI;
+        switch (template) {
+            case 0: // circle
+                out[0] = (float) Math.cos(angle);
+                out[1] = (float) Math.sin(angle);
+                break;
+            case 1: { // polygon
+                double side = t * corners;
+                int corner = Math.min((int) side, corners - 1);
+                double f = side - corner;
+                double a0 = 2 * Math.PI * corner / corners;
+                double a1 = 2 * Math.PI * (corner + 1) / corners;
+                out[0] = (float) (Math.cos(a0) * (1 - f) + Math.cos(a1) * f);
+                out[1] = (float) (Math.sin(a0) * (1 - f) + Math.sin(a1) * f);
+                break;
+            }
+            case 2: // spiral of three turns
+                out[0] = (float) (t * Math.cos(angle * 3));
+                out[1] = (float) (t * Math.sin(angle * 3));
+                break;
+            case 3: { // zigzag
+                double tooth = t * corners * 2;
+                double f = tooth - Math.floor(tooth);
+                out[0] = (float) (t * 2 - 1);
+                out[1] = (float) (((int) tooth & 1) == 0 ? f * 2 - 1 : 1 - f * 2) * 0.5f;
+                break;
+            }
+            case 4: // wave
+                out[0] = (float) (t * 2 - 1);
+                out[1] = (float) (Math.sin(angle * corners / 2.0) * 0.5);
+                break;
+            default: { // star, a polygon of alternating outer and inner corners
+                int vertices = corners * 2;
+                double side = t * vertices;
+                int corner = Math.min((int) side, vertices - 1);
+                double f = side - corner;
+                double r0 = (corner & 1) == 0 ? 1 : STAR_INNER_RADIUS;
+                double r1 = (corner & 1) == 0 ? STAR_INNER_RADIUS : 1;
+                double a0 = 2 * Math.PI * corner / vertices;
+                double a1 = 2 * Math.PI * (corner + 1) / vertices;
+                out[0] = (float) (Math.cos(a0) * r0 * (1 - f) + Math.cos(a1) * r1 * f);
+                out[1] = (float) (Math.sin(a0) * r0 * (1 - f) + Math.sin(a1) * r1 * f);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Tiny random walk of 1 to 6 points, a tap or a dot
+     */
+    private static void scribble(Random random, Stroke stroke, float spacing, int width,
+                                 int height) {
+        float x = random.nextFloat() * width;
+        float y = random.nextFloat() * height;
+        int points = 1 + random.nextInt(6);
+        double angle = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < points; i++) {
+            stroke.add(clamp(x, width), clamp(y, height), i * SAMPLE_MILLIS);
+            angle += random.nextGaussian() * 0.8;
+            x += (float) (Math.cos(angle) * spacing);
+            y += (float) (Math.sin(angle) * spacing);
+        }
+    }
+
+    /**
+     * Row of a fill: the rows of all strokes are spread evenly over the height, even rows are
+     * drawn left to right, odd rows back
+     */
+    private static void fillRow(Random random, Stroke stroke, int row, int rows, float spacing,
+                                int width, int height) {
+        float y = (row + 0.5f) * height / rows;
+        boolean forward = (row & 1) == 0;
+        int points = Math.max(2, (int) (width / spacing) + 1);
+        for (int i = 0; i < points; i++) {
+            float f = (float) i / (points - 1);
+            float x = (forward ? f : 1 - f) * width;
+            float jitter = (float) random.nextGaussian() * 0.5f;
+            stroke.add(clamp(x, width), clamp(y + jitter, height), i * SAMPLE_MILLIS);
+        }
+    }
+
+    /**
+     * Random walk across the canvas, reflected at the borders
+     */
+    private static void walk(Random random, Stroke stroke, float spacing, int width,
+                             int height) {
+        float x = random.nextFloat() * width;
+        float y = random.nextFloat() * height;
+        double angle = random.nextDouble() * 2 * Math.PI;
+        int points = Math.max(2, (int) ((width + height) / spacing));
+        for (int i = 0; i < points; i++) {
+            stroke.add(x, y, i * SAMPLE_MILLIS);
+            angle += random.nextGaussian() * 0.2;
+            float nx = x + (float) (Math.cos(angle) * spacing);
+            float ny = y + (float) (Math.sin(angle) * spacing);
+            if (nx < 0 || nx >= width) {
+                angle = Math.PI - angle;
+                nx = x;
+            }
+            if (ny < 0 || ny >= height) {
+                angle = -angle;
+                ny = y;
+            }
+            x = nx;
+            y = ny;
+        }
+    }
+
+    private static float clamp(float value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    private static long mix(long seed, int... values) {
+        long hash = seed;
+        for (int value : values) {
+            hash = hash * 0x9E3779B97F4A7C15L + value;
+            hash ^= hash >>> 31;
+        }
+        return hash;
+    }
+}
@@ -24,14 +24,16 @@ import android.util.Log;
 import org.tensorflow.Operation;
 import org.tensorflow.contrib.android.TensorFlowInferenceInterface;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Vector;
 
 /** A classifier specialized to label images using TensorFlow. */
 public class TensorFlowImageClassifier implements Classifier {
@@ -41,6 +43,14 @@ public class TensorFlowImageClassifier implements Classifier {
     private static final int MAX_RESULTS = 3;
     private static final float THRESHOLD = 0.1f;
 
+    // Penultimate layer of graphs produced by retrain.py: a placeholder that defaults to the
+    // bottleneck, so fetching it returns the embedding of the fed image.
+    public static final String EMBEDDING_NAME = "input/BottleneckInputPlaceholder";
+
+    // Input of the final softmax of graphs produced by retrain.py. Candidate recognition fetches
+    // the logits when the graph has them, otherwise it renormalizes the probabilities.
+    public static final String LOGITS_NAME = "final_training_ops/Wx_plus_b/add";
+
     // Config values.
     private String inputName;
     private String outputName;
@@ -49,11 +59,20 @@ public class TensorFlowImageClassifier implements Classifier {
     private float imageStd;
 
     // Pre-allocated buffers.
-    private Vector<String> labels = new Vector<String>();
+    private LabelTable labels;
     private int[] intValues;
     private float[] floatValues;
     private float[] outputs;
+    private final int[] topIndices = new int[MAX_RESULTS];
+    private final float[] topScores = new float[MAX_RESULTS];
     private String[] outputNames;
+    private String[] outputNamesWithEmbedding;
+    private String candidateName;
+    private String[] candidateNames;
+    private String[] candidateNamesWithEmbedding;
+    private float[] batchValues;
+    private float[] batchOutputs;
+    private int embeddingSize = 0;
 
     private boolean logStats = false;
 
@@ -84,62 +103,219 @@ public class TensorFlowImageClassifier implements Classifier {
             String inputName,
             String outputName) {
         TensorFlowImageClassifier c = new TensorFlowImageClassifier();
-        c.inputName = inputName;
-        c.outputName = outputName;
 
         // Read the label names into memory.
         String actualFilename = labelFilename.split("file:///android_asset/")[1];
         Log.i(TAG, "Reading labels from: " + actualFilename);
-        BufferedReader br = null;
         try {
-            br = new BufferedReader(new InputStreamReader(assetManager.open(actualFilename)));
+            c.labels = readLabels(assetManager.open(actualFilename));
+        } catch (IOException e) {
+            throw new RuntimeException("Problem reading label file!" , e);
+        }
+
+        c.inferenceInterface = new TensorFlowInferenceInterface(assetManager, modelFilename);
+        c.configure(inputSize, imageMean, imageStd, inputName, outputName);
+        return c;
+    }
+
+    /**
+     * Initializes a native TensorFlow session from a model stored outside of the APK, e.g. a
+     * model bundle downloaded into app-private storage.
+     *
+     * @param modelFile The GraphDef protocol buffer file.
+     * @param labelFile The label file for classes.
+     * @param inputSize The input size. A square image of inputSize x inputSize is assumed.
+     * @param imageMean The assumed mean of the image values.
+     * @param imageStd The assumed std of the image values.
+     * @param inputName The label of the image input node.
+     * @param outputName The label of the output node.
+     */
+    public static Classifier create(
+            File modelFile,
+            File labelFile,
+            int inputSize,
+            int imageMean,
+            float imageStd,
+            String inputName,
+            String outputName) {
+        TensorFlowImageClassifier c = new TensorFlowImageClassifier();
+
+        Log.i(TAG, "Reading labels from: " + labelFile);
+        try {
+            c.labels = readLabels(new FileInputStream(labelFile));
+        } catch (IOException e) {
+            throw new RuntimeException("Problem reading label file!" , e);
+        }
+
+        InputStream modelStream = null;
+        try {
+            modelStream = new BufferedInputStream(new FileInputStream(modelFile));
+            c.inferenceInterface = new TensorFlowInferenceInterface(modelStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Problem reading model file!" , e);
+        } finally {
+            closeQuietly(modelStream);
+        }
+        c.configure(inputSize, imageMean, imageStd, inputName, outputName);
+        return c;
+    }
+
+    /**
+     * Initializes a native TensorFlow session from a GraphDef that is already in memory.
+     * Used to create several independent sessions of one model without reading it again.
+     *
+     * @param graphDef The GraphDef protocol buffer.
+     * @param labels The labels of the classes.
+     * @param inputSize The input size. A square image of inputSize x inputSize is assumed.
+     * @param imageMean The assumed mean of the image values.
+     * @param imageStd The assumed std of the image values.
+     * @param inputName The label of the image input node.
+     * @param outputName The label of the output node.
+     */
+    public static Classifier create(
+            byte[] graphDef,
+            List<String> labels,
+            int inputSize,
+            int imageMean,
+            float imageStd,
+            String inputName,
+            String outputName) {
+        TensorFlowImageClassifier c = new TensorFlowImageClassifier();
+        c.labels = new LabelTable(labels);
+        c.inferenceInterface = new TensorFlowInferenceInterface(new ByteArrayInputStream(graphDef));
+        c.configure(inputSize, imageMean, imageStd, inputName, outputName);
+        return c;
+    }
+
+    private static LabelTable readLabels(InputStream in) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(in));
+        List<String> labels = new ArrayList<String>();
+        try {
             String line;
             while ((line = br.readLine()) != null) {
-                c.labels.add(line);
+                labels.add(line);
             }
+        } finally {
             br.close();
+        }
+        return new LabelTable(labels);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
         } catch (IOException e) {
-            throw new RuntimeException("Problem reading label file!" , e);
+            Log.w(TAG, "Failed to close model stream", e);
         }
+    }
 
-        c.inferenceInterface = new TensorFlowInferenceInterface(assetManager, modelFilename);
+    private void configure(
+            int inputSize, int imageMean, float imageStd, String inputName, String outputName) {
+        this.inputName = inputName;
+        this.outputName = outputName;
 
         // The shape of the output is [N, NUM_CLASSES], where N is the batch size.
-        final Operation operation = c.inferenceInterface.graphOperation(outputName);
+        final Operation operation = inferenceInterface.graphOperation(outputName);
         final int numClasses = (int) operation.output(0).shape().size(1);
-        Log.i(TAG, "Read " + c.labels.size() + " labels, output layer size is " + numClasses);
+        Log.i(TAG, "Read " + labels.size() + " labels, output layer size is " + numClasses);
 
         // Ideally, inputSize could have been retrieved from the shape of the input operation.  Alas,
         // the placeholder node for input in the graphdef typically used does not specify a shape, so it
         // must be passed in as a parameter.
-        c.inputSize = inputSize;
-        c.imageMean = imageMean;
-        c.imageStd = imageStd;
+        this.inputSize = inputSize;
+        this.imageMean = imageMean;
+        this.imageStd = imageStd;
 
         // Pre-allocate buffers.
-        c.outputNames = new String[] {outputName};
-        c.intValues = new int[inputSize * inputSize];
-        c.floatValues = new float[inputSize * inputSize * 3];
-        c.outputs = new float[numClasses];
+        outputNames = new String[] {outputName};
+        intValues = new int[inputSize * inputSize];
+        floatValues = new float[inputSize * inputSize * 3];
+        outputs = new float[numClasses];
 
-        return c;
+        // The embedding is optional, models from other sources may not have this node.
+        final Operation embeddingOperation = inferenceInterface.graph().operation(EMBEDDING_NAME);
+        if (embeddingOperation != null) {
+            final int size = (int) embeddingOperation.output(0).shape().size(1);
+            if (size > 0) {
+                outputNamesWithEmbedding = new String[] {outputName, EMBEDDING_NAME};
+                embeddingSize = size;
+                Log.i(TAG, "Embedding size is " + embeddingSize);
+            }
+        }
+
+        // So are the logits, optimized graphs may have folded them into the softmax.
+        final Operation logitsOperation = inferenceInterface.graph().operation(LOGITS_NAME);
+        candidateName = logitsOperation != null
+                && logitsOperation.output(0).shape().size(1) == numClasses
+                ? LOGITS_NAME : outputName;
+        candidateNames = new String[] {candidateName};
+        candidateNamesWithEmbedding = new String[] {candidateName, EMBEDDING_NAME};
+        Log.i(TAG, "Candidates are scored from " + candidateName);
     }
 
     @Override
-    public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    public List<Recognition> recognizeImage(Bitmap bitmap) {
+        return recognizeImage(bitmap, null);
+    }
+
+    @Override
+    public List<Recognition> recognizeImage(Bitmap bitmap, float[] embedding) {
         // Log this method so that it can be analyzed with systrace.
         Trace.beginSection("recognizeImage");
+        runModel(bitmap, embedding, outputName, outputNames, outputNamesWithEmbedding);
+        final List<Recognition> recognitions = selectRecognitions();
+        Trace.endSection(); // "recognizeImage"
+        return recognitions;
+    }
 
-        Trace.beginSection("preprocessBitmap");
-        // Preprocess the image data from 0-255 int to normalized float based
-        // on the provided parameters.
-        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-        for (int i = 0; i < intValues.length; ++i) {
-            final int val = intValues[i];
-            floatValues[i * 3 + 0] = (((val >> 16) & 0xFF) - imageMean) / imageStd;
-            floatValues[i * 3 + 1] = (((val >> 8) & 0xFF) - imageMean) / imageStd;
-            floatValues[i * 3 + 2] = ((val & 0xFF) - imageMean) / imageStd;
+    @Override
+    public List<Recognition> recognizeCandidates(
+            Bitmap bitmap, CandidateSet candidates, float[] embedding) {
+        if (candidates.getNumClasses() != outputs.length) {
+            throw new IllegalArgumentException("Candidates of " + candidates.getNumClasses()
+                    + " classes for a model of " + outputs.length);
+        }
+        Trace.beginSection("recognizeCandidates");
+        runModel(bitmap, embedding, candidateName, candidateNames, candidateNamesWithEmbedding);
+
+        Trace.beginSection("selectCandidates");
+        final int count = candidates.select(outputs, candidateName.equals(LOGITS_NAME),
+                MAX_RESULTS, THRESHOLD, topIndices, topScores);
+        final ArrayList<Recognition> recognitions = new ArrayList<Recognition>(count);
+        for (int j = 0; j < count; ++j) {
+            final int i = topIndices[j];
+            recognitions.add(new Recognition(labels.getId(i), labels.get(i), topScores[j], null));
+        }
+        Trace.endSection();
+        Trace.endSection(); // "recognizeCandidates"
+        return recognitions;
+    }
+
+    /**
+     * Runs the model on one image and copies the output of every class into scores, before any
+     * threshold or selection, e.g. to validate a model.
+     */
+    void scoreImage(Bitmap bitmap, float[] scores) {
+        runModel(bitmap, null, outputName, outputNames, outputNamesWithEmbedding);
+        System.arraycopy(outputs, 0, scores, 0, outputs.length);
+    }
+
+    /**
+     * Runs the model on one image and copies the node scoresName into outputs.
+     */
+    private void runModel(Bitmap bitmap, float[] embedding, String scoresName, String[] names,
+                          String[] namesWithEmbedding) {
+        final boolean withEmbedding = embedding != null && embeddingSize > 0
+                && embedding.length == embeddingSize;
+        if (embedding != null && !withEmbedding && embedding.length > 0) {
+            embedding[0] = Float.NaN;
         }
+
+        Trace.beginSection("preprocessBitmap");
+        preprocess(bitmap, floatValues, 0);
         Trace.endSection();
 
         // Copy the input data into TensorFlow.
@@ -149,41 +325,98 @@ public class TensorFlowImageClassifier implements Classifier {
 
         // Run the inference call.
         Trace.beginSection("run");
-        inferenceInterface.run(outputNames, logStats);
+        inferenceInterface.run(withEmbedding ? namesWithEmbedding : names, logStats);
         Trace.endSection();
 
         // Copy the output Tensor back into the output array.
         Trace.beginSection("fetch");
-        inferenceInterface.fetch(outputName, outputs);
+        inferenceInterface.fetch(scoresName, outputs);
+        if (withEmbedding) {
+            inferenceInterface.fetch(EMBEDDING_NAME, embedding);
+        }
         Trace.endSection();
+    }
 
-        // Find the best classifications.
-        PriorityQueue<Recognition> pq =
-                new PriorityQueue<Recognition>(
-                        3,
-                        new Comparator<Recognition>() {
-                            @Override
-                            public int compare(Recognition lhs, Recognition rhs) {
-                                // Intentionally reversed to put high confidence at the head of the queue.
-                                return Float.compare(rhs.getConfidence(), lhs.getConfidence());
-                            }
-                        });
-        for (int i = 0; i < outputs.length; ++i) {
-            if (outputs[i] > THRESHOLD) {
-                pq.add(
-                        new Recognition(
-                                "" + i, labels.size() > i ? labels.get(i) : "unknown", outputs[i], null));
-            }
+    @Override
+    public List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps) {
+        final int batch = bitmaps.size();
+        final int imageLength = inputSize * inputSize * 3;
+        // Tensors are created from the whole array, so its length must match the batch.
+        if (batchValues == null || batchValues.length != batch * imageLength) {
+            batchValues = new float[batch * imageLength];
+            batchOutputs = new float[batch * outputs.length];
         }
-        final ArrayList<Recognition> recognitions = new ArrayList<Recognition>();
-        int recognitionsSize = Math.min(pq.size(), MAX_RESULTS);
-        for (int i = 0; i < recognitionsSize; ++i) {
-            recognitions.add(pq.poll());
+        Trace.beginSection("recognizeImages");
+
+        Trace.beginSection("preprocessBitmap");
+        for (int b = 0; b < batch; ++b) {
+            preprocess(bitmaps.get(b), batchValues, b * imageLength);
+        }
+        Trace.endSection();
+
+        Trace.beginSection("feed");
+        inferenceInterface.feed(inputName, batchValues, batch, inputSize, inputSize, 3);
+        Trace.endSection();
+
+        Trace.beginSection("run");
+        inferenceInterface.run(outputNames, logStats);
+        Trace.endSection();
+
+        Trace.beginSection("fetch");
+        inferenceInterface.fetch(outputName, batchOutputs);
+        Trace.endSection();
+
+        final List<List<Recognition>> results = new ArrayList<List<Recognition>>(batch);
+        for (int b = 0; b < batch; ++b) {
+            System.arraycopy(batchOutputs, b * outputs.length, outputs, 0, outputs.length);
+            results.add(selectRecognitions());
+        }
+        Trace.endSection(); // "recognizeImages"
+        return results;
+    }
+
+    /**
+     * Scales a bitmap to the input size if needed and normalizes it into a float buffer.
+     */
+    private void preprocess(Bitmap bitmap, float[] values, int offset) {
+        // A hot-swapped model may expect another input size than the caller scaled for.
+        if (bitmap.getWidth() != inputSize || bitmap.getHeight() != inputSize) {
+            bitmap = Bitmap.createScaledBitmap(bitmap, inputSize, inputSize, false);
+        }
+        // Preprocess the image data from 0-255 int to normalized float based
+        // on the provided parameters.
+        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        ImageNormalizer.normalize(intValues, intValues.length, imageMean, imageStd, values, offset);
+    }
+
+    /**
+     * Finds the best classifications in outputs.
+     */
+    private List<Recognition> selectRecognitions() {
+        final int count = TopK.select(outputs, MAX_RESULTS, THRESHOLD, topIndices);
+        final ArrayList<Recognition> recognitions = new ArrayList<Recognition>(count);
+        for (int j = 0; j < count; ++j) {
+            final int i = topIndices[j];
+            recognitions.add(new Recognition(labels.getId(i), labels.get(i), outputs[i], null));
         }
-        Trace.endSection(); // "recognizeImage"
         return recognitions;
     }
 
+    @Override
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int getNumClasses() {
+        return outputs.length;
+    }
+
+    @Override
+    public int getEmbeddingSize() {
+        return embeddingSize;
+    }
+
     @Override
     public void enableStatLogging(boolean logStats) {
         this.logStats = logStats;
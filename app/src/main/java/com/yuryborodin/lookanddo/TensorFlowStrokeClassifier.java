@@ -0,0 +1,171 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.content.res.AssetManager;
+import android.os.Trace;
+import android.util.Log;
+
+import org.tensorflow.Operation;
+import org.tensorflow.contrib.android.TensorFlowInferenceInterface;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A classifier of stroke sequences (QuickDraw style 1D convolutions and LSTM) using TensorFlow.
+ * The graph reads the sequence of {@link StrokeSequence} as a float input of shape
+ * [1, maxPoints, 3] and its length as an int input of shape [1]
+ * @since 1.1
+ */
+public class TensorFlowStrokeClassifier implements StrokeClassifier {
+    private static final String TAG = "TensorFlowStrokeClassifier";
+
+    // Only return this many results with at least this confidence, like TensorFlowImageClassifier.
+    private static final int MAX_RESULTS = 3;
+    private static final float THRESHOLD = 0.1f;
+
+    private final Vector<String> labels = new Vector<String>();
+    private final StrokeSequence sequence;
+    private final int[] lengths = new int[1];
+    private final float[] outputs;
+    private final int[] topIndices = new int[MAX_RESULTS];
+    private final String inputName;
+    private final String lengthName;
+    private final String outputName;
+    private final String[] outputNames;
+    private final TensorFlowInferenceInterface inferenceInterface;
+
+    private boolean logStats = false;
+
+    private TensorFlowStrokeClassifier(TensorFlowInferenceInterface inferenceInterface,
+                                       int maxPoints, String inputName, String lengthName,
+                                       String outputName) {
+        this.inferenceInterface = inferenceInterface;
+        this.sequence = new StrokeSequence(maxPoints, StrokeSequence.DEFAULT_EPSILON);
+        this.inputName = inputName;
+        this.lengthName = lengthName;
+        this.outputName = outputName;
+        this.outputNames = new String[] {outputName};
+        // The shape of the output is [N, NUM_CLASSES], where N is the batch size.
+        final Operation operation = inferenceInterface.graphOperation(outputName);
+        this.outputs = new float[(int) operation.output(0).shape().size(1)];
+    }
+
+    /**
+     * Initializes a native TensorFlow session for classifying stroke sequences.
+     *
+     * @param assetManager The asset manager to be used to load assets.
+     * @param modelFilename The filepath of the model GraphDef protocol buffer.
+     * @param labelFilename The filepath of label file for classes.
+     * @param maxPoints The length of the sequence input.
+     * @param inputName The label of the sequence input node.
+     * @param lengthName The label of the sequence length input node.
+     * @param outputName The label of the output node.
+     */
+    public static StrokeClassifier create(
+            AssetManager assetManager,
+            String modelFilename,
+            String labelFilename,
+            int maxPoints,
+            String inputName,
+            String lengthName,
+            String outputName) {
+        TensorFlowStrokeClassifier c = new TensorFlowStrokeClassifier(
+                new TensorFlowInferenceInterface(assetManager, modelFilename),
+                maxPoints, inputName, lengthName, outputName);
+
+        String actualFilename = labelFilename.split("file:///android_asset/")[1];
+        Log.i(TAG, "Reading labels from: " + actualFilename);
+        try {
+            BufferedReader br = new BufferedReader(
+                    new InputStreamReader(assetManager.open(actualFilename)));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    c.labels.add(line);
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            c.close();
+            throw new RuntimeException("Problem reading label file!" , e);
+        }
+        Log.i(TAG, "Read " + c.labels.size() + " labels, output layer size is "
+                + c.outputs.length);
+        return c;
+    }
+
+    @Override
+    public List<Classifier.Recognition> recognizeStrokes(List<Stroke> strokes) {
+        // Log this method so that it can be analyzed with systrace.
+        Trace.beginSection("recognizeStrokes");
+
+        Trace.beginSection("encode");
+        lengths[0] = sequence.encode(strokes);
+        Trace.endSection();
+        if (lengths[0] == 0) {
+            Trace.endSection(); // "recognizeStrokes"
+            return Collections.emptyList();
+        }
+
+        Trace.beginSection("feed");
+        inferenceInterface.feed(inputName, sequence.getValues(), 1, sequence.getMaxPoints(), 3);
+        inferenceInterface.feed(lengthName, lengths, 1);
+        Trace.endSection();
+
+        Trace.beginSection("run");
+        inferenceInterface.run(outputNames, logStats);
+        Trace.endSection();
+
+        Trace.beginSection("fetch");
+        inferenceInterface.fetch(outputName, outputs);
+        Trace.endSection();
+
+        final int count = TopK.select(outputs, MAX_RESULTS, THRESHOLD, topIndices);
+        final ArrayList<Classifier.Recognition> recognitions =
+                new ArrayList<Classifier.Recognition>(count);
+        for (int j = 0; j < count; ++j) {
+            final int i = topIndices[j];
+            recognitions.add(new Classifier.Recognition(
+                    "" + i, labels.size() > i ? labels.get(i) : "unknown", outputs[i], null));
+        }
+        Trace.endSection(); // "recognizeStrokes"
+        return recognitions;
+    }
+
+    @Override
+    public int getMaxPoints() {
+        return sequence.getMaxPoints();
+    }
+
+    @Override
+    public void enableStatLogging(boolean logStats) {
+        this.logStats = logStats;
+    }
+
+    @Override
+    public String getStatString() {
+        return inferenceInterface.getStatString();
+    }
+
+    @Override
+    public void close() {
+        inferenceInterface.close();
+    }
+}
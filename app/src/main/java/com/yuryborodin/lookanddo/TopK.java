@@ -0,0 +1,53 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+/**
+ * Selection of the highest scores of an output vector.
+ * Keeps the k best indices in a small sorted array instead of boxing every candidate
+ * into a priority queue
+ * @since 1.1
+ */
+public final class TopK {
+
+    private TopK() {}
+
+    /**
+     * This method selects the indices of the k highest scores above a threshold
+     * @param scores output vector
+     * @param k maximal number of results, not larger than out.length; 0 selects nothing
+     * @param threshold only scores strictly greater than this are selected
+     * @param out destination for the indices, ordered from the highest score;
+     *            equal scores keep the order of their indices
+     * @return number of selected indices
+     * @since 1.1
+     */
+    public static int select(float[] scores, int k, float threshold, int[] out) {
+        if (k <= 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < scores.length; ++i) {
+            final float score = scores[i];
+            if (score <= threshold || count == k && score <= scores[out[count - 1]]) {
+                continue;
+            }
+            int position = count < k ? count++ : count - 1;
+            while (position > 0 && scores[out[position - 1]] < score) {
+                out[position] = out[position - 1];
+                position--;
+            }
+            out[position] = i;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,68 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+/**
+ * Records the touch stream of {@link DrawView} and the buttons of MainActivity into a
+ * {@link TouchSession}, to be replayed by {@link TouchReplayer} or by the harness.
+ * Used on the main thread
+ * @since 1.1
+ */
+public class TouchRecorder {
+
+    private final TouchSession mSession;
+
+    /**
+     * Constructor of the class
+     * @param canvasWidth width of DrawView
+     * @param canvasHeight height of DrawView
+     * @since 1.1
+     */
+    public TouchRecorder(int canvasWidth, int canvasHeight) {
+        mSession = new TouchSession(canvasWidth, canvasHeight);
+    }
+
+    /**
+     * This method records a touch event with all its samples
+     * @param event MotionEvent object delivered to DrawView
+     * @since 1.1
+     */
+    public void record(MotionEvent event) {
+        mSession.beginTouch(event.getActionMasked(), event.getEventTime());
+        for (int h = 0; h < event.getHistorySize(); h++) {
+            mSession.addSample(event.getHistoricalX(h), event.getHistoricalY(h),
+                    event.getHistoricalEventTime(h));
+        }
+        mSession.addSample(event.getX(), event.getY(), event.getEventTime());
+    }
+
+    /**
+     * This method records a button press
+     * @param button one of the TouchSession.BUTTON_ constants
+     * @since 1.1
+     */
+    public void recordButton(int button) {
+        // MotionEvent times are in the uptimeMillis time base
+        mSession.addButton(button, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * @return recorded session, still growing while recording goes on
+     * @since 1.1
+     */
+    public TouchSession getSession() {
+        return mSession;
+    }
+}
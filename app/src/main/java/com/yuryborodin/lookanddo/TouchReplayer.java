@@ -0,0 +1,264 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.Locale;
+
+/**
+ * Replays a {@link TouchSession} into a running activity: touch events are dispatched to the
+ * view as MotionEvents with the recorded samples, button presses are handed to a
+ * {@link TouchReplayer.Target}. A button that starts background work, like the
+ * classification, pauses the replay until {@link TouchReplayer#onWorkDone()}, so every run
+ * of a session does the same work in the same order. Events follow each other with the
+ * recorded pauses scaled by the speed, or immediately at speed 0.
+ * Reports the time the main thread spent on every kind of event, the time the background
+ * work took and the allocations of the main thread, to compare builds on the same session.
+ * Used on the main thread
+ * @since 1.1
+ */
+public class TouchReplayer {
+    private static final String TAG = "TouchReplayer";
+
+    /**
+     * Receives the button presses of the session
+     * @since 1.1
+     */
+    public interface Target {
+        /**
+         * This method presses a button
+         * @param button one of the TouchSession.BUTTON_ constants
+         * @return true if the button started background work, the replay then waits for
+         *         {@link TouchReplayer#onWorkDone()}
+         * @since 1.1
+         */
+        boolean onButton(int button);
+    }
+
+    private final TouchSession mSession;
+    private final View mView;
+    private final Target mTarget;
+    private final float mSpeed;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private int mNext = 0;
+    private boolean mWaiting = false;
+    private boolean mRunning = false;
+    private Runnable mOnFinished;
+
+    /**
+     * Recorded time of the first event and uptime it is replayed at; touch events are
+     * shifted by the difference, so the strokes keep their recorded timing
+     */
+    private long mTimeShift;
+
+    private long mStartNanos;
+    private long mWaitStartNanos;
+    private long mWallNanos;
+    private int mAllocCount;
+    private int mAllocBytes;
+
+    /**
+     * Count, total and maximum of the main thread time per kind of event and of the
+     * background work, in nanoseconds
+     */
+    private final long[] mCounts = new long[3];
+    private final long[] mTotals = new long[3];
+    private final long[] mMaxima = new long[3];
+    private static final int WORK = 2;
+
+    private final Runnable mStep = new Runnable() {
+        @Override
+        public void run() {
+            step();
+        }
+    };
+
+    /**
+     * Constructor of the class
+     * @param session recorded session
+     * @param view view the touch events are dispatched to
+     * @param target receiver of the button presses
+     * @param speed 1 for the recorded pauses between events, 2 for half of them, 0 for none
+     * @since 1.1
+     */
+    public TouchReplayer(TouchSession session, View view, Target target, float speed) {
+        mSession = session;
+        mView = view;
+        mTarget = target;
+        mSpeed = speed;
+    }
+
+    /**
+     * This method starts the replay
+     * @param onFinished called on the main thread after the last event, may be null
+     * @since 1.1
+     */
+    @SuppressWarnings("deprecation")
+    public void start(Runnable onFinished) {
+        mOnFinished = onFinished;
+        mNext = 0;
+        mRunning = true;
+        mTimeShift = mSession.size() > 0
+                ? SystemClock.uptimeMillis() - mSession.getTime(0) : 0;
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        mStartNanos = System.nanoTime();
+        mHandler.post(mStep);
+    }
+
+    /**
+     * This method stops the replay, the report covers the replayed events
+     * @since 1.1
+     */
+    public void cancel() {
+        if (mRunning) {
+            mHandler.removeCallbacks(mStep);
+            finish();
+        }
+    }
+
+    /**
+     * This method is called by the target when the background work of a button is done
+     * @since 1.1
+     */
+    public void onWorkDone() {
+        if (!mRunning || !mWaiting) {
+            return;
+        }
+        mWaiting = false;
+        add(WORK, System.nanoTime() - mWaitStartNanos);
+        scheduleNext();
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    private void step() {
+        if (!mRunning) {
+            return;
+        }
+        if (mNext >= mSession.size()) {
+            finish();
+            return;
+        }
+        int event = mNext++;
+        long start = System.nanoTime();
+        boolean async = false;
+        if (mSession.getKind(event) == TouchSession.TOUCH) {
+            dispatchTouch(event);
+        } else {
+            async = mTarget.onButton(mSession.getCode(event));
+        }
+        long now = System.nanoTime();
+        add(mSession.getKind(event), now - start);
+        if (async) {
+            mWaiting = true;
+            mWaitStartNanos = now;
+        } else {
+            scheduleNext();
+        }
+    }
+
+    private void scheduleNext() {
+        if (mNext >= mSession.size()) {
+            finish();
+            return;
+        }
+        if (mSpeed <= 0) {
+            mHandler.post(mStep);
+            return;
+        }
+        long pause = mSession.getTime(mNext) - mSession.getTime(mNext - 1);
+        mHandler.postDelayed(mStep, (long) (pause / mSpeed));
+    }
+
+    private void dispatchTouch(int event) {
+        int first = mSession.getFirstSample(event);
+        int count = mSession.getSampleCount(event);
+        if (count == 0) {
+            return;
+        }
+        long downTime = findDownTime(event) + mTimeShift;
+        MotionEvent motionEvent = MotionEvent.obtain(downTime,
+                mSession.getSampleTime(first) + mTimeShift, mSession.getCode(event),
+                mSession.getSampleX(first), mSession.getSampleY(first), 0);
+        // later samples push the earlier ones into the history, like batched input
+        for (int s = first + 1; s < first + count; s++) {
+            motionEvent.addBatch(mSession.getSampleTime(s) + mTimeShift,
+                    mSession.getSampleX(s), mSession.getSampleY(s), 1f, 1f, 0);
+        }
+        mView.dispatchTouchEvent(motionEvent);
+        motionEvent.recycle();
+    }
+
+    /**
+     * @return recorded time of the ACTION_DOWN that started the gesture of an event
+     */
+    private long findDownTime(int event) {
+        for (int i = event; i >= 0; i--) {
+            if (mSession.getKind(i) == TouchSession.TOUCH
+                    && mSession.getCode(i) == MotionEvent.ACTION_DOWN) {
+                return mSession.getTime(i);
+            }
+        }
+        return mSession.getTime(event);
+    }
+
+    private void add(int kind, long nanos) {
+        mCounts[kind]++;
+        mTotals[kind] += nanos;
+        mMaxima[kind] = Math.max(mMaxima[kind], nanos);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void finish() {
+        mRunning = false;
+        mWallNanos = System.nanoTime() - mStartNanos;
+        Debug.stopAllocCounting();
+        mAllocCount = Debug.getThreadAllocCount();
+        mAllocBytes = Debug.getThreadAllocSize();
+        Log.i(TAG, getReport());
+        if (mOnFinished != null) {
+            mOnFinished.run();
+        }
+    }
+
+    /**
+     * @return String with the wall time, the main thread time of the touch events and button
+     *         presses, the background work and the allocations of the main thread
+     * @since 1.1
+     */
+    public String getReport() {
+        return String.format(Locale.US,
+                "events=%d/%d samples=%d speed=%.1f wall=%.1fms | %s | %s | %s"
+                        + " | main thread allocations=%d (%d KB)",
+                mNext, mSession.size(), mSession.getSampleCount(), mSpeed, mWallNanos / 1e6,
+                summary("touch", TouchSession.TOUCH), summary("button", TouchSession.BUTTON),
+                summary("work", WORK), mAllocCount, mAllocBytes / 1024);
+    }
+
+    private String summary(String name, int kind) {
+        long count = mCounts[kind];
+        return String.format(Locale.US, "%s n=%d mean=%.3fms max=%.3fms", name, count,
+                count == 0 ? 0 : mTotals[kind] / 1e6 / count, mMaxima[kind] / 1e6);
+    }
+}
@@ -0,0 +1,373 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Recorded touch stream and button presses of one session with the app, in a compact binary
+ * format like {@link StrokeCodec}. A touch event keeps every sample MotionEvent delivered,
+ * the historical ones first, so a replay builds exactly the recorded strokes.
+ * Coordinates are stored in quarter pixels as differences to the previous sample, times in
+ * milliseconds as differences to the previous event or sample.
+ * <pre>
+ * magic 'LDTS', varint version, varint canvas width, varint canvas height
+ * per touch event:  byte 1, varint dt, varint action, varint samples,
+ *                   per sample: zigzag dx, zigzag dy, varint (event time - sample time)
+ * per button press: byte 2, varint dt, varint button
+ * byte 0
+ * </pre>
+ * Events are kept in primitive arrays, recording allocates only when they grow. Not
+ * thread-safe
+ * @since 1.1
+ */
+public final class TouchSession {
+
+    private static final int MAGIC = 0x4C445453; // "LDTS"
+    private static final int VERSION = 1;
+    private static final int TAG_END = 0;
+    private static final int TAG_TOUCH = 1;
+    private static final int TAG_BUTTON = 2;
+
+    /**
+     * Kinds of events
+     * @since 1.1
+     */
+    public static final int TOUCH = 0;
+    public static final int BUTTON = 1;
+
+    /**
+     * Buttons and menu items of MainActivity that change the drawing or the game
+     * @since 1.1
+     */
+    public static final int BUTTON_PROCEED = 0;
+    public static final int BUTTON_CLEAR = 1;
+    public static final int BUTTON_UPDATE = 2;
+    public static final int BUTTON_UNDO = 3;
+    public static final int BUTTON_REDO = 4;
+    public static final int BUTTON_NEW_GAME = 5;
+
+    private final int mCanvasWidth;
+    private final int mCanvasHeight;
+
+    /**
+     * Per event: kind, time, action or button, index of the first sample
+     */
+    private int mEvents = 0;
+    private int[] mKinds = new int[64];
+    private long[] mTimes = new long[64];
+    private int[] mCodes = new int[64];
+    private int[] mFirstSamples = new int[65];
+
+    /**
+     * Samples of all touch events
+     */
+    private int mSamples = 0;
+    private float[] mSampleX = new float[256];
+    private float[] mSampleY = new float[256];
+    private long[] mSampleTimes = new long[256];
+
+    /**
+     * Constructor of the class
+     * @param canvasWidth width of DrawView when the session was recorded
+     * @param canvasHeight height of DrawView
+     * @since 1.1
+     */
+    public TouchSession(int canvasWidth, int canvasHeight) {
+        mCanvasWidth = canvasWidth;
+        mCanvasHeight = canvasHeight;
+    }
+
+    /**
+     * This method starts a touch event, its samples are added with
+     * {@link TouchSession#addSample(float, float, long)}
+     * @param action masked action of the MotionEvent
+     * @param time event time in milliseconds
+     * @since 1.1
+     */
+    public void beginTouch(int action, long time) {
+        addEvent(TOUCH, time, action);
+    }
+
+    /**
+     * This method adds a sample to the last touch event
+     * @param x x coordinate in view coordinates
+     * @param y y coordinate
+     * @param time time of the sample in milliseconds, not after the time of the event
+     * @since 1.1
+     */
+    public void addSample(float x, float y, long time) {
+        if (mSamples == mSampleX.length) {
+            mSampleX = Arrays.copyOf(mSampleX, mSamples * 2);
+            mSampleY = Arrays.copyOf(mSampleY, mSamples * 2);
+            mSampleTimes = Arrays.copyOf(mSampleTimes, mSamples * 2);
+        }
+        mSampleX[mSamples] = x;
+        mSampleY[mSamples] = y;
+        mSampleTimes[mSamples] = time;
+        mSamples++;
+        mFirstSamples[mEvents] = mSamples;
+    }
+
+    /**
+     * This method adds a button press
+     * @param button one of the BUTTON_ constants
+     * @param time time in milliseconds, in the time base of the touch events
+     * @since 1.1
+     */
+    public void addButton(int button, long time) {
+        addEvent(BUTTON, time, button);
+    }
+
+    private void addEvent(int kind, long time, int code) {
+        if (mEvents == mKinds.length) {
+            mKinds = Arrays.copyOf(mKinds, mEvents * 2);
+            mTimes = Arrays.copyOf(mTimes, mEvents * 2);
+            mCodes = Arrays.copyOf(mCodes, mEvents * 2);
+            mFirstSamples = Arrays.copyOf(mFirstSamples, mEvents * 2 + 1);
+        }
+        mKinds[mEvents] = kind;
+        mTimes[mEvents] = time;
+        mCodes[mEvents] = code;
+        mEvents++;
+        mFirstSamples[mEvents] = mSamples;
+    }
+
+    public int getCanvasWidth() {
+        return mCanvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return mCanvasHeight;
+    }
+
+    /**
+     * @return number of events
+     * @since 1.1
+     */
+    public int size() {
+        return mEvents;
+    }
+
+    /**
+     * @return total number of touch samples
+     * @since 1.1
+     */
+    public int getSampleCount() {
+        return mSamples;
+    }
+
+    /**
+     * @param event index of the event
+     * @return {@link TouchSession#TOUCH} or {@link TouchSession#BUTTON}
+     * @since 1.1
+     */
+    public int getKind(int event) {
+        return mKinds[event];
+    }
+
+    /**
+     * @param event index of the event
+     * @return time of the event in milliseconds
+     * @since 1.1
+     */
+    public long getTime(int event) {
+        return mTimes[event];
+    }
+
+    /**
+     * @param event index of the event
+     * @return masked action of a touch event, the button of a button press
+     * @since 1.1
+     */
+    public int getCode(int event) {
+        return mCodes[event];
+    }
+
+    /**
+     * @param event index of the event
+     * @return index of the first sample of the event
+     * @since 1.1
+     */
+    public int getFirstSample(int event) {
+        return mFirstSamples[event];
+    }
+
+    /**
+     * @param event index of the event
+     * @return number of samples of the event, 0 for a button press
+     * @since 1.1
+     */
+    public int getSampleCount(int event) {
+        return mFirstSamples[event + 1] - mFirstSamples[event];
+    }
+
+    public float getSampleX(int sample) {
+        return mSampleX[sample];
+    }
+
+    public float getSampleY(int sample) {
+        return mSampleY[sample];
+    }
+
+    public long getSampleTime(int sample) {
+        return mSampleTimes[sample];
+    }
+
+    /**
+     * This method writes the session, times are written relative to the first event
+     * @param out OutputStream object, callers provide buffering; it is not closed
+     * @throws IOException if the session can not be written
+     * @since 1.1
+     */
+    public void write(OutputStream out) throws IOException {
+        writeInt(out, MAGIC);
+        writeVarint(out, VERSION);
+        writeVarint(out, mCanvasWidth);
+        writeVarint(out, mCanvasHeight);
+        long time = mEvents > 0 ? mTimes[0] : 0;
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < mEvents; i++) {
+            out.write(mKinds[i] == TOUCH ? TAG_TOUCH : TAG_BUTTON);
+            writeVarint(out, (int) Math.max(0, mTimes[i] - time));
+            writeVarint(out, mCodes[i]);
+            time = Math.max(time, mTimes[i]);
+            if (mKinds[i] != TOUCH) {
+                continue;
+            }
+            writeVarint(out, getSampleCount(i));
+            for (int s = mFirstSamples[i]; s < mFirstSamples[i + 1]; s++) {
+                int qx = Math.round(mSampleX[s] * StrokeCodec.SCALE);
+                int qy = Math.round(mSampleY[s] * StrokeCodec.SCALE);
+                writeVarint(out, zigzag(qx - x));
+                writeVarint(out, zigzag(qy - y));
+                writeVarint(out, (int) Math.max(0, mTimes[i] - mSampleTimes[s]));
+                x = qx;
+                y = qy;
+            }
+        }
+        out.write(TAG_END);
+        out.flush();
+    }
+
+    /**
+     * @return the session encoded by {@link TouchSession#write(OutputStream)}
+     * @since 1.1
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 4 * mSamples);
+        try {
+            write(bytes);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * This method reads a session, the first event is at time 0
+     * @param in InputStream object, callers provide buffering
+     * @return TouchSession object
+     * @throws IOException if the stream is not a session, of a newer version or truncated
+     * @since 1.1
+     */
+    public static TouchSession read(InputStream in) throws IOException {
+        if (readInt(in) != MAGIC) {
+            throw new IOException("Not a touch session");
+        }
+        int version = readVarint(in);
+        if (version != VERSION) {
+            throw new IOException("Unsupported touch session version " + version);
+        }
+        TouchSession session = new TouchSession(readVarint(in), readVarint(in));
+        long time = 0;
+        int x = 0;
+        int y = 0;
+        for (int tag = readByte(in); tag != TAG_END; tag = readByte(in)) {
+            if (tag != TAG_TOUCH && tag != TAG_BUTTON) {
+                throw new IOException("Unexpected tag " + tag);
+            }
+            time += readVarint(in);
+            int code = readVarint(in);
+            if (tag == TAG_BUTTON) {
+                session.addButton(code, time);
+                continue;
+            }
+            session.beginTouch(code, time);
+            int samples = readVarint(in);
+            if (samples < 0) {
+                throw new IOException("Corrupted touch event");
+            }
+            for (int s = 0; s < samples; s++) {
+                x += unzigzag(readVarint(in));
+                y += unzigzag(readVarint(in));
+                session.addSample(x / StrokeCodec.SCALE, y / StrokeCodec.SCALE,
+                        time - readVarint(in));
+            }
+        }
+        return session;
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException("Truncated touch session");
+        }
+        return value;
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        return readByte(in) << 24 | readByte(in) << 16 | readByte(in) << 8 | readByte(in);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte(in);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
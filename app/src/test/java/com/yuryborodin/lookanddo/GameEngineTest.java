@@ -0,0 +1,193 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link GameEngine}: answers, transitions between images, rounds and games,
+ * snapshot and restore. Runs on the JVM, ./gradlew :app:testDebugUnitTest
+ * @since 1.1
+ */
+public class GameEngineTest {
+
+    private static final int CLASSES = 3;
+    private static final int ROUNDS = 2;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void correctAnswerScoresAndUnlocksNext() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+        assertEquals(GameEngine.Phase.DRAWING, engine.getPhase());
+
+        assertTrue(engine.answer(0, 0.5f));
+        assertEquals(GameEngine.Phase.ANSWERED, engine.getPhase());
+        assertEquals(0.5, engine.getLastScore(), DELTA);
+        assertEquals(0.5, engine.getRoundScore(), DELTA);
+        assertEquals(0.5, engine.getGameScore(), DELTA);
+    }
+
+    @Test
+    public void wrongAnswerChangesNothing() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+
+        assertFalse(engine.answer(1, 0.9f));
+        assertEquals(GameEngine.Phase.DRAWING, engine.getPhase());
+        assertEquals(0, engine.getRoundScore(), DELTA);
+        assertEquals(0, engine.getGameScore(), DELTA);
+    }
+
+    @Test
+    public void repeatedAnswerReplacesScore() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+
+        engine.answer(0, 0.75f);
+        engine.answer(0, 0.25f);
+        assertEquals(0.25, engine.getLastScore(), DELTA);
+        assertEquals(0.25, engine.getRoundScore(), DELTA);
+        assertEquals(0.25, engine.getGameScore(), DELTA);
+    }
+
+    @Test
+    public void confidenceIsTruncatedToTwoDecimals() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+
+        engine.answer(0, 0.4999f);
+        assertEquals(0.49, engine.getLastScore(), DELTA);
+    }
+
+    @Test
+    public void nextRequiresAnswer() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+        try {
+            engine.next();
+            fail("next() of an unanswered image");
+        } catch (IllegalStateException expected) {
+            // the next image is locked
+        }
+    }
+
+    @Test
+    public void nextMovesToNextImageOfRound() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+        engine.answer(0, 0.5f);
+        int nextImage = engine.getNextImage();
+
+        assertEquals(GameEngine.Transition.NEXT_IMAGE, engine.next());
+        assertEquals(GameEngine.Phase.DRAWING, engine.getPhase());
+        assertEquals(1, engine.getCurrentTag());
+        assertEquals(0, engine.getRound());
+        assertEquals(nextImage, engine.getCurrentImage());
+        assertEquals(0.5, engine.getRoundScore(), DELTA);
+    }
+
+    @Test
+    public void lastImageOfRoundEndsRound() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+        playRound(engine, 0.5f);
+
+        assertEquals(GameEngine.Transition.ROUND_OVER, engine.next());
+        assertEquals(1.5, engine.getCompletedScore(), DELTA);
+        assertEquals(0, engine.getCurrentTag());
+        assertEquals(1, engine.getRound());
+        assertEquals(0, engine.getRoundScore(), DELTA);
+        assertEquals(1.5, engine.getGameScore(), DELTA);
+    }
+
+    @Test
+    public void lastRoundEndsGame() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+        playRound(engine, 0.5f);
+        engine.next();
+        playRound(engine, 0.25f);
+        assertEquals(0, engine.getNextImage());
+
+        assertEquals(GameEngine.Transition.GAME_OVER, engine.next());
+        assertEquals(2.25, engine.getCompletedScore(), DELTA);
+        assertEquals(0, engine.getCurrentTag());
+        assertEquals(0, engine.getRound());
+        assertEquals(0, engine.getGameScore(), DELTA);
+        assertEquals(GameEngine.Phase.DRAWING, engine.getPhase());
+    }
+
+    @Test
+    public void newGameResetsState() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+        engine.answer(0, 0.5f);
+        engine.next();
+
+        assertEquals(GameEngine.Transition.GAME_OVER, engine.newGame());
+        assertEquals(0.5, engine.getCompletedScore(), DELTA);
+        assertEquals(0, engine.getCurrentTag());
+        assertEquals(0, engine.getGameScore(), DELTA);
+    }
+
+    @Test
+    public void restoreContinuesSnapshot() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+        playRound(engine, 0.5f);
+        engine.next();
+        engine.answer(0, 0.75f);
+        GameState state = new GameState(CLASSES, ROUNDS);
+        engine.snapshot(state);
+
+        GameEngine restored = new GameEngine(CLASSES, ROUNDS);
+        restored.restore(state);
+        assertEquals(GameEngine.Phase.ANSWERED, restored.getPhase());
+        assertEquals(engine.getCurrentTag(), restored.getCurrentTag());
+        assertEquals(engine.getRound(), restored.getRound());
+        assertEquals(engine.getCurrentImage(), restored.getCurrentImage());
+        assertEquals(engine.getRoundScore(), restored.getRoundScore(), DELTA);
+        assertEquals(engine.getGameScore(), restored.getGameScore(), DELTA);
+
+        assertEquals(GameEngine.Transition.NEXT_IMAGE, restored.next());
+        assertEquals(1, restored.getCurrentTag());
+    }
+
+    @Test
+    public void restoreOutOfRangeStartsNewGame() {
+        GameEngine engine = new GameEngine(CLASSES, ROUNDS);
+        engine.answer(0, 0.5f);
+        GameState state = new GameState(CLASSES, ROUNDS);
+        state.currentTag = CLASSES;
+        state.updateEnabled = true;
+
+        engine.restore(state);
+        assertEquals(GameEngine.Phase.DRAWING, engine.getPhase());
+        assertEquals(0, engine.getCurrentTag());
+        assertEquals(0, engine.getRound());
+        assertEquals(0, engine.getGameScore(), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restoreRejectsOtherDimensions() {
+        new GameEngine(CLASSES, ROUNDS).restore(new GameState(CLASSES + 1, ROUNDS));
+    }
+
+    /**
+     * This method answers every image of the current round with the same confidence and
+     * stops on the answered last image
+     */
+    private static void playRound(GameEngine engine, float confidence) {
+        for (int tag = 0; tag < CLASSES; tag++) {
+            assertTrue(engine.answer(tag, confidence));
+            if (tag < CLASSES - 1) {
+                assertEquals(GameEngine.Transition.NEXT_IMAGE, engine.next());
+            }
+        }
+    }
+}
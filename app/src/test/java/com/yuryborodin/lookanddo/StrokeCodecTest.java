@@ -0,0 +1,190 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link StrokeCodec}: round trips of strokes, rounding of the coordinates,
+ * clamping of the times and rejection of corrupted streams. Runs on the JVM,
+ * ./gradlew :app:testDebugUnitTest
+ * @since 1.1
+ */
+public class StrokeCodecTest {
+
+    private static final int COLOR = 0xFF102030;
+    private static final int WIDTH = 12;
+    private static final float DELTA = 1e-6f;
+
+    /**
+     * Offsets of the version and of the tag of the first stroke, after the 4 bytes of the magic
+     * and the single byte of the version varint
+     */
+    private static final int VERSION_OFFSET = 4;
+    private static final int TAG_OFFSET = 5;
+
+    @Test
+    public void roundTripKeepsStrokes() throws IOException {
+        Stroke first = new Stroke(COLOR, WIDTH);
+        first.add(10f, 20f, 0);
+        first.add(10.25f, 19.5f, 16);
+        first.add(-3.75f, 400f, 40);
+        first.finish();
+        Stroke second = new Stroke(0x80FFFFFF, 1);
+        second.add(0f, 0f, 0);
+        second.add(1000.5f, 2000.75f, 8);
+
+        List<Stroke> decoded = StrokeCodec.decode(StrokeCodec.encode(Arrays.asList(first, second)));
+
+        assertEquals(2, decoded.size());
+        assertStrokeEquals(first, decoded.get(0));
+        assertStrokeEquals(second, decoded.get(1));
+        assertTrue(decoded.get(0).isFinished());
+        assertFalse(decoded.get(1).isFinished());
+    }
+
+    @Test
+    public void coordinatesRoundToQuarterPixels() throws IOException {
+        Stroke stroke = new Stroke(COLOR, WIDTH);
+        stroke.add(10.1f, 10.13f, 0);
+        stroke.add(-3.3f, 0.374f, 10);
+
+        Stroke decoded = roundTrip(stroke);
+
+        assertEquals(10f, decoded.getX(0), DELTA);
+        assertEquals(10.25f, decoded.getY(0), DELTA);
+        assertEquals(-3.25f, decoded.getX(1), DELTA);
+        assertEquals(0.25f, decoded.getY(1), DELTA);
+    }
+
+    @Test
+    public void emptyAndSinglePointStrokes() throws IOException {
+        Stroke empty = new Stroke(COLOR, WIDTH);
+        empty.finish();
+        Stroke dot = new Stroke(COLOR, WIDTH);
+        dot.add(5.5f, 7.25f, 0);
+
+        List<Stroke> decoded = StrokeCodec.decode(StrokeCodec.encode(Arrays.asList(empty, dot)));
+
+        assertEquals(2, decoded.size());
+        assertEquals(0, decoded.get(0).size());
+        assertTrue(decoded.get(0).isFinished());
+        assertStrokeEquals(dot, decoded.get(1));
+    }
+
+    @Test
+    public void noStrokes() throws IOException {
+        assertTrue(StrokeCodec.decode(StrokeCodec.encode(Collections.<Stroke>emptyList()))
+                .isEmpty());
+    }
+
+    @Test
+    public void timesNeverGoBack() throws IOException {
+        Stroke stroke = new Stroke(COLOR, WIDTH);
+        stroke.add(0f, 0f, 0);
+        stroke.add(1f, 0f, 10);
+        // an out of order event is stored at the time of the previous point
+        stroke.add(2f, 0f, 5);
+        stroke.add(3f, 0f, 20);
+
+        Stroke decoded = roundTrip(stroke);
+
+        assertEquals(0, decoded.getTime(0));
+        assertEquals(10, decoded.getTime(1));
+        assertEquals(10, decoded.getTime(2));
+        assertEquals(20, decoded.getTime(3));
+    }
+
+    @Test
+    public void largeTimeDeltas() throws IOException {
+        Stroke stroke = new Stroke(COLOR, WIDTH);
+        stroke.add(0f, 0f, 0);
+        stroke.add(1f, 1f, 3600000);
+        stroke.add(2f, 2f, Integer.MAX_VALUE);
+
+        Stroke decoded = roundTrip(stroke);
+
+        assertEquals(3600000, decoded.getTime(1));
+        assertEquals(Integer.MAX_VALUE, decoded.getTime(2));
+    }
+
+    @Test
+    public void truncatedStreamsAreRejected() {
+        Stroke stroke = new Stroke(COLOR, WIDTH);
+        stroke.add(1f, 2f, 0);
+        stroke.add(300f, 400f, 200);
+        stroke.finish();
+        byte[] data = StrokeCodec.encode(Collections.singletonList(stroke));
+
+        for (int length = 0; length < data.length; length++) {
+            try {
+                StrokeCodec.decode(Arrays.copyOf(data, length));
+                fail("Stream truncated to " + length + " of " + data.length + " bytes decoded");
+            } catch (IOException expected) {
+                // every prefix lacks at least the end mark
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void badMagicIsRejected() throws IOException {
+        byte[] data = StrokeCodec.encode(new ArrayList<Stroke>());
+        data[0] = 'X';
+        StrokeCodec.decode(data);
+    }
+
+    @Test(expected = IOException.class)
+    public void newerVersionIsRejected() throws IOException {
+        byte[] data = StrokeCodec.encode(new ArrayList<Stroke>());
+        data[VERSION_OFFSET] = 2;
+        StrokeCodec.decode(data);
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownTagIsRejected() throws IOException {
+        Stroke stroke = new Stroke(COLOR, WIDTH);
+        stroke.add(1f, 2f, 0);
+        byte[] data = StrokeCodec.encode(Collections.singletonList(stroke));
+        data[TAG_OFFSET] = 7;
+        StrokeCodec.decode(data);
+    }
+
+    private static Stroke roundTrip(Stroke stroke) throws IOException {
+        List<Stroke> decoded = StrokeCodec.decode(
+                StrokeCodec.encode(Collections.singletonList(stroke)));
+        assertEquals(1, decoded.size());
+        return decoded.get(0);
+    }
+
+    private static void assertStrokeEquals(Stroke expected, Stroke actual) {
+        assertEquals(expected.color, actual.color);
+        assertEquals(expected.width, actual.width);
+        assertEquals(expected.isFinished(), actual.isFinished());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getX(i), actual.getX(i), DELTA);
+            assertEquals(expected.getY(i), actual.getY(i), DELTA);
+            assertEquals(expected.getTime(i), actual.getTime(i));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.CandidateSet;
+import com.yuryborodin.lookanddo.TopK;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Post-processing of the logits of one drawing as the vocabulary grows.
+ * {@link CandidateSetBenchmark#full()} is the softmax over every class, as the final node of
+ * the graph computes it, followed by the selection of recognizeImage;
+ * {@link CandidateSetBenchmark#candidates()} is recognizeCandidates with the 10 classes of the
+ * game and 40 distractors
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CandidateSetBenchmark {
+    private static final int MAX_RESULTS = 3;
+    private static final float THRESHOLD = 0.1f;
+    private static final int GAME_CLASSES = 10;
+    private static final int DISTRACTORS = 40;
+
+    @Param({"10", "345", "10000"})
+    public int classes;
+
+    private float[] logits;
+    private float[] probabilities;
+    private CandidateSet candidates;
+    private final int[] topIndices = new int[MAX_RESULTS];
+    private final float[] topScores = new float[MAX_RESULTS];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(Inputs.SEED);
+        logits = new float[classes];
+        for (int i = 0; i < classes; i++) {
+            logits[i] = (float) random.nextGaussian();
+        }
+        logits[random.nextInt(Math.min(classes, GAME_CLASSES))] += 8;
+        probabilities = new float[classes];
+        candidates = new CandidateSet(classes, GAME_CLASSES + DISTRACTORS);
+        for (int c = 0; c < Math.min(classes, GAME_CLASSES); c++) {
+            candidates.add(c);
+        }
+        while (candidates.size() < Math.min(classes, GAME_CLASSES + DISTRACTORS)) {
+            candidates.add(random.nextInt(classes));
+        }
+    }
+
+    @Benchmark
+    public int full() {
+        float max = Float.NEGATIVE_INFINITY;
+        for (float logit : logits) {
+            max = Math.max(max, logit);
+        }
+        float sum = 0f;
+        for (int i = 0; i < classes; i++) {
+            probabilities[i] = (float) Math.exp(logits[i] - max);
+            sum += probabilities[i];
+        }
+        for (int i = 0; i < classes; i++) {
+            probabilities[i] /= sum;
+        }
+        return TopK.select(probabilities, MAX_RESULTS, THRESHOLD, topIndices);
+    }
+
+    @Benchmark
+    public int candidates() {
+        return candidates.select(logits, true, MAX_RESULTS, THRESHOLD, topIndices, topScores);
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.ImageNormalizer;
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeCodec;
+import com.yuryborodin.lookanddo.StrokeRasterizer;
+import com.yuryborodin.lookanddo.SyntheticDrawings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of rendering, preprocessing and encoding with the complexity of a drawing, on
+ * {@link SyntheticDrawings} from a few shapes to thousands of strokes over the whole canvas.
+ * The inference is measured by the ComplexitySweep of the harness, which uses the same drawings
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawingComplexityBenchmark {
+    private static final int INPUT_SIZE = 224;
+    private static final float SPACING = 6;
+
+    @Param({"SHAPES", "SCRIBBLES", "FILL", "CLUTTER"})
+    public SyntheticDrawings.Kind kind;
+
+    @Param({"10", "100", "1000"})
+    public int strokes;
+
+    @Param({"720x1280", "1080x1920"})
+    public String canvas;
+
+    private List<Stroke> drawing;
+    private StrokeRasterizer input;
+    private StrokeRasterizer screen;
+    private final int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+    private final float[] tensor = new float[INPUT_SIZE * INPUT_SIZE * 3];
+    private int[] screenPixels;
+
+    @Setup
+    public void setUp() {
+        int separator = canvas.indexOf('x');
+        int width = Integer.parseInt(canvas.substring(0, separator));
+        int height = Integer.parseInt(canvas.substring(separator + 1));
+        drawing = SyntheticDrawings.generate(Inputs.SEED, kind, strokes, SPACING, width, height);
+        input = new StrokeRasterizer(INPUT_SIZE, INPUT_SIZE);
+        input.setRegion(0, 0, width, height);
+        screen = new StrokeRasterizer(width, height);
+        screenPixels = new int[width * height];
+    }
+
+    @Benchmark
+    public float[] toTensor() {
+        input.rasterize(drawing, 0xFFFFFFFF, pixels);
+        ImageNormalizer.normalize(pixels, pixels.length, 128, 128.0f, tensor, 0);
+        return tensor;
+    }
+
+    @Benchmark
+    public int[] fullResolution() {
+        screen.rasterize(drawing, 0xFFFFFFFF, screenPixels);
+        return screenPixels;
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return StrokeCodec.encode(drawing);
+    }
+}
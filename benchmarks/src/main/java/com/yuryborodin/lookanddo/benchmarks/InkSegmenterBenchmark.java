@@ -0,0 +1,61 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.InkSegmenter;
+import com.yuryborodin.lookanddo.Stroke;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting a drawing into objects by {@link InkSegmenter}, with the mask used by
+ * MainActivity (16 px cells on a 1080 x 1920 screen). Runs on the main thread before every
+ * classification, should take a small part of a 16 ms frame
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InkSegmenterBenchmark {
+
+    @Param({"10", "100"})
+    public int strokes;
+
+    private List<Stroke> drawing;
+    private final InkSegmenter segmenter = new InkSegmenter(1080, 1920, 16, 3);
+
+    @Setup
+    public void setUp() {
+        drawing = Inputs.strokes(strokes, 60);
+    }
+
+    @Benchmark
+    public int segment() {
+        return segmenter.segment(drawing);
+    }
+}
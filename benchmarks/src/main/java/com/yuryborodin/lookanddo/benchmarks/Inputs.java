@@ -0,0 +1,101 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.Stroke;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Representative, reproducible inputs for the benchmarks
+ * @since 1.1
+ */
+final class Inputs {
+    static final long SEED = 42;
+
+    private Inputs() {}
+
+    /**
+     * @param size width and height
+     * @return opaque white canvas with a few dark strokes, packed ARGB
+     * @since 1.1
+     */
+    static int[] drawing(int size) {
+        int[] pixels = new int[size * size];
+        Arrays.fill(pixels, 0xFFFFFFFF);
+        Random random = new Random(SEED);
+        for (int stroke = 0; stroke < 8; stroke++) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            for (int step = 0; step < size; step++) {
+                x = Math.max(0, Math.min(size - 1, x + random.nextInt(3) - 1));
+                y = Math.max(0, Math.min(size - 1, y + random.nextInt(3) - 1));
+                pixels[y * size + x] = 0xFF000000;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * @param classes length of the vector
+     * @return softmax output with a few dominant classes, like a confident prediction
+     * @since 1.1
+     */
+    static float[] scores(int classes) {
+        Random random = new Random(SEED);
+        double[] logits = new double[classes];
+        for (int i = 0; i < classes; i++) {
+            logits[i] = random.nextGaussian();
+        }
+        for (int i = 0; i < Math.min(3, classes); i++) {
+            logits[random.nextInt(classes)] += 6 + 2 * i;
+        }
+        double sum = 0;
+        for (double logit : logits) {
+            sum += Math.exp(logit);
+        }
+        float[] scores = new float[classes];
+        for (int i = 0; i < classes; i++) {
+            scores[i] = (float) (Math.exp(logits[i]) / sum);
+        }
+        return scores;
+    }
+
+    /**
+     * @param count number of strokes
+     * @param points points per stroke
+     * @return finished strokes on a 1080 x 1920 screen, sampled every 8 ms like touch events
+     * @since 1.1
+     */
+    static List<Stroke> strokes(int count, int points) {
+        Random random = new Random(SEED);
+        List<Stroke> strokes = new ArrayList<>(count);
+        for (int s = 0; s < count; s++) {
+            Stroke stroke = new Stroke(0xFF000000, 5);
+            float x = 100 + random.nextInt(880);
+            float y = 300 + random.nextInt(1300);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            for (int i = 0; i < points; i++) {
+                angle += random.nextGaussian() * 0.2;
+                x += (float) (Math.cos(angle) * (4 + random.nextFloat() * 8));
+                y += (float) (Math.sin(angle) * (4 + random.nextFloat() * 8));
+                stroke.add(x, y, i * 8);
+            }
+            stroke.finish();
+            strokes.add(stroke);
+        }
+        return strokes;
+    }
+}
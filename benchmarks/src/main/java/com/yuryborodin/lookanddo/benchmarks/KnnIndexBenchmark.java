@@ -0,0 +1,73 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.KnnIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * kNN lookup over a full index of MobileNet v2 bottlenecks (1280 values), as done by
+ * MainActivity.personalize after every classification. Should stay far below the graph run
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KnnIndexBenchmark {
+    private static final int DIMENSION = 1280;
+
+    @Param({"128", "512"})
+    public int entries;
+
+    private KnnIndex index;
+    private float[] query;
+    private final int[] labels = new int[5];
+    private final float[] similarities = new float[5];
+    private final float[] classScores = new float[10];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(Inputs.SEED);
+        index = new KnnIndex(DIMENSION, entries);
+        float[] embedding = new float[DIMENSION];
+        for (int e = 0; e < entries; e++) {
+            for (int i = 0; i < DIMENSION; i++) {
+                // bottlenecks follow ReLU6, non-negative
+                embedding[i] = Math.max(0f, (float) random.nextGaussian());
+            }
+            index.add(embedding, e % classScores.length);
+        }
+        query = embedding.clone();
+    }
+
+    @Benchmark
+    public float vote() {
+        return index.vote(query, labels.length, 0.75f, labels, similarities, classScores);
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.LabelTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Label and id lookup for the selected results of recognizeImage.
+ * {@link LabelLookupBenchmark#vector(Blackhole)} is what the classifier does today:
+ * a synchronized Vector of labels and an id built by string concatenation;
+ * {@link LabelTable} replaced it
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelLookupBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int classes;
+
+    private Vector<String> labelVector;
+    private String[] labelArray;
+    private LabelTable labelTable;
+    private String[] ids;
+    private int[] selected;
+
+    @Setup
+    public void setUp() {
+        labelVector = new Vector<String>();
+        labelArray = new String[classes];
+        ids = new String[classes];
+        for (int i = 0; i < classes; i++) {
+            labelVector.add("class_" + i);
+            labelArray[i] = "class_" + i;
+            ids[i] = String.valueOf(i);
+        }
+        List<String> labels = new ArrayList<String>(labelVector);
+        labelTable = new LabelTable(labels);
+        selected = new int[] {classes - 1, classes / 2, 0};
+    }
+
+    @Benchmark
+    public void vector(Blackhole blackhole) {
+        for (int i : selected) {
+            blackhole.consume("" + i);
+            blackhole.consume(labelVector.size() > i ? labelVector.get(i) : "unknown");
+        }
+    }
+
+    @Benchmark
+    public void array(Blackhole blackhole) {
+        for (int i : selected) {
+            blackhole.consume(ids[i]);
+            blackhole.consume(i < labelArray.length ? labelArray[i] : "unknown");
+        }
+    }
+
+    @Benchmark
+    public void table(Blackhole blackhole) {
+        for (int i : selected) {
+            blackhole.consume(labelTable.getId(i));
+            blackhole.consume(labelTable.get(i));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.ReferenceScorer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Similarity of a drawing to its reference image, computed once per Proceed.
+ * {@link ReferenceScorerBenchmark#floats()} is the straightforward cosine over float
+ * embeddings with one sum, the baseline of the quantized, unrolled {@link ReferenceScorer}
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceScorerBenchmark {
+    private static final int IMAGES = 50;
+
+    @Param({"1280", "2048"})
+    public int dimension;
+
+    private ReferenceScorer scorer;
+    private float[][] references;
+    private float[] embedding;
+    private int reference;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(Inputs.SEED);
+        List<String> names = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        for (int i = 0; i < IMAGES; i++) {
+            names.add("i" + i);
+            embeddings.add(bottleneck(random));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReferenceScorer.write(bytes, names, embeddings);
+        scorer = ReferenceScorer.read(new ByteArrayInputStream(bytes.toByteArray()));
+        references = embeddings.toArray(new float[IMAGES][]);
+        embedding = bottleneck(random);
+        reference = IMAGES / 2;
+    }
+
+    /**
+     * Non-negative and sparse like the activations after a ReLU
+     */
+    private float[] bottleneck(Random random) {
+        float[] values = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            values[i] = Math.max(0f, (float) random.nextGaussian());
+        }
+        return values;
+    }
+
+    @Benchmark
+    public float quantized() {
+        return scorer.similarity(reference, embedding);
+    }
+
+    @Benchmark
+    public float floats() {
+        float[] other = references[reference];
+        float dot = 0f;
+        float norm = 0f;
+        float otherNorm = 0f;
+        for (int i = 0; i < dimension; i++) {
+            dot += embedding[i] * other[i];
+            norm += embedding[i] * embedding[i];
+            otherNorm += other[i] * other[i];
+        }
+        return dot / (float) Math.sqrt(norm * otherNorm);
+    }
+}
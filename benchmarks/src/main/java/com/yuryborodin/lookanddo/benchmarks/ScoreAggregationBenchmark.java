@@ -0,0 +1,105 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.GameEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Score aggregation of the former MainActivity.updateScore without the SharedPreferences
+ * writes: both score arrays are summed from zero and the totals are rounded through
+ * DecimalFormat. The state is the last answer of the last round, the worst case of the loops.
+ * {@link ScoreAggregationBenchmark#engineAnswer()} is the same answer scored by
+ * {@link GameEngine}
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoreAggregationBenchmark {
+    private static final int NUMBER_OF_ROUNDS = 5;
+
+    @Param({"10", "100", "1000"})
+    public int classes;
+
+    private double[] scoreArray;
+    private double[] finalScoreArray;
+    private int currentTag;
+    private int currentIteration;
+    private final DecimalFormat decimalFormat = new DecimalFormat("#.##");
+    private GameEngine engine;
+    private float confidence;
+
+    @Setup
+    public void setUp() {
+        scoreArray = new double[classes];
+        finalScoreArray = new double[NUMBER_OF_ROUNDS * classes];
+        for (int i = 0; i < classes; i++) {
+            scoreArray[i] = 0.73;
+        }
+        currentTag = classes - 1;
+        currentIteration = NUMBER_OF_ROUNDS - 1;
+
+        engine = new GameEngine(classes, NUMBER_OF_ROUNDS);
+        for (int round = 0; round < NUMBER_OF_ROUNDS; round++) {
+            for (int tag = 0; tag < classes; tag++) {
+                if (round == NUMBER_OF_ROUNDS - 1 && tag == classes - 1) {
+                    break;
+                }
+                engine.answer(tag, 0.73f);
+                engine.next();
+            }
+        }
+    }
+
+    @Benchmark
+    public String updateScore() {
+        double intermScore = 0;
+        double gameScore = 0;
+        scoreArray[currentTag] = 0.87;
+        for (int i = 0; i <= currentTag; i++) {
+            intermScore = intermScore + scoreArray[i];
+        }
+        finalScoreArray[currentIteration] = intermScore;
+        for (int i = 0; i <= currentIteration; i++) {
+            gameScore += finalScoreArray[i];
+        }
+        double roundScore = Double.parseDouble(decimalFormat.format(intermScore));
+        gameScore = Double.parseDouble(decimalFormat.format(gameScore));
+        return String.valueOf(roundScore) + String.valueOf(gameScore);
+    }
+
+    @Benchmark
+    public String engineAnswer() {
+        // alternate the score so the running totals really change
+        confidence = confidence == 0.87f ? 0.73f : 0.87f;
+        engine.answer(engine.getCurrentTag(), confidence);
+        return String.valueOf(engine.getRoundScore()) + String.valueOf(engine.getGameScore());
+    }
+}
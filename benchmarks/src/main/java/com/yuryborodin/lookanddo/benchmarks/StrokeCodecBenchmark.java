@@ -0,0 +1,67 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a drawing by {@link StrokeCodec}, as done when the activity
+ * saves and restores its state. Both should take a small part of a 16 ms frame
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeCodecBenchmark {
+
+    @Param({"10", "100"})
+    public int strokes;
+
+    private List<Stroke> drawing;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        drawing = Inputs.strokes(strokes, 60);
+        encoded = StrokeCodec.encode(drawing);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return StrokeCodec.encode(drawing);
+    }
+
+    @Benchmark
+    public List<Stroke> decode() throws IOException {
+        return StrokeCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,85 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.ImageNormalizer;
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeRasterizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drawing-to-tensor path without android.graphics: {@link StrokeRasterizer} renders the
+ * 1080 x 1920 screen straight into the 224 x 224 model input, {@link ImageNormalizer} turns it
+ * into floats. The full-resolution render is what the app draws on its bitmap
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeRasterizerBenchmark {
+    private static final int INPUT_SIZE = 224;
+
+    @Param({"10", "100"})
+    public int strokes;
+
+    private List<Stroke> drawing;
+    private final StrokeRasterizer input = new StrokeRasterizer(INPUT_SIZE, INPUT_SIZE);
+    private final StrokeRasterizer screen = new StrokeRasterizer(1080, 1920);
+    private final int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+    private final float[] coverage = new float[INPUT_SIZE * INPUT_SIZE];
+    private final float[] tensor = new float[INPUT_SIZE * INPUT_SIZE * 3];
+    private final int[] screenPixels = new int[1080 * 1920];
+
+    @Setup
+    public void setUp() {
+        drawing = Inputs.strokes(strokes, 60);
+        input.setRegion(0, 0, 1080, 1920);
+    }
+
+    @Benchmark
+    public float[] toTensor() {
+        input.rasterize(drawing, 0xFFFFFFFF, pixels);
+        ImageNormalizer.normalize(pixels, pixels.length, 128, 128.0f, tensor, 0);
+        return tensor;
+    }
+
+    @Benchmark
+    public float[] coverage() {
+        Arrays.fill(coverage, 0f);
+        input.rasterize(drawing, coverage);
+        return coverage;
+    }
+
+    @Benchmark
+    public int[] fullResolution() {
+        screen.rasterize(drawing, 0xFFFFFFFF, screenPixels);
+        return screenPixels;
+    }
+}
@@ -0,0 +1,114 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.benchmarks;
+
+import com.yuryborodin.lookanddo.TopK;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection of the 3 best results above the 0.1 threshold, as done by recognizeImage.
+ * {@link TopKBenchmark#priorityQueue()} is the original boxed PriorityQueue implementation,
+ * kept as the baseline for {@link TopK}. Both return the same list of results with ids taken
+ * from a table, so the difference is the selection and the candidates that are boxed on the way
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopKBenchmark {
+    private static final int MAX_RESULTS = 3;
+    private static final float THRESHOLD = 0.1f;
+
+    @Param({"10", "100", "1000"})
+    public int classes;
+
+    private float[] outputs;
+    private final int[] topIndices = new int[MAX_RESULTS];
+    private String[] ids;
+
+    /**
+     * Stand-in for Classifier.Recognition, which depends on android.graphics
+     */
+    static final class Candidate {
+        final String id;
+        final Float confidence;
+
+        Candidate(String id, Float confidence) {
+            this.id = id;
+            this.confidence = confidence;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        outputs = Inputs.scores(classes);
+        ids = new String[classes];
+        for (int i = 0; i < classes; i++) {
+            ids[i] = String.valueOf(i);
+        }
+    }
+
+    @Benchmark
+    public List<Candidate> topK() {
+        final int count = TopK.select(outputs, MAX_RESULTS, THRESHOLD, topIndices);
+        final ArrayList<Candidate> recognitions = new ArrayList<Candidate>(count);
+        for (int j = 0; j < count; ++j) {
+            final int i = topIndices[j];
+            recognitions.add(new Candidate(ids[i], outputs[i]));
+        }
+        return recognitions;
+    }
+
+    @Benchmark
+    public List<Candidate> priorityQueue() {
+        PriorityQueue<Candidate> pq =
+                new PriorityQueue<Candidate>(
+                        3,
+                        new Comparator<Candidate>() {
+                            @Override
+                            public int compare(Candidate lhs, Candidate rhs) {
+                                return Float.compare(rhs.confidence, lhs.confidence);
+                            }
+                        });
+        for (int i = 0; i < outputs.length; ++i) {
+            if (outputs[i] > THRESHOLD) {
+                pq.add(new Candidate(ids[i], outputs[i]));
+            }
+        }
+        final ArrayList<Candidate> recognitions = new ArrayList<Candidate>();
+        int recognitionsSize = Math.min(pq.size(), MAX_RESULTS);
+        for (int i = 0; i < recognitionsSize; ++i) {
+            recognitions.add(pq.poll());
+        }
+        return recognitions;
+    }
+}
@@ -0,0 +1,228 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.ImageNormalizer;
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeCodec;
+import com.yuryborodin.lookanddo.StrokeRasterizer;
+import com.yuryborodin.lookanddo.SyntheticDrawings;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures how the pipeline of the app scales with the complexity of a drawing.
+ * Every combination of kind, canvas, point spacing and number of strokes is generated by
+ * {@link SyntheticDrawings} from the seed, like in the benchmarks, and put through the steps
+ * of DrawingAnalyser#analyse: rendering the screen, scaling and normalizing it and running the
+ * model. The direct rasterization into the input of the model is measured as well. Prints
+ * the median latency of every step per combination; the same seed gives the same drawings
+ * on any machine. Without a model file the inference is skipped.
+ * <pre>
+ * --seed       N     seed of the drawings, default 42
+ * --kinds      LIST  kinds of drawings, default SHAPES,SCRIBBLES,FILL,CLUTTER
+ * --canvas     LIST  canvas sizes, default 720x1280,1080x1920
+ * --spacing    LIST  distances between points in pixels, default 2,6,12
+ * --strokes    LIST  numbers of strokes, default 1,10,100,1000
+ * --iterations N     measured runs per combination after one warm-up run, default 5
+ * --model      FILE  GraphDef, default app/src/main/assets/graph_v8_by30k.pb
+ * --labels     FILE  labels, default app/src/main/assets/labels_v8_by30k.txt
+ * --csv        FILE  also write the results as CSV, for plotting the curves
+ * --export     DIR   write the drawings as KIND_CANVAS_SPACING_STROKES.bin ({@link StrokeCodec})
+ * --report     FILE  also write the report to FILE
+ * </pre>
+ * @since 1.1
+ */
+public class ComplexitySweep {
+
+    private static final String HEADER = "kind,canvas,spacing,strokes,points,render_ms,"
+            + "preprocess_ms,direct_ms,run_ms,total_ms";
+
+    private final HeadlessClassifier classifier;
+    private final int iterations;
+    private final int inputSize;
+    private final int[] pixels;
+    private final float[] input;
+
+    /**
+     * Constructor of the class
+     * @param classifier model, null to skip the inference
+     * @param iterations measured runs per drawing
+     * @since 1.1
+     */
+    public ComplexitySweep(HeadlessClassifier classifier, int iterations) {
+        this.classifier = classifier;
+        this.iterations = iterations;
+        this.inputSize = classifier != null ? classifier.getInputSize()
+                : HeadlessClassifier.INPUT_SIZE;
+        this.pixels = new int[inputSize * inputSize];
+        this.input = new float[inputSize * inputSize * 3];
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CorpusEvaluator.parseOptions(args);
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        List<SyntheticDrawings.Kind> kinds = new ArrayList<>();
+        for (String kind : list(options.getOrDefault("kinds", "SHAPES,SCRIBBLES,FILL,CLUTTER"))) {
+            kinds.add(SyntheticDrawings.Kind.valueOf(kind.toUpperCase(Locale.US)));
+        }
+        List<String> canvases = list(options.getOrDefault("canvas", "720x1280,1080x1920"));
+        List<String> spacings = list(options.getOrDefault("spacing", "2,6,12"));
+        List<String> strokeCounts = list(options.getOrDefault("strokes", "1,10,100,1000"));
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+        Path export = options.containsKey("export") ? Paths.get(options.get("export")) : null;
+        if (export != null) {
+            Files.createDirectories(export);
+        }
+
+        Path model = Paths.get(options.getOrDefault("model", CorpusEvaluator.DEFAULT_MODEL));
+        HeadlessClassifier classifier = null;
+        if (Files.exists(model)) {
+            classifier = HeadlessClassifier.withAppDefaults(model,
+                    Paths.get(options.getOrDefault("labels", CorpusEvaluator.DEFAULT_LABELS)));
+        } else {
+            System.err.println("No model at " + model + ", the inference is skipped");
+        }
+
+        List<String> rows = new ArrayList<>();
+        try {
+            ComplexitySweep sweep = new ComplexitySweep(classifier, iterations);
+            for (SyntheticDrawings.Kind kind : kinds) {
+                for (String canvas : canvases) {
+                    int separator = canvas.indexOf('x');
+                    int width = Integer.parseInt(canvas.substring(0, separator));
+                    int height = Integer.parseInt(canvas.substring(separator + 1));
+                    for (String spacing : spacings) {
+                        for (String strokes : strokeCounts) {
+                            List<Stroke> drawing = SyntheticDrawings.generate(seed, kind,
+                                    Integer.parseInt(strokes), Float.parseFloat(spacing),
+                                    width, height);
+                            if (export != null) {
+                                Files.write(export.resolve(kind + "_" + canvas + "_" + spacing
+                                        + "_" + strokes + ".bin"), StrokeCodec.encode(drawing));
+                            }
+                            String row = kind + "," + canvas + "," + spacing + "," + strokes
+                                    + "," + sweep.measure(drawing, width, height);
+                            System.err.println(row);
+                            rows.add(row);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (classifier != null) {
+                classifier.close();
+            }
+        }
+
+        String report = report(rows, seed, iterations, classifier == null);
+        System.out.print(report);
+        if (options.containsKey("report")) {
+            Files.write(Paths.get(options.get("report")), report.getBytes(StandardCharsets.UTF_8));
+        }
+        if (options.containsKey("csv")) {
+            StringBuilder csv = new StringBuilder(HEADER).append('\n');
+            for (String row : rows) {
+                csv.append(row).append('\n');
+            }
+            Files.write(Paths.get(options.get("csv")),
+                    csv.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * This method measures one drawing
+     * @param drawing strokes
+     * @param width width of the canvas
+     * @param height height of the canvas
+     * @return number of points and median milliseconds of every step, comma separated
+     * @since 1.1
+     */
+    public String measure(List<Stroke> drawing, int width, int height) {
+        LatencyProfile render = new LatencyProfile("render");
+        LatencyProfile preprocess = new LatencyProfile("preprocess");
+        LatencyProfile direct = new LatencyProfile("direct");
+        LatencyProfile run = new LatencyProfile("run");
+        LatencyProfile total = new LatencyProfile("total");
+        StrokeRasterizer rasterizer = new StrokeRasterizer(inputSize, inputSize);
+        rasterizer.setRegion(0, 0, width, height);
+
+        // the first run warms up the code and is not counted
+        for (int i = -1; i < iterations; i++) {
+            long start = System.nanoTime();
+            BufferedImage image = Images.renderStrokes(drawing, width, height);
+            long rendered = System.nanoTime();
+            Images.scaleNearest(image, inputSize, pixels);
+            ImageNormalizer.normalize(pixels, pixels.length, HeadlessClassifier.IMAGE_MEAN,
+                    HeadlessClassifier.IMAGE_STD, input, 0);
+            long preprocessed = System.nanoTime();
+            if (classifier != null) {
+                classifier.run(input, 1);
+            }
+            long done = System.nanoTime();
+            rasterizer.rasterize(drawing, 0xFFFFFFFF, pixels);
+            long directDone = System.nanoTime();
+            if (i >= 0) {
+                render.add(rendered - start);
+                preprocess.add(preprocessed - rendered);
+                run.add(done - preprocessed);
+                total.add(done - start);
+                direct.add(directDone - done);
+            }
+        }
+        return String.format(Locale.US, "%d,%.3f,%.3f,%.3f,%.3f,%.3f",
+                SyntheticDrawings.countPoints(drawing), median(render), median(preprocess),
+                median(direct), median(run), median(total));
+    }
+
+    private static double median(LatencyProfile profile) {
+        return profile.percentile(50) / 1e6;
+    }
+
+    private static List<String> list(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private static String report(List<String> rows, long seed, int iterations, boolean noModel) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        out.printf(Locale.US, "seed=%d iterations=%d%s%n%n", seed, iterations,
+                noModel ? " (no model, run is 0)" : "");
+        out.println("Median milliseconds per drawing; total is render + preprocess + run,"
+                + " direct rasterizes into the input of the model");
+        out.printf(Locale.US, "  %-10s %-10s %7s %7s %9s %9s %10s %9s %9s %9s%n", "kind",
+                "canvas", "spacing", "strokes", "points", "render", "preprocess", "direct",
+                "run", "total");
+        for (String row : rows) {
+            String[] f = row.split(",");
+            out.printf(Locale.US, "  %-10s %-10s %7s %7s %9s %9s %10s %9s %9s %9s%n",
+                    (Object[]) f);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,303 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates the app model over a corpus of drawings on a desktop JVM.
+ * The corpus is a directory with one sub-directory per class, named like the class in the
+ * label file, containing PNG drawings. Prints per-class accuracy, the confusion matrix and
+ * the latency profile of preprocessing and inference.
+ * <pre>
+ * --corpus  DIR   corpus directory (required)
+ * --model   FILE  GraphDef, default app/src/main/assets/graph_v8_by30k.pb
+ * --labels  FILE  labels, default app/src/main/assets/labels_v8_by30k.txt
+ * --threads N     parallel workers, default number of cores
+ * --batch   N     images per graph run, default 1
+ * --report  FILE  also write the report to FILE
+ * </pre>
+ * @since 1.1
+ */
+public class CorpusEvaluator {
+
+    static final String DEFAULT_MODEL = "app/src/main/assets/graph_v8_by30k.pb";
+    static final String DEFAULT_LABELS = "app/src/main/assets/labels_v8_by30k.txt";
+
+    private final HeadlessClassifier classifier;
+    private final int batchSize;
+    private final int[][] confusion;
+    private final LatencyProfile preprocessProfile = new LatencyProfile("preprocess");
+    private final LatencyProfile runProfile = new LatencyProfile("run/batch");
+    private final LatencyProfile imageProfile = new LatencyProfile("per image");
+
+    /**
+     * One drawing of the corpus with the index of its true class
+     */
+    static final class Sample {
+        final Path file;
+        final int label;
+
+        Sample(Path file, int label) {
+            this.file = file;
+            this.label = label;
+        }
+    }
+
+    public CorpusEvaluator(HeadlessClassifier classifier, int batchSize) {
+        this.classifier = classifier;
+        this.batchSize = batchSize;
+        int classes = classifier.getNumClasses();
+        this.confusion = new int[classes][classes];
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (!options.containsKey("corpus")) {
+            System.err.println("usage: CorpusEvaluator --corpus DIR [--model FILE] [--labels FILE]"
+                    + " [--threads N] [--batch N] [--report FILE]");
+            System.exit(2);
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int batch = Integer.parseInt(options.getOrDefault("batch", "1"));
+
+        try (HeadlessClassifier classifier = HeadlessClassifier.withAppDefaults(
+                Paths.get(options.getOrDefault("model", DEFAULT_MODEL)),
+                Paths.get(options.getOrDefault("labels", DEFAULT_LABELS)))) {
+            CorpusEvaluator evaluator = new CorpusEvaluator(classifier, batch);
+            List<Sample> corpus = listCorpus(Paths.get(options.get("corpus")),
+                    classifier.getLabels());
+            long start = System.nanoTime();
+            evaluator.evaluate(corpus, threads);
+            long wall = System.nanoTime() - start;
+
+            String report = evaluator.report(corpus.size(), threads, wall);
+            System.out.print(report);
+            if (options.containsKey("report")) {
+                Files.write(Paths.get(options.get("report")),
+                        report.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * This method lists the drawings of a corpus; directories that match no label are skipped
+     * @param root corpus directory
+     * @param labels labels of the model
+     * @return samples sorted by path, so batches are reproducible
+     * @throws IOException if the corpus can not be listed
+     * @since 1.1
+     */
+    static List<Sample> listCorpus(Path root, List<String> labels) throws IOException {
+        return listCorpus(root, labels, "*.png");
+    }
+
+    /**
+     * This method lists the files of a corpus; directories that match no label are skipped
+     * @param root corpus directory
+     * @param labels labels of the model
+     * @param glob pattern of the file names
+     * @return samples sorted by path, so batches are reproducible
+     * @throws IOException if the corpus can not be listed
+     * @since 1.1
+     */
+    static List<Sample> listCorpus(Path root, List<String> labels, String glob)
+            throws IOException {
+        List<Sample> corpus = new ArrayList<>();
+        try (DirectoryStream<Path> classDirs = Files.newDirectoryStream(root)) {
+            for (Path classDir : classDirs) {
+                if (!Files.isDirectory(classDir)) {
+                    continue;
+                }
+                int label = indexOfIgnoreCase(labels, classDir.getFileName().toString());
+                if (label < 0) {
+                    System.err.println("Skipping " + classDir + ": no such label");
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(classDir, glob)) {
+                    for (Path file : files) {
+                        corpus.add(new Sample(file, label));
+                    }
+                }
+            }
+        }
+        Collections.sort(corpus, (a, b) -> a.file.compareTo(b.file));
+        if (corpus.isEmpty()) {
+            throw new IOException("No drawings found in " + root);
+        }
+        return corpus;
+    }
+
+    private static int indexOfIgnoreCase(List<String> labels, String name) {
+        for (int i = 0; i < labels.size(); i++) {
+            if (labels.get(i).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method classifies the corpus in batches on a pool of workers
+     * @param corpus samples
+     * @param threads number of workers
+     * @throws Exception if a drawing can not be read or the graph fails
+     * @since 1.1
+     */
+    public void evaluate(List<Sample> corpus, int threads) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int from = 0; from < corpus.size(); from += batchSize) {
+                final List<Sample> batch =
+                        corpus.subList(from, Math.min(from + batchSize, corpus.size()));
+                pending.add(workers.submit(() -> {
+                    evaluateBatch(batch);
+                    return null;
+                }));
+            }
+            for (Future<?> future : pending) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw (Exception) e.getCause();
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void evaluateBatch(List<Sample> batch) throws IOException {
+        int size = classifier.getInputSize();
+        int[] pixels = new int[size * size];
+        float[] input = new float[batch.size() * classifier.inputLength()];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            BufferedImage image = Images.read(batch.get(i).file);
+            classifier.preprocess(image, pixels, input, i * classifier.inputLength());
+        }
+        long preprocessed = System.nanoTime();
+        float[][] scores = classifier.run(input, batch.size());
+        long done = System.nanoTime();
+
+        preprocessProfile.add(preprocessed - start);
+        runProfile.add(done - preprocessed);
+        for (int i = 0; i < batch.size(); i++) {
+            imageProfile.add((done - start) / batch.size());
+        }
+        synchronized (confusion) {
+            for (int i = 0; i < batch.size(); i++) {
+                confusion[batch.get(i).label][argMax(scores[i])]++;
+            }
+        }
+    }
+
+    static int argMax(float[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param images number of evaluated drawings
+     * @param threads number of workers
+     * @param wallNanos total duration
+     * @return report with accuracy, confusion matrix and latency profile
+     * @since 1.1
+     */
+    public String report(int images, int threads, long wallNanos) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        List<String> labels = classifier.getLabels();
+        int classes = confusion.length;
+
+        out.printf(Locale.US, "images=%d threads=%d batch=%d wall=%.1fs throughput=%.1f images/s%n%n",
+                images, threads, batchSize, wallNanos / 1e9, images / (wallNanos / 1e9));
+
+        out.println("Per-class accuracy");
+        int correct = 0;
+        for (int c = 0; c < classes; c++) {
+            int total = 0;
+            for (int p = 0; p < classes; p++) {
+                total += confusion[c][p];
+            }
+            correct += confusion[c][c];
+            if (total > 0) {
+                out.printf(Locale.US, "  %-16s %6.2f%% (%d/%d)%n", label(labels, c),
+                        100.0 * confusion[c][c] / total, confusion[c][c], total);
+            }
+        }
+        out.printf(Locale.US, "  %-16s %6.2f%% (%d/%d)%n%n", "overall",
+                100.0 * correct / images, correct, images);
+
+        out.println("Confusion matrix (rows: true class, columns: predicted class)");
+        out.printf("  %-16s", "");
+        for (int p = 0; p < classes; p++) {
+            out.printf("%6d", p);
+        }
+        out.println();
+        for (int c = 0; c < classes; c++) {
+            out.printf(Locale.US, "  %2d %-13s", c, label(labels, c));
+            for (int p = 0; p < classes; p++) {
+                out.printf("%6d", confusion[c][p]);
+            }
+            out.println();
+        }
+        out.println();
+
+        out.println("Latency profile");
+        out.println("  " + preprocessProfile.summary());
+        out.println("  " + runProfile.summary());
+        out.println("  " + imageProfile.summary());
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String label(List<String> labels, int index) {
+        return index < labels.size() ? labels.get(index).trim() : "unknown";
+    }
+}
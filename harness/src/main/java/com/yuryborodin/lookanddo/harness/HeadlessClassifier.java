@@ -0,0 +1,195 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.ImageNormalizer;
+
+import org.tensorflow.Graph;
+import org.tensorflow.Operation;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Desktop counterpart of TensorFlowImageClassifier.
+ * Loads the same GraphDef and labels through the TensorFlow Java runtime and prepares input
+ * exactly like recognizeImage does: nearest-neighbour scaling to inputSize x inputSize
+ * (as Bitmap.createScaledBitmap(..., false) in DrawingAnalyser.analyse) and
+ * {@link ImageNormalizer}. One session is shared, TensorFlow sessions may be run concurrently
+ * @since 1.1
+ */
+public class HeadlessClassifier implements AutoCloseable {
+
+    /**
+     * Defaults of the model shipped with the app, the same values as in MainActivity
+     * @since 1.1
+     */
+    public static final int INPUT_SIZE = 224;
+    public static final int IMAGE_MEAN = 128;
+    public static final float IMAGE_STD = 128.0f;
+    public static final String INPUT_NAME = "Placeholder";
+    public static final String OUTPUT_NAME = "final_result";
+    public static final String EMBEDDING_NAME = "input/BottleneckInputPlaceholder";
+
+    private final Graph graph;
+    private final Session session;
+    private final List<String> labels;
+    private final int inputSize;
+    private final int imageMean;
+    private final float imageStd;
+    private final String inputName;
+    private final String outputName;
+    private final int numClasses;
+
+    /**
+     * Constructor of the class
+     * @param model path of the GraphDef protocol buffer
+     * @param labelFile path of the label file
+     * @param inputSize input size of the model
+     * @param imageMean mean used for normalization
+     * @param imageStd std used for normalization
+     * @param inputName name of the input node
+     * @param outputName name of the output node
+     * @throws IOException if the model or the labels can not be read
+     * @since 1.1
+     */
+    public HeadlessClassifier(Path model, Path labelFile, int inputSize, int imageMean,
+                              float imageStd, String inputName, String outputName)
+            throws IOException {
+        this.labels = new ArrayList<>(Files.readAllLines(labelFile, StandardCharsets.UTF_8));
+        this.graph = new Graph();
+        this.graph.importGraphDef(Files.readAllBytes(model));
+        this.session = new Session(graph);
+        this.inputSize = inputSize;
+        this.imageMean = imageMean;
+        this.imageStd = imageStd;
+        this.inputName = inputName;
+        this.outputName = outputName;
+        // The shape of the output is [N, NUM_CLASSES], where N is the batch size.
+        this.numClasses = (int) graph.operation(outputName).output(0).shape().size(1);
+    }
+
+    /**
+     * @param model path of the GraphDef protocol buffer
+     * @param labelFile path of the label file
+     * @return HeadlessClassifier object with the defaults of the app model
+     * @throws IOException if the model or the labels can not be read
+     * @since 1.1
+     */
+    public static HeadlessClassifier withAppDefaults(Path model, Path labelFile)
+            throws IOException {
+        return new HeadlessClassifier(model, labelFile, INPUT_SIZE, IMAGE_MEAN, IMAGE_STD,
+                INPUT_NAME, OUTPUT_NAME);
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @param nodeName name of a 2D node, e.g. {@link HeadlessClassifier#EMBEDDING_NAME}
+     * @return size of the second dimension of the node, 0 if the graph has no such node
+     * @since 1.1
+     */
+    public int getNodeWidth(String nodeName) {
+        Operation operation = graph.operation(nodeName);
+        return operation == null ? 0 : (int) Math.max(0, operation.output(0).shape().size(1));
+    }
+
+    /**
+     * @return number of operations of the graph
+     * @since 1.1
+     */
+    public int countOperations() {
+        int count = 0;
+        for (Iterator<Operation> operations = graph.operations(); operations.hasNext(); ) {
+            operations.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of floats of one preprocessed image
+     * @since 1.1
+     */
+    public int inputLength() {
+        return inputSize * inputSize * 3;
+    }
+
+    /**
+     * This method scales and normalizes one image into a batch buffer
+     * @param image source image of any size
+     * @param pixels scratch buffer of inputSize * inputSize ints
+     * @param out batch buffer
+     * @param offset index in out of the first float of this image
+     * @since 1.1
+     */
+    public void preprocess(BufferedImage image, int[] pixels, float[] out, int offset) {
+        Images.scaleNearest(image, inputSize, pixels);
+        ImageNormalizer.normalize(pixels, inputSize * inputSize, imageMean, imageStd, out, offset);
+    }
+
+    /**
+     * This method runs the graph on a batch of preprocessed images
+     * @param input batch buffer filled by {@link HeadlessClassifier#preprocess}
+     * @param batch number of images in the buffer
+     * @return scores, [batch][numClasses]
+     * @since 1.1
+     */
+    public float[][] run(float[] input, int batch) {
+        return fetch(input, batch, outputName, numClasses);
+    }
+
+    /**
+     * This method runs the graph and fetches an arbitrary 2D node
+     * @param input batch buffer filled by {@link HeadlessClassifier#preprocess}
+     * @param batch number of images in the buffer
+     * @param nodeName name of the node to fetch
+     * @param width size of the second dimension of the node
+     * @return values of the node, [batch][width]
+     * @since 1.1
+     */
+    public float[][] fetch(float[] input, int batch, String nodeName, int width) {
+        long[] shape = {batch, inputSize, inputSize, 3};
+        try (Tensor<Float> in = Tensor.create(shape,
+                FloatBuffer.wrap(input, 0, batch * inputLength()));
+             Tensor<?> out = session.runner().feed(inputName, in).fetch(nodeName).run().get(0)) {
+            float[][] result = new float[batch][width];
+            out.copyTo(result);
+            return result;
+        }
+    }
+
+    @Override
+    public void close() {
+        session.close();
+        graph.close();
+    }
+}
@@ -0,0 +1,87 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeRasterizer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Image helpers that mirror the Android bitmap calls used by the app
+ * @since 1.1
+ */
+public final class Images {
+
+    private Images() {}
+
+    /**
+     * @param file PNG file
+     * @return decoded image
+     * @throws IOException if the file can not be decoded
+     * @since 1.1
+     */
+    public static BufferedImage read(Path file) throws IOException {
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            throw new IOException("Not an image: " + file);
+        }
+        return image;
+    }
+
+    /**
+     * This method scales an image to size x size without filtering, sampling the source pixel
+     * under the centre of each destination pixel like Bitmap.createScaledBitmap(..., false).
+     * Pixels are taken as stored (unpremultiplied ARGB), like Bitmap.getPixels
+     * @param image source image
+     * @param size width and height of the result
+     * @param out destination, size * size packed ARGB pixels
+     * @since 1.1
+     */
+    public static void scaleNearest(BufferedImage image, int size, int[] out) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] source = image.getRGB(0, 0, width, height, null, 0, width);
+        for (int y = 0; y < size; y++) {
+            int sy = Math.min((int) ((y + 0.5f) * height / size), height - 1);
+            int row = sy * width;
+            for (int x = 0; x < size; x++) {
+                int sx = Math.min((int) ((x + 0.5f) * width / size), width - 1);
+                out[y * size + x] = source[row + sx];
+            }
+        }
+    }
+
+    /**
+     * This method draws strokes like DrawView does with {@link StrokeRasterizer}:
+     * anti-aliased, round caps and joins, on white, with the quadratic curves through the
+     * midpoints of FingerHandler
+     * @param strokes strokes in view coordinates
+     * @param width width of the canvas, the width of the display in the app
+     * @param height height of the canvas
+     * @return ARGB image
+     * @since 1.1
+     */
+    public static BufferedImage renderStrokes(List<Stroke> strokes, int width, int height) {
+        StrokeRasterizer rasterizer = new StrokeRasterizer(width, height);
+        int[] pixels = new int[width * height];
+        rasterizer.rasterize(strokes, 0xFFFFFFFF, pixels);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+}
@@ -0,0 +1,81 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Collects durations and summarizes them as percentiles. Thread-safe
+ * @since 1.1
+ */
+public class LatencyProfile {
+    private final String name;
+    private long[] samples = new long[256];
+    private int count = 0;
+
+    public LatencyProfile(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param nanos duration in nanoseconds
+     * @since 1.1
+     */
+    public synchronized void add(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile within (0, 100]
+     * @return duration in nanoseconds, 0 if there are no samples
+     * @since 1.1
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    public synchronized double meanMillis() {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += samples[i];
+        }
+        return sum / count / 1e6;
+    }
+
+    /**
+     * @return one line summary in milliseconds
+     * @since 1.1
+     */
+    public String summary() {
+        return String.format(Locale.US,
+                "%-12s n=%-6d mean=%8.2f p50=%8.2f p90=%8.2f p99=%8.2f max=%8.2f ms",
+                name, count(), meanMillis(), percentile(50) / 1e6, percentile(90) / 1e6,
+                percentile(99) / 1e6, percentile(100) / 1e6);
+    }
+}
@@ -0,0 +1,252 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.SyntheticDrawings;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Verifies an optimized model against the original one, see the optimizeModel task of the app.
+ * Both graphs classify the same fixed inputs: drawings of {@link SyntheticDrawings} from the
+ * seed and, if given, a corpus in the layout of {@link CorpusEvaluator}. The optimized graph
+ * passes if the top-1 classes agree on enough inputs and no score differs too much. Also
+ * compares the size of the files, the load time (import of the graph and first run, as on the
+ * first recognition in the app) and the inference time. Exits with 1 if a threshold is
+ * exceeded; the report is written only for a passing graph, so its presence marks a verified
+ * model.
+ * <pre>
+ * --original      FILE  GraphDef as exported by training (required)
+ * --optimized     FILE  optimized GraphDef (required)
+ * --labels        FILE  labels, default app/src/main/assets/labels_v8_by30k.txt
+ * --inputs        N     number of synthetic drawings, default 200
+ * --seed          N     seed of the drawings, default 42
+ * --corpus        DIR   drawings added to the inputs
+ * --min-agreement F     smallest share of inputs with the same top-1 class, default 0.99
+ * --max-delta     F     largest absolute difference of a score, default 0.05
+ * --loads         N     loads of each graph for the load time, default 5
+ * --report        FILE  write the report to FILE if the optimized graph passes
+ * </pre>
+ * @since 1.1
+ */
+public class ModelEquivalence {
+
+    private static final int CANVAS_WIDTH = 1080;
+    private static final int CANVAS_HEIGHT = 1920;
+    private static final float SPACING = 6;
+    private static final int MAX_STROKES = 12;
+
+    /**
+     * Differences of the outputs of two graphs
+     */
+    static final class Comparison {
+        int inputs;
+        int agreeing;
+        double maxDelta;
+        double sumDelta;
+        double meanDelta;
+        double maxTopDelta;
+    }
+
+    /**
+     * Size and timing of one graph
+     */
+    static final class Footprint {
+        long bytes;
+        int operations;
+        final LatencyProfile load = new LatencyProfile("load");
+        final LatencyProfile run = new LatencyProfile("run");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CorpusEvaluator.parseOptions(args);
+        if (!options.containsKey("original") || !options.containsKey("optimized")) {
+            System.err.println("usage: ModelEquivalence --original FILE --optimized FILE"
+                    + " [--labels FILE] [--inputs N] [--seed N] [--corpus DIR]"
+                    + " [--min-agreement F] [--max-delta F] [--loads N] [--report FILE]");
+            System.exit(2);
+        }
+        Path original = Paths.get(options.get("original"));
+        Path optimized = Paths.get(options.get("optimized"));
+        Path labels = Paths.get(options.getOrDefault("labels", CorpusEvaluator.DEFAULT_LABELS));
+        int count = Integer.parseInt(options.getOrDefault("inputs", "200"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        double minAgreement = Double.parseDouble(options.getOrDefault("min-agreement", "0.99"));
+        double maxDelta = Double.parseDouble(options.getOrDefault("max-delta", "0.05"));
+        int loads = Integer.parseInt(options.getOrDefault("loads", "5"));
+
+        Footprint originalFootprint = footprint(original, labels, loads);
+        Footprint optimizedFootprint = footprint(optimized, labels, loads);
+
+        Comparison comparison;
+        try (HeadlessClassifier reference = HeadlessClassifier.withAppDefaults(original, labels);
+             HeadlessClassifier candidate = HeadlessClassifier.withAppDefaults(optimized, labels)) {
+            List<float[]> inputs = inputs(reference, count, seed,
+                    options.containsKey("corpus") ? Paths.get(options.get("corpus")) : null);
+            comparison = compare(reference, candidate, inputs, originalFootprint.run,
+                    optimizedFootprint.run);
+        }
+
+        double agreement = (double) comparison.agreeing / comparison.inputs;
+        boolean passed = agreement >= minAgreement && comparison.maxDelta <= maxDelta;
+        String report = report(original, optimized, originalFootprint, optimizedFootprint,
+                comparison, minAgreement, maxDelta, passed);
+        System.out.print(report);
+        Path reportFile = options.containsKey("report") ? Paths.get(options.get("report")) : null;
+        if (reportFile != null) {
+            Files.deleteIfExists(reportFile);
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+        if (reportFile != null) {
+            Files.write(reportFile, report.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * This method measures the size of a graph and the time from reading the file to the end
+     * of the first run, the first run allocates the buffers of the session
+     */
+    static Footprint footprint(Path model, Path labels, int loads) throws IOException {
+        Footprint footprint = new Footprint();
+        footprint.bytes = Files.size(model);
+        float[] input = null;
+        for (int i = 0; i < loads; i++) {
+            long start = System.nanoTime();
+            try (HeadlessClassifier classifier = HeadlessClassifier.withAppDefaults(model, labels)) {
+                if (input == null) {
+                    input = new float[classifier.inputLength()];
+                    footprint.operations = classifier.countOperations();
+                }
+                classifier.run(input, 1);
+                footprint.load.add(System.nanoTime() - start);
+            }
+        }
+        return footprint;
+    }
+
+    /**
+     * This method prepares the fixed inputs: synthetic drawings of 1 to MAX_STROKES shapes,
+     * followed by the drawings of the corpus
+     */
+    static List<float[]> inputs(HeadlessClassifier classifier, int count, long seed, Path corpus)
+            throws IOException {
+        List<float[]> inputs = new ArrayList<>();
+        int[] pixels = new int[classifier.getInputSize() * classifier.getInputSize()];
+        for (int i = 0; i < count; i++) {
+            SyntheticDrawings.Kind kind = i % 4 == 3
+                    ? SyntheticDrawings.Kind.SCRIBBLES : SyntheticDrawings.Kind.SHAPES;
+            List<Stroke> drawing = SyntheticDrawings.generate(seed + i, kind,
+                    1 + i % MAX_STROKES, SPACING, CANVAS_WIDTH, CANVAS_HEIGHT);
+            inputs.add(preprocess(classifier,
+                    Images.renderStrokes(drawing, CANVAS_WIDTH, CANVAS_HEIGHT), pixels));
+        }
+        if (corpus != null) {
+            for (CorpusEvaluator.Sample sample
+                    : CorpusEvaluator.listCorpus(corpus, classifier.getLabels())) {
+                inputs.add(preprocess(classifier, Images.read(sample.file), pixels));
+            }
+        }
+        return inputs;
+    }
+
+    private static float[] preprocess(HeadlessClassifier classifier, BufferedImage image,
+                                      int[] pixels) {
+        float[] input = new float[classifier.inputLength()];
+        classifier.preprocess(image, pixels, input, 0);
+        return input;
+    }
+
+    /**
+     * This method classifies every input with both graphs, one at a time like the app
+     */
+    static Comparison compare(HeadlessClassifier reference, HeadlessClassifier candidate,
+                              List<float[]> inputs, LatencyProfile referenceRun,
+                              LatencyProfile candidateRun) {
+        if (reference.getNumClasses() != candidate.getNumClasses()) {
+            throw new IllegalStateException("The graphs have " + reference.getNumClasses()
+                    + " and " + candidate.getNumClasses() + " classes");
+        }
+        Comparison comparison = new Comparison();
+        for (float[] input : inputs) {
+            long start = System.nanoTime();
+            float[] expected = reference.run(input, 1)[0];
+            long referenceDone = System.nanoTime();
+            float[] actual = candidate.run(input, 1)[0];
+            candidateRun.add(System.nanoTime() - referenceDone);
+            referenceRun.add(referenceDone - start);
+
+            int top = CorpusEvaluator.argMax(expected);
+            comparison.inputs++;
+            if (CorpusEvaluator.argMax(actual) == top) {
+                comparison.agreeing++;
+            }
+            for (int c = 0; c < expected.length; c++) {
+                double delta = Math.abs(expected[c] - actual[c]);
+                comparison.maxDelta = Math.max(comparison.maxDelta, delta);
+                comparison.sumDelta += delta;
+            }
+            comparison.maxTopDelta = Math.max(comparison.maxTopDelta,
+                    Math.abs(expected[top] - actual[top]));
+        }
+        comparison.meanDelta = comparison.sumDelta
+                / Math.max(1, comparison.inputs * reference.getNumClasses());
+        return comparison;
+    }
+
+    private static String report(Path original, Path optimized, Footprint before,
+                                 Footprint after, Comparison comparison, double minAgreement,
+                                 double maxDelta, boolean passed) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        out.printf(Locale.US, "original=%s optimized=%s inputs=%d%n%n", original, optimized,
+                comparison.inputs);
+
+        out.println("Equivalence");
+        out.printf(Locale.US, "  top-1 agreement  %7.2f%% (%d/%d), minimum %.2f%%%n",
+                100.0 * comparison.agreeing / comparison.inputs, comparison.agreeing,
+                comparison.inputs, 100 * minAgreement);
+        out.printf(Locale.US, "  max score delta  %9.5f, maximum %.5f%n", comparison.maxDelta,
+                maxDelta);
+        out.printf(Locale.US, "  mean score delta %9.5f%n", comparison.meanDelta);
+        out.printf(Locale.US, "  max top-1 delta  %9.5f%n%n", comparison.maxTopDelta);
+
+        out.println("Footprint            original  optimized  reduction");
+        row(out, "size (KB)", before.bytes / 1024.0, after.bytes / 1024.0);
+        row(out, "operations", before.operations, after.operations);
+        row(out, "load p50 (ms)", before.load.percentile(50) / 1e6,
+                after.load.percentile(50) / 1e6);
+        row(out, "run p50 (ms)", before.run.percentile(50) / 1e6,
+                after.run.percentile(50) / 1e6);
+        out.println();
+        out.println(passed ? "PASSED" : "FAILED");
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void row(PrintStream out, String name, double before, double after) {
+        out.printf(Locale.US, "  %-16s %10.1f %10.1f %9.1f%%%n", name, before, after,
+                before == 0 ? 0 : 100 * (before - after) / before);
+    }
+}
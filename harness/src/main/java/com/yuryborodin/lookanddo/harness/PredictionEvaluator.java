@@ -0,0 +1,79 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeCodec;
+import com.yuryborodin.lookanddo.StrokePredictor;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the ink prediction of DrawView on recorded strokes.
+ * Reads drawings saved by the app (drawing.bin, {@link StrokeCodec}) and prints, for each
+ * horizon, how far the ink trails the finger with and without the predicted tail.
+ * <pre>
+ * --drawings DIR   directory of *.bin stroke files (required)
+ * --horizons LIST  comma separated horizons in ms, default 8,16,24,32
+ * --max      PX    maximal length of the tail, default 48
+ * </pre>
+ * @since 1.1
+ */
+public class PredictionEvaluator {
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = CorpusEvaluator.parseOptions(args);
+        if (!options.containsKey("drawings")) {
+            System.err.println("usage: PredictionEvaluator --drawings DIR [--horizons LIST]"
+                    + " [--max PX]");
+            System.exit(2);
+        }
+        float maxDistance = Float.parseFloat(options.getOrDefault("max", "48"));
+        List<Stroke> strokes = readStrokes(Paths.get(options.get("drawings")));
+        System.out.println(strokes.size() + " strokes");
+        for (String horizon : options.getOrDefault("horizons", "8,16,24,32").split(",")) {
+            int horizonMs = Integer.parseInt(horizon.trim());
+            System.out.printf("horizon=%2d ms  %s%n", horizonMs,
+                    StrokePredictor.evaluate(strokes, horizonMs, maxDistance));
+        }
+    }
+
+    /**
+     * @param directory directory of stroke files
+     * @return strokes of every file
+     * @throws IOException if a file can not be read or decoded
+     * @since 1.1
+     */
+    static List<Stroke> readStrokes(Path directory) throws IOException {
+        List<Stroke> strokes = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.bin")) {
+            for (Path file : files) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                    StrokeCodec.Reader reader = new StrokeCodec.Reader(in);
+                    for (Stroke stroke = reader.next(); stroke != null; stroke = reader.next()) {
+                        strokes.add(stroke);
+                    }
+                }
+            }
+        }
+        return strokes;
+    }
+}
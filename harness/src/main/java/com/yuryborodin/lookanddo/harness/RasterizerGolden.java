@@ -0,0 +1,189 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeCodec;
+import com.yuryborodin.lookanddo.StrokeRasterizer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Verifies {@link StrokeRasterizer} against drawings rendered by the app on a device.
+ * A golden is a pair of files with the same name in one directory: NAME.bin, the strokes
+ * written by DrawView#writeStrokes ({@link StrokeCodec}), and NAME.png, the bitmap of
+ * DrawView with those strokes (DrawView#proceed() saved with Bitmap.compress); debug builds of
+ * the app save both from the menu, see MainActivity#saveGolden. {@link ReferenceGoldens}
+ * writes goldens rendered by Java2D instead. Every drawing is rasterized at the size of its
+ * PNG and compared by the luminance of the pixels; Skia and the rasterizer anti-alias edges
+ * differently, so small differences along the edges are expected. Prints the error of every
+ * golden and the rasterization latency, exits with 1 if a golden exceeds a limit.
+ * <pre>
+ * --goldens   DIR  directory of the goldens (required)
+ * --max-mean  V    largest mean absolute difference of the luminance, 0..255, default 1.5
+ * --max-share F    largest share of pixels differing by more than 64, default 0.002
+ * --diffs     DIR  write NAME.diff.png of every failing golden, differences above 64 in red
+ * </pre>
+ * @since 1.1
+ */
+public class RasterizerGolden {
+
+    /**
+     * Difference of the luminance above which a pixel counts as wrong rather than differently
+     * anti-aliased
+     */
+    static final int WRONG_PIXEL = 64;
+
+    private final LatencyProfile rasterizeProfile = new LatencyProfile("rasterize");
+
+    /**
+     * Error of one golden
+     */
+    static final class Result {
+        double meanError;
+        int maxError;
+        double wrongShare;
+        BufferedImage diff;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CorpusEvaluator.parseOptions(args);
+        if (!options.containsKey("goldens")) {
+            System.err.println("usage: RasterizerGolden --goldens DIR [--max-mean V]"
+                    + " [--max-share F] [--diffs DIR]");
+            System.exit(2);
+        }
+        double maxMean = Double.parseDouble(options.getOrDefault("max-mean", "1.5"));
+        double maxShare = Double.parseDouble(options.getOrDefault("max-share", "0.002"));
+        Path diffs = options.containsKey("diffs") ? Paths.get(options.get("diffs")) : null;
+        if (diffs != null) {
+            Files.createDirectories(diffs);
+        }
+
+        RasterizerGolden golden = new RasterizerGolden();
+        int failures = 0;
+        List<Path> drawings = listGoldens(Paths.get(options.get("goldens")));
+        for (Path drawing : drawings) {
+            String name = drawing.getFileName().toString();
+            name = name.substring(0, name.length() - ".bin".length());
+            Result result = golden.compare(drawing,
+                    drawing.resolveSibling(name + ".png"));
+            boolean failed = result.meanError > maxMean || result.wrongShare > maxShare;
+            System.out.printf(Locale.US, "%-5s %-24s mean=%6.3f max=%3d wrong=%7.4f%%%n",
+                    failed ? "FAIL" : "ok", name, result.meanError, result.maxError,
+                    result.wrongShare * 100);
+            if (failed) {
+                failures++;
+                if (diffs != null) {
+                    ImageIO.write(result.diff, "png", diffs.resolve(name + ".diff.png").toFile());
+                }
+            }
+        }
+        System.out.printf(Locale.US, "%d/%d goldens passed (mean <= %.2f, wrong <= %.3f%%)%n",
+                drawings.size() - failures, drawings.size(), maxMean, maxShare * 100);
+        System.out.println(golden.rasterizeProfile.summary());
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * @param root directory of the goldens
+     * @return stroke files that have a PNG, sorted by name
+     * @throws IOException if the directory can not be listed or has no goldens
+     * @since 1.1
+     */
+    static List<Path> listGoldens(Path root) throws IOException {
+        List<Path> drawings = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "*.bin")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Path png = file.resolveSibling(name.substring(0, name.length() - 4) + ".png");
+                if (Files.isRegularFile(png)) {
+                    drawings.add(file);
+                } else {
+                    System.err.println("Skipping " + file + ": no " + png.getFileName());
+                }
+            }
+        }
+        Collections.sort(drawings);
+        if (drawings.isEmpty()) {
+            throw new IOException("No goldens found in " + root);
+        }
+        return drawings;
+    }
+
+    /**
+     * This method rasterizes one drawing and compares it with the image of the app
+     * @param drawing strokes of the drawing
+     * @param png image of the drawing rendered by the app
+     * @return error of the rasterizer
+     * @throws IOException if a file can not be read
+     * @since 1.1
+     */
+    public Result compare(Path drawing, Path png) throws IOException {
+        List<Stroke> strokes = StrokeCodec.decode(Files.readAllBytes(drawing));
+        BufferedImage expected = Images.read(png);
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+
+        StrokeRasterizer rasterizer = new StrokeRasterizer(width, height);
+        int[] actual = new int[width * height];
+        long start = System.nanoTime();
+        rasterizer.rasterize(strokes, 0xFFFFFFFF, actual);
+        rasterizeProfile.add(System.nanoTime() - start);
+
+        int[] reference = expected.getRGB(0, 0, width, height, null, 0, width);
+        Result result = new Result();
+        result.diff = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        long sum = 0;
+        int wrong = 0;
+        for (int i = 0; i < actual.length; i++) {
+            int error = Math.abs(luminance(actual[i]) - luminance(reference[i]));
+            sum += error;
+            result.maxError = Math.max(result.maxError, error);
+            int shade = 255 - error;
+            if (error > WRONG_PIXEL) {
+                wrong++;
+                result.diff.setRGB(i % width, i / width, 0xFF0000);
+            } else {
+                result.diff.setRGB(i % width, i / width, shade << 16 | shade << 8 | shade);
+            }
+        }
+        result.meanError = (double) sum / actual.length;
+        result.wrongShare = (double) wrong / actual.length;
+        return result;
+    }
+
+    /**
+     * @param argb pixel composited over white if it is translucent
+     * @return luminance, 0..255
+     */
+    static int luminance(int argb) {
+        int alpha = argb >>> 24;
+        int white = 255 * (255 - alpha);
+        int red = (((argb >> 16) & 0xFF) * alpha + white) / 255;
+        int green = (((argb >> 8) & 0xFF) * alpha + white) / 255;
+        int blue = ((argb & 0xFF) * alpha + white) / 255;
+        return (red * 299 + green * 587 + blue * 114) / 1000;
+    }
+}
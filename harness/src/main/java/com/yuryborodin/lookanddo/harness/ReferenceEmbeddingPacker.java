@@ -0,0 +1,163 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.ReferenceScorer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Computes the embeddings of the reference images shown by the game and packs them into the
+ * asset read by {@link ReferenceScorer}, so the app compares a drawing with the shown image
+ * without running the model on the image. The images are prepared like a drawing (scaled to
+ * the input of the model and normalized) and the embedding is the node of
+ * TensorFlowImageClassifier.EMBEDDING_NAME. Prints how far the quantized embeddings are from
+ * the exact ones.
+ * <pre>
+ * --images  DIR   drawables of the game, default app/src/main/res/drawable
+ * --pattern GLOB  file names of the reference images, default i[0-9][0-9].*
+ * --model   FILE  GraphDef, default app/src/main/assets/graph_v8_by30k.pb
+ * --labels  FILE  labels, default app/src/main/assets/labels_v8_by30k.txt
+ * --out     FILE  asset to write, default app/build/generated/referenceEmbeddings/
+ *                 reference_embeddings.bin
+ * </pre>
+ * @since 1.1
+ */
+public class ReferenceEmbeddingPacker {
+
+    static final String DEFAULT_IMAGES = "app/src/main/res/drawable";
+    static final String DEFAULT_OUT =
+            "app/build/generated/referenceEmbeddings/reference_embeddings.bin";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CorpusEvaluator.parseOptions(args);
+        Path images = Paths.get(options.getOrDefault("images", DEFAULT_IMAGES));
+        String pattern = options.getOrDefault("pattern", "i[0-9][0-9].*");
+        Path out = Paths.get(options.getOrDefault("out", DEFAULT_OUT));
+
+        List<Path> files = listImages(images, pattern);
+        try (HeadlessClassifier classifier = HeadlessClassifier.withAppDefaults(
+                Paths.get(options.getOrDefault("model", CorpusEvaluator.DEFAULT_MODEL)),
+                Paths.get(options.getOrDefault("labels", CorpusEvaluator.DEFAULT_LABELS)))) {
+            int dimension = classifier.getNodeWidth(HeadlessClassifier.EMBEDDING_NAME);
+            if (dimension == 0) {
+                throw new IOException("The model has no embedding node "
+                        + HeadlessClassifier.EMBEDDING_NAME);
+            }
+            List<String> names = new ArrayList<>();
+            List<float[]> embeddings = new ArrayList<>();
+            int size = classifier.getInputSize();
+            int[] pixels = new int[size * size];
+            float[] input = new float[classifier.inputLength()];
+            long start = System.nanoTime();
+            for (Path file : files) {
+                classifier.preprocess(Images.read(file), pixels, input, 0);
+                embeddings.add(classifier.fetch(input, 1, HeadlessClassifier.EMBEDDING_NAME,
+                        dimension)[0]);
+                names.add(resourceName(file));
+            }
+            long computed = System.nanoTime();
+
+            Path parent = out.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(out))) {
+                ReferenceScorer.write(stream, names, embeddings);
+            }
+            System.out.printf(Locale.US, "%d images, %d values, %.1f KB written to %s in %.1fs%n",
+                    names.size(), dimension, Files.size(out) / 1024.0, out,
+                    (computed - start) / 1e9);
+            printQuantizationError(out, embeddings);
+        }
+    }
+
+    /**
+     * @param directory directory of the drawables
+     * @param pattern glob of the reference images
+     * @return images sorted by name
+     * @throws IOException if the directory can not be listed or has no such images
+     */
+    static List<Path> listImages(Path directory, String pattern) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, pattern)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        if (files.isEmpty()) {
+            throw new IOException("No images " + pattern + " in " + directory);
+        }
+        return files;
+    }
+
+    /**
+     * @param file drawable
+     * @return resource entry name of the drawable, the file name without extension
+     */
+    static String resourceName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.indexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    /**
+     * This method reads the written asset back and compares the similarity of every image to
+     * itself and to the other images with the exact cosine similarity
+     */
+    private static void printQuantizationError(Path asset, List<float[]> embeddings)
+            throws IOException {
+        ReferenceScorer scorer;
+        try (InputStream in = Files.newInputStream(asset)) {
+            scorer = ReferenceScorer.read(in);
+        }
+        double maxError = 0;
+        double minSelf = 1;
+        for (int a = 0; a < embeddings.size(); a++) {
+            for (int b = 0; b < embeddings.size(); b++) {
+                double exact = cosine(embeddings.get(a), embeddings.get(b));
+                double packed = scorer.similarity(b, embeddings.get(a));
+                maxError = Math.max(maxError, Math.abs(exact - packed));
+                if (a == b) {
+                    minSelf = Math.min(minSelf, packed);
+                }
+            }
+        }
+        System.out.printf(Locale.US, "quantization: max similarity error %.5f,"
+                + " min self-similarity %.5f%n", maxError, minSelf);
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+    }
+}
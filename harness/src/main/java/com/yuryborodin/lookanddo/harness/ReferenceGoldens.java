@@ -0,0 +1,135 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeCodec;
+import com.yuryborodin.lookanddo.SyntheticDrawings;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes goldens of {@link RasterizerGolden} rendered by Java2D instead of the app.
+ * The drawings are generated by {@link SyntheticDrawings} from the seed, one per kind, and
+ * drawn with the geometry of DrawView's paint: quadratic curves through the midpoints of
+ * the points like FingerHandler, round caps and joins, anti-aliased. Java2D is a second,
+ * independent rasterizer, so these goldens catch gross errors (wrong curves, caps or
+ * scaling) on any machine; they do not replace goldens saved by the app on a device, which
+ * are the only ones that show the anti-aliasing of Skia.
+ * <pre>
+ * --out     DIR  directory of the goldens (required), NAME.bin and NAME.png per drawing
+ * --seed    N    seed of the drawings, default 1
+ * --width   W    width of the canvas, default 540
+ * --height  H    height of the canvas, default 960
+ * --strokes N    strokes of a drawing, default 6
+ * </pre>
+ * @since 1.1
+ */
+public class ReferenceGoldens {
+
+    /**
+     * Distance between two points of a stroke, a finger of moderate speed
+     */
+    private static final float SPACING = 4f;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CorpusEvaluator.parseOptions(args);
+        if (!options.containsKey("out")) {
+            System.err.println("usage: ReferenceGoldens --out DIR [--seed N] [--width W]"
+                    + " [--height H] [--strokes N]");
+            System.exit(2);
+        }
+        Path out = Paths.get(options.get("out"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int width = Integer.parseInt(options.getOrDefault("width", "540"));
+        int height = Integer.parseInt(options.getOrDefault("height", "960"));
+        int strokes = Integer.parseInt(options.getOrDefault("strokes", "6"));
+        Files.createDirectories(out);
+
+        for (SyntheticDrawings.Kind kind : SyntheticDrawings.Kind.values()) {
+            List<Stroke> drawing = SyntheticDrawings.generate(seed, kind, strokes, SPACING,
+                    width, height);
+            // the strokes are rendered as they are read back, in the precision of the codec
+            byte[] encoded = StrokeCodec.encode(drawing);
+            BufferedImage image = render(StrokeCodec.decode(encoded), width, height);
+            String name = "java2d-" + kind.name().toLowerCase(Locale.US) + "-" + seed;
+            Files.write(out.resolve(name + ".bin"), encoded);
+            ImageIO.write(image, "png", out.resolve(name + ".png").toFile());
+            System.out.printf(Locale.US, "%-28s %d strokes, %d points%n", name,
+                    drawing.size(), SyntheticDrawings.countPoints(drawing));
+        }
+    }
+
+    /**
+     * This method draws strokes on a white canvas like DrawView
+     * @param strokes strokes in canvas coordinates
+     * @param width width of the canvas
+     * @param height height of the canvas
+     * @return opaque image of the drawing
+     * @since 1.1
+     */
+    static BufferedImage render(List<Stroke> strokes, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+                    RenderingHints.VALUE_STROKE_PURE);
+            for (Stroke stroke : strokes) {
+                if (stroke.size() == 0) {
+                    continue;
+                }
+                graphics.setColor(new Color(stroke.color, true));
+                graphics.setStroke(new BasicStroke(stroke.width, BasicStroke.CAP_ROUND,
+                        BasicStroke.JOIN_ROUND));
+                graphics.draw(path(stroke));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * @return path of FingerHandler: quadratic curves through the midpoints, a line to the
+     * last point
+     */
+    private static Path2D path(Stroke stroke) {
+        Path2D.Float path = new Path2D.Float();
+        path.moveTo(stroke.getX(0), stroke.getY(0));
+        for (int i = 1; i < stroke.size(); i++) {
+            float previousX = stroke.getX(i - 1);
+            float previousY = stroke.getY(i - 1);
+            path.quadTo(previousX, previousY, (stroke.getX(i) + previousX) / 2,
+                    (stroke.getY(i) + previousY) / 2);
+        }
+        int last = stroke.size() - 1;
+        path.lineTo(stroke.getX(last), stroke.getY(last));
+        return path;
+    }
+}
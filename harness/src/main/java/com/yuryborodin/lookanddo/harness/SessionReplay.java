@@ -0,0 +1,350 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.GameEngine;
+import com.yuryborodin.lookanddo.ImageNormalizer;
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.TouchSession;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays touch sessions recorded by the app (TouchRecorder) through the headless pipeline:
+ * the touch events build strokes like DrawView, every press of the proceed button renders
+ * the drawing, preprocesses it and classifies it like DrawingAnalyser#analyse, and the answer
+ * is scored by {@link GameEngine} like MainActivity#onAnalysed. Prints the latency and the
+ * allocations of every step and the outcome of the game; the same session and model give
+ * the same outcome, so reports of two builds are comparable. Without a model file the
+ * classification is skipped and no answer is correct.
+ * <pre>
+ * --session FILE  session recorded by the app (required)
+ * --model   FILE  GraphDef, default app/src/main/assets/graph_v8_by30k.pb
+ * --labels  FILE  labels, default app/src/main/assets/labels_v8_by30k.txt
+ * --speed   F     1 for the recorded pauses between events, 0 for none (default)
+ * --repeat  N     replay the session N times, default 1
+ * --report  FILE  also write the report to FILE
+ * </pre>
+ * @since 1.1
+ */
+public class SessionReplay {
+
+    /**
+     * Mirrors of the constants of the app
+     */
+    static final float TOUCH_TOLERANCE = 4;
+    static final int STROKE_COLOR = 0xFF000000;
+    static final int STROKE_WIDTH = 5;
+    static final int NUMBER_OF_CLASSES = 10;
+    static final int NUMBER_OF_ROUNDS = 5;
+    static final int ACTION_DOWN = 0;
+    static final int ACTION_UP = 1;
+    static final int ACTION_MOVE = 2;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Latency and allocated bytes of one step of the pipeline
+     */
+    static final class Step {
+        final LatencyProfile profile;
+        long allocatedBytes = 0;
+        private long startNanos;
+        private long startBytes;
+
+        Step(String name) {
+            profile = new LatencyProfile(name);
+        }
+
+        void begin() {
+            startBytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            startNanos = System.nanoTime();
+        }
+
+        void end() {
+            long nanos = System.nanoTime() - startNanos;
+            allocatedBytes += THREADS.getThreadAllocatedBytes(Thread.currentThread().getId())
+                    - startBytes;
+            profile.add(nanos);
+        }
+
+        String summary() {
+            int count = profile.count();
+            return profile.summary() + String.format(Locale.US, " alloc=%8.1f KB/op",
+                    count == 0 ? 0 : allocatedBytes / 1024.0 / count);
+        }
+    }
+
+    private final TouchSession session;
+    private final HeadlessClassifier classifier;
+    private final float speed;
+
+    private final Step touchStep = new Step("touch");
+    private final Step renderStep = new Step("render");
+    private final Step preprocessStep = new Step("preprocess");
+    private final Step runStep = new Step("run");
+    private final Step replayStep = new Step("replay");
+
+    /**
+     * State of DrawView and MainActivity
+     */
+    private final List<Stroke> strokes = new ArrayList<>();
+    private final List<Stroke> undone = new ArrayList<>();
+    private Stroke active;
+    private float lastX;
+    private float lastY;
+    private long downTime;
+    private boolean enabled;
+    private final GameEngine engine = new GameEngine(NUMBER_OF_CLASSES, NUMBER_OF_ROUNDS);
+
+    private int proceeds = 0;
+    private int correct = 0;
+    private int drawnStrokes = 0;
+
+    /**
+     * Constructor of the class
+     * @param session recorded session
+     * @param classifier model, null to skip the classification
+     * @param speed 1 for the recorded pauses between events, 0 for none
+     * @since 1.1
+     */
+    public SessionReplay(TouchSession session, HeadlessClassifier classifier, float speed) {
+        this.session = session;
+        this.classifier = classifier;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CorpusEvaluator.parseOptions(args);
+        if (!options.containsKey("session")) {
+            System.err.println("usage: SessionReplay --session FILE [--model FILE] [--labels FILE]"
+                    + " [--speed F] [--repeat N] [--report FILE]");
+            System.exit(2);
+        }
+        TouchSession session;
+        try (InputStream in = Files.newInputStream(Paths.get(options.get("session")))) {
+            session = TouchSession.read(in);
+        }
+        float speed = Float.parseFloat(options.getOrDefault("speed", "0"));
+        int repeat = Integer.parseInt(options.getOrDefault("repeat", "1"));
+        Path model = Paths.get(options.getOrDefault("model", CorpusEvaluator.DEFAULT_MODEL));
+        HeadlessClassifier classifier = null;
+        if (Files.exists(model)) {
+            classifier = HeadlessClassifier.withAppDefaults(model,
+                    Paths.get(options.getOrDefault("labels", CorpusEvaluator.DEFAULT_LABELS)));
+        } else {
+            System.err.println("No model at " + model + ", the classification is skipped");
+        }
+        try {
+            SessionReplay replay = new SessionReplay(session, classifier, speed);
+            for (int i = 0; i < repeat; i++) {
+                replay.replay();
+            }
+            String report = replay.report(options.get("session"), repeat);
+            System.out.print(report);
+            if (options.containsKey("report")) {
+                Files.write(Paths.get(options.get("report")),
+                        report.getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            if (classifier != null) {
+                classifier.close();
+            }
+        }
+    }
+
+    /**
+     * This method replays the session once from a new game and an empty drawing
+     * @throws InterruptedException if the thread is interrupted while waiting for an event
+     * @since 1.1
+     */
+    public void replay() throws InterruptedException {
+        strokes.clear();
+        undone.clear();
+        active = null;
+        enabled = true;
+        engine.newGame();
+        replayStep.begin();
+        for (int event = 0; event < session.size(); event++) {
+            if (speed > 0 && event > 0) {
+                long pause = session.getTime(event) - session.getTime(event - 1);
+                Thread.sleep((long) (pause / speed));
+            }
+            if (session.getKind(event) == TouchSession.TOUCH) {
+                touchStep.begin();
+                onTouch(event);
+                touchStep.end();
+            } else {
+                onButton(session.getCode(event));
+            }
+        }
+        replayStep.end();
+    }
+
+    /**
+     * Mirrors DrawView#onTouchEvent: only the last sample of an event is drawn, points
+     * closer than TOUCH_TOLERANCE to the previous one are skipped
+     */
+    private void onTouch(int event) {
+        if (!enabled || session.getSampleCount(event) == 0) {
+            return;
+        }
+        int last = session.getFirstSample(event) + session.getSampleCount(event) - 1;
+        float x = session.getSampleX(last);
+        float y = session.getSampleY(last);
+        switch (session.getCode(event)) {
+            case ACTION_DOWN:
+                undone.clear();
+                active = new Stroke(STROKE_COLOR, STROKE_WIDTH);
+                strokes.add(active);
+                downTime = session.getTime(event);
+                active.add(x, y, 0);
+                lastX = x;
+                lastY = y;
+                break;
+            case ACTION_MOVE:
+                if (active != null && (Math.abs(x - lastX) >= TOUCH_TOLERANCE
+                        || Math.abs(y - lastY) >= TOUCH_TOLERANCE)) {
+                    active.add(x, y, (int) (session.getTime(event) - downTime));
+                    lastX = x;
+                    lastY = y;
+                }
+                break;
+            case ACTION_UP:
+                if (active != null) {
+                    active.finish();
+                    active = null;
+                    drawnStrokes++;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Mirrors the button handlers of MainActivity
+     */
+    private void onButton(int button) {
+        switch (button) {
+            case TouchSession.BUTTON_PROCEED:
+                proceed();
+                break;
+            case TouchSession.BUTTON_CLEAR:
+                strokes.clear();
+                undone.clear();
+                active = null;
+                enabled = true;
+                break;
+            case TouchSession.BUTTON_UPDATE:
+                if (engine.getPhase() == GameEngine.Phase.ANSWERED) {
+                    engine.next();
+                    strokes.clear();
+                    undone.clear();
+                    enabled = true;
+                }
+                break;
+            case TouchSession.BUTTON_UNDO:
+                if (active == null && !strokes.isEmpty()) {
+                    undone.add(strokes.remove(strokes.size() - 1));
+                }
+                break;
+            case TouchSession.BUTTON_REDO:
+                if (active == null && !undone.isEmpty()) {
+                    strokes.add(undone.remove(undone.size() - 1));
+                }
+                break;
+            case TouchSession.BUTTON_NEW_GAME:
+                engine.newGame();
+                strokes.clear();
+                undone.clear();
+                enabled = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Mirrors MainActivity#onProceedButtonClicked: the finished strokes are classified and the
+     * best class is scored with its probability
+     */
+    private void proceed() {
+        proceeds++;
+        List<Stroke> finished = new ArrayList<>(strokes);
+        finished.remove(active);
+
+        renderStep.begin();
+        BufferedImage image = Images.renderStrokes(finished, session.getCanvasWidth(),
+                session.getCanvasHeight());
+        renderStep.end();
+
+        int size = classifier != null ? classifier.getInputSize() : HeadlessClassifier.INPUT_SIZE;
+        int[] pixels = new int[size * size];
+        float[] input = new float[size * size * 3];
+        preprocessStep.begin();
+        Images.scaleNearest(image, size, pixels);
+        ImageNormalizer.normalize(pixels, pixels.length, HeadlessClassifier.IMAGE_MEAN,
+                HeadlessClassifier.IMAGE_STD, input, 0);
+        preprocessStep.end();
+        if (classifier == null || finished.isEmpty()) {
+            return;
+        }
+
+        runStep.begin();
+        float[] scores = classifier.run(input, 1)[0];
+        runStep.end();
+        int predicted = CorpusEvaluator.argMax(scores);
+        if (engine.answer(predicted, scores[predicted])) {
+            correct++;
+            enabled = false;
+        }
+    }
+
+    /**
+     * @param name name of the session
+     * @param repeat number of replays
+     * @return report with the outcome of the game and the profile of every step
+     * @since 1.1
+     */
+    public String report(String name, int repeat) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        out.printf(Locale.US, "session=%s events=%d samples=%d canvas=%dx%d speed=%.1f repeat=%d%n",
+                name, session.size(), session.getSampleCount(), session.getCanvasWidth(),
+                session.getCanvasHeight(), speed, repeat);
+        out.printf(Locale.US, "strokes=%d proceeds=%d correct=%d score=%.2f round=%d%s%n%n",
+                drawnStrokes / repeat, proceeds / repeat, correct / repeat,
+                engine.getGameScore(), engine.getRound() + 1,
+                classifier == null ? " (no model)" : "");
+        out.println("Steps");
+        out.println("  " + touchStep.summary());
+        out.println("  " + renderStep.summary());
+        out.println("  " + preprocessStep.summary());
+        out.println("  " + runStep.summary());
+        out.println("  " + replayStep.summary());
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
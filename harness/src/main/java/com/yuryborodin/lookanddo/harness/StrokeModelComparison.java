@@ -0,0 +1,214 @@
+/* Copyright 2020 Yury Borodin. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.yuryborodin.lookanddo.harness;
+
+import com.yuryborodin.lookanddo.Stroke;
+import com.yuryborodin.lookanddo.StrokeCodec;
+import com.yuryborodin.lookanddo.StrokeSequence;
+
+import org.tensorflow.Graph;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the image model with a stroke sequence model on the same drawings.
+ * The corpus is a directory with one sub-directory per class, named like the class in the
+ * label file, containing drawings saved by the app (drawing.bin, {@link StrokeCodec}).
+ * The image model sees each drawing rendered like DrawView, the stroke model sees its
+ * {@link StrokeSequence}. Prints the accuracy of both models and the latency of every step;
+ * without a stroke model only the encoding is measured. Runs on one thread, like the app
+ * <pre>
+ * --drawings     DIR   corpus directory (required)
+ * --model        FILE  GraphDef of the image model, default app/src/main/assets/graph_v8_by30k.pb
+ * --labels       FILE  labels of both models, default app/src/main/assets/labels_v8_by30k.txt
+ * --stroke-model FILE  GraphDef of the stroke model, inputs "ink" and "length"
+ * --max-points   N     length of the sequence, default 128
+ * --canvas       WxH   size of DrawView, default 1080x1920
+ * </pre>
+ * @since 1.1
+ */
+public class StrokeModelComparison {
+
+    static final String STROKE_INPUT_NAME = "ink";
+    static final String STROKE_LENGTH_NAME = "length";
+    static final String STROKE_OUTPUT_NAME = "final_result";
+
+    private final LatencyProfile renderProfile = new LatencyProfile("render");
+    private final LatencyProfile preprocessProfile = new LatencyProfile("preprocess");
+    private final LatencyProfile imageRunProfile = new LatencyProfile("image run");
+    private final LatencyProfile encodeProfile = new LatencyProfile("encode");
+    private final LatencyProfile incrementalProfile = new LatencyProfile("encode/stroke");
+    private final LatencyProfile strokeRunProfile = new LatencyProfile("stroke run");
+
+    private int drawings = 0;
+    private int imageCorrect = 0;
+    private int strokeCorrect = 0;
+    private int agreements = 0;
+    private int truncatedDrawings = 0;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CorpusEvaluator.parseOptions(args);
+        if (!options.containsKey("drawings")) {
+            System.err.println("usage: StrokeModelComparison --drawings DIR [--model FILE]"
+                    + " [--labels FILE] [--stroke-model FILE] [--max-points N] [--canvas WxH]");
+            System.exit(2);
+        }
+        String[] canvas = options.getOrDefault("canvas", "1080x1920").split("x");
+        int width = Integer.parseInt(canvas[0]);
+        int height = Integer.parseInt(canvas[1]);
+        int maxPoints = Integer.parseInt(options.getOrDefault("max-points", "128"));
+
+        try (HeadlessClassifier classifier = HeadlessClassifier.withAppDefaults(
+                Paths.get(options.getOrDefault("model", CorpusEvaluator.DEFAULT_MODEL)),
+                Paths.get(options.getOrDefault("labels", CorpusEvaluator.DEFAULT_LABELS)))) {
+            List<CorpusEvaluator.Sample> corpus = CorpusEvaluator.listCorpus(
+                    Paths.get(options.get("drawings")), classifier.getLabels(), "*.bin");
+            Graph strokeGraph = null;
+            Session strokeSession = null;
+            if (options.containsKey("stroke-model")) {
+                strokeGraph = new Graph();
+                strokeGraph.importGraphDef(
+                        Files.readAllBytes(Paths.get(options.get("stroke-model"))));
+                strokeSession = new Session(strokeGraph);
+            }
+            try {
+                StrokeModelComparison comparison = new StrokeModelComparison();
+                comparison.compare(corpus, classifier, strokeSession, maxPoints, width, height);
+                System.out.print(comparison.report(strokeSession != null));
+            } finally {
+                if (strokeSession != null) {
+                    strokeSession.close();
+                    strokeGraph.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method classifies every drawing with both models
+     * @param corpus samples, stroke files
+     * @param classifier image model
+     * @param strokeSession session of the stroke model, null to measure the encoding only
+     * @param maxPoints length of the sequence
+     * @param width width of the canvas
+     * @param height height of the canvas
+     * @throws IOException if a drawing can not be read
+     * @since 1.1
+     */
+    public void compare(List<CorpusEvaluator.Sample> corpus, HeadlessClassifier classifier,
+                        Session strokeSession, int maxPoints, int width, int height)
+            throws IOException {
+        int size = classifier.getInputSize();
+        int[] pixels = new int[size * size];
+        float[] input = new float[classifier.inputLength()];
+        for (CorpusEvaluator.Sample sample : corpus) {
+            List<Stroke> strokes = StrokeCodec.decode(Files.readAllBytes(sample.file));
+            drawings++;
+
+            long start = System.nanoTime();
+            BufferedImage image = Images.renderStrokes(strokes, width, height);
+            long rendered = System.nanoTime();
+            classifier.preprocess(image, pixels, input, 0);
+            long preprocessed = System.nanoTime();
+            int imagePredicted = CorpusEvaluator.argMax(classifier.run(input, 1)[0]);
+            long done = System.nanoTime();
+            renderProfile.add(rendered - start);
+            preprocessProfile.add(preprocessed - rendered);
+            imageRunProfile.add(done - preprocessed);
+            if (imagePredicted == sample.label) {
+                imageCorrect++;
+            }
+
+            // while drawing, the app encodes again after every stroke
+            StrokeSequence incremental = new StrokeSequence(maxPoints,
+                    StrokeSequence.DEFAULT_EPSILON);
+            for (int k = 1; k <= strokes.size(); k++) {
+                long strokeStart = System.nanoTime();
+                incremental.encode(strokes.subList(0, k));
+                incrementalProfile.add(System.nanoTime() - strokeStart);
+            }
+
+            StrokeSequence sequence = new StrokeSequence(maxPoints, StrokeSequence.DEFAULT_EPSILON);
+            start = System.nanoTime();
+            int length = sequence.encode(strokes);
+            long encoded = System.nanoTime();
+            encodeProfile.add(encoded - start);
+            if (sequence.getTruncated() > 0) {
+                truncatedDrawings++;
+            }
+            if (strokeSession == null || length == 0) {
+                continue;
+            }
+            int strokePredicted = CorpusEvaluator.argMax(run(strokeSession, sequence));
+            strokeRunProfile.add(System.nanoTime() - encoded);
+            if (strokePredicted == sample.label) {
+                strokeCorrect++;
+            }
+            if (strokePredicted == imagePredicted) {
+                agreements++;
+            }
+        }
+    }
+
+    private static float[] run(Session session, StrokeSequence sequence) {
+        long[] shape = {1, sequence.getMaxPoints(), 3};
+        try (Tensor<Float> ink = Tensor.create(shape, FloatBuffer.wrap(sequence.getValues()));
+             Tensor<?> length = Tensor.create(new int[] {sequence.getLength()});
+             Tensor<?> out = session.runner()
+                     .feed(STROKE_INPUT_NAME, ink)
+                     .feed(STROKE_LENGTH_NAME, length)
+                     .fetch(STROKE_OUTPUT_NAME).run().get(0)) {
+            float[][] scores = new float[1][(int) out.shape()[1]];
+            out.copyTo(scores);
+            return scores[0];
+        }
+    }
+
+    /**
+     * @param withStrokeModel whether the stroke model was run
+     * @return report with the accuracy of both models and the latency profiles
+     * @since 1.1
+     */
+    public String report(boolean withStrokeModel) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "drawings=%d truncated=%d%n%n", drawings,
+                truncatedDrawings));
+        report.append(String.format(Locale.US, "image model   accuracy=%6.2f%%%n",
+                100.0 * imageCorrect / drawings));
+        if (withStrokeModel) {
+            report.append(String.format(Locale.US, "stroke model  accuracy=%6.2f%%"
+                    + " agreement=%6.2f%%%n", 100.0 * strokeCorrect / drawings,
+                    100.0 * agreements / drawings));
+        }
+        report.append(String.format("%nImage model latency%n"));
+        report.append("  ").append(renderProfile.summary()).append('\n');
+        report.append("  ").append(preprocessProfile.summary()).append('\n');
+        report.append("  ").append(imageRunProfile.summary()).append('\n');
+        report.append(String.format("%nStroke model latency%n"));
+        report.append("  ").append(encodeProfile.summary()).append('\n');
+        report.append("  ").append(incrementalProfile.summary()).append('\n');
+        if (withStrokeModel) {
+            report.append("  ").append(strokeRunProfile.summary()).append('\n');
+        }
+        return report.toString();
+    }
+}